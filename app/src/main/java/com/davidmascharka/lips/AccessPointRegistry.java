@@ -0,0 +1,205 @@
+package com.davidmascharka.lips;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * The access points of interest in a building, each with a fixed slot: its
+ * position among the BSSID attributes of the feature vector and dataset.
+ *
+ * Lists are read from text files with one BSSID per line in slot order. Blank
+ * lines and anything after a # are ignored.
+ *
+ * BSSIDs are looked up by their 48-bit MAC address in an open addressing hash
+ * table built once, so a lookup parses the string in place and never hashes or
+ * allocates a String.
+ */
+public class AccessPointRegistry {
+
+	/**
+	 * Returned by slotOf for BSSIDs that aren't in the registry
+	 */
+	public static final int NOT_REGISTERED = -1;
+
+	// Never a valid MAC, which fits in 48 bits
+	private static final long EMPTY = -1L;
+
+	private final String[] bssids;
+	private final long[] keys;
+	private final int[] slots;
+	private final int mask;
+
+	/**
+	 * @param bssids the BSSIDs in slot order
+	 * @throws IllegalArgumentException if one isn't a MAC address or appears twice
+	 */
+	public AccessPointRegistry(String[] bssids) {
+		this.bssids = bssids.clone();
+
+		// At most half full keeps the probe sequences short
+		int capacity = 2;
+		while (capacity < bssids.length * 2) {
+			capacity <<= 1;
+		}
+		keys = new long[capacity];
+		slots = new int[capacity];
+		mask = capacity - 1;
+		Arrays.fill(keys, EMPTY);
+
+		for (int slot = 0; slot < bssids.length; slot++) {
+			long mac = parseMac(bssids[slot]);
+			if (mac == EMPTY) {
+				throw new IllegalArgumentException("Not a BSSID: " + bssids[slot]);
+			}
+			int i = indexFor(mac);
+			while (keys[i] != EMPTY) {
+				if (keys[i] == mac) {
+					throw new IllegalArgumentException("BSSID listed twice: " + bssids[slot]);
+				}
+				i = (i + 1) & mask;
+			}
+			keys[i] = mac;
+			slots[i] = slot;
+		}
+	}
+
+	/**
+	 * Reads a list of BSSIDs, one per line. Closes the stream
+	 *
+	 * @throws IOException if a line isn't a BSSID or repeats one
+	 */
+	public static AccessPointRegistry read(InputStream in) throws IOException {
+		List<String> bssids = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(
+				new InputStreamReader(in, Charset.forName("UTF-8")));
+		try {
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				int comment = line.indexOf('#');
+				if (comment >= 0) {
+					line = line.substring(0, comment);
+				}
+				line = line.trim();
+				if (line.isEmpty()) {
+					continue;
+				}
+				if (parseMac(line) == EMPTY) {
+					throw new IOException("Not a BSSID on line " + lineNumber + ": " + line);
+				}
+				bssids.add(line);
+			}
+		} finally {
+			reader.close();
+		}
+
+		try {
+			return new AccessPointRegistry(bssids.toArray(new String[bssids.size()]));
+		} catch (IllegalArgumentException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
+
+	/**
+	 * The first max access points, for models with fewer BSSID attributes than
+	 * the list has entries
+	 *
+	 * @return this registry if it has no more than max
+	 */
+	public AccessPointRegistry limit(int max) {
+		if (bssids.length <= max) {
+			return this;
+		}
+		return new AccessPointRegistry(Arrays.copyOf(bssids, max));
+	}
+
+	/**
+	 * @return the slot of the BSSID, or NOT_REGISTERED
+	 */
+	public int slotOf(String bssid) {
+		long mac = parseMac(bssid);
+		if (mac == EMPTY) {
+			return NOT_REGISTERED;
+		}
+		for (int i = indexFor(mac); keys[i] != EMPTY; i = (i + 1) & mask) {
+			if (keys[i] == mac) {
+				return slots[i];
+			}
+		}
+		return NOT_REGISTERED;
+	}
+
+	/**
+	 * Number of access points, and so of slots
+	 */
+	public int size() {
+		return bssids.length;
+	}
+
+	/**
+	 * The BSSID in the slot, as it was listed
+	 */
+	public String getBssid(int slot) {
+		return bssids[slot];
+	}
+
+	private int indexFor(long mac) {
+		// Fibonacci hashing: the top bits of the product are well mixed even
+		// when the MACs only differ in their last byte
+		return (int) ((mac * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+	}
+
+	/**
+	 * Parses a MAC address written as six pairs of hex digits separated by
+	 * colons (as in ScanResult.BSSID) or dashes, in either case
+	 *
+	 * @return the address in the low 48 bits, or -1 if it isn't one
+	 */
+	static long parseMac(String bssid) {
+		if (bssid == null || bssid.length() != 17) {
+			return EMPTY;
+		}
+		long mac = 0;
+		for (int i = 0; i < 17; i++) {
+			char c = bssid.charAt(i);
+			if (i % 3 == 2) {
+				if (c != ':' && c != '-') {
+					return EMPTY;
+				}
+				continue;
+			}
+			int digit = Character.digit(c, 16);
+			if (digit < 0) {
+				return EMPTY;
+			}
+			mac = (mac << 4) | digit;
+		}
+		return mac;
+	}
+}
@@ -0,0 +1,277 @@
+package com.davidmascharka.lips;
+
+import java.util.Arrays;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * A random forest classifier with every tree flattened into parallel arrays,
+ * one entry per node. The nodes of all the trees share the arrays; roots holds
+ * the index of the first node of each tree.
+ *
+ * An internal node sends an instance left when its attribute value is below the
+ * split point and right otherwise. When the value is missing the instance goes
+ * down both sides, weighted by the share of the training data that went each way.
+ * A leaf has attribute -1.
+ *
+ * Every node keeps its normalised class distribution so that a subtree the
+ * training data never reached can fall back to its parent's. Nodes without a
+ * distribution have NaN as its first value.
+ *
+ * Only numeric splits are supported, which covers every attribute LIPS records.
+ *
+ * Predictions give the same distribution as Weka's RandomForest, without
+ * allocating. Missing values are NaN. A forest must only be used from one
+ * thread at a time.
+ */
+public class CompiledForest {
+
+	/**
+	 * Attribute value for a leaf
+	 */
+	public static final int LEAF = -1;
+
+	private final String[] classNames;
+	private final int numClasses;
+	private final int[] roots;
+
+	private final int[] attribute;
+	private final double[] splitPoint;
+	private final int[] left;
+	private final int[] right;
+	private final double[] missingLeft;
+	private final double[] missingRight;
+	private final double[] distribution;
+
+	// Nodes still to visit in the current tree, with the weight of the path to
+	// them and the deepest node above them that a missing distribution falls
+	// back to
+	private final int[] stackNode;
+	private final double[] stackWeight;
+	private final int[] stackFallback;
+
+	// Working memory for classify
+	private final double[] classDistribution;
+
+	/**
+	 * @param classNames the class values, in the order of the distributions
+	 * @param roots first node of each tree
+	 * @param attribute split attribute of each node, LEAF for leaves
+	 * @param splitPoint split value of each internal node
+	 * @param left node taken below the split point
+	 * @param right node taken at or above the split point
+	 * @param missingLeft weight of the left subtree when the value is missing
+	 * @param missingRight weight of the right subtree when the value is missing
+	 * @param distribution numClasses values per node, NaN first for no distribution
+	 */
+	public CompiledForest(String[] classNames, int[] roots, int[] attribute, double[] splitPoint,
+						  int[] left, int[] right, double[] missingLeft, double[] missingRight,
+						  double[] distribution) {
+		int numNodes = attribute.length;
+		if (splitPoint.length != numNodes || left.length != numNodes || right.length != numNodes
+				|| missingLeft.length != numNodes || missingRight.length != numNodes
+				|| distribution.length != numNodes * classNames.length) {
+			throw new IllegalArgumentException("Every node needs a value in every array");
+		}
+		for (int node = 0; node < numNodes; node++) {
+			if (attribute[node] != LEAF && (left[node] <= node || left[node] >= numNodes
+					|| right[node] <= node || right[node] >= numNodes)) {
+				// Children after their parent also rules out cycles
+				throw new IllegalArgumentException("Bad children for node " + node);
+			}
+		}
+		for (int root : roots) {
+			if (root < 0 || root >= numNodes) {
+				throw new IllegalArgumentException("Bad root " + root);
+			}
+		}
+
+		// A depth first walk never has more than one pending node per level
+		int[] depth = new int[numNodes];
+		int maxDepth = 0;
+		for (int node = 0; node < numNodes; node++) {
+			maxDepth = Math.max(maxDepth, depth[node]);
+			if (attribute[node] != LEAF) {
+				depth[left[node]] = depth[node] + 1;
+				depth[right[node]] = depth[node] + 1;
+			}
+		}
+		stackNode = new int[maxDepth + 2];
+		stackWeight = new double[maxDepth + 2];
+		stackFallback = new int[maxDepth + 2];
+		classDistribution = new double[classNames.length];
+
+		this.classNames = classNames;
+		this.numClasses = classNames.length;
+		this.roots = roots;
+		this.attribute = attribute;
+		this.splitPoint = splitPoint;
+		this.left = left;
+		this.right = right;
+		this.missingLeft = missingLeft;
+		this.missingRight = missingRight;
+		this.distribution = distribution;
+	}
+
+	/**
+	 * Class probabilities for the given attribute values, the average of the
+	 * trees' distributions. All zeros if no tree has a distribution for them
+	 *
+	 * @param instance attribute values, laid out as in the training data
+	 * @param distribution receives numClasses probabilities
+	 */
+	public void distribution(double[] instance, double[] distribution) {
+		Arrays.fill(distribution, 0, numClasses, 0.0);
+		for (int root : roots) {
+			addTree(root, instance, distribution);
+		}
+
+		double sum = 0.0;
+		for (int c = 0; c < numClasses; c++) {
+			sum += distribution[c];
+		}
+		if (sum > 0) {
+			for (int c = 0; c < numClasses; c++) {
+				distribution[c] /= sum;
+			}
+		}
+	}
+
+	/**
+	 * Index of the most probable class for the given attribute values, the first
+	 * one on ties
+	 *
+	 * @return -1 if no tree has a distribution for the values
+	 */
+	public int classify(double[] instance) {
+		distribution(instance, classDistribution);
+		int best = -1;
+		double bestProbability = 0.0;
+		for (int c = 0; c < numClasses; c++) {
+			if (classDistribution[c] > bestProbability) {
+				best = c;
+				bestProbability = classDistribution[c];
+			}
+		}
+		return best;
+	}
+
+	private void addTree(int root, double[] instance, double[] sums) {
+		int size = 0;
+		stackNode[size] = root;
+		stackWeight[size] = 1.0;
+		stackFallback[size] = LEAF;
+		size++;
+
+		while (size > 0) {
+			size--;
+			int node = stackNode[size];
+			double weight = stackWeight[size];
+			int fallback = stackFallback[size];
+			if (distribution[node * numClasses] == distribution[node * numClasses]) {
+				fallback = node;
+			}
+
+			int split = attribute[node];
+			if (split == LEAF) {
+				// Weka uses the deepest distribution on the path, but a split on a
+				// missing value always answers for its subtrees
+				if (fallback != LEAF) {
+					int offset = fallback * numClasses;
+					for (int c = 0; c < numClasses; c++) {
+						sums[c] += weight * distribution[offset + c];
+					}
+				}
+				continue;
+			}
+
+			double value = instance[split];
+			if (value != value) {
+				stackNode[size] = right[node];
+				stackWeight[size] = weight * missingRight[node];
+				stackFallback[size] = LEAF;
+				size++;
+				stackNode[size] = left[node];
+				stackWeight[size] = weight * missingLeft[node];
+				stackFallback[size] = LEAF;
+				size++;
+			} else {
+				stackNode[size] = value < splitPoint[node] ? left[node] : right[node];
+				stackWeight[size] = weight;
+				stackFallback[size] = fallback;
+				size++;
+			}
+		}
+	}
+
+	public int getNumClasses() {
+		return numClasses;
+	}
+
+	public String getClassName(int classIndex) {
+		return classNames[classIndex];
+	}
+
+	public int getNumTrees() {
+		return roots.length;
+	}
+
+	public int getNumNodes() {
+		return attribute.length;
+	}
+
+	// The arrays themselves, for ModelFormat. Not copies
+
+	String[] getClassNames() {
+		return classNames;
+	}
+
+	int[] getRoots() {
+		return roots;
+	}
+
+	int[] getAttributes() {
+		return attribute;
+	}
+
+	double[] getSplitPoints() {
+		return splitPoint;
+	}
+
+	int[] getLeftChildren() {
+		return left;
+	}
+
+	int[] getRightChildren() {
+		return right;
+	}
+
+	double[] getMissingLeft() {
+		return missingLeft;
+	}
+
+	double[] getMissingRight() {
+		return missingRight;
+	}
+
+	double[] getDistributions() {
+		return distribution;
+	}
+}
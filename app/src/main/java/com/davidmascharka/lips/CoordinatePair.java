@@ -0,0 +1,49 @@
+package com.davidmascharka.lips;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Predicts a position with separate models for x and y, for models that can't
+ * share a pass over the fingerprints
+ */
+public class CoordinatePair implements PositionPredictor {
+
+	private final CoordinatePredictor x;
+	private final CoordinatePredictor y;
+
+	public CoordinatePair(CoordinatePredictor x, CoordinatePredictor y) {
+		this.x = x;
+		this.y = y;
+	}
+
+	@Override
+	public void predict(double[] features, double[] position) {
+		position[0] = x.predict(features);
+		position[1] = y.predict(features);
+	}
+
+	public CoordinatePredictor getX() {
+		return x;
+	}
+
+	public CoordinatePredictor getY() {
+		return y;
+	}
+}
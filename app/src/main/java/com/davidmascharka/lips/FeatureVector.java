@@ -0,0 +1,233 @@
+package com.davidmascharka.lips;
+
+import java.util.Arrays;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * The attributes of a single data point, laid out in the same order as the
+ * columns of the dataset files written by MainActivity:
+ *
+ *   13 sensor readings, one RSSI per access point, latitude, longitude,
+ *   location accuracy and finally the class (position) slot
+ *
+ * Everything lives in one double[] that is allocated once and refilled on
+ * every scan, so the array can be handed straight to a Weka DenseInstance
+ * (which keeps a reference rather than a copy) or to any of the LIPS
+ * predictors without boxing or copying the values.
+ *
+ * Missing values are stored as NaN, the same convention Weka uses.
+ */
+public class FeatureVector {
+
+	public static final int ACCELEROMETER_X = 0;
+	public static final int ACCELEROMETER_Y = 1;
+	public static final int ACCELEROMETER_Z = 2;
+	public static final int MAGNETIC_X = 3;
+	public static final int MAGNETIC_Y = 4;
+	public static final int MAGNETIC_Z = 5;
+	public static final int LIGHT = 6;
+	public static final int ROTATION_X = 7;
+	public static final int ROTATION_Y = 8;
+	public static final int ROTATION_Z = 9;
+	public static final int ORIENTATION_X = 10;
+	public static final int ORIENTATION_Y = 11;
+	public static final int ORIENTATION_Z = 12;
+
+	/**
+	 * Number of sensor attributes that come before the first access point
+	 */
+	public static final int NUM_SENSOR_ATTRIBUTES = 13;
+
+	/**
+	 * Value recorded for an access point that did not show up in a scan. The
+	 * datasets record 0 for these, and the tracker has always predicted with 0
+	 * for the access points it listens for. Attributes past the end of that
+	 * list were never set, so they stay missing; see clearRssi(int)
+	 */
+	public static final int RSSI_NOT_SEEN = 0;
+
+	private static final String[] SENSOR_ATTRIBUTE_NAMES = {
+			"accelerometerX", "accelerometerY", "accelerometerZ",
+			"magneticX", "magneticY", "magneticZ", "light",
+			"rotationX", "rotationY", "rotationZ",
+			"orientationX", "orientationY", "orientationZ"
+	};
+
+	private final int numAccessPoints;
+	private final double[] values;
+
+	/**
+	 * @param numAccessPoints how many BSSID attributes the models were built with
+	 */
+	public FeatureVector(int numAccessPoints) {
+		this.numAccessPoints = numAccessPoints;
+		// sensors + access points + latitude, longitude, accuracy + class
+		values = new double[NUM_SENSOR_ATTRIBUTES + numAccessPoints + 4];
+		clearRssi();
+		setLocationMissing();
+		values[classIndex()] = Double.NaN;
+	}
+
+	public void setAccelerometer(float x, float y, float z) {
+		values[ACCELEROMETER_X] = x;
+		values[ACCELEROMETER_Y] = y;
+		values[ACCELEROMETER_Z] = z;
+	}
+
+	public void setMagnetic(float x, float y, float z) {
+		values[MAGNETIC_X] = x;
+		values[MAGNETIC_Y] = y;
+		values[MAGNETIC_Z] = z;
+	}
+
+	public void setLight(float light) {
+		values[LIGHT] = light;
+	}
+
+	public void setRotation(float x, float y, float z) {
+		values[ROTATION_X] = x;
+		values[ROTATION_Y] = y;
+		values[ROTATION_Z] = z;
+	}
+
+	/**
+	 * @param orientation azimuth, pitch and roll as filled in by SensorManager.getOrientation
+	 */
+	public void setOrientation(float[] orientation) {
+		values[ORIENTATION_X] = orientation[0];
+		values[ORIENTATION_Y] = orientation[1];
+		values[ORIENTATION_Z] = orientation[2];
+	}
+
+	/**
+	 * Resets every access point to RSSI_NOT_SEEN. Call before writing the
+	 * results of a new scan
+	 */
+	public void clearRssi() {
+		clearRssi(numAccessPoints);
+	}
+
+	/**
+	 * Resets the first numListed access points to RSSI_NOT_SEEN and marks the
+	 * rest missing, as the tracker's instances always had them. Call before
+	 * writing the results of a new scan
+	 *
+	 * @param numListed how many access points are listened for
+	 */
+	public void clearRssi(int numListed) {
+		if (numListed < 0 || numListed > numAccessPoints) {
+			throw new IndexOutOfBoundsException("Listed access points: " + numListed);
+		}
+		Arrays.fill(values, NUM_SENSOR_ATTRIBUTES, NUM_SENSOR_ATTRIBUTES + numListed,
+				RSSI_NOT_SEEN);
+		Arrays.fill(values, NUM_SENSOR_ATTRIBUTES + numListed,
+				NUM_SENSOR_ATTRIBUTES + numAccessPoints, Double.NaN);
+	}
+
+	public void setRssi(int accessPoint, int level) {
+		values[rssiIndex(accessPoint)] = level;
+	}
+
+	public int getRssi(int accessPoint) {
+		return (int) values[rssiIndex(accessPoint)];
+	}
+
+	public void setLocation(double latitude, double longitude, float accuracy) {
+		values[latitudeIndex()] = latitude;
+		values[longitudeIndex()] = longitude;
+		values[locationAccuracyIndex()] = accuracy;
+	}
+
+	public void setLocationMissing() {
+		values[latitudeIndex()] = Double.NaN;
+		values[longitudeIndex()] = Double.NaN;
+		values[locationAccuracyIndex()] = Double.NaN;
+	}
+
+	public boolean isLocationMissing() {
+		return Double.isNaN(values[latitudeIndex()]);
+	}
+
+	public int rssiIndex(int accessPoint) {
+		if (accessPoint < 0 || accessPoint >= numAccessPoints) {
+			throw new IndexOutOfBoundsException("No access point " + accessPoint);
+		}
+		return NUM_SENSOR_ATTRIBUTES + accessPoint;
+	}
+
+	public int latitudeIndex() {
+		return NUM_SENSOR_ATTRIBUTES + numAccessPoints;
+	}
+
+	public int longitudeIndex() {
+		return latitudeIndex() + 1;
+	}
+
+	public int locationAccuracyIndex() {
+		return latitudeIndex() + 2;
+	}
+
+	/**
+	 * Index of the position slot. Always the last attribute and always left missing
+	 */
+	public int classIndex() {
+		return values.length - 1;
+	}
+
+	/**
+	 * @return number of attributes including the class slot
+	 */
+	public int numAttributes() {
+		return values.length;
+	}
+
+	public int getNumAccessPoints() {
+		return numAccessPoints;
+	}
+
+	/**
+	 * Name of the attribute at the given index as it appears in the arff files
+	 * the models were built from. The class slot is named by the caller since
+	 * it differs between the x and y models
+	 */
+	public String attributeName(int index) {
+		if (index < NUM_SENSOR_ATTRIBUTES) {
+			return SENSOR_ATTRIBUTE_NAMES[index];
+		} else if (index < latitudeIndex()) {
+			return "BSSID" + (index - NUM_SENSOR_ATTRIBUTES + 1);
+		} else if (index == latitudeIndex()) {
+			return "latitude";
+		} else if (index == longitudeIndex()) {
+			return "longitude";
+		} else if (index == locationAccuracyIndex()) {
+			return "locationAccuracy";
+		}
+		throw new IndexOutOfBoundsException("No feature attribute at " + index);
+	}
+
+	/**
+	 * The backing array. Writes through the setters above are visible to
+	 * anything holding this reference
+	 */
+	public double[] getValues() {
+		return values;
+	}
+}
@@ -0,0 +1,393 @@
+package com.davidmascharka.lips;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * An append-only binary log of fingerprints: the attribute values of a scan
+ * together with where it was taken and when.
+ *
+ * Layout, little-endian:
+ *
+ *   header  "LIPF", int version, int numAccessPoints, then each BSSID as an
+ *           int byte count and UTF-8 bytes
+ *   record  int payload size, then the payload: long time (ms since epoch),
+ *           float[13] sensor values, short[numAccessPoints] RSSI, double
+ *           latitude, double longitude, float location accuracy, float x,
+ *           float y. A missing location is NaN
+ *
+ * Every record of a file has the same size. The size prefix lets readers skip
+ * fields added by later versions and spot a record cut short by a crash.
+ *
+ * A log keeps its file open and writes records in batches, so call flush when
+ * the data must be on disk (for example when the activity pauses) and close
+ * when done. Use FingerprintLog.Reader to read one back, and the exporter in
+ * the tools module to turn one into ARFF or CSV for Weka.
+ */
+public class FingerprintLog implements Closeable {
+
+	public static final int VERSION = 1;
+
+	/**
+	 * Records buffered before they are written, unless flushed sooner
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 8;
+
+	private static final byte[] MAGIC = {'L', 'I', 'P', 'F'};
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final int numAccessPoints;
+	private final int batchSize;
+	private final ByteBuffer batch;
+	private int batched;
+
+	private FingerprintLog(RandomAccessFile file, int numAccessPoints, int batchSize) {
+		this.file = file;
+		this.channel = file.getChannel();
+		this.numAccessPoints = numAccessPoints;
+		this.batchSize = batchSize;
+		batch = ByteBuffer.allocate(batchSize * (4 + payloadSize(numAccessPoints)))
+				.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Opens a log to append to, creating it if it doesn't exist. A record left
+	 * incomplete at the end of the file is dropped
+	 *
+	 * @param bssids the access points in the order of the RSSI values
+	 * @throws IOException if the file isn't a fingerprint log or was recorded
+	 *                     with other access points
+	 */
+	public static FingerprintLog open(File path, String[] bssids, int batchSize) throws IOException {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be at least 1");
+		}
+		RandomAccessFile file = new RandomAccessFile(path, "rw");
+		try {
+			FileChannel channel = file.getChannel();
+			if (channel.size() == 0) {
+				writeHeader(channel, bssids);
+			} else {
+				String[] recorded = readHeader(channel);
+				if (!sameAccessPoints(recorded, bssids)) {
+					throw new IOException(path + " was recorded with other access points");
+				}
+				long recordsStart = channel.position();
+				long recordSize = 4 + payloadSize(bssids.length);
+				long end = recordsStart
+						+ (channel.size() - recordsStart) / recordSize * recordSize;
+				channel.truncate(end);
+				channel.position(end);
+			}
+			return new FingerprintLog(file, bssids.length, batchSize);
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Adds a fingerprint, writing the batch to the file once it is full
+	 *
+	 * @param features the scan; its class value is ignored
+	 * @param x where the scan was taken
+	 * @param y where the scan was taken
+	 * @param time when the scan was taken, in milliseconds since the epoch
+	 */
+	public void append(FeatureVector features, float x, float y, long time) throws IOException {
+		if (features.getNumAccessPoints() != numAccessPoints) {
+			throw new IllegalArgumentException("Expected " + numAccessPoints + " access points");
+		}
+		double[] values = features.getValues();
+		batch.putInt(payloadSize(numAccessPoints));
+		batch.putLong(time);
+		for (int i = 0; i < FeatureVector.NUM_SENSOR_ATTRIBUTES; i++) {
+			batch.putFloat((float) values[i]);
+		}
+		for (int i = 0; i < numAccessPoints; i++) {
+			batch.putShort((short) features.getRssi(i));
+		}
+		batch.putDouble(values[features.latitudeIndex()]);
+		batch.putDouble(values[features.longitudeIndex()]);
+		batch.putFloat((float) values[features.locationAccuracyIndex()]);
+		batch.putFloat(x);
+		batch.putFloat(y);
+
+		batched++;
+		if (batched == batchSize) {
+			flush();
+		}
+	}
+
+	/**
+	 * Writes the buffered records to the file
+	 */
+	public void flush() throws IOException {
+		batch.flip();
+		long start = channel.position();
+		try {
+			while (batch.hasRemaining()) {
+				channel.write(batch);
+			}
+		} catch (IOException e) {
+			// Drop the batch rather than leave part of a record for later ones to
+			// follow
+			try {
+				channel.truncate(start);
+				channel.position(start);
+			} catch (IOException ignored) {
+				// Then it is dropped the next time the log is opened
+			}
+			throw e;
+		} finally {
+			batch.clear();
+			batched = 0;
+		}
+	}
+
+	/**
+	 * Flushes and closes the file
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			file.close();
+		}
+	}
+
+	private static int payloadSize(int numAccessPoints) {
+		// time, sensors, RSSI, latitude and longitude, accuracy, x and y
+		return 8 + 4 * FeatureVector.NUM_SENSOR_ATTRIBUTES + 2 * numAccessPoints + 16 + 12;
+	}
+
+	private static boolean sameAccessPoints(String[] recorded, String[] bssids) {
+		if (recorded.length != bssids.length) {
+			return false;
+		}
+		for (int i = 0; i < bssids.length; i++) {
+			if (!recorded[i].equalsIgnoreCase(bssids[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void writeHeader(FileChannel channel, String[] bssids) throws IOException {
+		byte[][] encoded = new byte[bssids.length][];
+		int size = 12;
+		for (int i = 0; i < bssids.length; i++) {
+			encoded[i] = bssids[i].getBytes(UTF_8);
+			size += 4 + encoded[i].length;
+		}
+		ByteBuffer header = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		header.put(MAGIC);
+		header.putInt(VERSION);
+		header.putInt(bssids.length);
+		for (byte[] bssid : encoded) {
+			header.putInt(bssid.length);
+			header.put(bssid);
+		}
+		header.flip();
+		while (header.hasRemaining()) {
+			channel.write(header);
+		}
+	}
+
+	/**
+	 * Reads the header, leaving the channel at the first record
+	 *
+	 * @return the BSSIDs
+	 */
+	private static String[] readHeader(ReadableByteChannel channel) throws IOException {
+		ByteBuffer start = readFully(channel, 12, "Not a fingerprint log");
+		for (byte b : MAGIC) {
+			if (start.get() != b) {
+				throw new IOException("Not a fingerprint log");
+			}
+		}
+		int version = start.getInt();
+		if (version < 1 || version > VERSION) {
+			throw new IOException("Unsupported fingerprint log version " + version);
+		}
+		int numAccessPoints = start.getInt();
+		if (numAccessPoints < 0 || numAccessPoints > Short.MAX_VALUE) {
+			throw new IOException("Corrupt fingerprint log: " + numAccessPoints + " access points");
+		}
+
+		String[] bssids = new String[numAccessPoints];
+		for (int i = 0; i < numAccessPoints; i++) {
+			int length = readFully(channel, 4, "Truncated fingerprint log").getInt();
+			if (length < 0 || length > 256) {
+				throw new IOException("Corrupt fingerprint log: bad BSSID length " + length);
+			}
+			ByteBuffer bytes = readFully(channel, length, "Truncated fingerprint log");
+			bssids[i] = new String(bytes.array(), 0, length, UTF_8);
+		}
+		return bssids;
+	}
+
+	/**
+	 * @throws EOFException with the message if the channel ends first
+	 */
+	private static ByteBuffer readFully(ReadableByteChannel channel, int size, String message)
+			throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(channel, buffer, message);
+		buffer.flip();
+		return buffer;
+	}
+
+	private static void readFully(ReadableByteChannel channel, ByteBuffer buffer, String message)
+			throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				throw new EOFException(message);
+			}
+		}
+	}
+
+	/**
+	 * Reads the records of a log in order
+	 */
+	public static class Reader implements Closeable {
+
+		private final ReadableByteChannel channel;
+		private final String[] bssids;
+		private final ByteBuffer size = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+		private final ByteBuffer payload;
+
+		private long time;
+		private float x;
+		private float y;
+
+		/**
+		 * Reads the header. The stream is closed with the reader
+		 */
+		public Reader(InputStream in) throws IOException {
+			channel = Channels.newChannel(in);
+			try {
+				bssids = readHeader(channel);
+			} catch (IOException e) {
+				channel.close();
+				throw e;
+			}
+			payload = ByteBuffer.allocate(payloadSize(bssids.length)).order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		/**
+		 * The access points in the order of the RSSI values
+		 */
+		public String[] getBssids() {
+			return bssids.clone();
+		}
+
+		public int getNumAccessPoints() {
+			return bssids.length;
+		}
+
+		/**
+		 * Reads the next record into features, which must have getNumAccessPoints()
+		 * access points. The time and position are then available from the getters
+		 *
+		 * @return false at the end of the log, including when the last record was
+		 *         cut short
+		 */
+		public boolean next(FeatureVector features) throws IOException {
+			if (features.getNumAccessPoints() != bssids.length) {
+				throw new IllegalArgumentException("Expected " + bssids.length + " access points");
+			}
+			size.clear();
+			payload.clear();
+			try {
+				readFully(channel, size, "");
+				size.flip();
+				int recordSize = size.getInt();
+				if (recordSize < payload.capacity()) {
+					throw new IOException("Corrupt fingerprint log: record of " + recordSize + " bytes");
+				}
+				readFully(channel, payload, "");
+				skip(recordSize - payload.capacity());
+			} catch (EOFException e) {
+				return false;
+			}
+			payload.flip();
+
+			double[] values = features.getValues();
+			time = payload.getLong();
+			for (int i = 0; i < FeatureVector.NUM_SENSOR_ATTRIBUTES; i++) {
+				values[i] = payload.getFloat();
+			}
+			for (int i = 0; i < bssids.length; i++) {
+				features.setRssi(i, payload.getShort());
+			}
+			values[features.latitudeIndex()] = payload.getDouble();
+			values[features.longitudeIndex()] = payload.getDouble();
+			values[features.locationAccuracyIndex()] = payload.getFloat();
+			x = payload.getFloat();
+			y = payload.getFloat();
+			return true;
+		}
+
+		/**
+		 * Skips fields added by later versions
+		 */
+		private void skip(int bytes) throws IOException {
+			if (bytes > 0) {
+				readFully(channel, ByteBuffer.allocate(bytes), "");
+			}
+		}
+
+		/**
+		 * When the last record read was taken, in milliseconds since the epoch
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		public float getX() {
+			return x;
+		}
+
+		public float getY() {
+			return y;
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+}
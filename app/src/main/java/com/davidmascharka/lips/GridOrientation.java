@@ -0,0 +1,147 @@
+package com.davidmascharka.lips;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * How a building's grid lies relative to the compass and how big its units are,
+ * to turn the steps the user takes into moves on the grid.
+ *
+ * Read from assets/grids/BUILDING.txt, next to the access point lists, with one
+ * setting per line. Blank lines and anything after a # are ignored:
+ *
+ *   azimuth 12.5          direction of the grid's y axis in degrees clockwise
+ *                         from magnetic north
+ *   units_per_metre 3.28  grid units in a metre, 3.28 for a grid in feet
+ *
+ * Both have to be measured in the building, so there are no defaults. Without
+ * a grid for the building the tracker doesn't move the position with steps.
+ */
+public class GridOrientation {
+
+	private final float azimuth;
+	private final float unitsPerMetre;
+
+	/**
+	 * @param azimuth direction of the grid's y axis in radians clockwise from
+	 *                magnetic north
+	 * @param unitsPerMetre grid units in a metre
+	 */
+	public GridOrientation(float azimuth, float unitsPerMetre) {
+		if (!(unitsPerMetre > 0) || Float.isInfinite(unitsPerMetre)) {
+			throw new IllegalArgumentException("Grid units per metre must be positive");
+		}
+		if (Float.isNaN(azimuth) || Float.isInfinite(azimuth)) {
+			throw new IllegalArgumentException("Grid azimuth must be finite");
+		}
+		this.azimuth = azimuth;
+		this.unitsPerMetre = unitsPerMetre;
+	}
+
+	/**
+	 * Reads a grid file. Closes the stream
+	 *
+	 * @throws IOException if a line can't be parsed or a setting is missing
+	 */
+	public static GridOrientation read(InputStream in) throws IOException {
+		float azimuthDegrees = Float.NaN;
+		float unitsPerMetre = Float.NaN;
+		BufferedReader reader = new BufferedReader(
+				new InputStreamReader(in, Charset.forName("UTF-8")));
+		try {
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				int comment = line.indexOf('#');
+				if (comment >= 0) {
+					line = line.substring(0, comment);
+				}
+				line = line.trim();
+				if (line.isEmpty()) {
+					continue;
+				}
+				String[] fields = line.split("\\s+");
+				if (fields.length != 2) {
+					throw new IOException("Expected a name and a value on line " + lineNumber +
+							": " + line);
+				}
+				float value;
+				try {
+					value = Float.parseFloat(fields[1]);
+				} catch (NumberFormatException e) {
+					throw new IOException("Not a number on line " + lineNumber + ": " + line);
+				}
+				if (fields[0].equals("azimuth")) {
+					azimuthDegrees = value;
+				} else if (fields[0].equals("units_per_metre")) {
+					unitsPerMetre = value;
+				} else {
+					throw new IOException("Unknown setting on line " + lineNumber + ": " + line);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+
+		if (Float.isNaN(azimuthDegrees) || Float.isNaN(unitsPerMetre)) {
+			throw new IOException("Grid needs both azimuth and units_per_metre");
+		}
+		try {
+			return new GridOrientation((float) Math.toRadians(azimuthDegrees), unitsPerMetre);
+		} catch (IllegalArgumentException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Direction of the grid's y axis in radians clockwise from magnetic north
+	 */
+	public float getAzimuth() {
+		return azimuth;
+	}
+
+	public float getUnitsPerMetre() {
+		return unitsPerMetre;
+	}
+
+	/**
+	 * @param length of the step in metres
+	 * @param azimuth direction of the step in radians clockwise from magnetic north
+	 * @return how far the step moves along the grid's x axis, in grid units
+	 */
+	public float stepX(float length, float azimuth) {
+		return length * unitsPerMetre * (float) Math.sin(azimuth - this.azimuth);
+	}
+
+	/**
+	 * @param length of the step in metres
+	 * @param azimuth direction of the step in radians clockwise from magnetic north
+	 * @return how far the step moves along the grid's y axis, in grid units
+	 */
+	public float stepY(float length, float azimuth) {
+		return length * unitsPerMetre * (float) Math.cos(azimuth - this.azimuth);
+	}
+}
@@ -5,6 +5,7 @@ import java.io.InputStream;
 
 import android.app.Activity;
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
@@ -82,6 +83,29 @@ public class GridView extends View {
 	
 	// Whether this view should take input
 	private boolean catchInput;
+
+	// Receives how long each draw takes, may be null
+	private LatencyStats latencyStats;
+	
+	// The background, map and grid as they appear at the current zoom and pan,
+	// drawn once and copied to the screen on each draw. Only the marker is drawn
+	// over it every time
+	private Bitmap layer;
+	private Canvas layerCanvas;
+	private boolean layerValid;
+	
+	// The zoom and pan the layer was drawn with. While the user drags or pinches
+	// the layer is stretched and moved to follow instead of being drawn again
+	private float layerScaleFactor;
+	private float layerFocalX;
+	private float layerFocalY;
+	private float layerTranslateX;
+	private float layerTranslateY;
+	private Paint layerPaint;
+	
+	// Screen area the marker covers, for redrawing only around it
+	private final Rect markerBounds = new Rect();
+	private final Rect dirtyBounds = new Rect();
 	
 	public GridView(Context context) {
 		this(context, null, 0);
@@ -106,6 +130,8 @@ public class GridView extends View {
 		pointPaint.setStrokeWidth(20);
 		pointPaint.setColor(Color.BLUE);
 		
+		layerPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+		
 		clipBounds = new Rect();
 
 		map = null;
@@ -119,72 +145,244 @@ public class GridView extends View {
 	public void setCatchInput(boolean catchInput) {
 		this.catchInput = catchInput;
 	}
+
+	/**
+	 * Records how long each draw takes
+	 *
+	 * @param stats null to stop recording
+	 */
+	public void setLatencyStats(LatencyStats stats) {
+		latencyStats = stats;
+	}
 	
 	@Override
 	protected void onDraw(Canvas canvas) {
-	      super.onDraw(canvas);
-	      
-	      canvas.getClipBounds(imageBounds);
-	      
-	      canvas.save();
-	      
-	      // Zoom around the focal point
-	      canvas.scale(scaleFactor, scaleFactor, focalX, focalY);
-	      // Translate the canvas
-	      // Constrain scrolling to stay in the grid
-	      canvas.getClipBounds(clipBounds);
-	      
-	      if (clipBounds.left - (translateX / scaleFactor) < 0) {
-	    	  translateX = clipBounds.left * scaleFactor;
-	    	  lastTranslateX = clipBounds.left * scaleFactor;
-	      }
-	      if (clipBounds.top - (translateY / scaleFactor) < 0) {
-	    	  translateY = clipBounds.top * scaleFactor;
-	    	  lastTranslateY = clipBounds.top * scaleFactor;
-	      }
-	      if (clipBounds.right - (translateX / scaleFactor) > getWidth()) {
-	    	  translateX = (clipBounds.right - getWidth()) * scaleFactor;
-	    	  lastTranslateX = (clipBounds.right - getWidth()) * scaleFactor;
-	      }
-	      if (clipBounds.bottom - (translateY / scaleFactor) > getHeight()) {
-	    	  translateY = (clipBounds.bottom - getHeight()) * scaleFactor;
-	    	  lastTranslateY = (clipBounds.bottom - getHeight()) * scaleFactor;
-	      }
-	      
-	      canvas.translate(translateX / scaleFactor, translateY / scaleFactor);
-	      canvas.getClipBounds(clipBounds);
-	      
-	      // Background color
-	      canvas.drawColor(Color.WHITE);
-	      
-	      // If the user opts to display a map, draw it if they have selected one
-	      if (displayMap) {
-	    	  if (map != null) {
-	    		  map.setBounds(imageBounds);
-	    		  map.draw(canvas);
-	    	  }
-	      }
-	      
-	      // Float casts below ensure correct drawing -> eliminate rounding errors due to
-	      // integer division
-	      
-	      // Draw grid lines in x dimension (vertical lines)
-	      for (int x = 0; x <= gridWidth; x++) {
-	         canvas.drawLine(x * ((float) getWidth() / gridWidth), 0,
-	                x * ((float) getWidth() / gridWidth), getHeight(), gridPaint);
-	      }
-	
-	      // Draw grid lines in y dimension (horizontal lines)
-	      for (int y = 0; y <= gridHeight; y++) {
-	         canvas.drawLine(0, y * ((float) getHeight() / gridHeight), getWidth(),
-	        		 y * ((float) getHeight() / gridHeight), gridPaint);
-	      }
-	      
-	      // Draw the user's touch point
-	      canvas.drawCircle(pointX, pointY, 1, pointPaint);
-	      
-	      canvas.restore();
-	   }
+		long drawStart = System.nanoTime();
+		super.onDraw(canvas);
+		
+		if (!layerValid) {
+			drawLayer();
+		}
+		if (layer != null) {
+			if (layerMatchesView()) {
+				canvas.drawBitmap(layer, 0, 0, null);
+			} else {
+				// Part way through a drag or pinch. Stretch the layer to the
+				// current zoom and pan, the edges it doesn't cover left blank
+				canvas.drawColor(Color.WHITE);
+				canvas.save();
+				transform(canvas);
+				canvas.translate(-layerTranslateX / layerScaleFactor,
+						-layerTranslateY / layerScaleFactor);
+				canvas.scale(1 / layerScaleFactor, 1 / layerScaleFactor, layerFocalX, layerFocalY);
+				canvas.drawBitmap(layer, 0, 0, layerPaint);
+				canvas.restore();
+			}
+		}
+		
+		// Draw the user's touch point
+		canvas.save();
+		transform(canvas);
+		canvas.drawCircle(pointX, pointY, 1, pointPaint);
+		canvas.restore();
+		
+		if (latencyStats != null) {
+			latencyStats.record(LatencyStats.REDRAW, System.nanoTime() - drawStart);
+		}
+	}
+	
+	/*
+	 * Draws the background, map and grid into the layer at the current zoom and
+	 * pan
+	 */
+	private void drawLayer() {
+		int width = getWidth();
+		int height = getHeight();
+		if (width == 0 || height == 0) {
+			return;
+		}
+		// Opaque, so it doesn't need an alpha channel unless there's a map, which
+		// would band at 16 bits
+		Bitmap.Config config = displayMap && map != null
+				? Bitmap.Config.ARGB_8888 : Bitmap.Config.RGB_565;
+		if (layer == null || layer.getWidth() != width || layer.getHeight() != height
+				|| layer.getConfig() != config) {
+			if (layer != null) {
+				layer.recycle();
+			}
+			layer = Bitmap.createBitmap(width, height, config);
+			layerCanvas = new Canvas(layer);
+		}
+		Canvas canvas = layerCanvas;
+		
+		imageBounds.set(0, 0, width, height);
+		constrainPan();
+		
+		canvas.save();
+		transform(canvas);
+		
+		// Background color
+		canvas.drawColor(Color.WHITE);
+		
+		// If the user opts to display a map, draw it if they have selected one
+		if (displayMap) {
+			if (map != null) {
+				map.setBounds(imageBounds);
+				map.draw(canvas);
+			}
+		}
+		
+		// Float casts below ensure correct drawing -> eliminate rounding errors due to
+		// integer division
+		float cellWidth = (float) width / gridWidth;
+		float cellHeight = (float) height / gridHeight;
+		
+		// Draw grid lines in x dimension (vertical lines)
+		for (int x = 0; x <= gridWidth; x++) {
+			canvas.drawLine(x * cellWidth, 0, x * cellWidth, height, gridPaint);
+		}
+		
+		// Draw grid lines in y dimension (horizontal lines)
+		for (int y = 0; y <= gridHeight; y++) {
+			canvas.drawLine(0, y * cellHeight, width, y * cellHeight, gridPaint);
+		}
+		
+		canvas.restore();
+		layerScaleFactor = scaleFactor;
+		layerFocalX = focalX;
+		layerFocalY = focalY;
+		layerTranslateX = translateX;
+		layerTranslateY = translateY;
+		layerValid = true;
+	}
+	
+	/*
+	 * Constrains the pan to stay in the grid and works out the part of the
+	 * canvas on screen
+	 */
+	private void constrainPan() {
+		int width = getWidth();
+		int height = getHeight();
+		
+		// Part of the canvas on screen after zooming around the focal point
+		float left = focalX - focalX / scaleFactor;
+		float top = focalY - focalY / scaleFactor;
+		float right = left + width / scaleFactor;
+		float bottom = top + height / scaleFactor;
+		
+		if (left - (translateX / scaleFactor) < 0) {
+			translateX = left * scaleFactor;
+			lastTranslateX = translateX;
+		}
+		if (top - (translateY / scaleFactor) < 0) {
+			translateY = top * scaleFactor;
+			lastTranslateY = translateY;
+		}
+		if (right - (translateX / scaleFactor) > width) {
+			translateX = (right - width) * scaleFactor;
+			lastTranslateX = translateX;
+		}
+		if (bottom - (translateY / scaleFactor) > height) {
+			translateY = (bottom - height) * scaleFactor;
+			lastTranslateY = translateY;
+		}
+		
+		// And after panning
+		clipBounds.set((int) Math.floor(left - translateX / scaleFactor),
+				(int) Math.floor(top - translateY / scaleFactor),
+				(int) Math.ceil(right - translateX / scaleFactor),
+				(int) Math.ceil(bottom - translateY / scaleFactor));
+	}
+	
+	private boolean layerMatchesView() {
+		return layerScaleFactor == scaleFactor && layerFocalX == focalX
+				&& layerFocalY == focalY && layerTranslateX == translateX
+				&& layerTranslateY == translateY;
+	}
+	
+	/*
+	 * Follows a drag or pinch by moving the layer drawn already, which is much
+	 * cheaper than drawing the map and grid again on every touch event
+	 */
+	private void moveView() {
+		constrainPan();
+		if (layerValid) {
+			invalidate();
+		} else {
+			invalidateLayer();
+		}
+	}
+	
+	/*
+	 * Draws the layer again at the zoom and pan a drag or pinch ended on
+	 */
+	private void settleView() {
+		if (layerValid && !layerMatchesView()) {
+			invalidateLayer();
+		}
+	}
+	
+	// The zoom and pan the layer was drawn with
+	private void transform(Canvas canvas) {
+		canvas.scale(scaleFactor, scaleFactor, focalX, focalY);
+		canvas.translate(translateX / scaleFactor, translateY / scaleFactor);
+	}
+	
+	/*
+	 * Redraws everything on the next draw. For when the zoom, pan, size, grid or
+	 * map change
+	 */
+	private void invalidateLayer() {
+		layerValid = false;
+		invalidate();
+	}
+	
+	// Screen area the marker covers as drawn by transform
+	private void getMarkerBounds(Rect bounds) {
+		float x = (pointX - focalX) * scaleFactor + translateX + focalX;
+		float y = (pointY - focalY) * scaleFactor + translateY + focalY;
+		// Radius plus half the stroke, then a pixel for anti-aliasing
+		float radius = (1 + pointPaint.getStrokeWidth() / 2) * scaleFactor + 1;
+		bounds.set((int) Math.floor(x - radius), (int) Math.floor(y - radius),
+				(int) Math.ceil(x + radius), (int) Math.ceil(y + radius));
+	}
+	
+	/*
+	 * Moves the marker to a point on the canvas, redrawing only where it was and
+	 * where it is now
+	 */
+	private void moveMarker(float x, float y) {
+		if (!layerValid) {
+			// Everything is being redrawn anyway
+			pointX = x;
+			pointY = y;
+			return;
+		}
+		getMarkerBounds(dirtyBounds);
+		pointX = x;
+		pointY = y;
+		getMarkerBounds(markerBounds);
+		dirtyBounds.union(markerBounds);
+		invalidate(dirtyBounds);
+	}
+	
+	@Override
+	protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+		super.onSizeChanged(w, h, oldw, oldh);
+		invalidateLayer();
+	}
+	
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+		// Drawn again if the view comes back
+		if (layer != null) {
+			layer.recycle();
+			layer = null;
+			layerCanvas = null;
+		}
+		layerValid = false;
+	}
 	
 	@Override
 	protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
@@ -206,14 +404,14 @@ public class GridView extends View {
 		gridHeight = height;
 		
 		// Need to redraw canvas if the grid size has changed
-		invalidate();
+		invalidateLayer();
 	}
 	
 	public void setDisplayMap(boolean display) {
 		displayMap = display;
 		
 		// Need to redraw canvas if the status of drawMap has changed
-		invalidate();
+		invalidateLayer();
 	}
 
 	public void setMapUri(Uri uri) {
@@ -227,7 +425,7 @@ public class GridView extends View {
 			mapUri = uri;
 			InputStream inputStream = getContext().getContentResolver().openInputStream(uri);
 			map = Drawable.createFromStream(inputStream, uri.toString());
-			invalidate();
+			invalidateLayer();
 		} catch (FileNotFoundException e) {
 			Toast.makeText(getContext(), "File not found", Toast.LENGTH_SHORT).show();
 		}
@@ -296,8 +494,8 @@ public class GridView extends View {
 		float yOffset = ((float) getHeight() - clipBounds.bottom) / getHeight() * gridHeight;
 		
 		// Compute x and y coordinates of the touch relative to the canvas
-		pointX = ev.getX() / scaleFactor + clipBounds.left;
-		pointY = ev.getY() / scaleFactor + clipBounds.top;
+		moveMarker(ev.getX() / scaleFactor + clipBounds.left,
+				ev.getY() / scaleFactor + clipBounds.top);
 		
 		// Set x and y coordinate textviews
 		xText.setText("X: " + (xTouch + xOffset));
@@ -312,7 +510,7 @@ public class GridView extends View {
 				if (!scaleDetector.isInProgress()) {	// If not scaling
 					translateX = ev.getX() - startX;
 					translateY = ev.getY() - startY;
-					invalidate();
+					moveView();
 				} else {
 					startX = ev.getX() - lastTranslateX;
 					startY = ev.getY() - lastTranslateY;
@@ -321,21 +519,19 @@ public class GridView extends View {
 				}
 				break;
 			case MotionEvent.ACTION_UP:	// Last pointer up
+			case MotionEvent.ACTION_CANCEL:
 				lastTranslateX = translateX;
 				lastTranslateY = translateY;
+				settleView();
 				break;
 		}
 		
-		// Redraw canvas
-		invalidate();
-		
 		return true;
 	}
 	
 	public void setUserPointCoords(float x, float y) {
-		pointX = x * getWidth() / gridWidth / scaleFactor + clipBounds.left;
-		pointY = getHeight() - y * getHeight() / gridHeight / scaleFactor + clipBounds.top;
-		invalidate();
+		moveMarker(x * getWidth() / gridWidth / scaleFactor + clipBounds.left,
+				getHeight() - y * getHeight() / gridHeight / scaleFactor + clipBounds.top);
 	}
 
 	private class ScaleListener extends ScaleGestureDetector.SimpleOnScaleGestureListener {
@@ -351,8 +547,14 @@ public class GridView extends View {
 			scaleFactor = Math.max(1.0f, Math.min(scaleFactor, 20.0f));
 			
 			pointPaint.setStrokeWidth(20 / scaleFactor);
+			moveView();
 
 			return true;
 		}
+		
+		@Override
+		public void onScaleEnd(ScaleGestureDetector detector) {
+			settleView();
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,533 @@
+package com.davidmascharka.lips;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * K* regression over numeric attributes without going through Weka's Instances.
+ *
+ * Follows weka.classifiers.lazy.KStar with the default sphere blending: for every
+ * attribute of the test instance a scale is chosen so that the "sphere" of
+ * training values within reach covers globalBlend percent of the column, each
+ * training instance is weighted by the product of its per-attribute transformation
+ * probabilities, and the prediction is the weighted mean of the class values.
+ *
+ * The weights only depend on the attributes, so when several models were trained
+ * on the same fingerprints with different classes (the x and y models) one pass
+ * over the training set predicts all of them. Such a predictor can be used as a
+ * PositionPredictor with x as the first target and y as the second.
+ *
+ * The training set is held column-major (one float[] per attribute) so that every
+ * step of the computation is a straight pass over a primitive array. All working
+ * memory is allocated up front, which also means a predictor must only be used
+ * from one thread at a time.
+ *
+ * For large fingerprint sets a KdTree can be attached with useIndex. Each
+ * prediction then only looks at the fingerprints nearest to the scan, treating
+ * them as the whole training set (so the blend covers a percentage of the
+ * candidates rather than of every fingerprint). That is an approximation of
+ * the Weka model, so nothing indexes a predictor unless asked to.
+ *
+ * Missing values are NaN. The attributes of a test instance are expected in the
+ * same order as the training columns; anything past the last column (such as the
+ * class slot of a FeatureVector) is ignored.
+ */
+public class KStarPredictor implements PositionPredictor, CoordinatePredictor {
+
+	// Missing value modes, same ids as weka.classifiers.lazy.kstar.KStarConstants
+	public static final int MISSING_DELETE = 1;
+	public static final int MISSING_MAXDIFF = 2;
+	public static final int MISSING_NORMAL = 3;
+	public static final int MISSING_AVERAGE = 4;
+
+	private static final double EPSILON = 1.0e-5;
+	private static final double ROOT_FINDER_ACCURACY = 0.01;
+	private static final int ROOT_FINDER_MAX_ITER = 40;
+
+	/**
+	 * Scales are remembered per attribute for this many distinct test values.
+	 * Weka keeps every value it has seen; RSSI readings repeat a lot so even a
+	 * small table saves most of the root finding
+	 */
+	private static final int CACHE_SIZE = 256;
+
+	private final int numAttributes;
+	private final int numInstances;
+	private final float[][] columns;
+	private final float[][] targets;
+	private final int numTargets;
+	private final int globalBlend;
+	private final int missingMode;
+
+	// Weka counts the class attribute when normalising for missing test values
+	private final int wekaNumAttributes;
+
+	// Per attribute cache of test value -> scale and missing probability
+	private final double[][] cacheKeys;
+	private final double[][] cacheScales;
+	private final double[][] cacheMissingProbs;
+	private final boolean[][] cacheUsed;
+
+	// Candidate lookup, null to use every fingerprint
+	private KdTree index;
+	private int numCandidates;
+	private int[] candidates;
+	private float[][] candidateColumns;
+	private float[][] candidateTargets;
+
+	// The fingerprints the current prediction is over: either the whole
+	// training set or the gathered candidates
+	private float[][] activeColumns;
+	private float[][] activeTargets;
+	private int activeCount;
+
+	// Working memory for a single prediction
+	private final double[] distances;
+	private final double[] transProbs;
+	private double scale;
+	private double missingProb;
+	private double averageProb;
+	private double smallestProb;
+	private double sphere;
+	private int actualCount;
+
+	/**
+	 * @param columns training values, columns[attribute][instance]
+	 * @param classValues class value of each training instance
+	 * @param globalBlend blend percentage, 20 unless the model was built otherwise
+	 * @param missingMode one of the MISSING_ constants
+	 */
+	public KStarPredictor(float[][] columns, float[] classValues, int globalBlend,
+						  int missingMode) {
+		this(columns, new float[][] {classValues}, globalBlend, missingMode);
+	}
+
+	/**
+	 * @param columns training values, columns[attribute][instance]
+	 * @param targets class values of each training instance, targets[target][instance]
+	 * @param globalBlend blend percentage, 20 unless the model was built otherwise
+	 * @param missingMode one of the MISSING_ constants
+	 */
+	public KStarPredictor(float[][] columns, float[][] targets, int globalBlend,
+						  int missingMode) {
+		if (missingMode < MISSING_DELETE || missingMode > MISSING_AVERAGE) {
+			throw new IllegalArgumentException("Unknown missing mode " + missingMode);
+		}
+		if (targets.length == 0) {
+			throw new IllegalArgumentException("Need at least one target");
+		}
+		numInstances = targets[0].length;
+		for (float[] target : targets) {
+			if (target.length != numInstances) {
+				throw new IllegalArgumentException("Every target needs one value per instance");
+			}
+		}
+		for (float[] column : columns) {
+			if (column.length != numInstances) {
+				throw new IllegalArgumentException("Every column needs one value per instance");
+			}
+		}
+
+		this.columns = columns;
+		this.targets = targets;
+		this.globalBlend = globalBlend;
+		this.missingMode = missingMode;
+		numAttributes = columns.length;
+		numTargets = targets.length;
+		wekaNumAttributes = numAttributes + 1;
+
+		cacheKeys = new double[numAttributes][CACHE_SIZE];
+		cacheScales = new double[numAttributes][CACHE_SIZE];
+		cacheMissingProbs = new double[numAttributes][CACHE_SIZE];
+		cacheUsed = new boolean[numAttributes][CACHE_SIZE];
+
+		distances = new double[numInstances];
+		transProbs = new double[numInstances];
+		activeColumns = columns;
+		activeTargets = targets;
+		activeCount = numInstances;
+	}
+
+	/**
+	 * Only consider the fingerprints the index finds closest to each scan
+	 *
+	 * @param index built over this predictor's training columns
+	 * @param numCandidates how many fingerprints to ask the index for
+	 */
+	public void useIndex(KdTree index, int numCandidates) {
+		if (index.getNumPoints() != numInstances) {
+			throw new IllegalArgumentException("Index was built over a different training set");
+		}
+		if (numCandidates < 1) {
+			throw new IllegalArgumentException("Need at least one candidate");
+		}
+		this.index = index;
+		this.numCandidates = Math.min(numCandidates, numInstances);
+		candidates = new int[this.numCandidates];
+		candidateColumns = new float[numAttributes][this.numCandidates];
+		candidateTargets = new float[numTargets][this.numCandidates];
+	}
+
+	/**
+	 * Go back to looking at every fingerprint
+	 */
+	public void removeIndex() {
+		index = null;
+		candidates = null;
+		candidateColumns = null;
+		candidateTargets = null;
+		activeColumns = columns;
+		activeTargets = targets;
+		activeCount = numInstances;
+	}
+
+	/**
+	 * Predict the value of the first target for the given attribute values
+	 */
+	@Override
+	public double predict(double[] instance) {
+		if (numInstances == 0) {
+			return 0.0;
+		}
+		selectFingerprints(instance);
+		computeTransformationProbabilities(instance);
+		return weightedMean(activeTargets[0]);
+	}
+
+	/**
+	 * Predict every target for the given attribute values from a single pass
+	 * over the training set
+	 *
+	 * @param out receives one value per target
+	 */
+	@Override
+	public void predict(double[] instance, double[] out) {
+		if (numInstances == 0) {
+			for (int t = 0; t < numTargets; t++) {
+				out[t] = 0.0;
+			}
+			return;
+		}
+		selectFingerprints(instance);
+		computeTransformationProbabilities(instance);
+		for (int t = 0; t < numTargets; t++) {
+			out[t] = weightedMean(activeTargets[t]);
+		}
+	}
+
+	/**
+	 * Point the active arrays at the fingerprints this prediction is over,
+	 * gathering the candidates into contiguous arrays when there is an index
+	 */
+	private void selectFingerprints(double[] instance) {
+		if (index == null) {
+			return;
+		}
+		int found = index.nearest(instance, numCandidates, candidates);
+		for (int a = 0; a < numAttributes; a++) {
+			float[] column = columns[a];
+			float[] gathered = candidateColumns[a];
+			for (int i = 0; i < found; i++) {
+				gathered[i] = column[candidates[i]];
+			}
+		}
+		for (int t = 0; t < numTargets; t++) {
+			float[] target = targets[t];
+			float[] gathered = candidateTargets[t];
+			for (int i = 0; i < found; i++) {
+				gathered[i] = target[candidates[i]];
+			}
+		}
+		activeColumns = candidateColumns;
+		activeTargets = candidateTargets;
+		activeCount = found;
+	}
+
+	/**
+	 * Fill transProbs with the probability of transforming the instance into
+	 * each of the active fingerprints
+	 */
+	private void computeTransformationProbabilities(double[] instance) {
+		for (int i = 0; i < activeCount; i++) {
+			transProbs[i] = 1.0;
+		}
+
+		int numMissing = 0;
+		for (int a = 0; a < numAttributes; a++) {
+			double testValue = instance[a];
+			if (Double.isNaN(testValue)) {
+				numMissing++;
+				continue;
+			}
+			float[] column = activeColumns[a];
+
+			// The scale depends on the fingerprints it was found over, so it can
+			// only be reused when that is always the whole training set
+			if (index != null) {
+				computeDistances(column, testValue);
+				scaleFactorUsingBlend();
+			} else if (!lookUpScale(a, testValue)) {
+				computeDistances(column, testValue);
+				scaleFactorUsingBlend();
+				storeScale(a, testValue);
+			}
+
+			double exponent = numMissing == 0 ? 1.0
+					: (double) wekaNumAttributes / (wekaNumAttributes - numMissing);
+			for (int i = 0; i < activeCount; i++) {
+				float trainValue = column[i];
+				double p;
+				if (trainValue != trainValue) { // NaN, missing in the training data
+					p = missingProb;
+				} else {
+					p = pStar(Math.abs(testValue - trainValue), scale);
+				}
+				double product = transProbs[i] * p;
+				// Weka renormalises for the missing test attributes after every factor
+				transProbs[i] = numMissing == 0 ? product : Math.pow(product, exponent);
+			}
+		}
+
+	}
+
+	private double weightedMean(float[] classValues) {
+		double weightedSum = 0.0;
+		double sum = 0.0;
+		for (int i = 0; i < activeCount; i++) {
+			weightedSum += transProbs[i] * classValues[i];
+			sum += transProbs[i];
+		}
+		return sum != 0.0 ? weightedSum / sum : 0.0;
+	}
+
+	public int getNumAttributes() {
+		return numAttributes;
+	}
+
+	public int getNumInstances() {
+		return numInstances;
+	}
+
+	public int getNumTargets() {
+		return numTargets;
+	}
+
+	/**
+	 * The training values, columns[attribute][instance]. Not a copy
+	 */
+	public float[][] getColumns() {
+		return columns;
+	}
+
+	/**
+	 * The class values, targets[target][instance]. Not a copy
+	 */
+	public float[][] getTargets() {
+		return targets;
+	}
+
+	public int getGlobalBlend() {
+		return globalBlend;
+	}
+
+	public int getMissingMode() {
+		return missingMode;
+	}
+
+	private static double pStar(double x, double scale) {
+		return scale * Math.exp(-2.0 * x * scale);
+	}
+
+	private void computeDistances(float[] column, double testValue) {
+		for (int i = 0; i < activeCount; i++) {
+			float trainValue = column[i];
+			// mark missing training values with a negative distance
+			distances[i] = trainValue != trainValue ? -1.0 : Math.abs(trainValue - testValue);
+		}
+	}
+
+	/**
+	 * Find the scale whose sphere of influence covers the blend percentage of the
+	 * training values by bisection. Leaves the result in scale and missingProb
+	 */
+	private void scaleFactorUsingBlend() {
+		double lowest = -1.0;
+		double nextLowest = -1.0;
+		int lowestCount = 0;
+		actualCount = 0;
+
+		for (int i = 0; i < activeCount; i++) {
+			double distance = distances[i];
+			if (distance < 0) {
+				continue;
+			}
+			if (distance + EPSILON < nextLowest || nextLowest == -1.0) {
+				if (distance + EPSILON < lowest || lowest == -1.0) {
+					nextLowest = lowest;
+					lowest = distance;
+					lowestCount = 1;
+				} else if (Math.abs(distance - lowest) < EPSILON) {
+					lowestCount++;
+				} else {
+					nextLowest = distance;
+				}
+			}
+			actualCount++;
+		}
+
+		if (nextLowest == -1.0 || lowest == -1.0) {
+			// All the values are the same
+			scale = 1.0;
+			smallestProb = averageProb = 1.0;
+			missingProb = 1.0;
+			return;
+		}
+
+		double root = 1.0 / (nextLowest - lowest);
+		double aimFor = (actualCount - lowestCount) * (double) globalBlend / 100.0 + lowestCount;
+		if (globalBlend == 0) {
+			aimFor += 1.0;
+		}
+
+		double bot = ROOT_FINDER_ACCURACY / 2.0;
+		double up = root * 16;
+		double minValue = 9e300;
+		double minPosition;
+		double avgProb;
+		double minProb;
+
+		calculateSphereSize(bot);
+		double botSphere = sphere - aimFor;
+		double botAverage = averageProb;
+		double botSmallest = smallestProb;
+		calculateSphereSize(up);
+		double upSphere = sphere - aimFor;
+
+		if (botSphere < 0) {
+			// Couldn't include that many instances, go for the max possible
+			minPosition = bot;
+			avgProb = botAverage;
+			minProb = botSmallest;
+		} else if (upSphere > 0) {
+			// Couldn't include that few, go for the min possible
+			minPosition = up;
+			avgProb = averageProb;
+			minProb = smallestProb;
+		} else {
+			minPosition = 0.0;
+			avgProb = 0.0;
+			minProb = 0.0;
+			for (int iteration = 0; ; ) {
+				calculateSphereSize(root);
+				double value = sphere - aimFor;
+				if (Math.abs(value) < minValue) {
+					minValue = Math.abs(value);
+					minPosition = root;
+					avgProb = averageProb;
+					minProb = smallestProb;
+				}
+				if (Math.abs(value) <= ROOT_FINDER_ACCURACY) {
+					break;
+				}
+				double nextRoot;
+				if (value > 0.0) {
+					nextRoot = (root + up) / 2.0;
+					bot = root;
+				} else {
+					nextRoot = (root + bot) / 2.0;
+					up = root;
+				}
+				root = nextRoot;
+				iteration++;
+				if (iteration > ROOT_FINDER_MAX_ITER) {
+					break;
+				}
+			}
+		}
+
+		smallestProb = minProb;
+		averageProb = avgProb;
+		switch (missingMode) {
+			case MISSING_DELETE:
+				missingProb = 0.0;
+				break;
+			case MISSING_NORMAL:
+				missingProb = 1.0;
+				break;
+			case MISSING_MAXDIFF:
+				missingProb = smallestProb;
+				break;
+			default:
+				missingProb = averageProb;
+				break;
+		}
+		scale = minPosition;
+	}
+
+	/**
+	 * Effective number of training values reachable at the given scale. Sets
+	 * sphere, averageProb and smallestProb
+	 */
+	private void calculateSphereSize(double scale) {
+		double minProb = 1.0;
+		double pStarSum = 0.0;
+		double pStarSquareSum = 0.0;
+		for (int i = 0; i < activeCount; i++) {
+			double distance = distances[i];
+			if (distance < 0) {
+				continue;
+			}
+			double pStar = pStar(distance, scale);
+			if (minProb > pStar) {
+				minProb = pStar;
+			}
+			double inc = pStar / actualCount;
+			pStarSum += inc;
+			pStarSquareSum += inc * inc;
+		}
+		sphere = pStarSquareSum == 0 ? 0 : pStarSum * pStarSum / pStarSquareSum;
+		averageProb = pStarSum;
+		smallestProb = minProb;
+	}
+
+	private int cacheSlot(double value) {
+		long bits = Double.doubleToLongBits(value);
+		int hash = (int) (bits ^ (bits >>> 32));
+		hash ^= hash >>> 16;
+		return hash & (CACHE_SIZE - 1);
+	}
+
+	private boolean lookUpScale(int attribute, double value) {
+		int slot = cacheSlot(value);
+		if (cacheUsed[attribute][slot] && cacheKeys[attribute][slot] == value) {
+			scale = cacheScales[attribute][slot];
+			missingProb = cacheMissingProbs[attribute][slot];
+			return true;
+		}
+		return false;
+	}
+
+	private void storeScale(int attribute, double value) {
+		int slot = cacheSlot(value);
+		cacheUsed[attribute][slot] = true;
+		cacheKeys[attribute][slot] = value;
+		cacheScales[attribute][slot] = scale;
+		cacheMissingProbs[attribute][slot] = missingProb;
+	}
+}
@@ -0,0 +1,198 @@
+package com.davidmascharka.lips;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Tracks the position with a Kalman filter whose state is just x and y.
+ *
+ * A step moves the position and adds uncertainty along the step (its length
+ * is a guess) and across it (so is the heading). Time adds uncertainty in every
+ * direction, for steps that went unnoticed. A fix is then weighed against the
+ * position by how uncertain each is.
+ *
+ * A fix too far from the position to be believed is rejected, since a single
+ * bad prediction shouldn't drag the position across the building. If several
+ * in a row are rejected the position is the one that's wrong, and the next fix
+ * is taken as it is.
+ */
+public class KalmanFilter implements TrackingFilter {
+
+	// Standard deviation of a step's length as a share of it, and of its heading
+	// in radians
+	private static final float STEP_LENGTH_ERROR = 0.15f;
+	private static final float STEP_HEADING_ERROR = 0.3f;
+
+	// Squared Mahalanobis distance beyond which a fix is rejected, the 99.9%
+	// point of the chi-squared distribution with 2 degrees of freedom
+	private static final float GATE = 13.8f;
+
+	/**
+	 * Fixes rejected in a row before the filter starts over from the next one
+	 */
+	public static final int MAX_REJECTED_FIXES = 2;
+
+	private final float width;
+	private final float height;
+	private final float fixVariance;
+	private final float driftVariance;
+
+	private boolean initialized;
+	private float x;
+	private float y;
+	// Covariance of the position, [pxx pxy; pxy pyy]
+	private float pxx;
+	private float pxy;
+	private float pyy;
+	private long lastFixTime;
+	private int rejected;
+
+	/**
+	 * @param width the grid's width, positions are kept within [0, width]
+	 * @param height the grid's height, positions are kept within [0, height]
+	 * @param fixError standard deviation of a predicted position, in grid units
+	 * @param drift standard deviation of the movement in a second that no step
+	 *              accounts for, in grid units
+	 */
+	public KalmanFilter(float width, float height, float fixError, float drift) {
+		this.width = width;
+		this.height = height;
+		fixVariance = fixError * fixError;
+		driftVariance = drift * drift;
+	}
+
+	@Override
+	public boolean isInitialized() {
+		return initialized;
+	}
+
+	@Override
+	public void step(float dx, float dy) {
+		if (!initialized) {
+			return;
+		}
+		x = clamp(x + dx, width);
+		y = clamp(y + dy, height);
+
+		float lengthSquared = dx * dx + dy * dy;
+		if (lengthSquared == 0) {
+			return;
+		}
+		// Uncertainty along and across the step, rotated onto the axes
+		float along = STEP_LENGTH_ERROR * STEP_LENGTH_ERROR * lengthSquared;
+		float across = STEP_HEADING_ERROR * STEP_HEADING_ERROR * lengthSquared;
+		float ux2 = dx * dx / lengthSquared;
+		float uy2 = dy * dy / lengthSquared;
+		float uxy = dx * dy / lengthSquared;
+		pxx += along * ux2 + across * uy2;
+		pxy += (along - across) * uxy;
+		pyy += along * uy2 + across * ux2;
+	}
+
+	@Override
+	public void update(float fixX, float fixY, long time) {
+		if (!initialized || rejected >= MAX_REJECTED_FIXES) {
+			start(fixX, fixY, time);
+			return;
+		}
+		float elapsed = Math.max(0, (time - lastFixTime) / 1e9f);
+		pxx += driftVariance * elapsed;
+		pyy += driftVariance * elapsed;
+		lastFixTime = time;
+
+		// Innovation and its covariance S = P + R
+		float vx = fixX - x;
+		float vy = fixY - y;
+		float sxx = pxx + fixVariance;
+		float sxy = pxy;
+		float syy = pyy + fixVariance;
+		float det = sxx * syy - sxy * sxy;
+		float ixx = syy / det;
+		float ixy = -sxy / det;
+		float iyy = sxx / det;
+
+		float distance = vx * (ixx * vx + ixy * vy) + vy * (ixy * vx + iyy * vy);
+		if (distance > GATE) {
+			rejected++;
+			return;
+		}
+		rejected = 0;
+
+		// Gain K = P S^-1
+		float kxx = pxx * ixx + pxy * ixy;
+		float kxy = pxx * ixy + pxy * iyy;
+		float kyx = pxy * ixx + pyy * ixy;
+		float kyy = pxy * ixy + pyy * iyy;
+		x = clamp(x + kxx * vx + kxy * vy, width);
+		y = clamp(y + kyx * vx + kyy * vy, height);
+
+		// P = (I - K) P
+		float nxx = (1 - kxx) * pxx - kxy * pxy;
+		float nxy = (1 - kxx) * pxy - kxy * pyy;
+		float nyy = -kyx * pxy + (1 - kyy) * pyy;
+		pxx = nxx;
+		pxy = nxy;
+		pyy = nyy;
+	}
+
+	private void start(float fixX, float fixY, long time) {
+		x = clamp(fixX, width);
+		y = clamp(fixY, height);
+		pxx = fixVariance;
+		pxy = 0;
+		pyy = fixVariance;
+		lastFixTime = time;
+		rejected = 0;
+		initialized = true;
+	}
+
+	private static float clamp(float value, float max) {
+		return Math.max(0, Math.min(value, max));
+	}
+
+	@Override
+	public float getX() {
+		return x;
+	}
+
+	@Override
+	public float getY() {
+		return y;
+	}
+
+	/**
+	 * Standard deviation of the position along x, in grid units
+	 */
+	public float getErrorX() {
+		return (float) Math.sqrt(pxx);
+	}
+
+	/**
+	 * Standard deviation of the position along y, in grid units
+	 */
+	public float getErrorY() {
+		return (float) Math.sqrt(pyy);
+	}
+
+	@Override
+	public void reset() {
+		initialized = false;
+		rejected = 0;
+	}
+}
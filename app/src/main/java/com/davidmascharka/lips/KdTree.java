@@ -0,0 +1,378 @@
+package com.davidmascharka.lips;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * KD-tree over a subset of the attributes of the training fingerprints (normally
+ * the RSSI columns) for finding the fingerprints closest to a scan without
+ * looking at all of them.
+ *
+ * The tree is stored in parallel arrays and the points are copied row-major in
+ * tree order, so a leaf is one contiguous block of memory. Queries reuse
+ * preallocated buffers and must not be made from more than one thread at a time.
+ *
+ * By default queries are exact. setApproximation trades accuracy for speed by
+ * shrinking the search radius by (1 + epsilon) and/or giving up after visiting a
+ * fixed number of leaves.
+ *
+ * Distances are squared Euclidean. Missing (NaN) training values are indexed as
+ * 0, the value the tracker records for an access point it didn't see, and
+ * missing query values are left out of the distance.
+ */
+public class KdTree {
+
+	private static final int DEFAULT_LEAF_SIZE = 16;
+
+	private final int numPoints;
+	private final int numDimensions;
+	private final int[] dimensions;
+
+	// Points in tree order, row-major, and their index in the training set
+	private final float[] points;
+	private final int[] order;
+
+	// Nodes. A leaf has splitDimension -1 and covers points [start, end)
+	private int numNodes;
+	private int[] splitDimension;
+	private float[] splitValue;
+	private int[] leftChild;
+	private int[] rightChild;
+	private int[] start;
+	private int[] end;
+	private int maxDepth;
+
+	// Approximate search settings
+	private int maxLeaves;
+	private double epsilon;
+
+	// Query buffers
+	private final double[] query;
+	private int[] stackNode;
+	private double[] stackBound;
+	private double[] heapDistance;
+	private int[] heapIndex;
+	private int heapSize;
+
+	/**
+	 * @param columns training values, columns[attribute][instance]
+	 * @param dimensions which attributes to index
+	 */
+	public KdTree(float[][] columns, int[] dimensions) {
+		this(columns, dimensions, DEFAULT_LEAF_SIZE);
+	}
+
+	/**
+	 * @param columns training values, columns[attribute][instance]
+	 * @param dimensions which attributes to index
+	 * @param leafSize most points a leaf holds
+	 */
+	public KdTree(float[][] columns, int[] dimensions, int leafSize) {
+		if (dimensions.length == 0) {
+			throw new IllegalArgumentException("Need at least one dimension");
+		}
+		if (leafSize < 1) {
+			throw new IllegalArgumentException("Leaf size must be positive");
+		}
+		this.dimensions = dimensions.clone();
+		numDimensions = dimensions.length;
+		numPoints = columns[dimensions[0]].length;
+
+		// Copy the indexed columns so the build can work row by row
+		float[] rows = new float[numPoints * numDimensions];
+		for (int d = 0; d < numDimensions; d++) {
+			float[] column = columns[dimensions[d]];
+			for (int i = 0; i < numPoints; i++) {
+				float value = column[i];
+				rows[i * numDimensions + d] = value != value ? 0.0f : value;
+			}
+		}
+
+		order = new int[numPoints];
+		for (int i = 0; i < numPoints; i++) {
+			order[i] = i;
+		}
+
+		// Every leaf holds at least leafSize / 2 points after a median split
+		int maxNodes = 4 * (numPoints / Math.max(1, leafSize / 2) + 1);
+		splitDimension = new int[maxNodes];
+		splitValue = new float[maxNodes];
+		leftChild = new int[maxNodes];
+		rightChild = new int[maxNodes];
+		start = new int[maxNodes];
+		end = new int[maxNodes];
+		build(rows, 0, numPoints, leafSize, 1);
+
+		points = new float[numPoints * numDimensions];
+		for (int i = 0; i < numPoints; i++) {
+			System.arraycopy(rows, order[i] * numDimensions, points, i * numDimensions,
+					numDimensions);
+		}
+
+		query = new double[numDimensions];
+		stackNode = new int[2 * maxDepth + 2];
+		stackBound = new double[2 * maxDepth + 2];
+		heapDistance = new double[0];
+		heapIndex = new int[0];
+	}
+
+	/**
+	 * Makes queries approximate
+	 *
+	 * @param maxLeaves stop after visiting this many leaves, 0 for no limit
+	 * @param epsilon a subtree is skipped unless it could hold a point closer than
+	 *                 the current k-th best divided by (1 + epsilon); 0 for exact
+	 */
+	public void setApproximation(int maxLeaves, double epsilon) {
+		if (maxLeaves < 0 || epsilon < 0) {
+			throw new IllegalArgumentException("Approximation settings can't be negative");
+		}
+		this.maxLeaves = maxLeaves;
+		this.epsilon = epsilon;
+	}
+
+	public boolean isExact() {
+		return maxLeaves == 0 && epsilon == 0;
+	}
+
+	public int getNumPoints() {
+		return numPoints;
+	}
+
+	/**
+	 * Finds the k training instances closest to the query
+	 *
+	 * @param instance attribute values of the scan, indexed like the training columns
+	 * @param k how many neighbours to find
+	 * @param out receives the training set index of each neighbour, nearest first
+	 * @return how many neighbours were written, less than k only if the tree is smaller
+	 */
+	public int nearest(double[] instance, int k, int[] out) {
+		if (k <= 0 || numPoints == 0) {
+			return 0;
+		}
+		if (heapDistance.length < k) {
+			heapDistance = new double[k];
+			heapIndex = new int[k];
+		}
+		for (int d = 0; d < numDimensions; d++) {
+			query[d] = instance[dimensions[d]];
+		}
+		heapSize = 0;
+
+		double shrink = (1.0 + epsilon) * (1.0 + epsilon);
+		int leavesVisited = 0;
+		int top = 0;
+		stackNode[top] = 0;
+		stackBound[top] = 0.0;
+		top++;
+
+		while (top > 0) {
+			top--;
+			int node = stackNode[top];
+			double bound = stackBound[top];
+			if (heapSize == k && bound * shrink >= heapDistance[0]) {
+				continue;
+			}
+
+			// Walk down to a leaf, leaving the far sides on the stack
+			while (splitDimension[node] >= 0) {
+				int dimension = splitDimension[node];
+				double value = query[dimension];
+				double diff = value != value ? 0.0 : value - splitValue[node];
+				int near = diff < 0 ? leftChild[node] : rightChild[node];
+				int far = diff < 0 ? rightChild[node] : leftChild[node];
+				double farBound = Math.max(bound, diff * diff);
+				if (heapSize < k || farBound * shrink < heapDistance[0]) {
+					stackNode[top] = far;
+					stackBound[top] = farBound;
+					top++;
+				}
+				node = near;
+			}
+
+			scanLeaf(node, k);
+			leavesVisited++;
+			if (maxLeaves > 0 && leavesVisited >= maxLeaves && heapSize == k) {
+				break;
+			}
+		}
+
+		// Pop the max-heap from the back so the nearest ends up first
+		int found = heapSize;
+		while (heapSize > 0) {
+			out[heapSize - 1] = heapIndex[0];
+			heapSize--;
+			heapDistance[0] = heapDistance[heapSize];
+			heapIndex[0] = heapIndex[heapSize];
+			siftDown(0);
+		}
+		return found;
+	}
+
+	private void scanLeaf(int node, int k) {
+		for (int i = start[node]; i < end[node]; i++) {
+			int offset = i * numDimensions;
+			double distance = 0.0;
+			for (int d = 0; d < numDimensions; d++) {
+				double value = query[d];
+				if (value == value) {
+					double diff = value - points[offset + d];
+					distance += diff * diff;
+				}
+			}
+
+			if (heapSize < k) {
+				heapDistance[heapSize] = distance;
+				heapIndex[heapSize] = order[i];
+				siftUp(heapSize);
+				heapSize++;
+			} else if (distance < heapDistance[0]) {
+				heapDistance[0] = distance;
+				heapIndex[0] = order[i];
+				siftDown(0);
+			}
+		}
+	}
+
+	private void siftUp(int position) {
+		while (position > 0) {
+			int parent = (position - 1) / 2;
+			if (heapDistance[parent] >= heapDistance[position]) {
+				return;
+			}
+			swapHeap(parent, position);
+			position = parent;
+		}
+	}
+
+	private void siftDown(int position) {
+		while (true) {
+			int largest = position;
+			int left = 2 * position + 1;
+			int right = left + 1;
+			if (left < heapSize && heapDistance[left] > heapDistance[largest]) {
+				largest = left;
+			}
+			if (right < heapSize && heapDistance[right] > heapDistance[largest]) {
+				largest = right;
+			}
+			if (largest == position) {
+				return;
+			}
+			swapHeap(position, largest);
+			position = largest;
+		}
+	}
+
+	private void swapHeap(int a, int b) {
+		double distance = heapDistance[a];
+		heapDistance[a] = heapDistance[b];
+		heapDistance[b] = distance;
+		int index = heapIndex[a];
+		heapIndex[a] = heapIndex[b];
+		heapIndex[b] = index;
+	}
+
+	/**
+	 * Builds the subtree over order[from, to) and returns its node
+	 */
+	private int build(float[] rows, int from, int to, int leafSize, int depth) {
+		int node = numNodes++;
+		maxDepth = Math.max(maxDepth, depth);
+		start[node] = from;
+		end[node] = to;
+
+		int dimension = widestDimension(rows, from, to);
+		if (to - from <= leafSize || dimension < 0) {
+			splitDimension[node] = -1;
+			return node;
+		}
+
+		int middle = (from + to) >>> 1;
+		select(rows, from, to - 1, middle, dimension);
+		splitDimension[node] = dimension;
+		splitValue[node] = rows[order[middle] * numDimensions + dimension];
+		leftChild[node] = build(rows, from, middle, leafSize, depth + 1);
+		rightChild[node] = build(rows, middle, to, leafSize, depth + 1);
+		return node;
+	}
+
+	/**
+	 * The dimension with the largest spread over order[from, to), or -1 if all
+	 * the points are the same
+	 */
+	private int widestDimension(float[] rows, int from, int to) {
+		int widest = -1;
+		float widestSpread = 0.0f;
+		for (int d = 0; d < numDimensions; d++) {
+			float min = Float.POSITIVE_INFINITY;
+			float max = Float.NEGATIVE_INFINITY;
+			for (int i = from; i < to; i++) {
+				float value = rows[order[i] * numDimensions + d];
+				if (value < min) {
+					min = value;
+				}
+				if (value > max) {
+					max = value;
+				}
+			}
+			if (max - min > widestSpread) {
+				widestSpread = max - min;
+				widest = d;
+			}
+		}
+		return widest;
+	}
+
+	/**
+	 * Quickselect: rearranges order[left, right] so that position n holds the point
+	 * that would be there if sorted by the given dimension, with no larger values
+	 * before it and no smaller values after it
+	 */
+	private void select(float[] rows, int left, int right, int n, int dimension) {
+		while (left < right) {
+			float pivot = rows[order[(left + right) >>> 1] * numDimensions + dimension];
+			int i = left;
+			int j = right;
+			while (i <= j) {
+				while (rows[order[i] * numDimensions + dimension] < pivot) {
+					i++;
+				}
+				while (rows[order[j] * numDimensions + dimension] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					int swap = order[i];
+					order[i] = order[j];
+					order[j] = swap;
+					i++;
+					j--;
+				}
+			}
+			if (n <= j) {
+				right = j;
+			} else if (n >= i) {
+				left = i;
+			} else {
+				return;
+			}
+		}
+	}
+}
@@ -0,0 +1,169 @@
+package com.davidmascharka.lips;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Counts durations in buckets whose width grows with the value, like an
+ * HdrHistogram: values below SUB_BUCKETS nanoseconds get a bucket each, and
+ * every power of two above that is split into SUB_BUCKETS buckets. A value read
+ * back is never more than 1/SUB_BUCKETS (about 3%) above the one recorded.
+ *
+ * Recording takes a few atomic adds and never allocates or locks, so it can be
+ * done from any thread on the hot path. Reads may run at the same time as
+ * records and see some of them but not others.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 5;
+
+	/**
+	 * Buckets per power of two
+	 */
+	public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	// Values of 2^40 ns (about 18 minutes) and over all land in the last bucket
+	private static final int MAX_VALUE_BITS = 40;
+
+	/**
+	 * Number of buckets
+	 */
+	public static final int NUM_BUCKETS = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * @param nanos the duration, negative durations count as 0
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		counts.incrementAndGet(bucketOf(nanos));
+		count.incrementAndGet();
+		sum.addAndGet(nanos);
+		long highest = max.get();
+		while (nanos > highest && !max.compareAndSet(highest, nanos)) {
+			highest = max.get();
+		}
+	}
+
+	/**
+	 * Bucket a value is counted in
+	 */
+	static int bucketOf(long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return (int) nanos;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BUCKET_BITS;
+		if (shift > MAX_VALUE_BITS - SUB_BUCKET_BITS - 1) {
+			return NUM_BUCKETS - 1;
+		}
+		// nanos >>> shift is in [SUB_BUCKETS, 2 * SUB_BUCKETS)
+		return shift * SUB_BUCKETS + (int) (nanos >>> shift);
+	}
+
+	/**
+	 * Highest value counted in a bucket
+	 */
+	public static long highestValueIn(int bucket) {
+		if (bucket < 2 * SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long lowest = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	/**
+	 * Number of values recorded in a bucket
+	 */
+	public long getCount(int bucket) {
+		return counts.get(bucket);
+	}
+
+	/**
+	 * Number of values recorded
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Mean of the values recorded, 0 if there are none
+	 */
+	public double getMean() {
+		long n = count.get();
+		return n == 0 ? 0.0 : (double) sum.get() / n;
+	}
+
+	/**
+	 * Largest value recorded, exactly
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Value that the given percentage of the recorded values are at or below,
+	 * rounded up to the top of its bucket
+	 *
+	 * @param percentile between 0 and 100
+	 * @return 0 if nothing has been recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long[] snapshot = new long[NUM_BUCKETS];
+		long total = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+		long seen = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				// The exact maximum is tighter than the top of its bucket
+				return Math.min(highestValueIn(i), max.get());
+			}
+		}
+		return highestValueIn(NUM_BUCKETS - 1);
+	}
+
+	/**
+	 * Forgets every value. Values recorded while this runs may be partly kept
+	 */
+	public void reset() {
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+}
@@ -0,0 +1,174 @@
+package com.davidmascharka.lips;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.sql.Timestamp;
+import java.util.Locale;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * How long each stage between a WiFi scan and the position on screen takes,
+ * one LatencyHistogram per stage. Durations are System.nanoTime() differences,
+ * which never go backwards when the wall clock is changed.
+ *
+ * All methods may be called from any thread.
+ */
+public class LatencyStats {
+
+	/**
+	 * From asking for a scan to its results arriving
+	 */
+	public static final int SCAN_DELIVERY = 0;
+
+	/**
+	 * From the results arriving to the scan's features being taken
+	 */
+	public static final int FEATURES = 1;
+
+	/**
+	 * From the features being taken to the prediction starting
+	 */
+	public static final int PREDICTION_WAIT = 2;
+
+	/**
+	 * Finding the partitions of a scan
+	 */
+	public static final int ROUTING = 3;
+
+	/**
+	 * Predicting x and y with the building and partition models
+	 */
+	public static final int REGRESSION = 4;
+
+	/**
+	 * From the fix being posted to the UI thread to it running there
+	 */
+	public static final int UI_POST = 5;
+
+	/**
+	 * Drawing the grid
+	 */
+	public static final int REDRAW = 6;
+
+	/**
+	 * From the results arriving to the fix being shown, not counting the redraw
+	 */
+	public static final int SCAN_TO_UI = 7;
+
+	public static final int NUM_STAGES = 8;
+
+	private static final String[] NAMES = {"Scan delivery", "Features", "Prediction wait",
+			"Partition routing", "X/Y regression", "UI post", "Grid redraw", "Scan to UI"};
+
+	private final LatencyHistogram[] histograms = new LatencyHistogram[NUM_STAGES];
+	private volatile long since = System.currentTimeMillis();
+
+	public LatencyStats() {
+		for (int stage = 0; stage < NUM_STAGES; stage++) {
+			histograms[stage] = new LatencyHistogram();
+		}
+	}
+
+	public void record(int stage, long nanos) {
+		histograms[stage].record(nanos);
+	}
+
+	public LatencyHistogram getHistogram(int stage) {
+		return histograms[stage];
+	}
+
+	public static String getName(int stage) {
+		return NAMES[stage];
+	}
+
+	/**
+	 * When recording started, in System.currentTimeMillis() time
+	 */
+	public long getSince() {
+		return since;
+	}
+
+	public void reset() {
+		for (LatencyHistogram histogram : histograms) {
+			histogram.reset();
+		}
+		since = System.currentTimeMillis();
+	}
+
+	/**
+	 * Prints a table of the count, mean, percentiles and maximum of each stage
+	 * in milliseconds, leaving out stages with nothing recorded
+	 */
+	public void printSummary(PrintWriter out) {
+		out.printf(Locale.US, "%-18s %7s %8s %8s %8s %8s %8s%n",
+				"stage", "count", "mean", "p50", "p90", "p99", "max");
+		for (int stage = 0; stage < NUM_STAGES; stage++) {
+			LatencyHistogram histogram = histograms[stage];
+			if (histogram.getCount() == 0) {
+				continue;
+			}
+			out.printf(Locale.US, "%-18s %7d %8.2f %8.2f %8.2f %8.2f %8.2f%n",
+					NAMES[stage], histogram.getCount(), histogram.getMean() / 1e6,
+					histogram.getValueAtPercentile(50) / 1e6,
+					histogram.getValueAtPercentile(90) / 1e6,
+					histogram.getValueAtPercentile(99) / 1e6, histogram.getMax() / 1e6);
+		}
+	}
+
+	/**
+	 * Prints the summary followed by the count of every non-empty bucket, as
+	 * lines of stage, highest value in the bucket in nanoseconds and count, so
+	 * dumps can be merged and read back at full resolution
+	 */
+	public void print(PrintWriter out) {
+		out.println("% Latency in milliseconds since " + new Timestamp(since));
+		printSummary(out);
+		out.println();
+		out.println("% stage,bucket_ns,count");
+		for (int stage = 0; stage < NUM_STAGES; stage++) {
+			LatencyHistogram histogram = histograms[stage];
+			for (int bucket = 0; bucket < LatencyHistogram.NUM_BUCKETS; bucket++) {
+				long count = histogram.getCount(bucket);
+				if (count > 0) {
+					out.println(stage + "," + LatencyHistogram.highestValueIn(bucket) + "," + count);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes print's output to a file, replacing it if it exists
+	 */
+	public void writeTo(File file) throws IOException {
+		PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+		try {
+			print(out);
+		} finally {
+			out.close();
+		}
+		if (out.checkError()) {
+			throw new IOException("Could not write " + file);
+		}
+	}
+}
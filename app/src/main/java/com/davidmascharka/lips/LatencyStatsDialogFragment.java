@@ -0,0 +1,117 @@
+package com.davidmascharka.lips;
+
+import android.app.Activity;
+import android.app.AlertDialog;
+import android.app.Dialog;
+import android.content.DialogInterface;
+import android.graphics.Typeface;
+import android.os.Bundle;
+import android.support.v4.app.DialogFragment;
+import android.widget.HorizontalScrollView;
+import android.widget.TextView;
+
+import com.mascharka.indoorlocalization.R;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Dialog showing how long each stage from a WiFi scan to the position on
+ * screen has been taking, with buttons to save the numbers to a file or start
+ * counting again
+ */
+public class LatencyStatsDialogFragment extends DialogFragment {
+
+	/* The activity that creates an instance of this dialog fragment must
+	 * implement this interface to supply the stats and save them. The stats and
+	 * scheduler are null while there are none to show, as when the dialog is
+	 * recreated before the activity has reconnected to the tracker.
+	 */
+	public interface LatencyStatsDialogListener {
+		public LatencyStats getLatencyStats();
+		public ScanScheduler getScanScheduler();
+		public void onSaveLatencyStats();
+	}
+
+	LatencyStatsDialogListener listener;
+
+	@Override
+	public void onAttach(Activity activity) {
+		super.onAttach(activity);
+
+		try {
+			listener = (LatencyStatsDialogListener) activity;
+		} catch (ClassCastException e) {
+			throw new ClassCastException(activity.toString() +
+				" must implement LatencyStatsDialogListener");
+		}
+	}
+
+	@Override
+	public Dialog onCreateDialog(Bundle savedInstanceState) {
+		final LatencyStats stats = listener.getLatencyStats();
+		ScanScheduler scheduler = listener.getScanScheduler();
+		if (stats == null || scheduler == null) {
+			return new AlertDialog.Builder(getActivity())
+				.setTitle(R.string.dialog_latency_stats)
+				.setMessage(R.string.latency_stats_unavailable)
+				.setNegativeButton(R.string.close, null)
+				.create();
+		}
+		StringWriter summary = new StringWriter();
+		PrintWriter out = new PrintWriter(summary);
+		out.println("Latency in ms");
+		stats.printSummary(out);
+		out.println();
+		scheduler.printStats(out, System.nanoTime());
+		out.flush();
+
+		// The table only lines up in a fixed width font and is wider than most screens
+		TextView text = new TextView(getActivity());
+		text.setTypeface(Typeface.MONOSPACE);
+		text.setTextSize(12);
+		int padding = (int) (16 * getResources().getDisplayMetrics().density);
+		text.setPadding(padding, padding, padding, padding);
+		text.setText(summary.toString());
+		HorizontalScrollView scroll = new HorizontalScrollView(getActivity());
+		scroll.addView(text);
+
+		AlertDialog.Builder builder = new AlertDialog.Builder(getActivity());
+		builder.setTitle(R.string.dialog_latency_stats)
+			.setView(scroll)
+			.setPositiveButton(R.string.save, new DialogInterface.OnClickListener() {
+				@Override
+				public void onClick(DialogInterface dialog, int which) {
+					listener.onSaveLatencyStats();
+				}
+			})
+			.setNeutralButton(R.string.reset, new DialogInterface.OnClickListener() {
+				@Override
+				public void onClick(DialogInterface dialog, int which) {
+					stats.reset();
+				}
+			})
+			.setNegativeButton(R.string.close, null);
+
+		return builder.create();
+	}
+}
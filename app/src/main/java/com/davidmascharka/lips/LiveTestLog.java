@@ -0,0 +1,397 @@
+package com.davidmascharka.lips;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Writes the live test logs in the background: each predicted position and
+ * each point the user reached to livetest_BUILDING.txt, and the sensor values
+ * of each scan to livetest_BUILDING_values.txt.
+ *
+ * Logging a line only copies its values into a record preallocated in a ring,
+ * so it never waits on storage, allocates or takes a lock, and any thread may
+ * log. Each producer claims the next record by advancing the ring's tail and
+ * publishes it by bumping that record's sequence number. A writer thread wakes
+ * every FLUSH_INTERVAL_MILLIS, formats whatever has been published and flushes
+ * each file once for the whole batch. If the ring is full the line is dropped
+ * rather than waiting.
+ *
+ * close drains every line logged before it was called, flushes and closes the
+ * files. Lines logged after that are dropped, so a thread still logging as the
+ * log closes can't write to a closed file.
+ */
+public class LiveTestLog {
+
+	/**
+	 * Lines the ring holds before more are dropped
+	 */
+	public static final int DEFAULT_CAPACITY = 256;
+
+	/**
+	 * How often the writer looks for lines to write
+	 */
+	public static final long FLUSH_INTERVAL_MILLIS = 500;
+
+	// Longest close waits for the writer to finish
+	private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final int FIX = 0;
+	private static final int VALUES = 1;
+	private static final int POINT_DONE = 2;
+
+	/**
+	 * One line of either log. Reused once written
+	 */
+	private static final class Record {
+		int kind;
+		float x;
+		float y;
+		long time;
+		long arrivalTime;
+		long fixTime;
+		final float[] sensors = new float[FeatureVector.NUM_SENSOR_ATTRIBUTES];
+		final int[] rssi;
+		boolean hasLocation;
+		double latitude;
+		double longitude;
+		float accuracy;
+
+		Record(int numAccessPoints) {
+			rssi = new int[numAccessPoints];
+		}
+	}
+
+	private final Record[] records;
+	private final int mask;
+	// A record at position p may be claimed when its sequence is p and read
+	// when it is p + 1
+	private final AtomicLongArray sequences;
+	private final AtomicLong tail = new AtomicLong();
+	// Next position to write, owned by the writer
+	private long head;
+
+	private final int numAccessPoints;
+	private final Writer fixes;
+	private final Writer values;
+	private final Thread writer;
+	private volatile boolean closing;
+
+	private final AtomicLong dropped = new AtomicLong();
+	private volatile IOException error;
+
+	/**
+	 * Appends to livetest_BUILDING.txt and livetest_BUILDING_values.txt in dir
+	 *
+	 * @param numAccessPoints RSSI values in each line of sensor values
+	 */
+	public static LiveTestLog open(File dir, String building, int numAccessPoints)
+			throws IOException {
+		Writer fixes = open(new File(dir, "livetest_" + building + ".txt"));
+		Writer values;
+		try {
+			values = open(new File(dir, "livetest_" + building + "_values.txt"));
+		} catch (IOException e) {
+			fixes.close();
+			throw e;
+		}
+		return new LiveTestLog(fixes, values, numAccessPoints, DEFAULT_CAPACITY);
+	}
+
+	private static Writer open(File file) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), UTF_8),
+				16 * 1024);
+	}
+
+	/**
+	 * Starts the writer thread. The writers are closed along with the log
+	 *
+	 * @param capacity lines that can wait to be written; rounded up to a power
+	 *                 of two
+	 */
+	public LiveTestLog(Writer fixes, Writer values, int numAccessPoints, int capacity) {
+		if (capacity < 1 || capacity > 1 << 20) {
+			throw new IllegalArgumentException("Capacity must be from 1 to 2^20");
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		records = new Record[size];
+		sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			records[i] = new Record(numAccessPoints);
+			sequences.set(i, i);
+		}
+		mask = size - 1;
+		this.numAccessPoints = numAccessPoints;
+		this.fixes = fixes;
+		this.values = values;
+		writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeUntilClosed();
+			}
+		}, "LIPS log");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Logs a predicted position
+	 *
+	 * @param scanTime when the predicted scan arrived, in ms since the epoch
+	 * @param arrivalTime when the newest scan arrived, in ms since the epoch
+	 * @param fixTime when the position was predicted, in ms since the epoch
+	 */
+	public void logFix(float x, float y, long scanTime, long arrivalTime, long fixTime) {
+		long position = claim();
+		if (position < 0) {
+			return;
+		}
+		Record record = records[(int) position & mask];
+		record.kind = FIX;
+		record.x = x;
+		record.y = y;
+		record.time = scanTime;
+		record.arrivalTime = arrivalTime;
+		record.fixTime = fixTime;
+		publish(position);
+	}
+
+	/**
+	 * Logs the sensor values and RSSI of a scan, and the location if known
+	 *
+	 * @param sensors the sensor attributes, in the order of FeatureVector
+	 * @param features the scan's features, to take the RSSI values from
+	 * @param time when the scan was read, in ms since the epoch
+	 */
+	public void logValues(float[] sensors, FeatureVector features, boolean hasLocation,
+						  double latitude, double longitude, float accuracy, long time) {
+		long position = claim();
+		if (position < 0) {
+			return;
+		}
+		Record record = records[(int) position & mask];
+		record.kind = VALUES;
+		System.arraycopy(sensors, 0, record.sensors, 0, record.sensors.length);
+		for (int i = 0; i < numAccessPoints; i++) {
+			record.rssi[i] = features.getRssi(i);
+		}
+		record.hasLocation = hasLocation;
+		record.latitude = latitude;
+		record.longitude = longitude;
+		record.accuracy = accuracy;
+		record.time = time;
+		publish(position);
+	}
+
+	/**
+	 * Logs that the user reached a point they were asked to walk to
+	 *
+	 * @param time in ms since the epoch
+	 */
+	public void logPointDone(float x, float y, long time) {
+		long position = claim();
+		if (position < 0) {
+			return;
+		}
+		Record record = records[(int) position & mask];
+		record.kind = POINT_DONE;
+		record.x = x;
+		record.y = y;
+		record.time = time;
+		publish(position);
+	}
+
+	/**
+	 * @return the position of a free record, or -1 if the line is dropped
+	 */
+	private long claim() {
+		if (closing) {
+			dropped.incrementAndGet();
+			return -1;
+		}
+		while (true) {
+			long position = tail.get();
+			long sequence = sequences.get((int) position & mask);
+			if (sequence == position) {
+				if (tail.compareAndSet(position, position + 1)) {
+					return position;
+				}
+			} else if (sequence < position) {
+				// The writer hasn't got round to this record since the last lap
+				dropped.incrementAndGet();
+				return -1;
+			}
+			// Another thread claimed the record first, try the next one
+		}
+	}
+
+	private void publish(long position) {
+		sequences.lazySet((int) position & mask, position + 1);
+	}
+
+	private void writeUntilClosed() {
+		while (true) {
+			// Read before draining, so the last drain sees every line logged
+			// before close was called
+			boolean last = closing;
+			if (drain() == 0 && !last) {
+				LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MILLIS));
+			}
+			if (last) {
+				break;
+			}
+		}
+		try {
+			fixes.close();
+		} catch (IOException e) {
+			fail(e);
+		}
+		try {
+			values.close();
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * Writes every published line, then flushes
+	 *
+	 * @return lines written
+	 */
+	private int drain() {
+		int written = 0;
+		while (true) {
+			int slot = (int) head & mask;
+			if (sequences.get(slot) != head + 1) {
+				break;
+			}
+			if (error == null) {
+				try {
+					write(records[slot]);
+				} catch (IOException e) {
+					fail(e);
+				}
+			} else {
+				dropped.incrementAndGet();
+			}
+			sequences.lazySet(slot, head + records.length);
+			head++;
+			written++;
+		}
+		if (written > 0 && error == null) {
+			try {
+				fixes.flush();
+				values.flush();
+			} catch (IOException e) {
+				fail(e);
+			}
+		}
+		return written;
+	}
+
+	/**
+	 * The same lines the tracker has always written
+	 */
+	private void write(Record record) throws IOException {
+		switch (record.kind) {
+			case FIX:
+				fixes.write("(" + record.x + "," + record.y + ")");
+				fixes.write(" %" + new Timestamp(record.time) + "\t " + new Timestamp(record.arrivalTime)
+						+ "\t" + new Timestamp(record.fixTime) + "\n");
+				break;
+			case POINT_DONE:
+				fixes.write("DONE: (" + record.x + "," + record.y + ")");
+				fixes.write(" %" + new Timestamp(record.time) + "\n\n");
+				break;
+			case VALUES:
+				StringBuilder line = new StringBuilder(256);
+				for (int i = 0; i < record.sensors.length; i++) {
+					if (i > 0) {
+						line.append(',');
+					}
+					line.append(record.sensors[i]);
+				}
+				for (int i = 0; i < record.rssi.length; i++) {
+					line.append(',').append(record.rssi[i]);
+				}
+				if (record.hasLocation) {
+					line.append(',').append(record.latitude).append(',').append(record.longitude)
+							.append(',').append(record.accuracy);
+				} else {
+					line.append(",?,?,?");
+				}
+				line.append(" %").append(new Timestamp(record.time)).append("\n\n");
+				values.write(line.toString());
+				break;
+			default:
+				break;
+		}
+	}
+
+	private void fail(IOException e) {
+		if (error == null) {
+			error = e;
+		}
+	}
+
+	/**
+	 * Writes every line logged so far and closes the files. Lines logged from now
+	 * on are dropped. Waits for the writer, so don't call on the main thread
+	 *
+	 * @throws IOException the first error writing either file, if there was one
+	 */
+	public void close() throws IOException {
+		closing = true;
+		LockSupport.unpark(writer);
+		try {
+			writer.join(CLOSE_TIMEOUT_MILLIS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		IOException e = error;
+		if (e != null) {
+			throw e;
+		}
+	}
+
+	/**
+	 * Lines not written because the ring was full, the log was closing or
+	 * writing failed
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+}
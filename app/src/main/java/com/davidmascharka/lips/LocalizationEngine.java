@@ -0,0 +1,909 @@
+package com.davidmascharka.lips;
+
+import android.app.ActivityManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.res.AssetFileDescriptor;
+import android.hardware.SensorManager;
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.net.wifi.ScanResult;
+import android.net.wifi.WifiManager;
+import android.os.Bundle;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.widget.Toast;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Everything needed to keep track of the user's position: the sensors, WiFi
+ * scans, location, models, prediction and tracking filter. It lives in
+ * LocalizationService rather than an activity, so the models are loaded once
+ * and stay loaded, and tracking goes on with the screen off or while no
+ * activity is showing.
+ *
+ * Positions are handed to any number of PositionListeners. Scans are started
+ * when the ScanScheduler says, often while the user walks and rarely while
+ * they stand still.
+ *
+ * Scan results, sensor events and location updates all arrive on a scan thread
+ * of their own, where the features of each scan are built and logged, so none
+ * of that work holds up drawing. Scans go from there to the prediction thread
+ * through the PredictionExecutor, newest first, and only the positions come back to
+ * the main thread, where the tracking filter runs.
+ *
+ * Create, start, stop and listen on the main thread.
+ */
+public class LocalizationEngine {
+
+	/**
+	 * Told each new position, on the main thread
+	 */
+	public interface PositionListener {
+		/**
+		 * @param x in grid units
+		 * @param y in grid units
+		 */
+		void onPosition(float x, float y);
+	}
+
+	private static final String TAG = "LocalizationEngine";
+
+	/**
+	 * Size of the grid positions are given on
+	 */
+	public static final int GRID_WIDTH = 102;
+	public static final int GRID_HEIGHT = 64;
+
+	/**
+	 * Number of BSSID attributes the models were built with
+	 */
+	private static final int NUM_BSSIDS = 10;
+
+	/**
+	 * Building whose access point list (in assets/access_points) the models
+	 * were built with
+	 * TODO: Get approximate building name from GPS
+	 */
+	private static final String MODEL_BUILDING = "lab";
+
+	/**
+	 * Number of BSSID attributes the 5 partition models were built with
+	 */
+	private static final int NUM_PARTITION_BSSIDS = 156;
+
+	/**
+	 * Most partition models kept in memory on low RAM devices
+	 */
+	private static final int LOW_RAM_PARTITION_MODELS = 2;
+
+	/**
+	 * Partitions blended into each position when blending is on. No more than
+	 * LOW_RAM_PARTITION_MODELS, or low RAM devices would reload models constantly
+	 */
+	private static final int BLENDED_PARTITIONS = 2;
+
+	/**
+	 * Typical error of a predicted position, in grid units
+	 */
+	private static final float FIX_ERROR = 10.0f;
+
+	/**
+	 * Movement in a second that the steps may have missed, in grid units
+	 */
+	private static final float UNTRACKED_MOVEMENT = 2.0f;
+
+	/**
+	 * Particles in the particle filter. A step costs time in proportion, and has
+	 * to fit between two sensor events on the main thread
+	 */
+	private static final int TRACKING_PARTICLES = 5000;
+
+	private final Context context;
+
+	/**
+	 * Read instead of checking the permissions for each scan
+	 */
+	private final PermissionState permissionState;
+
+	/**
+	 * Runs everything that has to happen on the main thread
+	 */
+	private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+	/**
+	 * Reads the scans, sensors and location. Everything about a scan up to
+	 * handing it to predictionExecutor happens here
+	 */
+	private final HandlerThread scanThread;
+	private final Handler scanHandler;
+
+	private final List<PositionListener> listeners =
+			new CopyOnWriteArrayList<PositionListener>();
+
+	/**
+	 * Latest readings of the sensors, including orientation
+	 */
+	private final SensorFusion sensorFusion = new SensorFusion();
+
+	private final SensorManager sensorManager;
+	private final WifiManager wifiManager;
+	private final LocationManager locationManager;
+
+	/**
+	 * Listens for changes to reported location
+	 */
+	private final LocationListener locationListener = new LocationListener() {
+		@Override
+		public void onLocationChanged(Location fix) {
+			location.offer(fix);
+		}
+
+		@Override
+		public void onStatusChanged(String provider, int status, Bundle extras) {}
+
+		@Override
+		public void onProviderEnabled(String provider) {}
+
+		@Override
+		public void onProviderDisabled(String provider) {}
+	};
+
+	/**
+	 * The best fix reported by GPS/Network. Only used on the scan thread
+	 */
+	private final LocationEstimate location = new LocationEstimate();
+
+	private static final String[] LOCATION_PROVIDERS = {
+			LocationManager.GPS_PROVIDER, LocationManager.NETWORK_PROVIDER
+	};
+
+	/**
+	 * Will listen for broadcasts from the WiFi manager. When a scan has finished, the
+	 * onReceive method will be called which will recalculate the user's position
+	 */
+	private final BroadcastReceiver receiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(Context context, Intent intent) {
+			updateScanResults();
+		}
+	};
+
+	/**
+	 * Decides when to scan from whether the user is moving
+	 */
+	private final ScanScheduler scanScheduler = new ScanScheduler(ScanScheduler.DEFAULT_POLICY);
+
+	private final Runnable scanTask = new Runnable() {
+		@Override
+		public void run() {
+			startScan();
+		}
+	};
+
+	private final Runnable startListening = new Runnable() {
+		@Override
+		public void run() {
+			startListening();
+		}
+	};
+
+	private final Runnable stopListening = new Runnable() {
+		@Override
+		public void run() {
+			stopListening();
+		}
+	};
+
+	/**
+	 * BSSIDs of interest, each with its slot among the BSSID attributes. Any
+	 * BSSID attributes past the end of the list are left missing
+	 */
+	private AccessPointRegistry accessPoints;
+
+	/**
+	 * Builds the features of each scan and predicts the position from them
+	 */
+	private final PositionPipeline pipeline;
+
+	/**
+	 * Predicts the position for the newest scan on a worker thread
+	 */
+	private final PredictionExecutor<PositionPipeline.Scan> predictionExecutor;
+
+	/**
+	 * How long each stage from asking for a scan to showing its position takes
+	 */
+	private final LatencyStats latencyStats = new LatencyStats();
+
+	/**
+	 * When the scan in progress was asked for, in System.nanoTime() time. 0 if
+	 * none has been asked for. Only used on the scan thread
+	 */
+	private long scanRequestedNanos;
+
+	/**
+	 * Smooths the predicted positions and moves the position with each step
+	 * between scans. Only used on the main thread
+	 */
+	private TrackingFilter trackingFilter;
+
+	/**
+	 * Whether positions go through trackingFilter rather than being given as
+	 * they were predicted. On by default only where the grid has been measured
+	 */
+	private boolean trackSteps;
+
+	/**
+	 * How the models' grid lies in the building, to move the position with the
+	 * user's steps. Null until it has been measured for the building, and then
+	 * steps are left out
+	 */
+	private GridOrientation grid;
+
+	private boolean particleFilter;
+
+	private boolean hasPosition;
+	private float lastX;
+	private float lastY;
+
+	private boolean started;
+
+	/**
+	 * Whether the scan thread is listening, which it does from shortly after
+	 * start until shortly after stop
+	 */
+	private boolean listening;
+
+	/**
+	 * Which building is the user in? As selected on the main screen, read each
+	 * time the engine starts
+	 */
+	private volatile String building;
+
+	/**
+	 * When the latest scan arrived, in milliseconds since the epoch
+	 */
+	private volatile long time;
+
+	/**
+	 * Logs the positions and the values of each scan while listening, for
+	 * evaluating. Opened and closed on the scan thread
+	 */
+	private volatile LiveTestLog liveTestLog;
+
+	/**
+	 * The sensor values of the scan being read. Only used on the scan thread
+	 */
+	private final float[] sensorValues = new float[FeatureVector.NUM_SENSOR_ATTRIBUTES];
+
+	/**
+	 * Loads the building and partition models in the background, one at a time
+	 */
+	private final ExecutorService modelLoader;
+
+	/**
+	 * The models in the APK's assets
+	 */
+	private final ModelStore models = new ModelStore() {
+		@Override
+		protected InputStream open(String name) throws IOException {
+			return context.getAssets().open(name);
+		}
+
+		/**
+		 * Maps an asset stored uncompressed (see aaptOptions in build.gradle)
+		 * straight out of the APK, so reading it needs no intermediate copy of
+		 * the file
+		 */
+		@Override
+		protected ByteBuffer map(String name) throws IOException {
+			AssetFileDescriptor descriptor = context.getAssets().openFd(name);
+			try {
+				return ModelFormat.map(descriptor.createInputStream().getChannel(),
+						descriptor.getStartOffset(), descriptor.getLength());
+			} finally {
+				descriptor.close();
+			}
+		}
+
+		@Override
+		protected void onUnreadable(String name, IOException e) {
+			Log.w(TAG, name + " unreadable, using the Weka model", e);
+		}
+	};
+
+	/**
+	 * Predicts x and y within each partition, loaded the first time the user
+	 * is found in that partition
+	 */
+	private volatile ModelRegistry<PositionPredictor> partitionPredictors;
+
+	/**
+	 * Whether positions blend the most probable partitions rather than coming
+	 * from the most probable one alone
+	 */
+	private volatile boolean blendPartitions;
+
+	/**
+	 * The models load in the background, so scans get no position until the
+	 * building models have loaded
+	 */
+	public LocalizationEngine(Context context) {
+		this.context = context;
+		permissionState = PermissionState.get(context);
+		sensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+		wifiManager = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
+		locationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+		scanThread = new HandlerThread("LIPS scans", Process.THREAD_PRIORITY_DEFAULT);
+		scanThread.start();
+		scanHandler = new Handler(scanThread.getLooper());
+
+		loadAccessPoints();
+		loadGrid();
+		trackSteps = grid != null;
+		pipeline = new PositionPipeline(accessPoints, NUM_BSSIDS, NUM_PARTITION_BSSIDS);
+		pipeline.setLatencyStats(latencyStats);
+
+		modelLoader = ModelRegistry.newLoaderExecutor();
+		// Deserializing takes seconds, which the main thread can't spare
+		modelLoader.execute(new Runnable() {
+			@Override
+			public void run() {
+				loadBuildingPredictor();
+			}
+		});
+
+		trackingFilter = newTrackingFilter(false);
+		sensorFusion.setMotionListener(new SensorFusion.MotionListener() {
+			@Override
+			public void onAcceleration(float x, float y, float z) {
+				if (scanScheduler.onAcceleration(System.nanoTime(), x, y, z)) {
+					scheduleScan();
+				}
+			}
+
+			@Override
+			public void onStep(final float length, final float azimuth) {
+				if (scanScheduler.onStep(System.nanoTime())) {
+					scheduleScan();
+				}
+				mainHandler.post(new Runnable() {
+					@Override
+					public void run() {
+						onUserStep(length, azimuth);
+					}
+				});
+			}
+		});
+		predictionExecutor = new PredictionExecutor<PositionPipeline.Scan>(
+				new PredictionExecutor.Predictor<PositionPipeline.Scan>() {
+			@Override
+			public PositionFix predict(PositionPipeline.Scan scan) throws Exception {
+				return pipeline.predict(scan);
+			}
+		}, new PredictionExecutor.Listener() {
+			@Override
+			public void onPositionFix(PositionFix fix) {
+				onFix(fix);
+			}
+
+			@Override
+			public void onPredictionFailed(Exception e) {
+				Log.e(TAG, Log.getStackTraceString(e));
+			}
+		});
+	}
+
+	/**
+	 * Starts listening to the sensors, location and WiFi and scanning. Does
+	 * nothing if already started
+	 */
+	public void start() {
+		if (started) {
+			return;
+		}
+		started = true;
+		scanHandler.post(startListening);
+	}
+
+	/**
+	 * Stops listening and scanning. The models stay loaded for the next start
+	 */
+	public void stop() {
+		if (!started) {
+			return;
+		}
+		started = false;
+		scanHandler.post(stopListening);
+	}
+
+	/**
+	 * Stops for good and lets go of the models
+	 */
+	public void shutdown() {
+		stop();
+		// Lets stopListening run first
+		scanThread.quitSafely();
+		listeners.clear();
+		predictionExecutor.shutdown();
+		clearPartitionModels();
+		modelLoader.shutdownNow();
+	}
+
+	private void startListening() {
+		listening = true;
+		building = context.getSharedPreferences(MainActivity.PREFS_NAME, Context.MODE_PRIVATE)
+				.getString(context.getPackageName() + ".building", MainActivity.DEFAULT_BUILDING);
+
+		File root = Environment.getExternalStorageDirectory();
+		File dir = new File(root.getAbsolutePath() + "/indoor_localization");
+		dir.mkdirs();
+		try {
+			liveTestLog = LiveTestLog.open(dir, building, accessPoints.size());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		// Register to get sensor updates from the sensors the models use
+		sensorFusion.register(sensorManager, SensorManager.SENSOR_DELAY_FASTEST, scanHandler);
+
+		// Enable wifi if it is disabled
+		if (!wifiManager.isWifiEnabled()) {
+			showToast("WiFi not enabled. Enabling...");
+			wifiManager.setWifiEnabled(true);
+		}
+
+		// Request location updates from gps and the network. The service may have
+		// been restarted with no activity to check the permissions since
+		if (permissionState.refresh()) {
+			for (String provider : LOCATION_PROVIDERS) {
+				// Start from the last fix so the first scans have one, rather than
+				// asking for it with each scan
+				Location last = locationManager.getLastKnownLocation(provider);
+				if (last != null) {
+					location.offer(last);
+				}
+				locationManager.requestLocationUpdates(provider,
+						LocationEstimate.UPDATE_INTERVAL_MILLIS, LocationEstimate.UPDATE_DISTANCE_METERS,
+						locationListener, scanThread.getLooper());
+			}
+		} else {
+			Log.i(TAG, "Permissions have NOT been granted. Tracking without location.");
+		}
+
+		context.registerReceiver(receiver,
+				new IntentFilter(WifiManager.SCAN_RESULTS_AVAILABLE_ACTION), null, scanHandler);
+
+		startScan();
+		showToast("Initiated scan");
+	}
+
+	private void stopListening() {
+		listening = false;
+		scanHandler.removeCallbacks(scanTask);
+
+		// Stop receiving updates
+		sensorFusion.unregister(sensorManager);
+		if (permissionState.isGranted()) {
+			locationManager.removeUpdates(locationListener);
+		}
+		context.unregisterReceiver(receiver);
+
+		// Lines the prediction thread logs from here on are dropped
+		LiveTestLog log = liveTestLog;
+		liveTestLog = null;
+		if (log != null) {
+			try {
+				log.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			if (log.getDropped() > 0) {
+				Log.w(TAG, log.getDropped() + " live test lines were dropped");
+			}
+		}
+	}
+
+	public boolean isStarted() {
+		return started;
+	}
+
+	/**
+	 * The listener is given the latest position straight away if there is one
+	 */
+	public void addPositionListener(PositionListener listener) {
+		listeners.add(listener);
+		if (hasPosition) {
+			listener.onPosition(lastX, lastY);
+		}
+	}
+
+	public void removePositionListener(PositionListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Asks for a scan and when to ask for the next one. A scan the system refuses,
+	 * as it does when scans are throttled, is tried again later
+	 */
+	private void startScan() {
+		long now = System.nanoTime();
+		boolean accepted = wifiManager.startScan();
+		scanScheduler.onScanStarted(now, accepted);
+		if (accepted) {
+			scanRequestedNanos = now;
+		}
+		scheduleScan();
+	}
+
+	private void scheduleScan() {
+		if (!listening) {
+			return;
+		}
+		scanHandler.removeCallbacks(scanTask);
+		scanHandler.postDelayed(scanTask, scanScheduler.getDelayMillis(System.nanoTime()));
+	}
+
+	/**
+	 * When a new WiFi scan comes in, get sensor values and predict position. Runs
+	 * on the scan thread
+	 */
+	private void updateScanResults() {
+		long arrivalNanos = System.nanoTime();
+		if (scanRequestedNanos != 0) {
+			latencyStats.record(LatencyStats.SCAN_DELIVERY, arrivalNanos - scanRequestedNanos);
+			scanRequestedNanos = 0;
+		}
+		scanScheduler.onScanResults(arrivalNanos);
+		scheduleScan();
+		pipeline.clearRssi();
+
+		List<ScanResult> scanResults = wifiManager.getScanResults();
+
+		time = System.currentTimeMillis();
+
+		for (ScanResult result : scanResults) {
+			// BSSIDs that weren't programmed in are left out
+			pipeline.setRssi(result.BSSID, result.level);
+		}
+		setInstanceValues();
+		PositionPipeline.Scan scan = pipeline.takeScan(time, arrivalNanos);
+		latencyStats.record(LatencyStats.FEATURES, System.nanoTime() - arrivalNanos);
+
+		printValues();
+
+		// this is where the magic happens
+		predictionExecutor.submit(scan);
+	}
+
+	/**
+	 * Hands the fix to the listeners and logs it. Runs on the prediction thread
+	 */
+	private void onFix(final PositionFix fix) {
+		final long postedNanos = System.nanoTime();
+		mainHandler.post(new Runnable() {
+			public void run() {
+				latencyStats.record(LatencyStats.UI_POST, System.nanoTime() - postedNanos);
+				if (trackSteps) {
+					trackingFilter.update(fix.getX(), fix.getY(), fix.getScanNanos());
+					publishPosition(trackingFilter.getX(), trackingFilter.getY());
+				} else {
+					publishPosition(fix.getX(), fix.getY());
+				}
+				latencyStats.record(LatencyStats.SCAN_TO_UI, System.nanoTime() - fix.getScanNanos());
+			}
+		});
+
+		// Unnecessary if you're not testing
+		LiveTestLog log = liveTestLog;
+		if (log != null) {
+			log.logFix(fix.getX(), fix.getY(), fix.getScanTime(), time, fix.getFixTime());
+		}
+	}
+
+	/**
+	 * Moves the position along a step the user took, so it keeps up with them
+	 * between scans
+	 *
+	 * @param length in metres
+	 * @param azimuth direction of the step in radians clockwise from magnetic north
+	 */
+	private void onUserStep(float length, float azimuth) {
+		if (!trackSteps || grid == null || !trackingFilter.isInitialized()) {
+			return;
+		}
+		trackingFilter.step(grid.stepX(length, azimuth), grid.stepY(length, azimuth));
+		publishPosition(trackingFilter.getX(), trackingFilter.getY());
+	}
+
+	private void publishPosition(float x, float y) {
+		hasPosition = true;
+		lastX = x;
+		lastY = y;
+		for (PositionListener listener : listeners) {
+			listener.onPosition(x, y);
+		}
+	}
+
+	/**
+	 * @param particles whether to track with a particle filter rather than a
+	 *                  Kalman filter
+	 */
+	private TrackingFilter newTrackingFilter(boolean particles) {
+		if (particles) {
+			return new ParticleFilter(TRACKING_PARTICLES, GRID_WIDTH, GRID_HEIGHT, FIX_ERROR,
+					UNTRACKED_MOVEMENT, System.nanoTime());
+		}
+		return new KalmanFilter(GRID_WIDTH, GRID_HEIGHT, FIX_ERROR, UNTRACKED_MOVEMENT);
+	}
+
+	public boolean isTrackingSteps() {
+		return trackSteps;
+	}
+
+	/**
+	 * @param trackSteps whether positions go through the tracking filter rather
+	 *                   than being given as they were predicted
+	 */
+	public void setTrackSteps(boolean trackSteps) {
+		this.trackSteps = trackSteps;
+		trackingFilter.reset();
+	}
+
+	public boolean isParticleFilter() {
+		return particleFilter;
+	}
+
+	/**
+	 * @param particles whether to track with a particle filter rather than a
+	 *                  Kalman filter. Either starts over from the next fix
+	 */
+	public void setParticleFilter(boolean particles) {
+		particleFilter = particles;
+		trackingFilter = newTrackingFilter(particles);
+	}
+
+	public boolean isBlendingPartitions() {
+		return blendPartitions;
+	}
+
+	public void setBlendPartitions(boolean blend) {
+		blendPartitions = blend;
+		pipeline.setMaxPartitions(blend ? BLENDED_PARTITIONS : 1);
+	}
+
+	public LatencyStats getLatencyStats() {
+		return latencyStats;
+	}
+
+	public ScanScheduler getScanScheduler() {
+		return scanScheduler;
+	}
+
+	public String getBuilding() {
+		return building;
+	}
+
+	/**
+	 * Reads the access points the models were built with. No more than the
+	 * models have BSSID attributes for are used
+	 */
+	private void loadAccessPoints() {
+		try {
+			accessPoints = AccessPointRegistry.read(
+					context.getAssets().open("access_points/" + MODEL_BUILDING + ".txt"));
+		} catch (IOException e) {
+			e.printStackTrace();
+			Toast.makeText(context, "Access points did not load", Toast.LENGTH_LONG).show();
+			accessPoints = new AccessPointRegistry(new String[0]);
+		}
+		accessPoints = accessPoints.limit(NUM_BSSIDS);
+	}
+
+	/**
+	 * Reads how the models' grid lies in the building from assets/grids. Steps
+	 * aren't tracked if it hasn't been measured
+	 */
+	private void loadGrid() {
+		try {
+			grid = GridOrientation.read(
+					context.getAssets().open("grids/" + MODEL_BUILDING + ".txt"));
+		} catch (FileNotFoundException e) {
+			Log.i(TAG, "No grid orientation for " + MODEL_BUILDING + ", steps are not tracked");
+		} catch (IOException e) {
+			Log.e(TAG, "Grid orientation did not load", e);
+		}
+	}
+
+	/**
+	 * Loads the K* classifiers for the whole building and combines them so one
+	 * pass over the fingerprints predicts both coordinates. The Weka models
+	 * aren't needed after this. Runs on modelLoader
+	 */
+	private void loadBuildingPredictor() {
+		try {
+			pipeline.setBuildingPredictor(models.loadBuildingPredictor());
+		} catch (Exception e) {
+			e.printStackTrace();
+			showToast("KStar classifiers did not load");
+		}
+	}
+
+	/**
+	 * Switches to the models of a partitioning scheme. The models load in the
+	 * background; until they are ready the full building classifiers keep
+	 * predicting
+	 *
+	 * @return false if there are no models for the scheme
+	 */
+	public boolean setPartitioning(String partitioning) {
+		clearPartitionModels();
+		switch (partitioning) {
+			case "Full":
+				return true;
+			case "5Partition":
+				loadPartitionModels("5partition");
+				return true;
+			default:
+				// Only the 5 partition models have been built
+				return false;
+		}
+	}
+
+	/**
+	 * Starts loading the classifier that predicts the partition. The models for
+	 * each partition are only loaded once the user has been found in it, and on
+	 * low RAM devices the least recently used ones are dropped again
+	 *
+	 * @param directory the assets directory holding the models of the scheme
+	 */
+	private void loadPartitionModels(final String directory) {
+		ActivityManager activityManager =
+				(ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+		final ModelRegistry<PositionPredictor> predictors = new ModelRegistry<PositionPredictor>(
+				modelLoader, new ModelRegistry.Loader<PositionPredictor>() {
+					@Override
+					public PositionPredictor load(String partition) throws Exception {
+						return models.loadPartitionPredictor(directory, partition);
+					}
+				}, activityManager.isLowRamDevice() ? LOW_RAM_PARTITION_MODELS : 0);
+		predictors.setListener(new ModelRegistry.Listener<PositionPredictor>() {
+			@Override
+			public void onModelLoaded(String partition, PositionPredictor model) {}
+
+			@Override
+			public void onModelFailed(String partition, Exception e) {
+				e.printStackTrace();
+				showToast("Classifiers for " + partition + " did not load");
+			}
+		});
+		partitionPredictors = predictors;
+
+		pipeline.setPartitionPredictor(modelLoader.submit(new Callable<PartitionedPositionPredictor>() {
+			@Override
+			public PartitionedPositionPredictor call() throws Exception {
+				CompiledForest forest;
+				try {
+					forest = models.loadPartitionForest(directory);
+				} catch (Exception e) {
+					e.printStackTrace();
+					showToast("Partition classifier did not load");
+					throw e;
+				}
+				return new PartitionedPositionPredictor(
+						PartitionedPositionPredictor.forestRouter(forest), predictors,
+						blendPartitions ? BLENDED_PARTITIONS : 1);
+			}
+		}));
+	}
+
+	/**
+	 * Drops the partition models so they can be garbage collected
+	 */
+	private void clearPartitionModels() {
+		Future<PartitionedPositionPredictor> predictor = pipeline.getPartitionPredictor();
+		ModelRegistry<PositionPredictor> predictors = partitionPredictors;
+		pipeline.setPartitionPredictor(null);
+		partitionPredictors = null;
+		if (predictor != null) {
+			predictor.cancel(false);
+		}
+		if (predictors != null) {
+			predictors.clear();
+		}
+	}
+
+	private void showToast(final String message) {
+		mainHandler.post(new Runnable() {
+			public void run() {
+				Toast.makeText(context, message, Toast.LENGTH_LONG).show();
+			}
+		});
+	}
+
+	/**
+	 * Unnecessary if you're not testing/evaluating
+	 * Logs the sensor values and time at each data point
+	 */
+	private void printValues() {
+		LiveTestLog log = liveTestLog;
+		if (log == null) {
+			return;
+		}
+		sensorFusion.copyTo(sensorValues);
+
+		// setInstanceValues has already decided whether the fix is recent enough
+		if (!pipeline.getFeatures().isLocationMissing()) {
+			log.logValues(sensorValues, pipeline.getFeatures(), true, location.getLatitude(),
+					location.getLongitude(), location.getAccuracy(), System.currentTimeMillis());
+		} else {
+			log.logValues(sensorValues, pipeline.getFeatures(), false, 0, 0, 0,
+					System.currentTimeMillis());
+		}
+	}
+
+	/**
+	 * Logs that the user reached the point they were asked to walk to
+	 *
+	 * @return false if not tracking, so there is no log
+	 */
+	public boolean logPointDone(float x, float y) {
+		LiveTestLog log = liveTestLog;
+		if (log == null) {
+			return false;
+		}
+		log.logPointDone(x, y, System.currentTimeMillis());
+		return true;
+	}
+
+	/**
+	 * Write the value for each attribute of the data into the feature vector so
+	 * that the classifiers can predict a position. The RSSI values have already
+	 * been written as the scan results were read
+	 */
+	private void setInstanceValues() {
+		sensorFusion.writeTo(pipeline.getFeatures());
+
+		if (!location.writeTo(pipeline.getFeatures(), SystemClock.elapsedRealtime())) {
+			Log.i(TAG, "No recent location");
+		}
+	}
+}
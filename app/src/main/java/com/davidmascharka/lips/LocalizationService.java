@@ -0,0 +1,107 @@
+package com.davidmascharka.lips;
+
+import android.app.Notification;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Binder;
+import android.os.IBinder;
+import android.os.PowerManager;
+
+import com.mascharka.indoorlocalization.R;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Keeps a LocalizationEngine alive independently of any activity.
+ *
+ * Starting the service starts tracking, and it runs in the foreground with a
+ * notification and a partial wake lock until stopService, so positions keep
+ * coming with the screen off. Binding gives access to the engine without
+ * starting it; the models are loaded once when the service is created and
+ * kept until it is destroyed.
+ */
+public class LocalizationService extends Service {
+
+	private static final int NOTIFICATION_ID = 1;
+
+	/**
+	 * Hands the engine to activities in the same process
+	 */
+	public class LocalBinder extends Binder {
+		public LocalizationEngine getEngine() {
+			return engine;
+		}
+	}
+
+	private final IBinder binder = new LocalBinder();
+
+	private LocalizationEngine engine;
+
+	/**
+	 * Keeps the CPU, and so the sensors and scans, running with the screen off
+	 */
+	private PowerManager.WakeLock wakeLock;
+
+	@Override
+	public void onCreate() {
+		super.onCreate();
+		engine = new LocalizationEngine(this);
+		PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+		wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "LIPS tracking");
+		wakeLock.setReferenceCounted(false);
+	}
+
+	@Override
+	public int onStartCommand(Intent intent, int flags, int startId) {
+		if (!engine.isStarted()) {
+			engine.start();
+			wakeLock.acquire();
+			startForeground(NOTIFICATION_ID, buildNotification());
+		}
+		return START_STICKY;
+	}
+
+	private Notification buildNotification() {
+		PendingIntent openTracker = PendingIntent.getActivity(this, 0,
+				new Intent(this, TrackerActivity.class), PendingIntent.FLAG_UPDATE_CURRENT);
+		return new Notification.Builder(this)
+				.setSmallIcon(R.drawable.ic_launcher)
+				.setContentTitle(getString(R.string.app_name))
+				.setContentText(getString(R.string.notification_tracking))
+				.setContentIntent(openTracker)
+				.setOngoing(true)
+				.build();
+	}
+
+	@Override
+	public IBinder onBind(Intent intent) {
+		return binder;
+	}
+
+	@Override
+	public void onDestroy() {
+		stopForeground(true);
+		engine.shutdown();
+		wakeLock.release();
+		super.onDestroy();
+	}
+}
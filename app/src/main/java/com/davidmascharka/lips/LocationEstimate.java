@@ -0,0 +1,165 @@
+package com.davidmascharka.lips;
+
+import android.location.Location;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * The best location fix so far, for the location attributes of each scan.
+ *
+ * Fixes from GPS and the network are offered as they arrive and the estimate
+ * keeps one: a newer fix replaces it unless it is much less accurate, a more
+ * accurate fix replaces it unless it is out of date, and any fix replaces one
+ * that has gone stale. Reading it for a scan is a few field reads; it never
+ * asks the LocationManager. A fix older than MAX_AGE_MILLIS is written to the
+ * features as missing rather than passed off as where the user is.
+ *
+ * Times are SystemClock.elapsedRealtime milliseconds. Not thread safe: offer
+ * and read it on the thread the location updates arrive on.
+ */
+public class LocationEstimate {
+
+	/**
+	 * How often to ask each provider for a fix. Indoors GPS rarely has one and
+	 * the location adds little to the WiFi, so there is no point asking often
+	 */
+	public static final long UPDATE_INTERVAL_MILLIS = 30000;
+
+	/**
+	 * How far the user has to move for an update, in meters
+	 */
+	public static final float UPDATE_DISTANCE_METERS = 10;
+
+	/**
+	 * Oldest fix written to the features
+	 */
+	public static final long MAX_AGE_MILLIS = 5 * 60 * 1000;
+
+	/**
+	 * Age after which any newer fix replaces the current one
+	 */
+	public static final long STALE_MILLIS = 2 * UPDATE_INTERVAL_MILLIS;
+
+	/**
+	 * How much less accurate, in meters, a newer fix may be and still replace
+	 * the current one
+	 */
+	public static final float ACCURACY_SLACK_METERS = 50;
+
+	private boolean hasFix;
+	private double latitude;
+	private double longitude;
+	private float accuracy;
+	private long time;
+
+	/**
+	 * @return whether the fix became the estimate
+	 */
+	public boolean offer(Location location) {
+		return offer(location.getLatitude(), location.getLongitude(), location.getAccuracy(),
+				TimeUnit.NANOSECONDS.toMillis(location.getElapsedRealtimeNanos()));
+	}
+
+	/**
+	 * @param accuracy radius of 68% confidence in meters, 0 if unknown
+	 * @param time when the fix was taken
+	 * @return whether the fix became the estimate
+	 */
+	public boolean offer(double latitude, double longitude, float accuracy, long time) {
+		if (hasFix && !isBetter(accuracy, time)) {
+			return false;
+		}
+		hasFix = true;
+		this.latitude = latitude;
+		this.longitude = longitude;
+		this.accuracy = accuracy;
+		this.time = time;
+		return true;
+	}
+
+	private boolean isBetter(float newAccuracy, long newTime) {
+		long newer = newTime - time;
+		if (newer > STALE_MILLIS) {
+			return true;
+		} else if (newer < -STALE_MILLIS) {
+			return false;
+		}
+		float worse = radius(newAccuracy) - radius(accuracy);
+		if (worse < 0) {
+			return true;
+		}
+		return newer > 0 && worse <= ACCURACY_SLACK_METERS;
+	}
+
+	// An unknown accuracy is treated as the worst
+	private static float radius(float accuracy) {
+		return accuracy > 0 ? accuracy : Float.MAX_VALUE;
+	}
+
+	/**
+	 * @return whether there is a fix no older than MAX_AGE_MILLIS at now
+	 */
+	public boolean hasFix(long now) {
+		return hasFix && now - time <= MAX_AGE_MILLIS;
+	}
+
+	/**
+	 * Writes the fix into the location attributes, or marks them missing if
+	 * there is no recent enough fix
+	 *
+	 * @return whether there was a fix to write
+	 */
+	public boolean writeTo(FeatureVector features, long now) {
+		if (hasFix(now)) {
+			features.setLocation(latitude, longitude, accuracy);
+			return true;
+		}
+		features.setLocationMissing();
+		return false;
+	}
+
+	public double getLatitude() {
+		return latitude;
+	}
+
+	public double getLongitude() {
+		return longitude;
+	}
+
+	public float getAccuracy() {
+		return accuracy;
+	}
+
+	/**
+	 * Age of the fix at now, or -1 if there has never been one
+	 */
+	public long getAge(long now) {
+		return hasFix ? now - time : -1;
+	}
+
+	/**
+	 * Forgets the fix
+	 */
+	public void clear() {
+		hasFix = false;
+	}
+}
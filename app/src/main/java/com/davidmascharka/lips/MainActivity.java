@@ -6,10 +6,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.SharedPreferences;
-import android.content.pm.PackageManager;
-import android.hardware.Sensor;
-import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.location.Location;
 import android.location.LocationListener;
@@ -20,6 +16,9 @@ import android.net.wifi.WifiManager;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.v4.app.ActivityCompat;
 import android.support.v4.app.DialogFragment;
@@ -38,10 +37,7 @@ import android.widget.Toast;
 import com.mascharka.indoorlocalization.R;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.PrintWriter;
-import java.sql.Timestamp;
-import java.util.LinkedHashMap;
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -69,20 +65,23 @@ import java.util.List;
  * Main activity for the IndoorLocalization application
  * 
  * Presents the user a grid of specifiable size to allow the user to collect data
- * Hardcoded WiFi access points for the building/room/area of interest are all that
- * needs to be changed to customize this class for another building
+ * The WiFi access points for each building are listed in assets/access_points,
+ * adding a list there is all that is needed to collect data in another building
  * 
  * Some legacy code present that allows the user to switch buildings -> won't affect
  * the function of the code at all. Choices still come up but don't do anything important
  *
  */
-public class MainActivity extends AppCompatActivity implements SensorEventListener,
+public class MainActivity extends AppCompatActivity implements
 	SelectBuildingDialogFragment.SelectBuildingDialogListener,
 	SelectRoomSizeDialogFragment.SelectRoomSizeDialogListener,
 	ActivityCompat.OnRequestPermissionsResultCallback {
 	
 	// Preferences for storing user options such as room size and building
-	private static final String PREFS_NAME = "IndoorLocalizationPrefs";
+	static final String PREFS_NAME = "IndoorLocalizationPrefs";
+	
+	// Building selected until the user picks one
+	static final String DEFAULT_BUILDING = "Howard";
 	
 	// Code used when the user launches an intent to select a map
 	private static final int GET_MAP_REQUEST = 0;
@@ -90,38 +89,41 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
 	//@author Mahesh Gaya added this tag for debugging purposes
 	private String TAG = "Permission Test: ";
 
-	// Class members for each sensor reading of interest
-	private float accelerometerX;
-	private float accelerometerY;
-	private float accelerometerZ;
-	private float magneticX;
-	private float magneticY;
-	private float magneticZ;
-	private float light;
-	private float rotationX;
-	private float rotationY;
-	private float rotationZ;
-	private float[] rotation;
-	private float[] inclination;
-	private float[] orientation;
+	// Latest readings of each sensor of interest
+	private final SensorFusion sensorFusion = new SensorFusion();
 	
 	private SensorManager sensorManager;
-	private List<Sensor> sensorList;
 	
 	// Members for taking WiFi scans and storing the results
 	private WifiManager wifiManager;
 	private List<ScanResult> scanResults;
-	private LinkedHashMap<String, Integer> wifiReadings;
+	private AccessPointRegistry accessPoints;
+	
+	// The data point being saved and the log it is saved to, kept open while
+	// the activity is in the foreground. Only used on the scan thread
+	private FeatureVector fingerprint;
+	private FingerprintLog fingerprintLog;
 	
 	// Whether the user initiated a scan -> used to determine whether to store the datapoint
 	// since the system or another app can initiate a scan at any time. Don't want to store
 	// those points.
-	private boolean userInitiatedScan;
+	private volatile boolean userInitiatedScan;
+	
+	// Where the user said they were when they started the scan
+	private volatile float readingX;
+	private volatile float readingY;
+	
+	// Scan results, sensor events and location updates arrive on this thread, and
+	// the data points are built and saved on it, so the UI doesn't wait on them
+	private HandlerThread scanThread;
+	private Handler scanHandler;
 	
 	// Members for accessing location data
 	private LocationManager locationManager;
 	private LocationListener locationListener;
-	private Location location;
+	// The best fix so far. Only used on the scan thread
+	private final LocationEstimate location = new LocationEstimate();
+	private PermissionState permissionState;
 
 	// User options
 	private String building;
@@ -137,8 +139,8 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
 	private static final int REQUEST_WIFI = 114;
 	
 	// Will listen for broadcasts from the WiFi manager. When a scan has finished, the
-	// onReceive method will be called which will store a datapoint if the user initiated
-	// the scan.
+	// onReceive method will be called on the scan thread which will store a datapoint if
+	// the user initiated the scan.
 	BroadcastReceiver receiver = new BroadcastReceiver() {
 		@Override
 		public void onReceive(Context context, Intent intent) {
@@ -150,7 +152,8 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
 	protected void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
 
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+		permissionState = PermissionState.get(this);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && !permissionState.isGranted()) {
             requestMyPermissions();
         }
 		
@@ -163,19 +166,19 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
 					.add(R.id.container, new MainFragment()).commit();
 		}
 		
-		rotation = new float[9];
-		inclination = new float[9];
-		orientation = new float[3];
-		
 		sensorManager = (SensorManager) getSystemService(Context.SENSOR_SERVICE);
 		wifiManager = (WifiManager) getSystemService(Context.WIFI_SERVICE);
 		locationManager = (LocationManager) getSystemService(Context.LOCATION_SERVICE);
 		
+		scanThread = new HandlerThread("LIPS scans");
+		scanThread.start();
+		scanHandler = new Handler(scanThread.getLooper());
+		
 		locationListener = new LocationListener() {
 
 			@Override
-			public void onLocationChanged(Location location) {
-				updateLocation(location);
+			public void onLocationChanged(Location fix) {
+				location.offer(fix);
 			}
 
 			@Override
@@ -189,11 +192,23 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
 			public void onProviderDisabled(String provider) {}
 		};
 		
-		wifiReadings = new LinkedHashMap<String, Integer>();
-		resetWifiReadings(building);
+		final String building = this.building;
+		scanHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				loadAccessPoints(building);
+			}
+		});
 		
 		userInitiatedScan = false;
 	}
+	
+	@Override
+	protected void onDestroy() {
+		// Lets the log close first
+		scanThread.quitSafely();
+		super.onDestroy();
+	}
 	/**
 	 * Callback received when a permissions request has been completed.
 	 * @author Mahesh Gaya
@@ -201,6 +216,7 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
 	@Override
 	public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions,
 										   @NonNull int[] grantResults) {
+		permissionState.refresh();
 		if (requestCode == REQUEST_LOCATION){
 			//received permissions for GPS
 			Log.i(TAG, "Received permissions for GPS");
@@ -271,11 +287,8 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
 		grid.setGridSize(roomWidth, roomLength);
 		grid.setDisplayMap(displayMap);
 		
-		// Register to get sensor updates from all the available sensors
-		sensorList = sensorManager.getSensorList(Sensor.TYPE_ALL);
-		for (Sensor sensor : sensorList) {
-			sensorManager.registerListener(this, sensor, SensorManager.SENSOR_DELAY_FASTEST);
-		}
+		// Register to get sensor updates from the sensors in the dataset
+		sensorFusion.register(sensorManager, SensorManager.SENSOR_DELAY_FASTEST, scanHandler);
 		
 		// Enable wifi if it is not
 		if (!wifiManager.isWifiEnabled()) {
@@ -283,50 +296,42 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
 			wifiManager.setWifiEnabled(true);
 		}
 		
-		// Request location updates from gps and the network
-		//@author Mahesh Gaya added permission if-statment
-		if (ActivityCompat.checkSelfPermission(this, android.Manifest.permission.ACCESS_FINE_LOCATION)
-				!= PackageManager.PERMISSION_GRANTED
-				|| ActivityCompat.checkSelfPermission(this, android.Manifest.permission.ACCESS_WIFI_STATE)
-				!= PackageManager.PERMISSION_GRANTED
-				|| ActivityCompat.checkSelfPermission(this, android.Manifest.permission.CHANGE_WIFI_STATE)
-				!= PackageManager.PERMISSION_GRANTED
-				|| ActivityCompat.checkSelfPermission(this, android.Manifest.permission.WRITE_EXTERNAL_STORAGE)
-				!= PackageManager.PERMISSION_GRANTED) {
-			Log.i(TAG, "Permissions have NOT been granted. Requesting permissions.");
-			requestMyPermissions();
+		// Request location updates from gps and the network. The user may have
+		// changed the permissions in the settings while the activity was away
+		if (!permissionState.refresh()) {
+			Log.i(TAG, "Permissions have NOT been granted. Saving data points without location.");
 		} else  {
 			Log.i(TAG, "Permissions have already been granted. Getting location from GPS and Network");
-			locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER,
-					0, 0, locationListener);
-			locationManager.requestLocationUpdates(LocationManager.NETWORK_PROVIDER,
-					0, 0, locationListener);
+			scanHandler.post(new Runnable() {
+				@Override
+				public void run() {
+					requestLocationUpdates(LocationManager.GPS_PROVIDER);
+					requestLocationUpdates(LocationManager.NETWORK_PROVIDER);
+				}
+			});
 		}
 
 		
-		registerReceiver(receiver, new IntentFilter(WifiManager.SCAN_RESULTS_AVAILABLE_ACTION));
+		registerReceiver(receiver, new IntentFilter(WifiManager.SCAN_RESULTS_AVAILABLE_ACTION),
+				null, scanHandler);
 	}
 	
 	@Override
 	public void onPause() {
 		// Stop receiving updates
-		sensorManager.unregisterListener(this);
-		//@author Mahesh Gaya added permission if-statment
-		if (ActivityCompat.checkSelfPermission(this, android.Manifest.permission.ACCESS_FINE_LOCATION)
-				!= PackageManager.PERMISSION_GRANTED
-				|| ActivityCompat.checkSelfPermission(this, android.Manifest.permission.ACCESS_WIFI_STATE)
-				!= PackageManager.PERMISSION_GRANTED
-				|| ActivityCompat.checkSelfPermission(this, android.Manifest.permission.CHANGE_WIFI_STATE)
-				!= PackageManager.PERMISSION_GRANTED
-				|| ActivityCompat.checkSelfPermission(this, android.Manifest.permission.WRITE_EXTERNAL_STORAGE)
-				!= PackageManager.PERMISSION_GRANTED) {
-			Log.i(TAG, "Permissions have NOT been granted. Requesting permissions.");
-			requestMyPermissions();
-		} else  {
-			Log.i(TAG, "Permissions have already been granted. Removing Updates from Location Manager");
-            locationManager.removeUpdates(locationListener);
-        }
+		sensorFusion.unregister(sensorManager);
 		unregisterReceiver(receiver);
+		// After the updates requested in onResume
+		final boolean requestedUpdates = permissionState.isGranted();
+		scanHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				if (requestedUpdates) {
+					locationManager.removeUpdates(locationListener);
+				}
+				closeFingerprintLog();
+			}
+		});
 		
 		savePreferences();
 		
@@ -339,6 +344,16 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
 	 * the BroadcastReceiver.
 	 */
 	public void saveReading(View view) {
+		TextView xposition = (TextView) findViewById(R.id.text_xposition);
+		TextView yposition = (TextView) findViewById(R.id.text_yposition);
+		try {
+			readingX = Float.parseFloat(xposition.getText().toString().substring(3));
+			readingY = Float.parseFloat(yposition.getText().toString().substring(3));
+		} catch (RuntimeException e) {
+			Toast.makeText(this, "There was an error", Toast.LENGTH_SHORT).show();
+			Log.e("ERROR", Log.getStackTraceString(e));
+			return;
+		}
 		userInitiatedScan = true;
 		if (wifiManager.startScan()) {
 			Toast.makeText(this, "Started WiFi scan", Toast.LENGTH_SHORT).show();
@@ -350,13 +365,21 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
 		button.setClickable(false);
 	}
 	
-	// Helper method to keep track of the most up-to-date location
-	private void updateLocation(Location location) {
-		this.location = location;
+	/*
+	 * Starts from the provider's last fix, so a data point saved straight away has
+	 * one, then asks for updates now and then. Runs on the scan thread
+	 */
+	private void requestLocationUpdates(String provider) {
+		Location last = locationManager.getLastKnownLocation(provider);
+		if (last != null) {
+			location.offer(last);
+		}
+		locationManager.requestLocationUpdates(provider, LocationEstimate.UPDATE_INTERVAL_MILLIS,
+				LocationEstimate.UPDATE_DISTANCE_METERS, locationListener, scanThread.getLooper());
 	}
 	
 	/* 
-	 * Writes all the information to the file /sdcard/indoor_localization/dataset.txt
+	 * Saves the data point to /sdcard/indoor_localization/dataset_BUILDING.fpl
 	 * This is called from the BroadcastReceiver. There is one awkward situation as
 	 * a result of doing it this way. This method will be called any time the application
 	 * is running and a WiFi scan is performed. So if another app scans for WiFi or the
@@ -366,115 +389,60 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
 	 * This issue is fixed for now by adding a boolean indicating whether the user initiated
 	 * the scan from this application. Set to true on the button click and false at the end
 	 * of this method. The results will only be saved if the scan was user-initiated
+	 *
+	 * Runs on the scan thread, so anything shown to the user is posted to the UI thread
 	 */
 	private void updateScanResults() {
 		if (userInitiatedScan) {
 			//Toast.makeText(this, "Scan finished", Toast.LENGTH_SHORT).show();
 			
-			resetWifiReadings(building);
+			fingerprint.clearRssi();
 	
 			scanResults = wifiManager.getScanResults();
 			for (ScanResult result : scanResults) {
-				if (wifiReadings.get(result.BSSID) != null) {
-					wifiReadings.put(result.BSSID, result.level);
-				} else { // BSSID wasn't programmed in - notify user
-					//Toast.makeText(this, "This BSSID is new: " + result.BSSID,
-					//		Toast.LENGTH_SHORT).show();
-				}
+				int slot = accessPoints.slotOf(result.BSSID);
+				if (slot != AccessPointRegistry.NOT_REGISTERED) {
+					fingerprint.setRssi(slot, result.level);
+				} // else BSSID isn't listed for this building
 			}
 			
-			// Get a filehandle for /sdcard/indoor_localization/dataset_BUILDING.txt
-			File root = Environment.getExternalStorageDirectory();
-			File dir = new File(root.getAbsolutePath() + "/indoor_localization");
-			dir.mkdirs();
-			File file = new File(dir, "dataset_" + building + ".txt");
-			
 			try {
-				FileOutputStream outputStream = new FileOutputStream(file, true);
-				PrintWriter writer = new PrintWriter(outputStream);
-				
-				writer.print(accelerometerX + "," + accelerometerY + "," + accelerometerZ +
-						"," + magneticX + "," + magneticY + "," + magneticZ + "," + light +
-						"," + rotationX + "," + rotationY + "," + rotationZ + "," +
-						orientation[0] + "," + orientation[1] + "," + orientation[2]);
-	
-				for (String key : wifiReadings.keySet()) {
-					writer.print("," + wifiReadings.get(key));
-    				}
+				sensorFusion.writeTo(fingerprint);
 				
-				if (location != null) {
-					writer.print("," + location.getLatitude() + "," + location.getLongitude() + 
-						"," + location.getAccuracy());
-				} else {
-					//@author Mahesh Gaya added permission if-statment
-					if (ActivityCompat.checkSelfPermission(this, android.Manifest.permission.ACCESS_FINE_LOCATION)
-							!= PackageManager.PERMISSION_GRANTED
-							|| ActivityCompat.checkSelfPermission(this, android.Manifest.permission.ACCESS_WIFI_STATE)
-							!= PackageManager.PERMISSION_GRANTED
-							|| ActivityCompat.checkSelfPermission(this, android.Manifest.permission.CHANGE_WIFI_STATE)
-							!= PackageManager.PERMISSION_GRANTED
-							|| ActivityCompat.checkSelfPermission(this, android.Manifest.permission.WRITE_EXTERNAL_STORAGE)
-							!= PackageManager.PERMISSION_GRANTED) {
-						Log.i(TAG, "Permissions have NOT been granted. Requesting permissions.");
-						requestMyPermissions();
-					} else  {
-						Log.i(TAG, "Permissions have already been granted. Getting last known location from GPS");
-                        location = locationManager.getLastKnownLocation(LocationManager.GPS_PROVIDER);
-                    }
-
-					if (location != null) {
-						writer.print("," + location.getLatitude() + "," +
-								location.getLongitude() + "," + location.getAccuracy());
-					} else {
-						//@author Mahesh Gaya added permission if-statment
-						if (ActivityCompat.checkSelfPermission(this, android.Manifest.permission.ACCESS_FINE_LOCATION)
-								!= PackageManager.PERMISSION_GRANTED
-								|| ActivityCompat.checkSelfPermission(this, android.Manifest.permission.ACCESS_WIFI_STATE)
-								!= PackageManager.PERMISSION_GRANTED
-								|| ActivityCompat.checkSelfPermission(this, android.Manifest.permission.CHANGE_WIFI_STATE)
-								!= PackageManager.PERMISSION_GRANTED
-								|| ActivityCompat.checkSelfPermission(this, android.Manifest.permission.WRITE_EXTERNAL_STORAGE)
-								!= PackageManager.PERMISSION_GRANTED) {
-							Log.i(TAG, "Permissions have NOT been granted. Requesting permissions.");
-							requestMyPermissions();
-						} else  {
-							Log.i(TAG, "Permssions have already been granted. Getting last know location from network");
-                            location = locationManager.getLastKnownLocation(
-                                    LocationManager.NETWORK_PROVIDER);
-                        }
-
-						if (location != null) {
-							writer.print("," + location.getLatitude() + "," +
-									location.getLongitude() + "," + location.getAccuracy());
-						} else {
-							Toast.makeText(this, "Location was null", Toast.LENGTH_SHORT).show();
-							writer.print(",?,?,?");
-						}
-					}
+				if (!location.writeTo(fingerprint, SystemClock.elapsedRealtime())) {
+					showToast("No recent location");
 				}
 				
-				TextView xposition = (TextView) findViewById(R.id.text_xposition);
-				TextView yposition = (TextView) findViewById(R.id.text_yposition);
-				writer.print("," + xposition.getText().toString().substring(3));
-				writer.print("," + yposition.getText().toString().substring(3));
+				FingerprintLog log = openFingerprintLog();
+				log.append(fingerprint, readingX, readingY, System.currentTimeMillis());
+				// Write it out now so the point is in the file when the user is told
+				// it was saved
+				log.flush();
 				
-				writer.print(" %" + (new Timestamp(System.currentTimeMillis())).toString());
-				
-				writer.print("\n\n");
-
-				writer.flush();
-				writer.close();
-				
-				Toast.makeText(this, "Done saving datapoint", Toast.LENGTH_SHORT).show();
+				showToast("Done saving datapoint");
 				userInitiatedScan = false;
 			} catch (Exception e) {
-				Toast.makeText(this, "There was an error", Toast.LENGTH_SHORT).show();
+				showToast("There was an error");
 				Log.e("ERROR", Log.getStackTraceString(e));
 			}
 		}
 		
-		Button button = (Button) findViewById(R.id.button_confirm);
-		button.setClickable(true);
+		runOnUiThread(new Runnable() {
+			@Override
+			public void run() {
+				Button button = (Button) findViewById(R.id.button_confirm);
+				button.setClickable(true);
+			}
+		});
+	}
+	
+	private void showToast(final String message) {
+		runOnUiThread(new Runnable() {
+			@Override
+			public void run() {
+				Toast.makeText(MainActivity.this, message, Toast.LENGTH_SHORT).show();
+			}
+		});
 	}
 
 	@Override
@@ -552,8 +520,15 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
 	}
 	
 	@Override
-	public void onBuildingChanged(String building) {
+	public void onBuildingChanged(final String building) {
 		this.building = building;
+		scanHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				closeFingerprintLog();
+				loadAccessPoints(building);
+			}
+		});
 		
 		TextView buildingText = (TextView) findViewById(R.id.text_building);
 		buildingText.setText("Building: " + building);
@@ -571,24 +546,52 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
 		roomSizeText.setText("Room size: " + roomWidth + " x " + roomLength);
 	}
 	
-	// Resets the data file to blank with the device and order of data as a header
+	// Resets the data file to blank. The file is created again with the next data point
 	private void resetDatafile() {
+		final File file = datasetFile();
+		scanHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				closeFingerprintLog();
+				if (file.exists() && !file.delete()) {
+					showToast("Couldn't reset the datafile");
+				}
+			}
+		});
+	}
+	
+	// /sdcard/indoor_localization/dataset_BUILDING.fpl
+	private File datasetFile() {
 		File root = Environment.getExternalStorageDirectory();
 		File dir = new File(root.getAbsolutePath() + "/indoor_localization");
 		dir.mkdirs();
-		File file = new File(dir, "dataset_" + building + ".txt");
-		try {
-			FileOutputStream outputStream = new FileOutputStream(file);
-			PrintWriter writer = new PrintWriter(outputStream);
-			writer.println("%Data collected by " + android.os.Build.MODEL + 
-					"\n%Format of data: Accelerometer X, Accelerometer Y, Accelerometer Z, " +
-					"Magnetic X, Magnetic Y, Magnetic Z, Light, Rotation X, Rotation Y, " +
-					"Rotation Z, Orientation X, Orientation Y, Orientation Z, WIFI NETWORKS " +
-					"BSSID, Frequency, Signal level, Latitude, Longitude\n\n");
-			writer.flush();
-			writer.close();
-		} catch (Exception e) {
-			e.printStackTrace();
+		return new File(dir, "dataset_" + building + ".fpl");
+	}
+	
+	// Opens the data file of the current building the first time a data point is saved.
+	// Scan thread only, as is closing it
+	private FingerprintLog openFingerprintLog() throws IOException {
+		if (fingerprintLog == null) {
+			String[] bssids = new String[accessPoints.size()];
+			for (int i = 0; i < bssids.length; i++) {
+				bssids[i] = accessPoints.getBssid(i);
+			}
+			fingerprintLog = FingerprintLog.open(datasetFile(), bssids,
+					FingerprintLog.DEFAULT_BATCH_SIZE);
+		}
+		return fingerprintLog;
+	}
+	
+	// Writes out any data points still buffered
+	private void closeFingerprintLog() {
+		if (fingerprintLog != null) {
+			try {
+				fingerprintLog.close();
+			} catch (IOException e) {
+				showToast("There was an error saving the datafile");
+				Log.e("ERROR", Log.getStackTraceString(e));
+			}
+			fingerprintLog = null;
 		}
 	}
 
@@ -604,46 +607,6 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
 		}
 	}
 
-	@Override
-	public void onSensorChanged(SensorEvent event) {
-		/*
-		 * Because Android doesn't let us query a sensor reading whenever we want so
-		 * we have to keep track of the readings at all times. Here we just update
-		 * the class members with the values associated with each reading we're
-		 * interested in.
-		 */
-		switch (event.sensor.getType()) {
-			case Sensor.TYPE_ACCELEROMETER:
-				accelerometerX = event.values[0];
-				accelerometerY = event.values[1];
-				accelerometerZ = event.values[2];
-				break;
-			case Sensor.TYPE_MAGNETIC_FIELD:
-				magneticX = event.values[0];
-				magneticY = event.values[1];
-				magneticZ = event.values[2];
-				break;
-			case Sensor.TYPE_LIGHT:
-				light = event.values[0];
-				break;
-			case Sensor.TYPE_ROTATION_VECTOR:
-				rotationX = event.values[0];
-				rotationY = event.values[1];
-				rotationZ = event.values[2];
-				break;
-			default:
-				break;
-		}
-		
-		SensorManager.getRotationMatrix(rotation, inclination, 
-				new float[] {accelerometerX, accelerometerY, accelerometerZ}, 
-				new float[] {magneticX, magneticY, magneticZ});
-		orientation = SensorManager.getOrientation(rotation, orientation);
-	}
-
-	@Override
-	public void onAccuracyChanged(Sensor sensor, int accuracy) {}
-	
 	private void savePreferences() {
 		SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
 		
@@ -662,58 +625,24 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
 		
 		roomWidth = prefs.getInt(getPackageName() + ".width", 7);
 		roomLength = prefs.getInt(getPackageName() + ".length", 9);
-		building = prefs.getString(getPackageName() + ".building", "Howard");
+		building = prefs.getString(getPackageName() + ".building", DEFAULT_BUILDING);
 		displayMap = prefs.getBoolean(getPackageName() + ".displayMap", false);
 	}
 	
-	// TODO make pretty
-	private void resetWifiReadings(String building) {
-		// Empty out the wifi readings hashmap. Otherwise if you switch buildings in in the
-		// middle of a session the access points for both buildings will be stored to the
-		// data file and mess up the arff file
-		wifiReadings.clear();
-		
-		// The readings ending in :00, :01, :02, and :03 are in the 2.4 GHz band
-		// The readings ending in :0c, :0d, :0e, and :0f are in the 5 GHz band
-		switch (building) {
-			case "Howard":
-				wifiReadings.put("00:00:00:00:00:00", 0);
-
-				wifiReadings.put("00:18:74:88:d4:00", 0);
-				wifiReadings.put("00:18:74:88:d4:01", 0);
-				wifiReadings.put("00:18:74:88:d4:02", 0);
-				wifiReadings.put("00:18:74:88:d4:03", 0);
-				wifiReadings.put("fe:ff:a8:cb:ae:ad", 0);
-
-				break;
-			case "Cowles":
-				wifiReadings.put("00:17:0f:8d:c3:e0", 0);
-				wifiReadings.put("00:17:0f:8d:c3:e1", 0);
-				wifiReadings.put("00:17:0f:8d:c3:e2", 0);
-				wifiReadings.put("00:17:0f:8d:c3:e3", 0);
-
-				break;
-			case "Cartwright":
-
-				break;
-			case "ramadan":
-
-				break;
-			case "lab":
-				wifiReadings.put("00:1E:58:27:0B:8D",0);
-				wifiReadings.put("D8:C7:C8:0C:D2:80",0);
-				wifiReadings.put("E8:DE:27:EF:0E:FE",0);
-				wifiReadings.put("F8:1A:67:C7:E8:40",0);
-				wifiReadings.put("40:E3:D6:1E:98:F0",0);
-				break;
-			case "morb3":
-
-				break;
-			case "3alam":
-				//3alam: put wifi.reading with mac addresses as lab case but with your addresses
-				break
-			default:
-				break;
+	/**
+	 * Reads the access points of the building from assets/access_points. Switching
+	 * buildings replaces them, otherwise the access points of both buildings would
+	 * be stored to the data file and mess up the arff file
+	 */
+	private void loadAccessPoints(String building) {
+		try {
+			accessPoints = AccessPointRegistry.read(
+					getAssets().open("access_points/" + building + ".txt"));
+		} catch (IOException e) {
+			e.printStackTrace();
+			showToast("No access points listed for " + building);
+			accessPoints = new AccessPointRegistry(new String[0]);
 		}
+		fingerprint = new FeatureVector(accessPoints.size());
 	}
 }
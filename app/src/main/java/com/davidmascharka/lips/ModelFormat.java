@@ -0,0 +1,446 @@
+package com.davidmascharka.lips;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Reads and writes the LIPS model files (.lips), a compact replacement for the
+ * Java-serialized Weka models. A file holds one model as flat little-endian
+ * arrays, so it can be memory-mapped (see map) and read with bulk copies
+ * instead of rebuilding an object graph, and it doesn't depend on the Weka
+ * version the model was trained with.
+ *
+ * Layout:
+ *
+ *   "LIPS", int version, int type, then the model:
+ *
+ *   TYPE_KSTAR   int numAttributes, numInstances, numTargets, globalBlend,
+ *                missingMode; float[numInstances] per attribute; then
+ *                float[numInstances] per target
+ *   TYPE_FOREST  int numClasses, numTrees, numNodes; the class names; then
+ *                int[] roots, attributes, left and right children; then
+ *                double[] split points, missing left and right weights and
+ *                numClasses distribution values per node
+ *   TYPE_RBF     int numInputs, numUnits, normalizedBasis (0 or 1); int[] inputs;
+ *                then double bias, classScale, classOffset and double[] missing
+ *                values, input minimums, factors and offsets, centers,
+ *                coefficients and weights
+ *
+ * Arrays are written without a length since it follows from the counts before
+ * them. Strings are an int byte count and UTF-8 bytes. Every double array
+ * starts on a multiple of 8 bytes and everything else on a multiple of 4,
+ * padded with zeros.
+ */
+public class ModelFormat {
+
+	public static final int VERSION = 1;
+
+	public static final int TYPE_KSTAR = 1;
+	public static final int TYPE_FOREST = 2;
+	public static final int TYPE_RBF = 3;
+
+	private static final byte[] MAGIC = {'L', 'I', 'P', 'S'};
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private ModelFormat() {
+	}
+
+	public static void write(KStarPredictor model, OutputStream out) throws IOException {
+		float[][] columns = model.getColumns();
+		float[][] targets = model.getTargets();
+		Output output = new Output(TYPE_KSTAR,
+				20 + 4L * model.getNumInstances() * (columns.length + targets.length));
+		output.putInt(model.getNumAttributes());
+		output.putInt(model.getNumInstances());
+		output.putInt(model.getNumTargets());
+		output.putInt(model.getGlobalBlend());
+		output.putInt(model.getMissingMode());
+		for (float[] column : columns) {
+			output.putFloats(column);
+		}
+		for (float[] target : targets) {
+			output.putFloats(target);
+		}
+		output.writeTo(out);
+	}
+
+	public static void write(CompiledForest model, OutputStream out) throws IOException {
+		int numNodes = model.getNumNodes();
+		Output output = new Output(TYPE_FOREST,
+				64 + 16L * numNodes + 4L * model.getNumTrees()
+						+ 8L * numNodes * (3 + model.getNumClasses()));
+		output.putInt(model.getNumClasses());
+		output.putInt(model.getNumTrees());
+		output.putInt(numNodes);
+		for (String name : model.getClassNames()) {
+			output.putString(name);
+		}
+		output.putInts(model.getRoots());
+		output.putInts(model.getAttributes());
+		output.putInts(model.getLeftChildren());
+		output.putInts(model.getRightChildren());
+		output.putDoubles(model.getSplitPoints());
+		output.putDoubles(model.getMissingLeft());
+		output.putDoubles(model.getMissingRight());
+		output.putDoubles(model.getDistributions());
+		output.writeTo(out);
+	}
+
+	public static void write(RbfPredictor model, OutputStream out) throws IOException {
+		int numInputs = model.getNumInputs();
+		int numUnits = model.getNumUnits();
+		Output output = new Output(TYPE_RBF,
+				48 + 4L * numInputs + 8L * (4 * numInputs + 2 * numUnits * numInputs + numUnits));
+		output.putInt(numInputs);
+		output.putInt(numUnits);
+		output.putInt(model.isNormalizedBasis() ? 1 : 0);
+		output.putInts(model.getInputs());
+		output.putDoubles(new double[] {
+				model.getBias(), model.getClassScale(), model.getClassOffset()
+		});
+		output.putDoubles(model.getMissingValues());
+		output.putDoubles(model.getInputMin());
+		output.putDoubles(model.getInputFactor());
+		output.putDoubles(model.getInputOffset());
+		output.putDoubles(model.getCenters());
+		output.putDoubles(model.getCoefficients());
+		output.putDoubles(model.getWeights());
+		output.writeTo(out);
+	}
+
+	/**
+	 * The type of the model in the file. None of the read methods move the
+	 * buffer's position
+	 *
+	 * @throws IOException if the buffer doesn't hold a LIPS model file
+	 */
+	public static int readType(ByteBuffer buffer) throws IOException {
+		return new Input(buffer).type;
+	}
+
+	/**
+	 * Reads whichever model the file holds
+	 *
+	 * @return a KStarPredictor, CompiledForest or RbfPredictor
+	 */
+	public static Object read(ByteBuffer buffer) throws IOException {
+		switch (readType(buffer)) {
+			case TYPE_KSTAR:
+				return readKStar(buffer);
+			case TYPE_FOREST:
+				return readForest(buffer);
+			default:
+				return readRbf(buffer);
+		}
+	}
+
+	public static KStarPredictor readKStar(ByteBuffer buffer) throws IOException {
+		Input input = new Input(buffer);
+		input.expectType(TYPE_KSTAR);
+		try {
+			int numAttributes = input.getCount();
+			int numInstances = input.getCount();
+			int numTargets = input.getCount();
+			int globalBlend = input.getInt();
+			int missingMode = input.getInt();
+			float[][] columns = new float[numAttributes][];
+			for (int a = 0; a < numAttributes; a++) {
+				columns[a] = input.getFloats(numInstances);
+			}
+			float[][] targets = new float[numTargets][];
+			for (int t = 0; t < numTargets; t++) {
+				targets[t] = input.getFloats(numInstances);
+			}
+			return new KStarPredictor(columns, targets, globalBlend, missingMode);
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Truncated model file");
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Corrupt model file: " + e.getMessage());
+		}
+	}
+
+	public static CompiledForest readForest(ByteBuffer buffer) throws IOException {
+		Input input = new Input(buffer);
+		input.expectType(TYPE_FOREST);
+		try {
+			int numClasses = input.getCount();
+			int numTrees = input.getCount();
+			int numNodes = input.getCount();
+			String[] classNames = new String[numClasses];
+			for (int c = 0; c < numClasses; c++) {
+				classNames[c] = input.getString();
+			}
+			int[] roots = input.getInts(numTrees);
+			int[] attributes = input.getInts(numNodes);
+			int[] left = input.getInts(numNodes);
+			int[] right = input.getInts(numNodes);
+			double[] splitPoints = input.getDoubles(numNodes);
+			double[] missingLeft = input.getDoubles(numNodes);
+			double[] missingRight = input.getDoubles(numNodes);
+			double[] distributions = input.getDoubles(Input.product(numNodes, numClasses));
+			return new CompiledForest(classNames, roots, attributes, splitPoints, left, right,
+					missingLeft, missingRight, distributions);
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Truncated model file");
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Corrupt model file: " + e.getMessage());
+		}
+	}
+
+	public static RbfPredictor readRbf(ByteBuffer buffer) throws IOException {
+		Input input = new Input(buffer);
+		input.expectType(TYPE_RBF);
+		try {
+			int numInputs = input.getCount();
+			int numUnits = input.getCount();
+			boolean normalizedBasis = input.getInt() != 0;
+			int[] inputs = input.getInts(numInputs);
+			double[] output = input.getDoubles(3);
+			double[] missingValues = input.getDoubles(numInputs);
+			double[] inputMin = input.getDoubles(numInputs);
+			double[] inputFactor = input.getDoubles(numInputs);
+			double[] inputOffset = input.getDoubles(numInputs);
+			double[] centers = input.getDoubles(Input.product(numUnits, numInputs));
+			double[] coefficients = input.getDoubles(Input.product(numUnits, numInputs));
+			double[] weights = input.getDoubles(numUnits);
+			return new RbfPredictor(inputs, missingValues, inputMin, inputFactor, inputOffset,
+					centers, coefficients, weights, output[0], normalizedBasis, output[1], output[2]);
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Truncated model file");
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Corrupt model file: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Maps part of a file into memory, for example an uncompressed asset given
+	 * the start offset and length from its AssetFileDescriptor
+	 */
+	public static ByteBuffer map(FileChannel channel, long offset, long length) throws IOException {
+		return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+	}
+
+	/**
+	 * Reads a whole stream into a buffer, for files that can't be mapped such as
+	 * compressed assets
+	 */
+	public static ByteBuffer readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] chunk = new byte[16 * 1024];
+		int read;
+		while ((read = in.read(chunk)) != -1) {
+			bytes.write(chunk, 0, read);
+		}
+		return ByteBuffer.wrap(bytes.toByteArray());
+	}
+
+	/**
+	 * Builds a file in memory
+	 */
+	private static class Output {
+
+		private ByteBuffer buffer;
+
+		Output(int type, long sizeHint) {
+			buffer = ByteBuffer.allocate((int) Math.min(Integer.MAX_VALUE - 8, 16 + sizeHint))
+					.order(ByteOrder.LITTLE_ENDIAN);
+			buffer.put(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putInt(type);
+		}
+
+		void putInt(int value) {
+			ensure(4);
+			buffer.putInt(value);
+		}
+
+		void putInts(int[] values) {
+			ensure(4L * values.length);
+			buffer.asIntBuffer().put(values);
+			buffer.position(buffer.position() + 4 * values.length);
+		}
+
+		void putFloats(float[] values) {
+			ensure(4L * values.length);
+			buffer.asFloatBuffer().put(values);
+			buffer.position(buffer.position() + 4 * values.length);
+		}
+
+		void putDoubles(double[] values) {
+			align(8);
+			ensure(8L * values.length);
+			buffer.asDoubleBuffer().put(values);
+			buffer.position(buffer.position() + 8 * values.length);
+		}
+
+		void putString(String value) {
+			byte[] bytes = value.getBytes(UTF_8);
+			putInt(bytes.length);
+			ensure(bytes.length);
+			buffer.put(bytes);
+			align(4);
+		}
+
+		private void align(int alignment) {
+			int padding = (alignment - buffer.position() % alignment) % alignment;
+			ensure(padding);
+			for (int i = 0; i < padding; i++) {
+				buffer.put((byte) 0);
+			}
+		}
+
+		private void ensure(long bytes) {
+			if (buffer.remaining() >= bytes) {
+				return;
+			}
+			long needed = buffer.position() + bytes;
+			if (needed > Integer.MAX_VALUE - 8) {
+				throw new IllegalArgumentException("Model is too large");
+			}
+			int capacity = (int) Math.min(Integer.MAX_VALUE - 8,
+					Math.max(needed, 2L * buffer.capacity()));
+			ByteBuffer grown = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.flip();
+			grown.put(buffer);
+			buffer = grown;
+		}
+
+		void writeTo(OutputStream out) throws IOException {
+			out.write(buffer.array(), 0, buffer.position());
+			out.flush();
+		}
+	}
+
+	/**
+	 * Reads a file from a buffer, starting at the buffer's position. Works on a
+	 * slice so the caller's buffer is left as it was
+	 */
+	private static class Input {
+
+		private final ByteBuffer buffer;
+		final int type;
+
+		Input(ByteBuffer source) throws IOException {
+			buffer = source.slice().order(ByteOrder.LITTLE_ENDIAN);
+			if (buffer.remaining() < 12) {
+				throw new IOException("Not a LIPS model file");
+			}
+			for (byte b : MAGIC) {
+				if (buffer.get() != b) {
+					throw new IOException("Not a LIPS model file");
+				}
+			}
+			int version = buffer.getInt();
+			if (version < 1 || version > VERSION) {
+				throw new IOException("Unsupported model file version " + version);
+			}
+			type = buffer.getInt();
+			if (type < TYPE_KSTAR || type > TYPE_RBF) {
+				throw new IOException("Unknown model type " + type);
+			}
+		}
+
+		void expectType(int expected) throws IOException {
+			if (type != expected) {
+				throw new IOException("Expected a model of type " + expected + " but found " + type);
+			}
+		}
+
+		int getInt() {
+			return buffer.getInt();
+		}
+
+		/**
+		 * A size, which can't be negative or more than what is left of the file
+		 */
+		int getCount() throws IOException {
+			int count = buffer.getInt();
+			if (count < 0 || count > buffer.remaining()) {
+				throw new IOException("Corrupt model file: bad count " + count);
+			}
+			return count;
+		}
+
+		/**
+		 * Size of a two dimensional array, checked for overflow
+		 */
+		static int product(int rows, int columns) throws IOException {
+			long size = (long) rows * columns;
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("Corrupt model file: array too large");
+			}
+			return (int) size;
+		}
+
+		int[] getInts(int count) throws IOException {
+			checkRemaining(4L * count);
+			int[] values = new int[count];
+			buffer.asIntBuffer().get(values);
+			buffer.position(buffer.position() + 4 * count);
+			return values;
+		}
+
+		float[] getFloats(int count) throws IOException {
+			checkRemaining(4L * count);
+			float[] values = new float[count];
+			buffer.asFloatBuffer().get(values);
+			buffer.position(buffer.position() + 4 * count);
+			return values;
+		}
+
+		double[] getDoubles(int count) throws IOException {
+			align(8);
+			checkRemaining(8L * count);
+			double[] values = new double[count];
+			buffer.asDoubleBuffer().get(values);
+			buffer.position(buffer.position() + 8 * count);
+			return values;
+		}
+
+		String getString() throws IOException {
+			int length = getCount();
+			byte[] bytes = new byte[length];
+			buffer.get(bytes);
+			align(4);
+			return new String(bytes, UTF_8);
+		}
+
+		private void align(int alignment) {
+			// Relative to the start of the file, which is where the writer counted from
+			int position = buffer.position();
+			buffer.position(position + (alignment - position % alignment) % alignment);
+		}
+
+		private void checkRemaining(long bytes) throws IOException {
+			if (bytes > buffer.remaining()) {
+				throw new IOException("Truncated model file");
+			}
+		}
+	}
+}
@@ -0,0 +1,213 @@
+package com.davidmascharka.lips;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Loads models by name in the background the first time they are asked for and
+ * keeps them for later requests.
+ *
+ * Loads run on the executor passed in, so several registries sharing a
+ * single-threaded executor (see newLoaderExecutor) load one model at a time in
+ * the order they were requested and never deserialize everything at once.
+ *
+ * With a limit on the number of models, the least recently used model is dropped
+ * when another one is requested. A dropped model is simply loaded again the next
+ * time it is needed.
+ *
+ * All methods may be called from any thread.
+ */
+public class ModelRegistry<T> {
+
+	/**
+	 * Reads the model with the given name. Called on the loader thread
+	 */
+	public interface Loader<T> {
+		T load(String name) throws Exception;
+	}
+
+	/**
+	 * Told about each load as it finishes, on the loader thread
+	 */
+	public interface Listener<T> {
+		void onModelLoaded(String name, T model);
+		void onModelFailed(String name, Exception e);
+	}
+
+	private final ExecutorService executor;
+	private final Loader<T> loader;
+	private final int maxModels;
+	private volatile Listener<T> listener;
+
+	// Access ordered, so the eldest entry is the least recently used model
+	private final LinkedHashMap<String, Future<T>> models;
+
+	/**
+	 * @param executor runs the loads
+	 * @param loader reads a model given its name
+	 * @param maxModels most models to keep at once, 0 for no limit
+	 */
+	public ModelRegistry(ExecutorService executor, Loader<T> loader, final int maxModels) {
+		if (maxModels < 0) {
+			throw new IllegalArgumentException("Model limit can't be negative");
+		}
+		this.executor = executor;
+		this.loader = loader;
+		this.maxModels = maxModels;
+		models = new LinkedHashMap<String, Future<T>>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Future<T>> eldest) {
+				if (maxModels > 0 && size() > maxModels) {
+					// A load that hasn't started yet doesn't need to happen
+					eldest.getValue().cancel(false);
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	public void setListener(Listener<T> listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Starts loading the model unless it is already loaded or loading
+	 *
+	 * @return the pending or finished load
+	 */
+	public synchronized Future<T> request(final String name) {
+		Future<T> model = models.get(name);
+		if (model == null) {
+			model = executor.submit(new Callable<T>() {
+				@Override
+				public T call() throws Exception {
+					Listener<T> listener = ModelRegistry.this.listener;
+					T loaded;
+					try {
+						loaded = loader.load(name);
+					} catch (Exception e) {
+						if (listener != null) {
+							listener.onModelFailed(name, e);
+						}
+						throw e;
+					}
+					if (listener != null) {
+						listener.onModelLoaded(name, loaded);
+					}
+					return loaded;
+				}
+			});
+			models.put(name, model);
+		}
+		return model;
+	}
+
+	/**
+	 * Never blocks. Starts loading the model if it hasn't been requested yet.
+	 * A model that failed to load isn't tried again until clear is called
+	 *
+	 * @return the model, or null if it is still loading or could not be loaded
+	 */
+	public T getIfLoaded(String name) {
+		Future<T> model = request(name);
+		if (!model.isDone() || model.isCancelled()) {
+			return null;
+		}
+		try {
+			return model.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Waits for the model to load, loading it if needed
+	 *
+	 * @throws ExecutionException if the loader failed
+	 */
+	public T get(String name) throws InterruptedException, ExecutionException {
+		return request(name).get();
+	}
+
+	/**
+	 * Whether the model has finished loading successfully
+	 */
+	public synchronized boolean isLoaded(String name) {
+		Future<T> model = models.get(name);
+		if (model == null || !model.isDone() || model.isCancelled()) {
+			return false;
+		}
+		try {
+			model.get();
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (ExecutionException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Number of models loaded or loading
+	 */
+	public synchronized int size() {
+		return models.size();
+	}
+
+	/**
+	 * Drops every model and cancels the loads that haven't started. The executor
+	 * is left running since it may be shared
+	 */
+	public synchronized void clear() {
+		for (Future<T> model : models.values()) {
+			model.cancel(false);
+		}
+		models.clear();
+	}
+
+	/**
+	 * A single low priority thread for loading models, so loads happen in the
+	 * order they were requested and don't compete with the UI for the CPU
+	 */
+	public static ExecutorService newLoaderExecutor() {
+		return Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "LIPS model loader");
+				thread.setPriority(Thread.MIN_PRIORITY);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+}
@@ -0,0 +1,181 @@
+package com.davidmascharka.lips;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import weka.classifiers.lazy.KStar;
+import weka.classifiers.trees.RandomForest;
+import weka.core.SerializationHelper;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * The models of a building, laid out as in the app assets, and how the tracker
+ * loads each of them. The tracker reads them out of the APK and the tools out
+ * of a directory (see Directory), so replays predict with exactly the models
+ * the phone would.
+ *
+ * Partition models and the partition classifier are read from the LIPS model
+ * files the tools ModelConverter writes when there are any, and from the Weka
+ * models otherwise. A converted model that can't be read is passed to
+ * onUnreadable and the Weka model is used instead.
+ *
+ * The loads take seconds, so call them off the main thread.
+ */
+public abstract class ModelStore {
+
+	public static final String BUILDING_X = "classifier_x_kstar.model";
+	public static final String BUILDING_Y = "classifier_y_kstar.model";
+
+	/**
+	 * Opens a model file
+	 *
+	 * @param name path relative to the top of the models, such as
+	 *             5partition/model_x_A.model
+	 * @throws FileNotFoundException if there is no such file
+	 */
+	protected abstract InputStream open(String name) throws IOException;
+
+	/**
+	 * Maps a whole model file into memory
+	 *
+	 * @throws FileNotFoundException if there is no such file
+	 */
+	protected abstract ByteBuffer map(String name) throws IOException;
+
+	/**
+	 * Told when a converted model is there but can't be read, before the Weka
+	 * model is used instead. Does nothing by default
+	 */
+	protected void onUnreadable(String name, IOException e) {}
+
+	/**
+	 * Loads the K* models for the whole building, combined so one pass over the
+	 * fingerprints predicts both coordinates
+	 *
+	 * @throws FileNotFoundException if the building has no models
+	 */
+	public PositionPredictor loadBuildingPredictor() throws Exception {
+		return WekaModels.toPositionPredictor(readKStar(BUILDING_X), readKStar(BUILDING_Y));
+	}
+
+	/**
+	 * Loads the classifier that predicts the partition of a scan
+	 *
+	 * @param scheme directory of the partitioning scheme, such as 5partition
+	 */
+	public CompiledForest loadPartitionForest(String scheme) throws Exception {
+		try {
+			return ModelFormat.readForest(map(scheme + "/model_randomforest.lips"));
+		} catch (FileNotFoundException e) {
+			// Not converted
+		} catch (IOException e) {
+			onUnreadable(scheme + "/model_randomforest.lips", e);
+		}
+		return WekaModels.toCompiledForest((RandomForest) read(scheme + "/model_randomforest.model"));
+	}
+
+	/**
+	 * Loads the models of one partition
+	 */
+	public PositionPredictor loadPartitionPredictor(String scheme, String partition)
+			throws Exception {
+		PositionPredictor predictor = loadConvertedPredictor(scheme, partition);
+		if (predictor != null) {
+			return predictor;
+		}
+		return WekaModels.toPositionPredictor(
+				readKStar(scheme + "/model_x_" + partition + ".model"),
+				readKStar(scheme + "/model_y_" + partition + ".model"));
+	}
+
+	/**
+	 * Reads the converted models of a partition, either one model predicting
+	 * both coordinates or one model per coordinate
+	 *
+	 * @return null if the partition has no converted models or they can't be read
+	 */
+	private PositionPredictor loadConvertedPredictor(String scheme, String partition) {
+		String fused = scheme + "/model_" + partition + ".lips";
+		try {
+			return ModelFormat.readKStar(map(fused));
+		} catch (FileNotFoundException e) {
+			// Not fused, try the separate models
+		} catch (IOException e) {
+			onUnreadable(fused, e);
+		}
+		String x = scheme + "/model_x_" + partition + ".lips";
+		String y = scheme + "/model_y_" + partition + ".lips";
+		try {
+			return new CoordinatePair((CoordinatePredictor) ModelFormat.read(map(x)),
+					(CoordinatePredictor) ModelFormat.read(map(y)));
+		} catch (FileNotFoundException e) {
+			return null;
+		} catch (IOException e) {
+			onUnreadable(x + ", " + y, e);
+			return null;
+		}
+	}
+
+	private KStar readKStar(String name) throws Exception {
+		return (KStar) read(name);
+	}
+
+	private Object read(String name) throws Exception {
+		InputStream in = open(name);
+		try {
+			return SerializationHelper.read(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Models in a directory laid out like the app assets
+	 */
+	public static class Directory extends ModelStore {
+
+		private final File directory;
+
+		public Directory(File directory) {
+			this.directory = directory;
+		}
+
+		@Override
+		protected InputStream open(String name) throws IOException {
+			return new FileInputStream(new File(directory, name));
+		}
+
+		@Override
+		protected ByteBuffer map(String name) throws IOException {
+			RandomAccessFile file = new RandomAccessFile(new File(directory, name), "r");
+			try {
+				return ModelFormat.map(file.getChannel(), 0, file.length());
+			} finally {
+				file.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,313 @@
+package com.davidmascharka.lips;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Tracks the position with a cloud of particles, each a guess at where the user
+ * is. Unlike KalmanFilter the cloud can take any shape, such as strung out
+ * along a corridor, at the cost of work per particle.
+ *
+ * The particles are kept in parallel arrays rather than as objects, so each
+ * pass over them reads memory in order, and a step or fix allocates nothing.
+ * Resampling writes into a second set of arrays and swaps them in.
+ *
+ * A step moves every particle by the step with its own error along and across
+ * it, using the same noise model as KalmanFilter. A fix weighs each particle by
+ * how likely the fix is from there, and once the weight has gathered on too few
+ * particles they are resampled systematically. Fixes no particle explains are
+ * rejected, and as with KalmanFilter the cloud starts over around the next fix
+ * after MAX_REJECTED_FIXES in a row.
+ */
+public class ParticleFilter implements TrackingFilter {
+
+	// Standard deviation of a step's length as a share of it, and of its heading
+	// in radians
+	private static final float STEP_LENGTH_ERROR = 0.15f;
+	private static final float STEP_HEADING_ERROR = 0.3f;
+
+	// Squared distance, in fix standard deviations, beyond which no particle is
+	// taken to explain a fix
+	private static final float GATE = 13.8f;
+
+	/**
+	 * Fixes rejected in a row before the filter starts over from the next one
+	 */
+	public static final int MAX_REJECTED_FIXES = 2;
+
+	private final int numParticles;
+	private final float width;
+	private final float height;
+	private final float fixError;
+	private final float fixVariance;
+	private final float driftVariance;
+
+	private float[] x;
+	private float[] y;
+	private final float[] weight;
+	// Where resampling writes before being swapped with x and y
+	private float[] resampledX;
+	private float[] resampledY;
+
+	private boolean initialized;
+	private float meanX;
+	private float meanY;
+	private long lastFixTime;
+	private int rejected;
+	private long random;
+
+	/**
+	 * @param numParticles more particles follow the user more closely, at a cost
+	 *                     in time per step and fix proportional to their number
+	 * @param width the grid's width, particles are kept within [0, width]
+	 * @param height the grid's height, particles are kept within [0, height]
+	 * @param fixError standard deviation of a predicted position, in grid units
+	 * @param drift standard deviation of the movement in a second that no step
+	 *              accounts for, in grid units
+	 * @param seed starts the random numbers, so runs can be repeated
+	 */
+	public ParticleFilter(int numParticles, float width, float height, float fixError,
+						  float drift, long seed) {
+		if (numParticles < 1) {
+			throw new IllegalArgumentException("At least one particle is needed");
+		}
+		this.numParticles = numParticles;
+		this.width = width;
+		this.height = height;
+		this.fixError = fixError;
+		fixVariance = fixError * fixError;
+		driftVariance = drift * drift;
+		x = new float[numParticles];
+		y = new float[numParticles];
+		weight = new float[numParticles];
+		resampledX = new float[numParticles];
+		resampledY = new float[numParticles];
+		// xorshift can't start from 0
+		random = seed == 0 ? 0x9E3779B97F4A7C15L : seed;
+	}
+
+	public int getNumParticles() {
+		return numParticles;
+	}
+
+	@Override
+	public boolean isInitialized() {
+		return initialized;
+	}
+
+	@Override
+	public void step(float dx, float dy) {
+		if (!initialized) {
+			return;
+		}
+		float[] x = this.x;
+		float[] y = this.y;
+		for (int i = 0; i < numParticles; i++) {
+			// Scaling the step and adding a share of it across the step is the
+			// small angle form of rotating it
+			float along = 1 + STEP_LENGTH_ERROR * nextGaussian();
+			float across = STEP_HEADING_ERROR * nextGaussian();
+			x[i] = clamp(x[i] + along * dx - across * dy, width);
+			y[i] = clamp(y[i] + along * dy + across * dx, height);
+		}
+		updateMean();
+	}
+
+	@Override
+	public void update(float fixX, float fixY, long time) {
+		if (!initialized || rejected >= MAX_REJECTED_FIXES) {
+			start(fixX, fixY, time);
+			return;
+		}
+		float elapsed = Math.max(0, (time - lastFixTime) / 1e9f);
+		lastFixTime = time;
+		float spread = (float) Math.sqrt(driftVariance * elapsed);
+
+		float[] x = this.x;
+		float[] y = this.y;
+		float[] weight = this.weight;
+		float nearest = Float.POSITIVE_INFINITY;
+		for (int i = 0; i < numParticles; i++) {
+			if (spread > 0) {
+				x[i] = clamp(x[i] + spread * nextGaussian(), width);
+				y[i] = clamp(y[i] + spread * nextGaussian(), height);
+			}
+			float ex = x[i] - fixX;
+			float ey = y[i] - fixY;
+			nearest = Math.min(nearest, ex * ex + ey * ey);
+		}
+		if (nearest > GATE * fixVariance) {
+			rejected++;
+			updateMean();
+			return;
+		}
+		rejected = 0;
+
+		float scale = -0.5f / fixVariance;
+		double total = 0.0;
+		for (int i = 0; i < numParticles; i++) {
+			float ex = x[i] - fixX;
+			float ey = y[i] - fixY;
+			float w = weight[i] * (float) Math.exp(scale * (ex * ex + ey * ey));
+			weight[i] = w;
+			total += w;
+		}
+		if (!(total > 0)) {
+			// Every weight underflowed, so all particles are equally unlikely
+			fill(weight, 1.0f / numParticles);
+			updateMean();
+			return;
+		}
+
+		float normalise = (float) (1.0 / total);
+		double sumOfSquares = 0.0;
+		for (int i = 0; i < numParticles; i++) {
+			float w = weight[i] * normalise;
+			weight[i] = w;
+			sumOfSquares += w * w;
+		}
+		// Resample once fewer than half the particles effectively carry weight
+		if (1.0 / sumOfSquares < numParticles / 2.0) {
+			resample();
+		}
+		updateMean();
+	}
+
+	/**
+	 * Systematic resampling: one random offset, then numParticles evenly spaced
+	 * picks along the cumulative weights, so a particle with weight w is copied
+	 * floor(w * numParticles) or one more times
+	 */
+	private void resample() {
+		float[] x = this.x;
+		float[] y = this.y;
+		float[] weight = this.weight;
+		float[] toX = resampledX;
+		float[] toY = resampledY;
+		// In double, as float sums drift over a hundred thousand weights
+		double offset = nextFloat();
+		double cumulative = weight[0];
+		int from = 0;
+		for (int i = 0; i < numParticles; i++) {
+			double pick = (i + offset) / numParticles;
+			while (pick > cumulative && from < numParticles - 1) {
+				from++;
+				cumulative += weight[from];
+			}
+			toX[i] = x[from];
+			toY[i] = y[from];
+		}
+		resampledX = x;
+		resampledY = y;
+		this.x = toX;
+		this.y = toY;
+		fill(weight, 1.0f / numParticles);
+	}
+
+	private void start(float fixX, float fixY, long time) {
+		for (int i = 0; i < numParticles; i++) {
+			x[i] = clamp(fixX + fixError * nextGaussian(), width);
+			y[i] = clamp(fixY + fixError * nextGaussian(), height);
+		}
+		fill(weight, 1.0f / numParticles);
+		lastFixTime = time;
+		rejected = 0;
+		initialized = true;
+		updateMean();
+	}
+
+	private void updateMean() {
+		double sumX = 0.0;
+		double sumY = 0.0;
+		double total = 0.0;
+		for (int i = 0; i < numParticles; i++) {
+			sumX += weight[i] * x[i];
+			sumY += weight[i] * y[i];
+			total += weight[i];
+		}
+		meanX = (float) (sumX / total);
+		meanY = (float) (sumY / total);
+	}
+
+	private static void fill(float[] values, float value) {
+		for (int i = 0; i < values.length; i++) {
+			values[i] = value;
+		}
+	}
+
+	private static float clamp(float value, float max) {
+		return Math.max(0, Math.min(value, max));
+	}
+
+	/**
+	 * Uniform in [0, 1), from a xorshift64* generator. java.util.Random would
+	 * cost an atomic update per number
+	 */
+	private float nextFloat() {
+		long r = random;
+		r ^= r >>> 12;
+		r ^= r << 25;
+		r ^= r >>> 27;
+		random = r;
+		return ((r * 2685821657736338717L) >>> 40) * 0x1.0p-24f;
+	}
+
+	/**
+	 * Roughly standard normal: the sum of four uniforms, centred and scaled to
+	 * unit variance. Its tails stop at 3.5 standard deviations, which matters
+	 * little for step noise and needs no logarithms or square roots
+	 */
+	private float nextGaussian() {
+		return (nextFloat() + nextFloat() + nextFloat() + nextFloat() - 2.0f) * 1.7320508f;
+	}
+
+	/**
+	 * The weighted mean of the particles
+	 */
+	@Override
+	public float getX() {
+		return meanX;
+	}
+
+	@Override
+	public float getY() {
+		return meanY;
+	}
+
+	// The particles themselves, for tests and drawing. Not copies, and replaced
+	// by resampling
+
+	float[] getParticleX() {
+		return x;
+	}
+
+	float[] getParticleY() {
+		return y;
+	}
+
+	float[] getWeights() {
+		return weight;
+	}
+
+	@Override
+	public void reset() {
+		initialized = false;
+		rejected = 0;
+	}
+}
@@ -0,0 +1,208 @@
+package com.davidmascharka.lips;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Two stage localization: a router decides which partitions of the building the
+ * scan came from, then each partition's own predictor finds the position using
+ * only the fingerprints recorded in it.
+ *
+ * With more than one partition allowed, the positions from the most probable
+ * partitions are blended by their probability, which keeps the position from
+ * jumping when the user walks across a partition boundary. With one it is a
+ * hard choice of the most probable partition.
+ *
+ * Partition predictors are taken from a ModelRegistry, so one that is still
+ * loading is skipped and the remaining partitions share its weight. If none of
+ * the chosen partitions has a predictor yet, predict leaves the position as it
+ * was and returns false.
+ *
+ * A predictor must only be used from one thread at a time.
+ */
+public class PartitionedPositionPredictor {
+
+	/**
+	 * Finds the probability of each partition for the attribute values of a scan
+	 */
+	public interface Router {
+		int getNumPartitions();
+
+		/**
+		 * The name the partition's predictor is registered under
+		 */
+		String getPartitionName(int partition);
+
+		/**
+		 * @param probabilities receives getNumPartitions() values
+		 */
+		void distribution(double[] features, double[] probabilities);
+	}
+
+	private final Router router;
+	private final ModelRegistry<PositionPredictor> predictors;
+	private volatile int maxPartitions;
+
+	// Working memory for a single prediction
+	private final double[] probabilities;
+	private final int[] chosen;
+	private final double[] partitionPosition = new double[2];
+
+	private int lastPartition = -1;
+	private long lastRoutingNanos;
+
+	/**
+	 * @param router gives the probability of each partition
+	 * @param predictors predictor for each partition, by partition name
+	 * @param maxPartitions most partitions blended into one position, 1 for
+	 *                      only the most probable partition
+	 */
+	public PartitionedPositionPredictor(Router router, ModelRegistry<PositionPredictor> predictors,
+										int maxPartitions) {
+		this.router = router;
+		this.predictors = predictors;
+		probabilities = new double[router.getNumPartitions()];
+		chosen = new int[router.getNumPartitions()];
+		setMaxPartitions(maxPartitions);
+	}
+
+	/**
+	 * Routes with the class distribution of a partition classifier whose class
+	 * values are the partition names
+	 */
+	public static Router forestRouter(final CompiledForest forest) {
+		return new Router() {
+			@Override
+			public int getNumPartitions() {
+				return forest.getNumClasses();
+			}
+
+			@Override
+			public String getPartitionName(int partition) {
+				return forest.getClassName(partition);
+			}
+
+			@Override
+			public void distribution(double[] features, double[] probabilities) {
+				forest.distribution(features, probabilities);
+			}
+		};
+	}
+
+	/**
+	 * May be called from any thread, takes effect from the next prediction
+	 */
+	public void setMaxPartitions(int maxPartitions) {
+		if (maxPartitions < 1) {
+			throw new IllegalArgumentException("At least one partition is needed");
+		}
+		this.maxPartitions = maxPartitions;
+	}
+
+	public int getMaxPartitions() {
+		return maxPartitions;
+	}
+
+	/**
+	 * Most probable partition in the last prediction, -1 before the first one or
+	 * if the router had no answer
+	 */
+	public int getLastPartition() {
+		return lastPartition;
+	}
+
+	/**
+	 * How long the router took in the last prediction, in nanoseconds
+	 */
+	public long getLastRoutingNanos() {
+		return lastRoutingNanos;
+	}
+
+	public Router getRouter() {
+		return router;
+	}
+
+	/**
+	 * @param features attribute values laid out as in FeatureVector
+	 * @param position receives the predicted x in [0] and y in [1]
+	 * @return false if no predictor was ready, leaving position unchanged
+	 */
+	public boolean predict(double[] features, double[] position) {
+		long routingStart = System.nanoTime();
+		router.distribution(features, probabilities);
+		lastRoutingNanos = System.nanoTime() - routingStart;
+		int numChosen = choosePartitions();
+		lastPartition = numChosen > 0 ? chosen[0] : -1;
+
+		double x = 0.0;
+		double y = 0.0;
+		double totalWeight = 0.0;
+		for (int i = 0; i < numChosen; i++) {
+			int partition = chosen[i];
+			// Asking for the predictor starts it loading if it isn't already
+			PositionPredictor predictor = predictors.getIfLoaded(router.getPartitionName(partition));
+			if (predictor == null) {
+				continue;
+			}
+			predictor.predict(features, partitionPosition);
+			x += probabilities[partition] * partitionPosition[0];
+			y += probabilities[partition] * partitionPosition[1];
+			totalWeight += probabilities[partition];
+		}
+
+		if (totalWeight <= 0) {
+			return false;
+		}
+		position[0] = x / totalWeight;
+		position[1] = y / totalWeight;
+		return true;
+	}
+
+	/**
+	 * Puts the most probable partitions in chosen, most probable first, leaving
+	 * out partitions with no probability at all
+	 *
+	 * @return how many were chosen
+	 */
+	private int choosePartitions() {
+		int limit = Math.min(maxPartitions, probabilities.length);
+		int numChosen = 0;
+		for (int partition = 0; partition < probabilities.length; partition++) {
+			double probability = probabilities[partition];
+			if (!(probability > 0)) {
+				continue;
+			}
+			// Insertion into a list kept sorted and at most limit long. Ties keep
+			// the lower partition first, like an argmax
+			int i = Math.min(numChosen, limit - 1);
+			if (numChosen == limit && probability <= probabilities[chosen[i]]) {
+				continue;
+			}
+			while (i > 0 && probabilities[chosen[i - 1]] < probability) {
+				chosen[i] = chosen[i - 1];
+				i--;
+			}
+			chosen[i] = partition;
+			if (numChosen < limit) {
+				numChosen++;
+			}
+		}
+		return numChosen;
+	}
+}
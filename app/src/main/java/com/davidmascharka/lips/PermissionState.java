@@ -0,0 +1,96 @@
+package com.davidmascharka.lips;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.support.v4.content.ContextCompat;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Whether the app holds every permission it needs, remembered between checks.
+ *
+ * Each checkSelfPermission is a call into the system, so the grants are only
+ * checked again when they may have changed: when an activity resumes (the user
+ * may have changed them in the settings) and when a permission request
+ * completes. Everything else, like the code run for each scan, reads the
+ * remembered answer from any thread.
+ *
+ * There is one per process, so a grant made in an activity is seen by the
+ * localization service too.
+ */
+public class PermissionState {
+
+	/**
+	 * Every permission the app asks for
+	 */
+	public static final String[] REQUIRED = {
+			Manifest.permission.ACCESS_FINE_LOCATION,
+			Manifest.permission.ACCESS_WIFI_STATE,
+			Manifest.permission.CHANGE_WIFI_STATE,
+			Manifest.permission.WRITE_EXTERNAL_STORAGE
+	};
+
+	private static PermissionState instance;
+
+	private final Context context;
+	private volatile boolean granted;
+
+	/**
+	 * The process's permission state, checked the first time it is asked for
+	 */
+	public static synchronized PermissionState get(Context context) {
+		if (instance == null) {
+			instance = new PermissionState(context.getApplicationContext());
+		}
+		return instance;
+	}
+
+	private PermissionState(Context context) {
+		this.context = context;
+		refresh();
+	}
+
+	/**
+	 * Checks the grants again. Call when they may have changed
+	 *
+	 * @return whether every permission is granted
+	 */
+	public boolean refresh() {
+		boolean all = true;
+		for (String permission : REQUIRED) {
+			if (ContextCompat.checkSelfPermission(context, permission)
+					!= PackageManager.PERMISSION_GRANTED) {
+				all = false;
+				break;
+			}
+		}
+		granted = all;
+		return all;
+	}
+
+	/**
+	 * Whether every permission was granted as of the last refresh. Doesn't call
+	 * into the system, so cheap enough for every scan
+	 */
+	public boolean isGranted() {
+		return granted;
+	}
+}
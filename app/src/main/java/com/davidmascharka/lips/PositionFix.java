@@ -0,0 +1,81 @@
+package com.davidmascharka.lips;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * A predicted position and when the scan it came from arrived. Immutable, so
+ * it can be handed from the prediction thread to the UI as it is
+ */
+public final class PositionFix {
+
+	private final float x;
+	private final float y;
+	private final long scanTime;
+	private final long fixTime;
+	private final long scanNanos;
+
+	/**
+	 * @param scanTime when the scan arrived, in System.currentTimeMillis() time
+	 * @param fixTime when the prediction finished, in the same time
+	 */
+	public PositionFix(float x, float y, long scanTime, long fixTime) {
+		this(x, y, scanTime, fixTime, 0);
+	}
+
+	/**
+	 * @param scanNanos when the scan arrived, in System.nanoTime() time
+	 */
+	public PositionFix(float x, float y, long scanTime, long fixTime, long scanNanos) {
+		this.x = x;
+		this.y = y;
+		this.scanTime = scanTime;
+		this.fixTime = fixTime;
+		this.scanNanos = scanNanos;
+	}
+
+	public float getX() {
+		return x;
+	}
+
+	public float getY() {
+		return y;
+	}
+
+	public long getScanTime() {
+		return scanTime;
+	}
+
+	public long getFixTime() {
+		return fixTime;
+	}
+
+	/**
+	 * When the scan arrived in System.nanoTime() time, for measuring latency.
+	 * 0 if it wasn't given
+	 */
+	public long getScanNanos() {
+		return scanNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "(" + x + "," + y + ")";
+	}
+}
@@ -0,0 +1,305 @@
+package com.davidmascharka.lips;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Turns WiFi scans into positions: the feature vectors for the building models
+ * and the partition models are filled in as a scan is read, then a snapshot of
+ * them is predicted from.
+ *
+ * The tracker and the tools' scan replay both run scans through here, so a
+ * replayed scan is predicted exactly as it would have been on the phone.
+ *
+ * The scan side (clearRssi through takeScan) must be used from one thread and
+ * predict from one thread, which may be a different one. The predictors may be
+ * swapped from any thread.
+ */
+public class PositionPipeline {
+
+	/**
+	 * How many of the nearest fingerprints an indexed K* predictor looks at by
+	 * default. The tracker doesn't index its predictors; see useIndex
+	 */
+	public static final int INDEX_CANDIDATES = 500;
+
+	/**
+	 * Attribute values of one scan, copied so the next scan can be read in
+	 * while this one is being predicted
+	 */
+	public static final class Scan {
+		final double[] features;
+		final double[] partitionFeatures;
+		final long time;
+		final long arrivalNanos;
+		final long takenNanos;
+
+		Scan(double[] features, double[] partitionFeatures, long time, long arrivalNanos) {
+			this.features = features.clone();
+			this.partitionFeatures = partitionFeatures.clone();
+			this.time = time;
+			this.arrivalNanos = arrivalNanos;
+			takenNanos = System.nanoTime();
+		}
+
+		/**
+		 * When the scan arrived, in milliseconds since the epoch
+		 */
+		public long getTime() {
+			return time;
+		}
+	}
+
+	private final AccessPointRegistry accessPoints;
+
+	// Written by the scan side
+	private final FeatureVector features;
+	private final FeatureVector partitionFeatures;
+
+	private volatile PositionPredictor buildingPredictor;
+	private volatile Future<PartitionedPositionPredictor> partitionPredictor;
+	private volatile int maxPartitions = 1;
+	private volatile LatencyStats latencyStats;
+
+	// Receives the predictions: x in [0] and y in [1]. Owned by the predicting thread
+	private final double[] position = new double[2];
+
+	/**
+	 * @param accessPoints the BSSIDs of interest, with their slots among the
+	 * access point attributes
+	 * @param numAccessPoints access point attributes of the building models
+	 * @param numPartitionAccessPoints access point attributes of the partition models
+	 */
+	public PositionPipeline(AccessPointRegistry accessPoints, int numAccessPoints,
+							int numPartitionAccessPoints) {
+		if (accessPoints.size() > numAccessPoints || accessPoints.size() > numPartitionAccessPoints) {
+			throw new IllegalArgumentException("More access points than the models have attributes");
+		}
+		this.accessPoints = accessPoints;
+		features = new FeatureVector(numAccessPoints);
+		partitionFeatures = new FeatureVector(numPartitionAccessPoints);
+		clearRssi();
+	}
+
+	public AccessPointRegistry getAccessPoints() {
+		return accessPoints;
+	}
+
+	/**
+	 * Marks every access point of interest as not seen, and the attributes
+	 * past them as missing. Call before reading a new scan
+	 */
+	public void clearRssi() {
+		features.clearRssi(accessPoints.size());
+		partitionFeatures.clearRssi(accessPoints.size());
+	}
+
+	/**
+	 * Records the signal strength of an access point in the scan
+	 *
+	 * @return false if the access point isn't one of interest
+	 */
+	public boolean setRssi(String bssid, int level) {
+		int slot = accessPoints.slotOf(bssid);
+		if (slot == AccessPointRegistry.NOT_REGISTERED) {
+			return false;
+		}
+		setRssi(slot, level);
+		return true;
+	}
+
+	/**
+	 * Records the signal strength of the access point in the given slot
+	 */
+	public void setRssi(int slot, int level) {
+		features.setRssi(slot, level);
+		partitionFeatures.setRssi(slot, level);
+	}
+
+	/**
+	 * The features of the scan being read. The sensor values and the location
+	 * are written here; takeScan copies them for the partition models
+	 */
+	public FeatureVector getFeatures() {
+		return features;
+	}
+
+	/**
+	 * Snapshot of the scan read so far, to predict from
+	 *
+	 * @param time when the scan arrived, in milliseconds since the epoch
+	 */
+	public Scan takeScan(long time) {
+		return takeScan(time, System.nanoTime());
+	}
+
+	/**
+	 * @param time when the scan arrived, in milliseconds since the epoch
+	 * @param arrivalNanos when the scan arrived, in System.nanoTime() time
+	 */
+	public Scan takeScan(long time, long arrivalNanos) {
+		double[] values = features.getValues();
+		double[] partitionValues = partitionFeatures.getValues();
+		System.arraycopy(values, 0, partitionValues, 0, FeatureVector.NUM_SENSOR_ATTRIBUTES);
+		partitionValues[partitionFeatures.latitudeIndex()] = values[features.latitudeIndex()];
+		partitionValues[partitionFeatures.longitudeIndex()] = values[features.longitudeIndex()];
+		partitionValues[partitionFeatures.locationAccuracyIndex()] =
+				values[features.locationAccuracyIndex()];
+		return new Scan(values, partitionValues, time, arrivalNanos);
+	}
+
+	/**
+	 * Predicts over the whole building
+	 *
+	 * @param predictor null to leave positions to the partition models
+	 */
+	public void setBuildingPredictor(PositionPredictor predictor) {
+		buildingPredictor = predictor;
+	}
+
+	public PositionPredictor getBuildingPredictor() {
+		return buildingPredictor;
+	}
+
+	/**
+	 * Predicts within the partition of each scan once it is ready, instead of
+	 * over the whole building
+	 *
+	 * @param predictor null to predict over the whole building
+	 */
+	public void setPartitionPredictor(Future<PartitionedPositionPredictor> predictor) {
+		partitionPredictor = predictor;
+	}
+
+	public Future<PartitionedPositionPredictor> getPartitionPredictor() {
+		return partitionPredictor;
+	}
+
+	/**
+	 * Most probable partitions blended into each position, 1 to use the most
+	 * probable one alone
+	 */
+	public void setMaxPartitions(int maxPartitions) {
+		if (maxPartitions < 1) {
+			throw new IllegalArgumentException("At least one partition is needed");
+		}
+		this.maxPartitions = maxPartitions;
+	}
+
+	/**
+	 * Records how long predictions wait, route and regress
+	 *
+	 * @param stats null to stop recording
+	 */
+	public void setLatencyStats(LatencyStats stats) {
+		latencyStats = stats;
+	}
+
+	public LatencyStats getLatencyStats() {
+		return latencyStats;
+	}
+
+	/**
+	 * Predicts the position of a scan with the models of the partitions it falls
+	 * in, or with the building models while those haven't loaded
+	 *
+	 * @return null if no model could predict, as when neither the building
+	 *         models nor the models of the scan's partitions are loaded
+	 */
+	public PositionFix predict(Scan scan) throws Exception {
+		long start = System.nanoTime();
+		boolean predicted = false;
+		PartitionedPositionPredictor partitioned = getIfDone(partitionPredictor);
+		if (partitioned != null) {
+			partitioned.setMaxPartitions(maxPartitions);
+			predicted = partitioned.predict(scan.partitionFeatures, position);
+		}
+		PositionPredictor building = null;
+		if (!predicted) {
+			// The building models would only be overwritten by the partition's
+			building = buildingPredictor;
+			if (building != null) {
+				building.predict(scan.features, position);
+				predicted = true;
+			}
+		}
+
+		LatencyStats stats = latencyStats;
+		if (stats != null) {
+			long routing = partitioned != null ? partitioned.getLastRoutingNanos() : 0;
+			stats.record(LatencyStats.PREDICTION_WAIT, start - scan.takenNanos);
+			if (partitioned != null) {
+				stats.record(LatencyStats.ROUTING, routing);
+			}
+			if (building != null || partitioned != null) {
+				stats.record(LatencyStats.REGRESSION, System.nanoTime() - start - routing);
+			}
+		}
+		if (!predicted) {
+			return null;
+		}
+		return new PositionFix((float) position[0], (float) position[1], scan.time,
+				System.currentTimeMillis(), scan.arrivalNanos);
+	}
+
+	/**
+	 * @return the result, or null if it isn't ready or failed
+	 */
+	private static <T> T getIfDone(Future<T> future) throws InterruptedException {
+		if (future == null || !future.isDone() || future.isCancelled()) {
+			return null;
+		}
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			return null; // already reported when the load failed
+		}
+	}
+
+	/**
+	 * Makes a K* predictor only look at the fingerprints nearest to each scan by
+	 * their access point readings instead of at all of them.
+	 *
+	 * This is opt in. The predictions are no longer those of the Weka model
+	 * (they move by a few grid units with a few thousand fingerprints), and the
+	 * blend still has to be worked out over the candidates on every scan, so on
+	 * the fingerprint sets we have it is no faster. Measure with ScanReplay
+	 * --index before using it anywhere else
+	 *
+	 * @param layout feature vector laid out as the predictor's inputs
+	 * @param numCandidates how many of the nearest fingerprints to look at
+	 */
+	public static void useIndex(Object predictor, FeatureVector layout, int numCandidates) {
+		if (predictor instanceof CoordinatePair) {
+			CoordinatePair pair = (CoordinatePair) predictor;
+			useIndex(pair.getX(), layout, numCandidates);
+			useIndex(pair.getY(), layout, numCandidates);
+		} else if (predictor instanceof KStarPredictor) {
+			KStarPredictor kStar = (KStarPredictor) predictor;
+			int[] rssiAttributes = new int[layout.getNumAccessPoints()];
+			for (int i = 0; i < rssiAttributes.length; i++) {
+				rssiAttributes[i] = layout.rssiIndex(i);
+			}
+			kStar.useIndex(new KdTree(kStar.getColumns(), rssiAttributes), numCandidates);
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package com.davidmascharka.lips;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Runs predictions one at a time on a single reusable thread, always on the
+ * newest scan.
+ *
+ * A scan submitted while a prediction is running waits for it to finish in a
+ * single slot, replacing any scan already waiting there: the older one is
+ * stale, and predicting it would only delay the fix for the newer one. However
+ * long a prediction takes, the newest scan is always the next one predicted.
+ *
+ * Scans are handed to the worker thread as they are, so they must not be
+ * changed after they are submitted.
+ */
+public class PredictionExecutor<S> {
+
+	/**
+	 * Turns a scan into a position. Called on the worker thread
+	 */
+	public interface Predictor<S> {
+		PositionFix predict(S scan) throws Exception;
+	}
+
+	/**
+	 * Told about each prediction as it finishes, on the worker thread
+	 */
+	public interface Listener {
+		void onPositionFix(PositionFix fix);
+		void onPredictionFailed(Exception e);
+	}
+
+	private final Predictor<S> predictor;
+	private final Listener listener;
+	private final ExecutorService worker;
+
+	// The newest scan waiting for the worker
+	private final AtomicReference<S> pending = new AtomicReference<S>();
+	// Whether a drain of pending is queued or running on the worker
+	private final AtomicBoolean draining = new AtomicBoolean();
+	private final AtomicLong replaced = new AtomicLong();
+
+	private final Runnable drain = new Runnable() {
+		@Override
+		public void run() {
+			do {
+				S scan;
+				while ((scan = pending.getAndSet(null)) != null && !worker.isShutdown()) {
+					predict(scan);
+				}
+				draining.set(false);
+				// A scan submitted after the slot was emptied but before the flag was
+				// cleared found draining still set, so pick it up here
+			} while (pending.get() != null && draining.compareAndSet(false, true));
+		}
+	};
+
+	public PredictionExecutor(Predictor<S> predictor, Listener listener) {
+		this.predictor = predictor;
+		this.listener = listener;
+		worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "LIPS prediction");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Predicts the scan once the worker is free, unless a newer scan is submitted
+	 * first. Does nothing after shutdown
+	 */
+	public void submit(S scan) {
+		if (scan == null) {
+			throw new NullPointerException("scan");
+		}
+		if (pending.getAndSet(scan) != null) {
+			replaced.incrementAndGet();
+		}
+		if (draining.compareAndSet(false, true)) {
+			try {
+				worker.execute(drain);
+			} catch (RejectedExecutionException e) {
+				// Shut down, the waiting scans are never predicted
+			}
+		}
+	}
+
+	/**
+	 * Number of scans dropped because a newer one replaced them while they waited
+	 */
+	public long getReplacedScans() {
+		return replaced.get();
+	}
+
+	/**
+	 * Stops the worker. Any waiting scans are dropped and a running prediction is
+	 * interrupted
+	 */
+	public void shutdown() {
+		worker.shutdownNow();
+	}
+
+	private void predict(S scan) {
+		PositionFix fix;
+		try {
+			fix = predictor.predict(scan);
+		} catch (Exception e) {
+			listener.onPredictionFailed(e);
+			return;
+		}
+		if (fix != null) {
+			listener.onPositionFix(fix);
+		}
+	}
+}
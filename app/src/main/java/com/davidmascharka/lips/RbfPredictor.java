@@ -0,0 +1,213 @@
+package com.davidmascharka.lips;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Radial basis function network regression over primitive arrays, equivalent
+ * to weka.classifiers.functions.RBFRegressor.
+ *
+ * Weka runs every test instance through a chain of filters before the network
+ * sees it: missing values are replaced by the training mean, attributes that
+ * were constant in the training data are removed, and the rest are normalised.
+ * Here that chain is reduced to a mean, a minimum and a factor per input, and
+ * the per-attribute weights and per-unit scales are folded into one coefficient
+ * per unit and input:
+ *
+ *   activation(u) = exp(-sum_j coefficient[u][j] * (x_j - center[u][j])^2)
+ *   output = classScale * (bias + sum_u weight[u] * activation(u)) + classOffset
+ *
+ * With normalised basis functions the activations are a softmax of the
+ * exponents instead.
+ *
+ * Missing values are NaN. A predictor must only be used from one thread at a time.
+ */
+public class RbfPredictor implements CoordinatePredictor {
+
+	private final int numInputs;
+	private final int numUnits;
+
+	// Per input: attribute index in the feature vector and how to normalise it
+	private final int[] inputs;
+	private final double[] missingValues;
+	private final double[] inputMin;
+	private final double[] inputFactor;
+	private final double[] inputOffset;
+
+	// Per unit and input, unit-major
+	private final double[] centers;
+	private final double[] coefficients;
+
+	private final double[] weights;
+	private final double bias;
+	private final boolean normalizedBasis;
+	private final double classScale;
+	private final double classOffset;
+
+	// Working memory for a single prediction
+	private final double[] normalized;
+	private final double[] activations;
+
+	/**
+	 * @param inputs index in the feature vector of each input the network uses
+	 * @param missingValues value used for each input when it is missing
+	 * @param inputMin subtracted from each input before scaling
+	 * @param inputFactor scales each input once inputMin has been subtracted
+	 * @param inputOffset added to each input after scaling
+	 * @param centers center of each unit, numUnits * numInputs values
+	 * @param coefficients weight of each squared difference, numUnits * numInputs values
+	 * @param weights output weight of each unit
+	 * @param bias added to the weighted sum of the activations
+	 * @param normalizedBasis whether the activations are normalised to sum to 1
+	 * @param classScale multiplies the network output to get the class value
+	 * @param classOffset added to the scaled network output
+	 */
+	public RbfPredictor(int[] inputs, double[] missingValues, double[] inputMin,
+						double[] inputFactor, double[] inputOffset, double[] centers,
+						double[] coefficients, double[] weights, double bias,
+						boolean normalizedBasis, double classScale, double classOffset) {
+		numInputs = inputs.length;
+		numUnits = weights.length;
+		if (missingValues.length != numInputs || inputMin.length != numInputs
+				|| inputFactor.length != numInputs || inputOffset.length != numInputs) {
+			throw new IllegalArgumentException("Every input needs a value in every array");
+		}
+		if (centers.length != numUnits * numInputs || coefficients.length != numUnits * numInputs) {
+			throw new IllegalArgumentException("Every unit needs a value for every input");
+		}
+		this.inputs = inputs;
+		this.missingValues = missingValues;
+		this.inputMin = inputMin;
+		this.inputFactor = inputFactor;
+		this.inputOffset = inputOffset;
+		this.centers = centers;
+		this.coefficients = coefficients;
+		this.weights = weights;
+		this.bias = bias;
+		this.normalizedBasis = normalizedBasis;
+		this.classScale = classScale;
+		this.classOffset = classOffset;
+
+		normalized = new double[numInputs];
+		activations = new double[numUnits];
+	}
+
+	/**
+	 * Predict the class value for the given attribute values
+	 */
+	@Override
+	public double predict(double[] instance) {
+		for (int j = 0; j < numInputs; j++) {
+			double value = instance[inputs[j]];
+			if (value != value) {
+				value = missingValues[j];
+			}
+			normalized[j] = (value - inputMin[j]) * inputFactor[j] + inputOffset[j];
+		}
+
+		for (int u = 0; u < numUnits; u++) {
+			int offset = u * numInputs;
+			double sum = 0.0;
+			for (int j = 0; j < numInputs; j++) {
+				double diff = centers[offset + j] - normalized[j];
+				sum += diff * diff * coefficients[offset + j];
+			}
+			activations[u] = normalizedBasis ? -sum : Math.exp(-sum);
+		}
+
+		if (normalizedBasis) {
+			double max = Double.NEGATIVE_INFINITY;
+			for (int u = 0; u < numUnits; u++) {
+				max = Math.max(max, activations[u]);
+			}
+			double total = 0.0;
+			for (int u = 0; u < numUnits; u++) {
+				activations[u] = Math.exp(activations[u] - max);
+				total += activations[u];
+			}
+			for (int u = 0; u < numUnits; u++) {
+				activations[u] /= total;
+			}
+		}
+
+		double output = bias;
+		for (int u = 0; u < numUnits; u++) {
+			output += weights[u] * activations[u];
+		}
+		return output * classScale + classOffset;
+	}
+
+	public int getNumInputs() {
+		return numInputs;
+	}
+
+	public int getNumUnits() {
+		return numUnits;
+	}
+
+	// The arrays themselves, for ModelFormat. Not copies
+
+	int[] getInputs() {
+		return inputs;
+	}
+
+	double[] getMissingValues() {
+		return missingValues;
+	}
+
+	double[] getInputMin() {
+		return inputMin;
+	}
+
+	double[] getInputFactor() {
+		return inputFactor;
+	}
+
+	double[] getInputOffset() {
+		return inputOffset;
+	}
+
+	double[] getCenters() {
+		return centers;
+	}
+
+	double[] getCoefficients() {
+		return coefficients;
+	}
+
+	double[] getWeights() {
+		return weights;
+	}
+
+	double getBias() {
+		return bias;
+	}
+
+	boolean isNormalizedBasis() {
+		return normalizedBasis;
+	}
+
+	double getClassScale() {
+		return classScale;
+	}
+
+	double getClassOffset() {
+		return classOffset;
+	}
+}
@@ -0,0 +1,290 @@
+package com.davidmascharka.lips;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Decides when to start the next WiFi scan from whether the user is moving.
+ *
+ * While the user walks a new position is worth having as soon as possible, so
+ * scans follow each other with only a short gap. Once the accelerometer has
+ * been still for a while the user is taken to be standing still, and the gap
+ * doubles after each scan up to a limit, since the position can't have
+ * changed. The first sign of movement ends the back off straight away.
+ *
+ * Movement is a spread in the magnitude of the acceleration, or a step. Times
+ * are in nanoseconds from any fixed point, such as System.nanoTime().
+ *
+ * Thread safe, so the stats can be read while another thread schedules.
+ */
+public class ScanScheduler {
+
+	/**
+	 * The gaps between scans and what counts as moving. Immutable
+	 */
+	public static final class Policy {
+		final long movingInterval;
+		final long stillInterval;
+		final long maxStillInterval;
+		final long stillAfter;
+		final long scanTimeout;
+		final float motionThreshold;
+
+		/**
+		 * @param movingIntervalMillis least time between the starts of two scans
+		 *                             while moving
+		 * @param stillIntervalMillis time between scans once still, doubled
+		 *                            after each scan
+		 * @param maxStillIntervalMillis longest time between scans
+		 * @param stillAfterMillis time without movement before the user counts
+		 *                         as still
+		 * @param scanTimeoutMillis time to wait for results before scanning again
+		 * @param motionThreshold standard deviation of the acceleration's
+		 *                        magnitude that counts as moving, in m/s^2
+		 */
+		public Policy(long movingIntervalMillis, long stillIntervalMillis,
+					  long maxStillIntervalMillis, long stillAfterMillis, long scanTimeoutMillis,
+					  float motionThreshold) {
+			if (movingIntervalMillis < 0 || stillIntervalMillis < movingIntervalMillis
+					|| maxStillIntervalMillis < stillIntervalMillis || scanTimeoutMillis <= 0) {
+				throw new IllegalArgumentException("Intervals must grow from moving to still");
+			}
+			movingInterval = movingIntervalMillis * 1000000L;
+			stillInterval = stillIntervalMillis * 1000000L;
+			maxStillInterval = maxStillIntervalMillis * 1000000L;
+			stillAfter = stillAfterMillis * 1000000L;
+			scanTimeout = scanTimeoutMillis * 1000000L;
+			this.motionThreshold = motionThreshold;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.US, "every %.1f s moving, %.0f to %.0f s still after %.0f s "
+					+ "without movement (> %.2f m/s^2), %.0f s timeout", movingInterval / 1e9,
+					stillInterval / 1e9, maxStillInterval / 1e9, stillAfter / 1e9,
+					motionThreshold, scanTimeout / 1e9);
+		}
+	}
+
+	/**
+	 * Scans back to back while moving, backs off from 10 s to 2 minutes when still
+	 */
+	public static final Policy DEFAULT_POLICY = new Policy(1000, 10000, 120000, 5000, 15000, 0.5f);
+
+	// Time constant of the running mean and variance of the acceleration
+	private static final float MOTION_SECONDS = 0.5f;
+
+	private final Policy policy;
+
+	private long lastReading = -1;
+	private float meanMagnitude;
+	private float varianceMagnitude;
+	private boolean moving = true;
+	private long lastMotion;
+	private long stateSince;
+	// Time to wait after the latest scan while still, and whether it has been
+	// doubled since the user stopped
+	private long currentStillInterval;
+	private boolean backingOff;
+
+	private boolean scanning;
+	private long lastScanStart;
+	private boolean scannedBefore;
+
+	private long scansStarted;
+	private long scansStartedMoving;
+	private long scansRefused;
+	private long scansTimedOut;
+	private long resultsReceived;
+	private long motionChanges;
+	private long timeMoving;
+	private long timeStill;
+
+	public ScanScheduler(Policy policy) {
+		this.policy = policy;
+		currentStillInterval = policy.stillInterval;
+	}
+
+	public Policy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Looks for movement in an accelerometer reading
+	 *
+	 * @return true if the user has just started moving, so the next scan should
+	 * be rescheduled
+	 */
+	public synchronized boolean onAcceleration(long time, float x, float y, float z) {
+		float magnitude = (float) Math.sqrt(x * x + y * y + z * z);
+		if (lastReading < 0) {
+			meanMagnitude = magnitude;
+			varianceMagnitude = 0;
+		} else {
+			float elapsed = Math.max(0, (time - lastReading) / 1e9f);
+			float alpha = elapsed / (MOTION_SECONDS + elapsed);
+			float deviation = magnitude - meanMagnitude;
+			meanMagnitude += alpha * deviation;
+			varianceMagnitude += alpha * (deviation * deviation - varianceMagnitude);
+		}
+		lastReading = time;
+		if (varianceMagnitude > policy.motionThreshold * policy.motionThreshold) {
+			return onMotion(time);
+		}
+		checkStill(time);
+		return false;
+	}
+
+	/**
+	 * A step is movement however still the phone is held
+	 *
+	 * @return true if the user has just started moving
+	 */
+	public synchronized boolean onStep(long time) {
+		return onMotion(time);
+	}
+
+	private boolean onMotion(long time) {
+		lastMotion = time;
+		if (moving) {
+			return false;
+		}
+		changeState(time, true);
+		return true;
+	}
+
+	private void checkStill(long time) {
+		if (moving && time - lastMotion >= policy.stillAfter) {
+			changeState(time, false);
+		}
+	}
+
+	private void changeState(long time, boolean nowMoving) {
+		if (stateSince != 0) {
+			if (moving) {
+				timeMoving += time - stateSince;
+			} else {
+				timeStill += time - stateSince;
+			}
+		}
+		stateSince = time;
+		moving = nowMoving;
+		currentStillInterval = policy.stillInterval;
+		backingOff = false;
+		motionChanges++;
+	}
+
+	/**
+	 * @param accepted false if the system refused to scan, as it does when
+	 *                 scans are throttled
+	 */
+	public synchronized void onScanStarted(long time, boolean accepted) {
+		checkStill(time);
+		if (scanning) {
+			scansTimedOut++;
+		}
+		if (stateSince == 0) {
+			stateSince = time;
+			lastMotion = time;
+		}
+		lastScanStart = time;
+		scannedBefore = true;
+		scanning = accepted;
+		if (!accepted) {
+			scansRefused++;
+			return;
+		}
+		scansStarted++;
+		if (moving) {
+			scansStartedMoving++;
+		} else if (backingOff) {
+			currentStillInterval = Math.min(currentStillInterval * 2, policy.maxStillInterval);
+		} else {
+			backingOff = true;
+		}
+	}
+
+	/**
+	 * Results arrive for scans started elsewhere too, and are as good as our own
+	 */
+	public synchronized void onScanResults(long time) {
+		scanning = false;
+		resultsReceived++;
+	}
+
+	/**
+	 * How long to wait from now before starting the next scan. While a scan is
+	 * running, the time left before giving up on its results
+	 */
+	public synchronized long getDelayMillis(long time) {
+		checkStill(time);
+		if (!scannedBefore) {
+			return 0;
+		}
+		long next;
+		if (scanning) {
+			next = lastScanStart + policy.scanTimeout;
+		} else if (moving) {
+			next = lastScanStart + policy.movingInterval;
+		} else {
+			next = lastScanStart + currentStillInterval;
+		}
+		return Math.max(0, (next - time) / 1000000L);
+	}
+
+	public synchronized boolean isMoving() {
+		return moving;
+	}
+
+	public synchronized boolean isScanning() {
+		return scanning;
+	}
+
+	public synchronized long getScansStarted() {
+		return scansStarted;
+	}
+
+	public synchronized long getScansRefused() {
+		return scansRefused;
+	}
+
+	public synchronized long getResultsReceived() {
+		return resultsReceived;
+	}
+
+	/**
+	 * Prints the policy, the current state and how many scans were made in each
+	 */
+	public synchronized void printStats(PrintWriter out, long time) {
+		long movingFor = timeMoving + (moving && stateSince != 0 ? time - stateSince : 0);
+		long stillFor = timeStill + (!moving && stateSince != 0 ? time - stateSince : 0);
+		out.println("Policy: " + policy);
+		out.println(String.format(Locale.US, "Now %s, next scan in %.1f s",
+				moving ? "moving" : "still", getDelayMillis(time) / 1000.0));
+		out.println(String.format(Locale.US, "Moving %.0f s, still %.0f s, %d changes",
+				movingFor / 1e9, stillFor / 1e9, motionChanges));
+		out.println(String.format(Locale.US,
+				"Scans: %d started (%d moving, %d still), %d refused, %d timed out, %d results",
+				scansStarted, scansStartedMoving, scansStarted - scansStartedMoving, scansRefused,
+				scansTimedOut, resultsReceived));
+	}
+}
@@ -0,0 +1,202 @@
+package com.davidmascharka.lips;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Handler;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Keeps the latest reading of each sensor LIPS records. Android doesn't let us
+ * query a sensor whenever we want, so the readings are tracked as they arrive
+ * and read back when a scan comes in.
+ *
+ * Only the accelerometer, magnetic field, light and rotation vector sensors are
+ * listened to. Orientation is worked out from the accelerometer and magnetic
+ * readings when it is asked for, and only if either has changed since the last
+ * time, so events don't allocate or do any work beyond copying their values.
+ *
+ * The accelerometer readings are also run through a StepDetector, and a
+ * MotionListener is told about each step with the heading it was taken in, as
+ * well as about each reading of the accelerometer.
+ *
+ * Events arrive on the thread of the Handler given to register, the main
+ * thread by default, so the readings should be read there too.
+ */
+public class SensorFusion implements SensorEventListener {
+
+	/**
+	 * Told how the user moves, on the thread the events arrive on
+	 */
+	public interface MotionListener {
+		/**
+		 * Each reading of the accelerometer, in m/s^2 including gravity
+		 */
+		void onAcceleration(float x, float y, float z);
+
+		/**
+		 * @param length estimated length of the step, in metres
+		 * @param azimuth heading of the device in radians clockwise from
+		 *                magnetic north, as from getOrientation
+		 */
+		void onStep(float length, float azimuth);
+	}
+
+	private static final int[] SENSOR_TYPES = {
+			Sensor.TYPE_ACCELEROMETER,
+			Sensor.TYPE_MAGNETIC_FIELD,
+			Sensor.TYPE_LIGHT,
+			Sensor.TYPE_ROTATION_VECTOR
+	};
+
+	private final float[] accelerometer = new float[3];
+	private final float[] magnetic = new float[3];
+	private final float[] rotationVector = new float[3];
+	private float light;
+
+	private final float[] rotation = new float[9];
+	private final float[] inclination = new float[9];
+	private final float[] orientation = new float[3];
+	private boolean orientationStale;
+
+	private final StepDetector stepDetector = new StepDetector();
+	private MotionListener motionListener;
+
+	/**
+	 * @param listener null to stop looking for steps
+	 */
+	public void setMotionListener(MotionListener listener) {
+		motionListener = listener;
+	}
+
+	/**
+	 * Starts listening to the sensors LIPS uses that the device has
+	 *
+	 * @param delay one of the SensorManager.SENSOR_DELAY_ constants
+	 */
+	public void register(SensorManager sensorManager, int delay) {
+		register(sensorManager, delay, null);
+	}
+
+	/**
+	 * @param handler the events arrive on its thread, or the main thread if null
+	 */
+	public void register(SensorManager sensorManager, int delay, Handler handler) {
+		for (int type : SENSOR_TYPES) {
+			Sensor sensor = sensorManager.getDefaultSensor(type);
+			if (sensor != null) {
+				sensorManager.registerListener(this, sensor, delay, handler);
+			}
+		}
+	}
+
+	public void unregister(SensorManager sensorManager) {
+		sensorManager.unregisterListener(this);
+		// Readings from before a pause say nothing about the steps after it
+		stepDetector.reset();
+	}
+
+	@Override
+	public void onSensorChanged(SensorEvent event) {
+		float[] values = event.values;
+		switch (event.sensor.getType()) {
+			case Sensor.TYPE_ACCELEROMETER:
+				orientationStale |= copy(values, accelerometer);
+				if (motionListener == null) {
+					break;
+				}
+				motionListener.onAcceleration(values[0], values[1], values[2]);
+				if (stepDetector.onAcceleration(event.timestamp, values[0], values[1], values[2])) {
+					motionListener.onStep(stepDetector.getStepLength(), getOrientation()[0]);
+				}
+				break;
+			case Sensor.TYPE_MAGNETIC_FIELD:
+				orientationStale |= copy(values, magnetic);
+				break;
+			case Sensor.TYPE_LIGHT:
+				light = values[0];
+				break;
+			case Sensor.TYPE_ROTATION_VECTOR:
+				copy(values, rotationVector);
+				break;
+			default:
+				break;
+		}
+	}
+
+	@Override
+	public void onAccuracyChanged(Sensor sensor, int accuracy) {}
+
+	/**
+	 * Copies the first three values
+	 *
+	 * @return whether any of them changed
+	 */
+	private static boolean copy(float[] values, float[] reading) {
+		boolean changed = false;
+		for (int i = 0; i < 3; i++) {
+			if (reading[i] != values[i]) {
+				reading[i] = values[i];
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Azimuth, pitch and roll as from SensorManager.getOrientation. The array is
+	 * reused, so copy it to keep the values
+	 */
+	public float[] getOrientation() {
+		if (orientationStale) {
+			// On failure (free fall) the last rotation matrix is kept, as before
+			SensorManager.getRotationMatrix(rotation, inclination, accelerometer, magnetic);
+			SensorManager.getOrientation(rotation, orientation);
+			orientationStale = false;
+		}
+		return orientation;
+	}
+
+	/**
+	 * Sets the sensor attributes of the feature vector to the latest readings
+	 */
+	public void writeTo(FeatureVector features) {
+		features.setAccelerometer(accelerometer[0], accelerometer[1], accelerometer[2]);
+		features.setMagnetic(magnetic[0], magnetic[1], magnetic[2]);
+		features.setLight(light);
+		features.setRotation(rotationVector[0], rotationVector[1], rotationVector[2]);
+		features.setOrientation(getOrientation());
+	}
+
+	/**
+	 * Copies the latest readings into the first 13 values, in the order of the
+	 * sensor attributes of FeatureVector
+	 */
+	public void copyTo(float[] values) {
+		float[] orientation = getOrientation();
+		System.arraycopy(accelerometer, 0, values, 0, 3);
+		System.arraycopy(magnetic, 0, values, 3, 3);
+		values[6] = light;
+		System.arraycopy(rotationVector, 0, values, 7, 3);
+		System.arraycopy(orientation, 0, values, 10, 3);
+	}
+}
@@ -0,0 +1,124 @@
+package com.davidmascharka.lips;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Finds the user's steps in the accelerometer readings for pedestrian dead
+ * reckoning.
+ *
+ * The magnitude of the acceleration is smoothed, and a step is counted each
+ * time it rises well above gravity after having dipped below it, no sooner than
+ * MIN_STEP_SECONDS after the last step. The length of each step comes from how
+ * far the magnitude swung since the last one (Weinberg's estimate), so longer,
+ * harder steps count for more.
+ *
+ * Only works on readings from one thread, and never allocates.
+ */
+public class StepDetector {
+
+	private static final float GRAVITY = 9.81f;
+
+	// Smoothed magnitude above and below gravity that make up a step, in m/s^2
+	private static final float RISE = 1.2f;
+	private static final float DIP = 0.4f;
+
+	// Time constant of the smoothing
+	private static final float SMOOTHING_SECONDS = 0.05f;
+
+	/**
+	 * Shortest time between two steps. Faster than anyone walks
+	 */
+	public static final float MIN_STEP_SECONDS = 0.3f;
+
+	// Weinberg's constant and the shortest and longest steps believed, in metres
+	private static final float WEINBERG_K = 0.5f;
+	private static final float MIN_STEP_LENGTH = 0.3f;
+	private static final float MAX_STEP_LENGTH = 1.2f;
+
+	private long lastTime;
+	private long lastStepTime;
+	private float smoothed;
+	private boolean dipped;
+	private float swingMin;
+	private float swingMax;
+
+	private int steps;
+	private float stepLength;
+
+	/**
+	 * @param time when the reading was taken, in nanoseconds
+	 * @return whether the reading completed a step
+	 */
+	public boolean onAcceleration(long time, float x, float y, float z) {
+		float magnitude = (float) Math.sqrt(x * x + y * y + z * z);
+		if (lastTime == 0) {
+			smoothed = magnitude;
+			swingMin = magnitude;
+			swingMax = magnitude;
+		} else {
+			float elapsed = (time - lastTime) / 1e9f;
+			if (elapsed > 0) {
+				smoothed += (magnitude - smoothed) * elapsed / (SMOOTHING_SECONDS + elapsed);
+			}
+		}
+		lastTime = time;
+		swingMin = Math.min(swingMin, smoothed);
+		swingMax = Math.max(swingMax, smoothed);
+
+		if (!dipped) {
+			dipped = smoothed < GRAVITY - DIP;
+			return false;
+		}
+		if (smoothed > GRAVITY + RISE
+				&& (steps == 0 || time - lastStepTime >= MIN_STEP_SECONDS * 1e9f)) {
+			float length = WEINBERG_K * (float) Math.sqrt(Math.sqrt(swingMax - swingMin));
+			stepLength = Math.max(MIN_STEP_LENGTH, Math.min(length, MAX_STEP_LENGTH));
+			steps++;
+			lastStepTime = time;
+			dipped = false;
+			swingMin = smoothed;
+			swingMax = smoothed;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Number of steps found so far
+	 */
+	public int getSteps() {
+		return steps;
+	}
+
+	/**
+	 * Estimated length of the last step, in metres
+	 */
+	public float getStepLength() {
+		return stepLength;
+	}
+
+	/**
+	 * Forgets the readings so far, for when they stop coming for a while
+	 */
+	public void reset() {
+		lastTime = 0;
+		dipped = false;
+	}
+}
@@ -1,29 +1,20 @@
 package com.davidmascharka.lips;
 
 import android.Manifest;
-import android.content.BroadcastReceiver;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
-import android.content.pm.PackageManager;
-import android.hardware.Sensor;
-import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
-import android.hardware.SensorManager;
-import android.location.Location;
-import android.location.LocationListener;
-import android.location.LocationManager;
-import android.net.wifi.ScanResult;
-import android.net.wifi.WifiManager;
+import android.content.ServiceConnection;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
+import android.os.IBinder;
+import android.support.annotation.NonNull;
 import android.support.v4.app.ActivityCompat;
 import android.support.v4.app.DialogFragment;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.NavUtils;
 import android.support.v7.app.AppCompatActivity;
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -35,20 +26,7 @@ import android.widget.Toast;
 import com.mascharka.indoorlocalization.R;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.PrintWriter;
-import java.sql.Timestamp;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.LinkedHashMap;
-import java.util.List;
-
-import weka.classifiers.functions.RBFRegressor;
-import weka.classifiers.lazy.KStar;
-import weka.classifiers.trees.RandomForest;
-import weka.core.Attribute;
-import weka.core.DenseInstance;
-import weka.core.Instances;
+import java.io.IOException;
 
 /**
  *  Copyright 2015 David Mascharka
@@ -75,15 +53,13 @@ import weka.core.Instances;
  * Tracking side of the application. This is what would be implemented as part of an
  * enterprise-scale application that actually wanted to perform live localization.
  * 
- * Most of this is unnecessary in an application that just wants to keep track of user
- * position. Take out the buttons, the view, etc. The only part we really care about
- * in getting user position is the sensor values, the attributes/instances,
- * and the updateScanResults method
- *
- * It may be desirable to break this logic off to run in a service so that
- * localization can be performed in the background so the user experiences
- * no delay on re-opening the application or to notify the user when
- * they reach an area of interest in, for example, navigation in a mall
+ * The localization itself runs in LocalizationService, which keeps tracking in
+ * the background so the user experiences no delay on re-opening the application
+ * and could be told when they reach an area of interest in, for example,
+ * navigation in a mall. This activity starts the service, binds to it and shows
+ * the positions its LocalizationEngine finds. Tracking stops when the user
+ * leaves the activity, but not when the screen turns off or another activity
+ * is in front
  *
  */
 
@@ -95,8 +71,10 @@ import weka.core.Instances;
 * --added some TODOs for buildings
 * --enabled home button (arrow on top left of Tracker Activity
  */
-public class TrackerActivity extends AppCompatActivity implements SensorEventListener,
+public class TrackerActivity extends AppCompatActivity implements
 SelectPartitionDialogFragment.SelectPartitionDialogListener,
+		LatencyStatsDialogFragment.LatencyStatsDialogListener,
+		LocalizationEngine.PositionListener,
 		ActivityCompat.OnRequestPermissionsResultCallback{
 	//TODO: Need to actually test the app in Marshmallow
 	//@author Mahesh Gaya added this tag for debugging purposes
@@ -106,71 +84,6 @@ SelectPartitionDialogFragment.SelectPartitionDialogListener,
 	private static final int REQUEST_LOCATION = 110;
 	private static final int REQUEST_WRITE_STORAGE = 112;
 	private static final int REQUEST_WIFI = 114;
-	
-	/**
-	 * The accelerometer reading in the X direction
-	 */
-	private float accelerometerX;
-
-	/**
-	 * The accelerometer reading in the Y direction
-	 */
-	private float accelerometerY;
-
-	/**
-	 * The accelerometer reading in the Z direction
-	 */
-	private float accelerometerZ;
-
-	/**
-	 * Reading from the X direction of the magnetic sensor
-	 */
-	private float magneticX;
-
-	/**
-	 * Reading from the Y direction of the magnetic sensor
-	 */
-	private float magneticY;
-
-	/**
-	 * Reading from the Z direction of the magnetic sensor
-	 */
-	private float magneticZ;
-
-	/**
-	 * Reading of the intensity from the light sensor
-	 */
-	private float light;
-
-	/**
-	 * Amount of rotation in the X direction
-	 */
-	private float rotationX;
-
-	/**
-	 * Amount of rotation in the Y direction
-	 */
-	private float rotationY;
-
-	/**
-	 * Amount of rotation in the Z direction
-	 */
-	private float rotationZ;
-
-	/**
-	 * Array holding rotation values - for querying
-	 */
-	private float[] rotation;
-
-	/**
-	 * Array holding inclination values - for querying
-	 */
-	private float[] inclination;
-
-	/**
-	 * Array holding orientation values - for querying
-	 */
-	private float[] orientation;
 
 	/**
 	 * Displays the user's x coordinate (predicted)
@@ -188,66 +101,30 @@ SelectPartitionDialogFragment.SelectPartitionDialogListener,
 	private GridView grid;
 
 	/**
-	 * Lets us query the sensors in the device
+	 * Shared with the engine, which reads it for each scan
 	 */
-	private SensorManager sensorManager;
+	private PermissionState permissionState;
 
 	/**
-	 * Holds what sensors are embedded in the device
+	 * The service's engine while bound to it, otherwise null
 	 */
-	private List<Sensor> sensorList;
+	private LocalizationEngine engine;
 
-	/**
-	 * Lets us actively scan for WiFi signals
-	 */
-	private WifiManager wifiManager;
-
-	/**
-	 * Holds the results of an active scan for WiFi signals
-	 */
-	private List<ScanResult> scanResults;
-
-	/**
-	 * Holds each BSSID of interest and its signal strength
-	 */
-	private LinkedHashMap<String, Integer> wifiReadings;
-
-	/**
-	 * Lets us set up a listener for location changes
-	 */
-	private LocationManager locationManager;
-
-	/**
-	 * Listens for changes to reported location
-	 */
-	private LocationListener locationListener;
-
-	/**
-	 * The user's current location, as reported by GPS/Network
-	 */
-	private Location location;
-
-	/**
-	 * Worker thread for performing localization
-	 */
-	Thread t;
+	private final ServiceConnection connection = new ServiceConnection() {
+		@Override
+		public void onServiceConnected(ComponentName name, IBinder service) {
+			engine = ((LocalizationService.LocalBinder) service).getEngine();
+			grid.setLatencyStats(engine.getLatencyStats());
+			engine.addPositionListener(TrackerActivity.this);
+			supportInvalidateOptionsMenu();
+		}
 
-	/**
-	 * Will listen for broadcasts from the WiFi manager. When a scan has finished, the
-	 *onReceive method will be called which will recalculate the user's position
-	 */
-	BroadcastReceiver receiver = new BroadcastReceiver() {
 		@Override
-		public void onReceive(Context context, Intent intent) {
-			updateScanResults();
+		public void onServiceDisconnected(ComponentName name) {
+			engine = null;
 		}
 	};
 
-	/**
-	 * Which building is the user in?
-	 */
-	private String building;
-
 	/**
 	 * X coordinate to display to the user to walk to (for evaluating)
 	 */
@@ -258,153 +135,6 @@ SelectPartitionDialogFragment.SelectPartitionDialogListener,
 	 */
 	private float nextY = 0.0f;
 
-	/**
-	 * Predicted X position of the user
-	 */
-	private float predictedX;
-
-	/**
-	 * Predicted Y position of the user
-	 */
-	private float predictedY;
-
-	private Timestamp time;
-	
-	File file;
-	File valuesFile;
-	FileOutputStream outputStream;
-	FileOutputStream valuesOutputStream;
-	PrintWriter writer;
-	PrintWriter valuesWriter;
-
-//	private double predictedPartition;
-
-	/**
-	 * K* classifier for predicting x position
-	 */
-	KStar classifierXKStar;
-
-	/**
-	 * RBF regression classifier for predicting x position
-	 */
-	RBFRegressor classifierXRBFRegressor;
-
-	/**
-	 * K* classifier for predicting y position
-	 */
-	KStar classifierYKStar;
-
-	/**
-	 * RBF regression classifier for predicting y position
-	 */
-	RBFRegressor classifierYRBFRegressor;
-
-	/**
-	 * K* classifier for just the lower left portion of the building, predicting x
-	 */
-//	KStar partitionLowerLeftX = null;
-//
-//	/**
-//	 * K* classifier for just the lower right portion of the building, predicting x
-//	 */
-//	KStar partitionLowerRightX = null;
-//
-//	/**
-//	 * K* classifier for just the upper left portion of the building, predicting x
-//	 */
-//	KStar partitionUpperLeftX = null;
-//
-//	/**
-//	 * K* classifier for just the upper right portion of the building, predicting x
-//	 */
-//	KStar partitionUpperRightX = null;
-//
-//	/**
-//	 * K* classifier for just the middle portion of the building, predicting x
-//	 */
-//	KStar partitionMiddleX = null;
-//
-//	/**
-//	 * K* classifier for just the lower left portion of the building, predicting y
-//	 */
-//	KStar partitionLowerLeftY = null;
-//
-//	/**
-//	 * K* classifier for just the lower right portion of the building, predicting y
-//	 */
-//	KStar partitionLowerRightY = null;
-//
-//	/**
-//	 * K* classifier for just the upper left portion of the building, predicting y
-//	 */
-//	KStar partitionUpperLeftY = null;
-//
-//	/**
-//	 * K* classifier for just the upper right portion of the building, predicting y
-//	 */
-//	KStar partitionUpperRightY = null;
-//
-//	/**
-//	 * K* classifier for just the middle portion of the building, predicting y
-//	 */
-//	KStar partitionMiddleY = null;
-//
-//	/**
-//	 * Random forest model to predict which portion of the building the user is in
-//	 * Determines if the user is in upper left, lower left, upper right, lower right, middle
-//	 */
-//	RandomForest partitionClassifier;
-
-	/**
-	 * Instance for classifying X position
-	 */
-	Instances xInstances;
-
-	/**
-	 * Instance for classifying Y position
-	 */
-	Instances yInstances;
-
-	/**
-	 * Instance for classifying partition
-	 */
-//	Instances partitionInstances;
-
-	// List of attributes we use for prediction
-	// TODO: make this not be ugly
-	Attribute attrAccelX = new Attribute("accelerometerX");
-	Attribute attrAccelY = new Attribute("accelerometerY");
-	Attribute attrAccelZ = new Attribute("accelerometerZ");
-	Attribute attrMagneticX = new Attribute("magneticX");
-	Attribute attrMagneticY = new Attribute("magneticY");
-	Attribute attrMagneticZ = new Attribute("magneticZ");
-	Attribute attrLight = new Attribute("light");
-	Attribute attrRotationX = new Attribute("rotationX");
-	Attribute attrRotationY = new Attribute("rotationY");
-	Attribute attrRotationZ = new Attribute("rotationZ");
-	Attribute attrOrientationX = new Attribute("orientationX");
-	Attribute attrOrientationY = new Attribute("orientationY");
-	Attribute attrOrientationZ = new Attribute("orientationZ");
-	Attribute attrBSSID1 = new Attribute("BSSID1");
-	Attribute attrBSSID2 = new Attribute("BSSID2");
-	Attribute attrBSSID3 = new Attribute("BSSID3");
-	Attribute attrBSSID4 = new Attribute("BSSID4");
-	Attribute attrBSSID5 = new Attribute("BSSID5");
-	Attribute attrBSSID6 = new Attribute("BSSID6");
-	Attribute attrBSSID7 = new Attribute("BSSID7");
-	Attribute attrBSSID8 = new Attribute("BSSID8");
-	Attribute attrBSSID9 = new Attribute("BSSID9");
-	Attribute attrBSSID10 = new Attribute("BSSID10");
-	//ramadanDO: we use no more than 10 bssids
-
-	Attribute attrLatitude = new Attribute("latitude");
-	Attribute attrLongitude = new Attribute("longitude");
-	Attribute attrLocationAccuracy = new Attribute("locationAccuracy");
-	Attribute attrXPosition = new Attribute("xPosition");
-	Attribute attrYPosition = new Attribute("yPosition");
-	ArrayList<Attribute> xClass = new ArrayList<Attribute>(173);
-	ArrayList<Attribute> yClass = new ArrayList<Attribute>(173);
-
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
@@ -418,7 +148,8 @@ SelectPartitionDialogFragment.SelectPartitionDialogListener,
 			getSupportActionBar().setDisplayShowHomeEnabled(true);
 		}
 
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+		permissionState = PermissionState.get(this);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && !permissionState.isGranted()) {
             requestMyPermissions();
         }
 
@@ -429,52 +160,12 @@ SelectPartitionDialogFragment.SelectPartitionDialogListener,
 			.add(R.id.container, new TrackerFragment()).commit();
 		}
 
-		rotation = new float[9];
-		inclination = new float[9];
-		orientation = new float[3];
-
-		sensorManager = (SensorManager) getSystemService(Context.SENSOR_SERVICE);
-		wifiManager = (WifiManager) getSystemService(Context.WIFI_SERVICE);
-		locationManager = (LocationManager) getSystemService(Context.LOCATION_SERVICE);
-
-		locationListener = new LocationListener() {
-
-			@Override
-			public void onLocationChanged(Location location) {
-				updateLocation(location);
-			}
-
-			@Override
-			public void onStatusChanged(String provider, int status,
-					Bundle extras) {}
-
-			@Override
-			public void onProviderEnabled(String provider) {}
-
-			@Override
-			public void onProviderDisabled(String provider) {}
-		};
-
-		loadXClassifierModels();
-		loadYClassifierModels();
-//		loadPartitionClassifierModels();
-
-		setUpXInstances();
-		setUpYInstances();
-//		setUpPartitionInstances();
-
-		wifiReadings = new LinkedHashMap<String, Integer>();
 		// Set grid options
-		GridView grid = (GridView) findViewById(R.id.tracker_gridView);
+		grid = (GridView) findViewById(R.id.tracker_gridView);
 		//grid.setGridSize(roomWidth, roomLength);
-		grid.setGridSize(102, 64);
+		grid.setGridSize(LocalizationEngine.GRID_WIDTH, LocalizationEngine.GRID_HEIGHT);
 		grid.setCatchInput(false);
 		//grid.setDisplayMap(displayMap)
-		t = new Thread();
-		t.start();
-
-		//load5PartitionClassifiers = new Thread();
-		//load5PartitionClassifiers.start();
 	}
 
 
@@ -496,108 +187,31 @@ SelectPartitionDialogFragment.SelectPartitionDialogListener,
 			ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.WRITE_EXTERNAL_STORAGE}, REQUEST_WRITE_STORAGE);
 		}
     }
-	// TODO: make pretty (i.e. hide this in another class)
-	/**
-	 * Adds the attributes to the x classification, sets up the xInstance to
-	 * allow the classifier to predict x position from these attributes
-	 */
-	private void setUpXInstances() {
-		xClass.add(attrAccelX);
-		xClass.add(attrAccelY);
-		xClass.add(attrAccelZ);
-		xClass.add(attrMagneticX);
-		xClass.add(attrMagneticY);
-		xClass.add(attrMagneticZ);
-		xClass.add(attrLight);
-		xClass.add(attrRotationX);
-		xClass.add(attrRotationY);
-		xClass.add(attrRotationZ);
-		xClass.add(attrOrientationX);
-		xClass.add(attrOrientationY);
-		xClass.add(attrOrientationZ);
-		xClass.add(attrBSSID1);
-		xClass.add(attrBSSID2);
-		xClass.add(attrBSSID3);
-		xClass.add(attrBSSID4);
-		xClass.add(attrBSSID5);
-		xClass.add(attrBSSID6);
-		xClass.add(attrBSSID7);
-		xClass.add(attrBSSID8);
-		xClass.add(attrBSSID9);
-		xClass.add(attrBSSID10);
-		xClass.add(attrLatitude);
-		xClass.add(attrLongitude);
-		xClass.add(attrLocationAccuracy);
-		xClass.add(attrXPosition);
 
-		xInstances = new Instances("xPos", xClass, 1);
-		xInstances.setClassIndex(172);
-		xInstances.add(new DenseInstance(173));
+	@Override
+	public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions,
+										   @NonNull int[] grantResults) {
+		permissionState.refresh();
+		super.onRequestPermissionsResult(requestCode, permissions, grantResults);
 	}
 
-	// TODO this one too
-	/**
-	 * Adds the attributes to the y classification, sets up the yInstance to
-	 * allow the classifier to predict y position from these attributes
-	 */
-	private void setUpYInstances() {
-		yClass.add(attrAccelX);
-		yClass.add(attrAccelY);
-		yClass.add(attrAccelZ);
-		yClass.add(attrMagneticX);
-		yClass.add(attrMagneticY);
-		yClass.add(attrMagneticZ);
-		yClass.add(attrLight);
-		yClass.add(attrRotationX);
-		yClass.add(attrRotationY);
-		yClass.add(attrRotationZ);
-		yClass.add(attrOrientationX);
-		yClass.add(attrOrientationY);
-		yClass.add(attrOrientationZ);
-		yClass.add(attrBSSID1);
-		yClass.add(attrBSSID2);
-		yClass.add(attrBSSID3);
-		yClass.add(attrBSSID4);
-		yClass.add(attrBSSID5);
-		yClass.add(attrBSSID6);
-		yClass.add(attrBSSID7);
-		yClass.add(attrBSSID8);
-		yClass.add(attrBSSID9);
-		yClass.add(attrBSSID10);
-		yClass.add(attrLatitude);
-		yClass.add(attrLongitude);
-		yClass.add(attrLocationAccuracy);
-		yClass.add(attrYPosition);
+	@Override
+	protected void onStart() {
+		super.onStart();
 
-		yInstances = new Instances("yPos", yClass, 1);
-		yInstances.setClassIndex(172);
-		yInstances.add(new DenseInstance(173));
+		// Tracking goes on in the service until the user leaves this activity
+		Intent intent = new Intent(this, LocalizationService.class);
+		startService(intent);
+		bindService(intent, connection, Context.BIND_AUTO_CREATE);
 	}
 
-	// TODO and this one
-	/**
-	 * Adds the attributes to the partition classification, set partition up to
-	 * allow the classifier to predict partition from these attributes
-	 */
-
 	@Override
 	public void onResume() {
 		super.onResume();
 
-		File root = Environment.getExternalStorageDirectory();
-		File dir = new File(root.getAbsolutePath() + "/indoor_localization");
-		dir.mkdirs();
-		file = new File(dir, "livetest_" + building + ".txt");
-		valuesFile = new File(dir, "livetest_" + building + "_values.txt");
-		try {
-			outputStream = new FileOutputStream(file, true);
-			valuesOutputStream = new FileOutputStream(valuesFile, true);
-			writer = new PrintWriter(outputStream);
-			valuesWriter = new PrintWriter(valuesOutputStream);
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
-		
+		// The user may have changed the permissions in the settings
+		permissionState.refresh();
+
 		// Set building textview to the building the user has selected
 		//TextView buildingText = (TextView) findViewById(R.id.text_building);
 		//buildingText.setText("Building: " + building);
@@ -607,280 +221,45 @@ SelectPartitionDialogFragment.SelectPartitionDialogListener,
 		//roomSizeText.setText("Room size: " + roomWidth + " x " + roomLength);
 
 		// Set grid options
-		GridView grid = (GridView) findViewById(R.id.tracker_gridView);
+		grid = (GridView) findViewById(R.id.tracker_gridView);
 		//grid.setGridSize(roomWidth, roomLength);
-		grid.setGridSize(102, 64);
+		grid.setGridSize(LocalizationEngine.GRID_WIDTH, LocalizationEngine.GRID_HEIGHT);
 		grid.setCatchInput(false);
 		//grid.setDisplayMap(displayMap);
 
-		// Register to get sensor updates from all the available sensors
-		sensorList = sensorManager.getSensorList(Sensor.TYPE_ALL);
-		for (Sensor sensor : sensorList) {
-			sensorManager.registerListener(this, sensor, SensorManager.SENSOR_DELAY_FASTEST);
-		}
-
-		// Enable wifi if it is disabled
-		if (!wifiManager.isWifiEnabled()) {
-			Toast.makeText(this, "WiFi not enabled. Enabling...", Toast.LENGTH_SHORT).show();
-			wifiManager.setWifiEnabled(true);
-		}
-
-
-            // Request location updates from gps and the network
-		//@author Mahesh Gaya added permission if-statment
-		if (ActivityCompat.checkSelfPermission(this, android.Manifest.permission.ACCESS_FINE_LOCATION)
-				!= PackageManager.PERMISSION_GRANTED
-				|| ActivityCompat.checkSelfPermission(this, android.Manifest.permission.ACCESS_WIFI_STATE)
-				!= PackageManager.PERMISSION_GRANTED
-				|| ActivityCompat.checkSelfPermission(this, android.Manifest.permission.CHANGE_WIFI_STATE)
-				!= PackageManager.PERMISSION_GRANTED
-				|| ActivityCompat.checkSelfPermission(this, android.Manifest.permission.WRITE_EXTERNAL_STORAGE)
-				!= PackageManager.PERMISSION_GRANTED) {
-			Log.i(TAG, "Permissions have NOT been granted. Requesting permissions.");
-			requestMyPermissions();
-		} else  {
-			Log.i(TAG, "Permissions have already been granted. Getting location from GPS and Network");
-            locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER,
-                    0, 0, locationListener);
-            locationManager.requestLocationUpdates(LocationManager.NETWORK_PROVIDER,
-                    0, 0, locationListener);
-        }
-
-		registerReceiver(receiver, new IntentFilter(WifiManager.SCAN_RESULTS_AVAILABLE_ACTION));
-
-		wifiManager.startScan();
-		Toast.makeText(this, "Initiated scan", Toast.LENGTH_SHORT).show();	
-
 		xText = (TextView) findViewById(R.id.tracker_text_xcoord);
 		yText = (TextView) findViewById(R.id.tracker_text_ycoord);
 	}
 
 	@Override
-	public void onPause() {
-		// Stop receiving updates
-		sensorManager.unregisterListener(this);
-
-		//@author Mahesh Gaya added permission if-statment
-		if (ActivityCompat.checkSelfPermission(this, android.Manifest.permission.ACCESS_FINE_LOCATION)
-				!= PackageManager.PERMISSION_GRANTED
-				|| ActivityCompat.checkSelfPermission(this, android.Manifest.permission.ACCESS_WIFI_STATE)
-				!= PackageManager.PERMISSION_GRANTED
-				|| ActivityCompat.checkSelfPermission(this, android.Manifest.permission.CHANGE_WIFI_STATE)
-				!= PackageManager.PERMISSION_GRANTED
-				|| ActivityCompat.checkSelfPermission(this, android.Manifest.permission.WRITE_EXTERNAL_STORAGE)
-				!= PackageManager.PERMISSION_GRANTED) {
-			Log.i(TAG, "Permissions have NOT been granted. Requesting permissions.");
-			requestMyPermissions();
-		} else  {
-			Log.i(TAG, "Permissions have already been granted. Removing Updates.");
-            locationManager.removeUpdates(locationListener);
-        }
-		unregisterReceiver(receiver);
-		
-		writer.close();
-		valuesWriter.close();
-
-		//savePreferences();
-
-		super.onPause();
+	protected void onStop() {
+		if (engine != null) {
+			engine.removePositionListener(this);
+			engine = null;
+		}
+		unbindService(connection);
+		super.onStop();
 	}
 
-	/**
-	 * Helper method to keep track of the most up-to-date location
-	 */
-	private void updateLocation(Location location) {
-		this.location = location;
+	@Override
+	protected void onDestroy() {
+		if (isFinishing()) {
+			stopService(new Intent(this, LocalizationService.class));
+		}
+		super.onDestroy();
 	}
 
 	/**
-	 * When a new WiFi scan comes in, get sensor values and predict position
+	 * Shows the newest position from the engine
 	 */
-	private void updateScanResults() {
-		resetWifiReadings();
-
-		scanResults = wifiManager.getScanResults();
-
-		// Start another scan to recalculate user position
-		wifiManager.startScan();
-		
-		time = new Timestamp(System.currentTimeMillis());
-		
-		for (ScanResult result : scanResults) {
-			if (wifiReadings.get(result.BSSID) != null) {
-				wifiReadings.put(result.BSSID, result.level);
-			} // else BSSID wasn't programmed in
-		}
-	//@author Mahesh Gaya added permission if-statment
-		if (ActivityCompat.checkSelfPermission(this, android.Manifest.permission.ACCESS_FINE_LOCATION)
-				!= PackageManager.PERMISSION_GRANTED
-				|| ActivityCompat.checkSelfPermission(this, android.Manifest.permission.ACCESS_WIFI_STATE)
-				!= PackageManager.PERMISSION_GRANTED
-				|| ActivityCompat.checkSelfPermission(this, android.Manifest.permission.CHANGE_WIFI_STATE)
-				!= PackageManager.PERMISSION_GRANTED
-				|| ActivityCompat.checkSelfPermission(this, android.Manifest.permission.WRITE_EXTERNAL_STORAGE)
-				!= PackageManager.PERMISSION_GRANTED) {
-			Log.i(TAG, "Permissions have NOT been granted. Requesting permissions.");
-			requestMyPermissions();
-		} else {
-			Log.i(TAG, "Permissions have already been granted. Getting last known location from GPS and Network");
-			if (location == null) {
-				location = locationManager.getLastKnownLocation(LocationManager.GPS_PROVIDER);
-			}
-			if (location == null) {
-				locationManager.getLastKnownLocation(LocationManager.NETWORK_PROVIDER);
-			}
-		}
-		setInstanceValues();
-		
-		printValues();
-
-		// this is where the magic happens
-		// TODO clean up
-		if (!t.isAlive()) {
-			t = new Thread(new Runnable() {
-				public void run() {
-					Timestamp myTime = time;
-					try{
-						predictedX = (float) classifierXKStar.classifyInstance(xInstances.get(0));
-					} catch (Exception e){
-						Log.e(TAG, Log.getStackTraceString(e));
-					}
-					try{
-						predictedY = (float) classifierYKStar.classifyInstance(yInstances.get(0));
-					} catch (Exception e){
-						Log.e(TAG, Log.getStackTraceString(e));
-					}
-					// This doesn't do anything -> classifierXKStar is null -> not loaded
-					/*try {
-						predictedX = (float) classifierXRBFRegressor.classifyInstance(xInstances.get(0));
-					} catch (Exception e) {
-						e.printStackTrace();
-					}
-					// Likewise, doesn't happen
-					try {
-						predictedY = (float) classifierYRBFRegressor.classifyInstance(yInstances.get(0));
-					} catch (Exception e) {
-						e.printStackTrace();
-					}*/
-
-					// Get the partition that the new instance is in
-					// Use the classifier of the predicted partition to predict an x and y value for
-					// the new instance if the classifier is loaded (not null)
-//					try {
-//						predictedPartition = partitionClassifier.classifyInstance(partitionInstances.get(0));
-//						//double[] dist = partitionClassifier.distributionForInstance(partitionInstances.get(0)); // gets the probability distribution for the instance
-//					} catch (Exception e) {
-//						e.printStackTrace();
-//					}
-//
-//					String partitionString = partitionInstances.classAttribute().value((int) predictedPartition);
-//					if (partitionString.equals("upperleft")) {
-//						if (partitionUpperLeftX != null) {
-//							try {
-//								predictedX = (float) partitionUpperLeftX.classifyInstance(xInstances.get(0));
-//							} catch (Exception e) {
-//								e.printStackTrace();
-//							}
-//						}
-//						if (partitionUpperLeftY != null) {
-//							try {
-//								predictedY = (float) partitionUpperLeftY.classifyInstance(yInstances.get(0));
-//							} catch (Exception e) {
-//								e.printStackTrace();
-//							}
-//						}
-//					} else if (partitionString.equals("upperright")) {
-//						if (partitionUpperRightX != null) {
-//							try {
-//								predictedX = (float) partitionUpperRightX.classifyInstance(xInstances.get(0));
-//							} catch (Exception e) {
-//								e.printStackTrace();
-//							}
-//						}
-//						if (partitionUpperRightY != null) {
-//							try {
-//								predictedY = (float) partitionUpperRightY.classifyInstance(yInstances.get(0));
-//							} catch (Exception e) {
-//								e.printStackTrace();
-//							}
-//						}
-//					} else if (partitionString.equals("lowerleft")) {
-//						if (partitionLowerLeftX != null) {
-//							try {
-//								predictedX = (float) partitionLowerLeftX.classifyInstance(xInstances.get(0));
-//							} catch (Exception e) {
-//								e.printStackTrace();
-//							}
-//						}
-//						if (partitionLowerLeftY != null) {
-//							try {
-//								predictedY = (float) partitionLowerLeftY.classifyInstance(yInstances.get(0));
-//							} catch (Exception e) {
-//								e.printStackTrace();
-//							}
-//						}
-//					} else if (partitionString.equals("lowerright")) {
-//						if (partitionLowerRightX != null) {
-//							try {
-//								predictedX = (float) partitionLowerRightX.classifyInstance(xInstances.get(0));
-//							} catch (Exception e) {
-//								e.printStackTrace();
-//							}
-//						}
-//						if (partitionLowerRightY != null) {
-//							try {
-//								predictedY = (float) partitionLowerRightY.classifyInstance(yInstances.get(0));
-//							} catch (Exception e) {
-//								e.printStackTrace();
-//							}
-//						}
-//					} else if (partitionString.equals("middle")) {
-//						if (partitionMiddleX != null) {
-//							try {
-//								predictedX = (float) partitionMiddleX.classifyInstance(xInstances.get(0));
-//							} catch (Exception e) {
-//								e.printStackTrace();
-//							}
-//						}
-//						if (partitionMiddleX != null) {
-//							try {
-//								predictedY = (float) partitionMiddleY.classifyInstance(yInstances.get(0));
-//							} catch (Exception e) {
-//								e.printStackTrace();
-//							}
-//						}
-//					}
-
-					xText.post(new Runnable() {
-						public void run() {
-							xText.setText("X Position: " + predictedX);
-						}
-					});
-
-					yText.post(new Runnable() {
-						public void run() {
-							yText.setText("Y Position: " + predictedY);
-						}
-					});
-					
-					// TODO: make this work -> grid is apparently null here. For whatever reason.
-					runOnUiThread(new Runnable() {
-						public void run() {
-							grid.setUserPointCoords(predictedX, predictedY);
-						}
-					});
-					
-					
-					// Unnecessary if you're not testing
-					writer.print("(" + predictedX + "," + predictedY + ")");
-					writer.print(" %" + myTime.toString() + "\t " + time.toString() +
-							"\t" + new Timestamp(System.currentTimeMillis()) + "\n");
-					writer.flush();
-				}
-			});
-			t.setPriority(Thread.MIN_PRIORITY); // run in the background
-			t.start();
+	@Override
+	public void onPosition(float x, float y) {
+		if (xText == null) {
+			return;
 		}
+		xText.setText("X Position: " + x);
+		yText.setText("Y Position: " + y);
+		grid.setUserPointCoords(x, y);
 	}
 
 	/**
@@ -893,19 +272,9 @@ SelectPartitionDialogFragment.SelectPartitionDialogListener,
 	public void nextPoint(View view) {
 		pointCounter++;
 
-		File root = Environment.getExternalStorageDirectory();
-		File dir = new File(root.getAbsolutePath() + "/indoor_localization");
-		dir.mkdirs();
-		File file = new File(dir, "livetest_" + building + ".txt");
-		try {
-			FileOutputStream outputStream = new FileOutputStream(file, true);
-			PrintWriter writer = new PrintWriter(outputStream);
-			writer.print("DONE: (" + nextX + "," + nextY + ")");
-			writer.print(" %" + (new Timestamp(System.currentTimeMillis())).toString() + "\n\n");
-			writer.flush();
-			writer.close();
-		} catch (Exception e) {
-			e.printStackTrace();
+		// Goes through the engine's log, which also has the file open
+		if (engine == null || !engine.logPointDone(nextX, nextY)) {
+			Toast.makeText(this, "Not tracking, point not logged", Toast.LENGTH_SHORT).show();
 		}
 
 		switch (pointCounter) {
@@ -1002,6 +371,19 @@ SelectPartitionDialogFragment.SelectPartitionDialogListener,
 		return true;
 	}
 
+	/**
+	 * The engine may have been set up differently by an earlier visit
+	 */
+	@Override
+	public boolean onPrepareOptionsMenu(Menu menu) {
+		if (engine != null) {
+			menu.findItem(R.id.action_blend_partitions).setChecked(engine.isBlendingPartitions());
+			menu.findItem(R.id.action_track_steps).setChecked(engine.isTrackingSteps());
+			menu.findItem(R.id.action_particle_filter).setChecked(engine.isParticleFilter());
+		}
+		return super.onPrepareOptionsMenu(menu);
+	}
+
 	@Override
 	public boolean onOptionsItemSelected(MenuItem item) {
 		// Handle action bar item clicks here. The action bar will
@@ -1014,9 +396,31 @@ SelectPartitionDialogFragment.SelectPartitionDialogListener,
 				break;
 			case R.id.action_select_partitioning:
 				// open partition selection
-				// todo something with this
 				showSelectPartitionDialog();
 				break;
+			case R.id.action_blend_partitions:
+				if (engine != null) {
+					engine.setBlendPartitions(!item.isChecked());
+					item.setChecked(engine.isBlendingPartitions());
+				}
+				break;
+			case R.id.action_track_steps:
+				if (engine != null) {
+					engine.setTrackSteps(!item.isChecked());
+					item.setChecked(engine.isTrackingSteps());
+				}
+				break;
+			case R.id.action_particle_filter:
+				if (engine != null) {
+					engine.setParticleFilter(!item.isChecked());
+					item.setChecked(engine.isParticleFilter());
+				}
+				break;
+			case R.id.action_latency_stats:
+				if (engine != null) {
+					showLatencyStatsDialog();
+				}
+				break;
 			case R.id.action_start_data_collection:
 				// start main activity
 				Intent intent = new Intent(this, MainActivity.class);
@@ -1035,350 +439,81 @@ SelectPartitionDialogFragment.SelectPartitionDialogListener,
 		return true;
 	}
 
-	/*
-	 * Because Android doesn't let us query a sensor reading whenever we want
-	 * we have to keep track of the readings at all times. Here we just update
-	 * the class members with the values associated with each reading we're
-	 * interested in.
-	 */
-	@Override
-	public void onSensorChanged(SensorEvent event) {
-		switch (event.sensor.getType()) {
-			case Sensor.TYPE_ACCELEROMETER:
-				accelerometerX = event.values[0];
-				accelerometerY = event.values[1];
-				accelerometerZ = event.values[2];
-				break;
-			case Sensor.TYPE_MAGNETIC_FIELD:
-				magneticX = event.values[0];
-				magneticY = event.values[1];
-				magneticZ = event.values[2];
-				break;
-			case Sensor.TYPE_LIGHT:
-				light = event.values[0];
-				break;
-			case Sensor.TYPE_ROTATION_VECTOR:
-				rotationX = event.values[0];
-				rotationY = event.values[1];
-				rotationZ = event.values[2];
-				break;
-			default:
-				break;
-		}
-
-		SensorManager.getRotationMatrix(rotation, inclination, 
-				new float[] {accelerometerX, accelerometerY, accelerometerZ}, 
-				new float[] {magneticX, magneticY, magneticZ});
-		orientation = SensorManager.getOrientation(rotation, orientation);
-	}
-
-	@Override
-	public void onAccuracyChanged(Sensor sensor, int accuracy) {}
-
 	/**
-	 * Loads the classifiers for predicting the X position
+	 * Let the user pick what partitioning scheme they want to use
 	 */
-	private void loadXClassifierModels() {
-		try {
-			classifierXKStar = (KStar) weka.core.SerializationHelper.read(
-					getAssets().open("classifier_x_kstar.model"));
-//			partitionLowerLeftX = (KStar) weka.core.SerializationHelper.read(
-//					getAssets().open("5partition/model_x_lowerleft.model"));
-//			partitionLowerRightX = (KStar) weka.core.SerializationHelper.read(
-//					getAssets().open("5partition/model_x_lowerright.model"));
-//			partitionUpperLeftX = (KStar) weka.core.SerializationHelper.read(
-//					getAssets().open("5partition/model_x_upperleft.model"));
-//			partitionUpperRightX = (KStar) weka.core.SerializationHelper.read(
-//					getAssets().open("5partition/model_x_upperright.model"));
-//			partitionMiddleX = (KStar) weka.core.SerializationHelper.read(
-//					getAssets().open("5partition/model_x_middle.model"));
-		} catch (Exception e) {
-			e.printStackTrace();
-			Toast.makeText(this, "KStar x classifier did not load", Toast.LENGTH_LONG).show();
-		}
-
-		try {
-			classifierXRBFRegressor = (RBFRegressor) weka.core.SerializationHelper.read(
-					getAssets().open("classifier_x_rbfreg.model"));
-		} catch (Exception e) {
-			e.printStackTrace();
-			Toast.makeText(this, "RBFRegressor x classifier did not load", Toast.LENGTH_LONG).show();
-		}
+	private void showSelectPartitionDialog() {
+		DialogFragment dialog = new SelectPartitionDialogFragment();
+		dialog.show(getSupportFragmentManager(), "SelectPartitionDialogFragment");
 	}
 
 	/**
-	 * Loads the classifiers to predict Y position
+	 * Show how long each stage from a scan to the position on screen is taking
 	 */
-	private void loadYClassifierModels() {
-		try {
-			classifierYKStar = (KStar) weka.core.SerializationHelper.read(
-					getAssets().open("classifier_y_kstar.model"));
-//			partitionLowerLeftY = (KStar) weka.core.SerializationHelper.read(
-//					getAssets().open("5partition/model_y_lowerleft.model"));
-//			partitionLowerRightY = (KStar) weka.core.SerializationHelper.read(
-//					getAssets().open("5partition/model_y_lowerright.model"));
-//			partitionUpperLeftY = (KStar) weka.core.SerializationHelper.read(
-//					getAssets().open("5partition/model_y_upperleft.model"));
-//			partitionUpperRightY = (KStar) weka.core.SerializationHelper.read(
-//					getAssets().open("5partition/model_y_upperright.model"));
-//			partitionMiddleY = (KStar) weka.core.SerializationHelper.read(
-//					getAssets().open("5partition/model_y_middle.model"));
-		} catch (Exception e) {
-			e.printStackTrace();
-			Toast.makeText(this, "KStar y classifier did not load", Toast.LENGTH_LONG).show();
-		}
-
-		try {
-			classifierYRBFRegressor = (RBFRegressor) weka.core.SerializationHelper.read(
-					getAssets().open("classifier_y_rbfreg.model"));
-		} catch (Exception e) {
-			e.printStackTrace();
-			Toast.makeText(this, "RBFRegressor y classifier did not load", Toast.LENGTH_LONG).show();
-		}
+	private void showLatencyStatsDialog() {
+		DialogFragment dialog = new LatencyStatsDialogFragment();
+		dialog.show(getSupportFragmentManager(), "LatencyStatsDialogFragment");
 	}
 
-	/**
-	 * Loads the classifier to predict the partition
-	 */
-	private void loadPartitionClassifierModels() {
-		try {
-//			partitionClassifier = (RandomForest) weka.core.SerializationHelper.read(
-//					getAssets().open("5partition/model_randomforest.model"));
-		} catch (Exception e) {
-			e.printStackTrace();
-			Toast.makeText(this, "Partition classifier did not load", Toast.LENGTH_LONG).show();
-		}
+	@Override
+	public LatencyStats getLatencyStats() {
+		return engine != null ? engine.getLatencyStats() : null;
 	}
 
-	/**
-	 * Let the user pick what partitioning scheme they want to use
-	 */
-	private void showSelectPartitionDialog() {
-		DialogFragment dialog = new SelectPartitionDialogFragment();
-		dialog.show(getSupportFragmentManager(), "SelectPartitionDialogFragment");
+	@Override
+	public ScanScheduler getScanScheduler() {
+		return engine != null ? engine.getScanScheduler() : null;
 	}
 
 	/**
-	 * When the partitioning scheme changes, we should update the classifiers
-	 * to reflect this
-     *
-     * TODO fix this
+	 * Writes the latency stats next to the live test logs, one file per save
 	 */
 	@Override
-	public void onPartitionChanged(String partitioning) {
-		//TextView buildingText = (TextView) findViewById(R.id.text_building);
-		//buildingText.setText("Building: " + building);
-		//Toast.makeText(this, "New partitioning: " + partitioning, Toast.LENGTH_SHORT).show();
-		/*switch (partitioning) {
-			case "Full":
-				partitionClassifier = null;
-				break;
-			case "3Partition":
-				try {
-					partitionClassifier = (RandomForest) weka.core.SerializationHelper.read(
-							getAssets().open("3partition/model_randomforest.model"));
-				} catch (Exception e) {
-					e.printStackTrace();
-					Toast.makeText(this,  "Partition classifier did not load", Toast.LENGTH_LONG).show();
-				}
-				break;
-			case "5Partition":
-				try {
-					partitionClassifier = (RandomForest) weka.core.SerializationHelper.read(
-							getAssets().open("5partition/model_randomforest.model"));
-				} catch (Exception e) {
-					e.printStackTrace();
-					Toast.makeText(this, "Partition classifier did not load", Toast.LENGTH_LONG).show();
-				}
-				load5PartitionClassifiers();
-				break;
-			case "7Partition":
+	public void onSaveLatencyStats() {
+		if (engine == null) {
+			return;
+		}
+		final LatencyStats stats = engine.getLatencyStats();
+		String building = engine.getBuilding();
+		final String name = "latency_" + (building != null ? building + "_" : "")
+				+ System.currentTimeMillis() + ".txt";
+		// Writing to storage can take a while, so keep it off the UI thread
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				File root = Environment.getExternalStorageDirectory();
+				File dir = new File(root.getAbsolutePath() + "/indoor_localization");
+				dir.mkdirs();
 				try {
-					partitionClassifier = (RandomForest) weka.core.SerializationHelper.read(
-							getAssets().open("7partition/model_randomforest.model"));
-				} catch (Exception e) {
+					stats.writeTo(new File(dir, name));
+					showToast("Saved " + name, Toast.LENGTH_SHORT);
+				} catch (IOException e) {
 					e.printStackTrace();
-					Toast.makeText(this, "Partition classifier did not load", Toast.LENGTH_LONG).show();
+					showToast("Latency stats could not be saved", Toast.LENGTH_LONG);
 				}
-				break;
-		}
-		 */
-	}
-
-	/**
-	 * Empty out the wifi readings hashmap. Otherwise if you switch buildings in in the
-	 * middle of a session the access points for both buildings will be stored to the
-	 * data file and mess up the arff file
-	 *
-	 * TODO: add other buildings here as well
-	 * TODO: Get approximate building name from GPS
-	 * TODO: Can we have an automated reading? Need to remove these hardcoded MAC addresses
-	 * NOTE: Wifi access points are going to be replaced with new ones
-	 */
-	private void resetWifiReadings() {
-		wifiReadings.clear();
-
-		// The readings ending in :00, :01, :02, and :03 are in the 2.4 GHz band
-		// The readings ending in :0c, :0d, :0e, and :0f are in the 5 GHz band
-		//ramadanDO: add current access points
-		//3alam: change to your mac addresses.
-		wifiReadings.put("00:1E:58:27:0B:8D",0);
-		wifiReadings.put("D8:C7:C8:0C:D2:80",0);
-		wifiReadings.put("E8:DE:27:EF:0E:FE",0);
-		wifiReadings.put("F8:1A:67:C7:E8:40",0);
-		wifiReadings.put("40:E3:D6:1E:98:F0",0);
+			}
+		}, "LIPS stats").start();
 	}
-	
-	/**
-	 * Unnecessary if you're not testing/evaluating
-	 * Prints out the sensor values and time at each data point
-	 */
-	private void printValues() {
-		valuesWriter.print(accelerometerX + "," + accelerometerY + "," + accelerometerZ +
-				"," + magneticX + "," + magneticY + "," + magneticZ + "," + light +
-				"," + rotationX + "," + rotationY + "," + rotationZ + "," +
-				orientation[0] + "," + orientation[1] + "," + orientation[2]);
 
-		for (String key : wifiReadings.keySet()) {
-			valuesWriter.print("," + wifiReadings.get(key));
-			}
-		
-		if (location != null) {
-			valuesWriter.print("," + location.getLatitude() + "," + location.getLongitude() + 
-				"," + location.getAccuracy());
-		} else {
-			//@author Mahesh Gaya added permission if-statment
-			if (ActivityCompat.checkSelfPermission(this, android.Manifest.permission.ACCESS_FINE_LOCATION)
-					!= PackageManager.PERMISSION_GRANTED
-					|| ActivityCompat.checkSelfPermission(this, android.Manifest.permission.ACCESS_WIFI_STATE)
-					!= PackageManager.PERMISSION_GRANTED
-					|| ActivityCompat.checkSelfPermission(this, android.Manifest.permission.CHANGE_WIFI_STATE)
-					!= PackageManager.PERMISSION_GRANTED
-					|| ActivityCompat.checkSelfPermission(this, android.Manifest.permission.WRITE_EXTERNAL_STORAGE)
-					!= PackageManager.PERMISSION_GRANTED) {
-				Log.i(TAG, "Permissions have NOT been granted. Requesting permissions.");
-				requestMyPermissions();
-			} else  {
-				Log.i(TAG, "Permissions have already been granted. Getting location from GPS and Network");
-                location = locationManager.getLastKnownLocation(LocationManager.GPS_PROVIDER);
-            }
-			if (location != null) {
-				valuesWriter.print("," + location.getLatitude() + "," +
-						location.getLongitude() + "," + location.getAccuracy());
-			} else {
-				//@author Mahesh Gaya added permission if-statment
-				if (ActivityCompat.checkSelfPermission(this, android.Manifest.permission.ACCESS_FINE_LOCATION)
-						!= PackageManager.PERMISSION_GRANTED
-						|| ActivityCompat.checkSelfPermission(this, android.Manifest.permission.ACCESS_WIFI_STATE)
-						!= PackageManager.PERMISSION_GRANTED
-						|| ActivityCompat.checkSelfPermission(this, android.Manifest.permission.CHANGE_WIFI_STATE)
-						!= PackageManager.PERMISSION_GRANTED
-						|| ActivityCompat.checkSelfPermission(this, android.Manifest.permission.WRITE_EXTERNAL_STORAGE)
-						!= PackageManager.PERMISSION_GRANTED) {
-					Log.i(TAG, "Permissions have NOT been granted. Requesting permissions.");
-					requestMyPermissions();
-				} else  {
-					Log.i(TAG, "Permissions have already been granted. Getting location from GPS and Network");
-                    location = locationManager.getLastKnownLocation(
-                            LocationManager.NETWORK_PROVIDER);
-                }
-				if (location != null) {
-					valuesWriter.print("," + location.getLatitude() + "," +
-							location.getLongitude() + "," + location.getAccuracy());
-				} else {
-					valuesWriter.print(",?,?,?");
-				}
+	private void showToast(final String text, final int duration) {
+		runOnUiThread(new Runnable() {
+			@Override
+			public void run() {
+				Toast.makeText(TrackerActivity.this, text, duration).show();
 			}
-		}
-		
-		valuesWriter.print(" %" + (new Timestamp(System.currentTimeMillis())).toString());
-		
-		valuesWriter.print("\n\n");
-		valuesWriter.flush();
-
+		});
 	}
 
-	// TODO clean all this up (hide it in another class or something)
+
 	/**
-	 * Add the value for each attribute of the data to the instance so that the
-	 * classifier can predict a position
+	 * When the partitioning scheme changes, we should update the classifiers
+	 * to reflect this. The models load in the background; until they are ready
+	 * the full building classifiers keep predicting
 	 */
-	private void setInstanceValues() {
-		xInstances.get(0).setValue(attrAccelX, accelerometerX);
-		xInstances.get(0).setValue(attrAccelY, accelerometerY);
-		xInstances.get(0).setValue(attrAccelZ, accelerometerZ);
-		xInstances.get(0).setValue(attrMagneticX, magneticX);
-		xInstances.get(0).setValue(attrMagneticY, magneticY);
-		xInstances.get(0).setValue(attrMagneticZ, magneticZ);
-		xInstances.get(0).setValue(attrLight, light);
-		xInstances.get(0).setValue(attrRotationX, rotationX);
-		xInstances.get(0).setValue(attrRotationY, rotationY);
-		xInstances.get(0).setValue(attrRotationZ, rotationZ);
-		xInstances.get(0).setValue(attrOrientationX, orientation[0]);
-		xInstances.get(0).setValue(attrOrientationY, orientation[1]);
-		xInstances.get(0).setValue(attrOrientationZ, orientation[2]);
-
-		//ramadanDO: set access points here
-
-//		wifiReadings.put("00:1E:58:27:0B:8D",0);
-//		wifiReadings.put("D8:C7:C8:0C:D2:80",0);
-//		wifiReadings.put("E8:DE:27:EF:0E:FE",0);
-//		wifiReadings.put("F8:1A:67:C7:E8:40",0);
-//		wifiReadings.put("40:E3:D6:1E:98:F0",0);
-		//3alam: change to your mac addresses
-		xInstances.get(0).setValue(attrBSSID1, wifiReadings.get("00:1E:58:27:0B:8D"));
-		xInstances.get(0).setValue(attrBSSID2, wifiReadings.get("D8:C7:C8:0C:D2:80"));
-		xInstances.get(0).setValue(attrBSSID3, wifiReadings.get("E8:DE:27:EF:0E:FE"));
-		xInstances.get(0).setValue(attrBSSID4, wifiReadings.get("F8:1A:67:C7:E8:40"));
-		xInstances.get(0).setValue(attrBSSID5, wifiReadings.get("40:E3:D6:1E:98:F0"));
-
-
-		if (location != null) {
-			xInstances.get(0).setValue(attrLatitude, location.getLatitude());
-			xInstances.get(0).setValue(attrLongitude, location.getLongitude());
-			xInstances.get(0).setValue(attrLocationAccuracy, location.getAccuracy());
-		} else {
-			Toast.makeText(this, "Location was null", Toast.LENGTH_SHORT).show();
-			xInstances.get(0).setMissing(attrLatitude);
-			xInstances.get(0).setMissing(attrLongitude);
-			xInstances.get(0).setMissing(attrLocationAccuracy);
-		}
-
-		yInstances.get(0).setValue(attrAccelX, accelerometerX);
-		yInstances.get(0).setValue(attrAccelY, accelerometerY);
-		yInstances.get(0).setValue(attrAccelZ, accelerometerZ);
-		yInstances.get(0).setValue(attrMagneticX, magneticX);
-		yInstances.get(0).setValue(attrMagneticY, magneticY);
-		yInstances.get(0).setValue(attrMagneticZ, magneticZ);
-		yInstances.get(0).setValue(attrLight, light);
-		yInstances.get(0).setValue(attrRotationX, rotationX);
-		yInstances.get(0).setValue(attrRotationY, rotationY);
-		yInstances.get(0).setValue(attrRotationZ, rotationZ);
-		yInstances.get(0).setValue(attrOrientationX, orientation[0]);
-		yInstances.get(0).setValue(attrOrientationY, orientation[1]);
-		yInstances.get(0).setValue(attrOrientationZ, orientation[2]);
-//		yInstances.get(0).setValue(attrBSSID1, wifiReadings.get("00:17:0f:8d:c3:e0"));
-//		yInstances.get(0).setValue(attrBSSID2, wifiReadings.get("00:17:0f:8d:c3:e1"));
-//		yInstances.get(0).setValue(attrBSSID3, wifiReadings.get("00:17:0f:8d:c3:e2"));
-//		yInstances.get(0).setValue(attrBSSID4, wifiReadings.get("00:17:0f:8d:c3:e3"));
-//		yInstances.get(0).setValue(attrBSSID5, wifiReadings.get("00:17:0f:8d:c3:f0"));
-		//3alam: change mac addresses to yours
-		yInstances.get(0).setValue(attrBSSID1, wifiReadings.get("00:1E:58:27:0B:8D"));
-		yInstances.get(0).setValue(attrBSSID2, wifiReadings.get("D8:C7:C8:0C:D2:80"));
-		yInstances.get(0).setValue(attrBSSID3, wifiReadings.get("E8:DE:27:EF:0E:FE"));
-		yInstances.get(0).setValue(attrBSSID4, wifiReadings.get("F8:1A:67:C7:E8:40"));
-		yInstances.get(0).setValue(attrBSSID5, wifiReadings.get("40:E3:D6:1E:98:F0"));
-		//ramadanDO: set access points here
-		if (location != null) {
-			yInstances.get(0).setValue(attrLatitude, location.getLatitude());
-			yInstances.get(0).setValue(attrLongitude, location.getLongitude());
-			yInstances.get(0).setValue(attrLocationAccuracy, location.getAccuracy());
-		} else {
-			yInstances.get(0).setMissing(attrLatitude);
-			yInstances.get(0).setMissing(attrLongitude);
-			yInstances.get(0).setMissing(attrLocationAccuracy);
+	@Override
+	public void onPartitionChanged(String partitioning) {
+		if (engine != null && !engine.setPartitioning(partitioning)) {
+			Toast.makeText(this, "No classifiers for " + partitioning, Toast.LENGTH_LONG).show();
 		}
-
-
 	}
 }
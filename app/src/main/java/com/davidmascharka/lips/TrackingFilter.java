@@ -0,0 +1,60 @@
+package com.davidmascharka.lips;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Follows the user across the grid by fusing the position predicted for each
+ * WiFi scan with the steps taken between scans, so the position moves with
+ * every step instead of jumping once per scan.
+ *
+ * Coordinates are in grid units. A filter must only be used from one thread.
+ */
+public interface TrackingFilter {
+
+	/**
+	 * Whether there has been a fix to start from. Until then steps are ignored
+	 * and the position is meaningless
+	 */
+	boolean isInitialized();
+
+	/**
+	 * Moves the position by a step the user took
+	 *
+	 * @param dx distance along the x axis
+	 * @param dy distance along the y axis
+	 */
+	void step(float dx, float dy);
+
+	/**
+	 * Corrects the position with one predicted from a scan
+	 *
+	 * @param time when the scan arrived, in nanoseconds
+	 */
+	void update(float x, float y, long time);
+
+	float getX();
+
+	float getY();
+
+	/**
+	 * Forgets the position, so the next fix is taken as it is
+	 */
+	void reset();
+}
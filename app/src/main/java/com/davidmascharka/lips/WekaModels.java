@@ -0,0 +1,420 @@
+package com.davidmascharka.lips;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import weka.classifiers.functions.RBFModel;
+import weka.classifiers.functions.RBFRegressor;
+import weka.classifiers.lazy.KStar;
+import weka.classifiers.trees.RandomForest;
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.filters.Filter;
+import weka.filters.unsupervised.attribute.Normalize;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Turns the Weka models built with the WEKA GUI into the LIPS predictors.
+ *
+ * This is the only place that needs to know about Weka internals. None of
+ * KStar's training data, the trees of a RandomForest or the parameters of an
+ * RBFRegressor are exposed, so they are read through reflection.
+ */
+public class WekaModels {
+
+	private WekaModels() {
+	}
+
+	/**
+	 * Copies the training data out of a built KStar model
+	 *
+	 * @throws IllegalArgumentException if the model uses entropic blending or
+	 * was trained on anything other than numeric attributes
+	 */
+	public static KStarPredictor toKStarPredictor(KStar kStar) {
+		if (kStar.getEntropicAutoBlend()) {
+			throw new IllegalArgumentException("Entropic auto blend is not supported");
+		}
+		return toKStarPredictor(trainingData(kStar), kStar.getGlobalBlend(),
+				kStar.getMissingMode().getSelectedTag().getID());
+	}
+
+	/**
+	 * Builds a predictor over the given training data, the equivalent of
+	 * calling buildClassifier on a KStar with these options
+	 */
+	public static KStarPredictor toKStarPredictor(Instances train, int globalBlend,
+												  int missingMode) {
+		return new KStarPredictor(attributeColumns(train), classColumn(train),
+				globalBlend, missingMode);
+	}
+
+	/**
+	 * Combines the x and y models into a single predictor. When both were built
+	 * on the same fingerprints with the same options, which is how the tracker
+	 * models are made, one pass over the training set serves both coordinates.
+	 * Otherwise the two models are simply run one after the other
+	 */
+	public static PositionPredictor toPositionPredictor(KStar xModel, KStar yModel) {
+		Instances xTrain = trainingData(xModel);
+		Instances yTrain = trainingData(yModel);
+		if (xModel.getGlobalBlend() == yModel.getGlobalBlend()
+				&& xModel.getMissingMode().getSelectedTag().getID()
+						== yModel.getMissingMode().getSelectedTag().getID()
+				&& !xModel.getEntropicAutoBlend() && !yModel.getEntropicAutoBlend()
+				&& sameAttributeValues(xTrain, yTrain)) {
+			return new KStarPredictor(attributeColumns(xTrain),
+					new float[][] {classColumn(xTrain), classColumn(yTrain)},
+					xModel.getGlobalBlend(), xModel.getMissingMode().getSelectedTag().getID());
+		}
+
+		return new CoordinatePair(toKStarPredictor(xModel), toKStarPredictor(yModel));
+	}
+
+	/**
+	 * Flattens every tree of a built RandomForest into a CompiledForest
+	 *
+	 * @throws IllegalArgumentException if the forest splits on anything other than
+	 * numeric attributes or doesn't predict a nominal class
+	 */
+	public static CompiledForest toCompiledForest(RandomForest forest) {
+		// Weka 3.7 keeps the trees in a Bagging member, later versions extend Bagging
+		Object bagging = hasField(forest, "m_bagger") ? get(forest, "m_bagger") : forest;
+		Object[] trees = (Object[]) get(bagging, "m_Classifiers");
+		if (trees == null || trees.length == 0) {
+			throw new IllegalArgumentException("Random forest has not been built");
+		}
+
+		Instances header = (Instances) get(trees[0], "m_Info");
+		if (!header.classAttribute().isNominal()) {
+			throw new IllegalArgumentException("The class attribute is not nominal");
+		}
+		int numClasses = header.numClasses();
+		String[] classNames = new String[numClasses];
+		for (int c = 0; c < numClasses; c++) {
+			classNames[c] = header.classAttribute().value(c);
+		}
+
+		int[] roots = new int[trees.length];
+		List<Object> nodes = new ArrayList<Object>();
+		List<Integer> rightChildren = new ArrayList<Integer>();
+		for (int t = 0; t < trees.length; t++) {
+			if (hasField(trees[t], "m_zeroR") && get(trees[t], "m_zeroR") != null) {
+				throw new IllegalArgumentException("Tree " + t + " was built without attributes");
+			}
+			// Since Weka 3.7.10 the nodes are RandomTree.Tree, before that RandomTree itself
+			Object root = hasField(trees[t], "m_Tree") ? get(trees[t], "m_Tree") : trees[t];
+			roots[t] = addPreorder(root, nodes, rightChildren);
+		}
+
+		int numNodes = nodes.size();
+		int[] attribute = new int[numNodes];
+		double[] splitPoint = new double[numNodes];
+		int[] left = new int[numNodes];
+		int[] right = new int[numNodes];
+		double[] missingLeft = new double[numNodes];
+		double[] missingRight = new double[numNodes];
+		double[] distribution = new double[numNodes * numClasses];
+
+		for (int n = 0; n < numNodes; n++) {
+			Object node = nodes.get(n);
+			double[] classDistribution = (double[]) get(node, "m_ClassDistribution");
+			if (classDistribution == null) {
+				distribution[n * numClasses] = Double.NaN;
+			} else {
+				double sum = 0.0;
+				for (double value : classDistribution) {
+					sum += value;
+				}
+				for (int c = 0; c < numClasses; c++) {
+					distribution[n * numClasses + c] = sum > 0 ? classDistribution[c] / sum : 0.0;
+				}
+			}
+
+			int splitAttribute = (Integer) get(node, "m_Attribute");
+			if (splitAttribute < 0) {
+				attribute[n] = CompiledForest.LEAF;
+				continue;
+			}
+			if (!header.attribute(splitAttribute).isNumeric()) {
+				throw new IllegalArgumentException("Attribute " +
+						header.attribute(splitAttribute).name() + " is not numeric");
+			}
+			double[] prop = (double[]) get(node, "m_Prop");
+			attribute[n] = splitAttribute;
+			splitPoint[n] = (Double) get(node, "m_SplitPoint");
+			// Preorder puts the left child straight after its parent
+			left[n] = n + 1;
+			right[n] = rightChildren.get(n);
+			missingLeft[n] = prop[0];
+			missingRight[n] = prop[1];
+		}
+
+		return new CompiledForest(classNames, roots, attribute, splitPoint, left, right,
+				missingLeft, missingRight, distribution);
+	}
+
+	/**
+	 * Adds the node and its subtree to nodes in preorder, recording the index of
+	 * each node's right child in rightChildren (-1 for leaves)
+	 *
+	 * @return the index of the node
+	 */
+	private static int addPreorder(Object node, List<Object> nodes, List<Integer> rightChildren) {
+		int index = nodes.size();
+		nodes.add(node);
+		rightChildren.add(-1);
+		Object[] successors = (Object[]) get(node, "m_Successors");
+		if ((Integer) get(node, "m_Attribute") >= 0) {
+			if (successors.length != 2) {
+				throw new IllegalArgumentException("Only binary splits are supported");
+			}
+			addPreorder(successors[0], nodes, rightChildren);
+			rightChildren.set(index, addPreorder(successors[1], nodes, rightChildren));
+		}
+		return index;
+	}
+
+	/**
+	 * Copies the parameters and input filters out of a built RBFRegressor
+	 *
+	 * @throws IllegalArgumentException if the model was trained on anything other
+	 * than numeric attributes or uses a filter other than Normalize
+	 */
+	public static RbfPredictor toRbfPredictor(RBFRegressor model) {
+		if (get(model, "m_ZeroR") != null) {
+			throw new IllegalArgumentException("RBF model fell back to ZeroR");
+		}
+		Filter replaceMissing = (Filter) get(model, "m_ReplaceMissingValues");
+		if (replaceMissing == null) {
+			throw new IllegalArgumentException("RBF model has not been built");
+		}
+		Instances original = replaceMissing.getOutputFormat();
+		for (int a = 0; a < original.numAttributes(); a++) {
+			if (a != original.classIndex() && !original.attribute(a).isNumeric()) {
+				throw new IllegalArgumentException("Attribute " + original.attribute(a).name() +
+						" is not numeric");
+			}
+		}
+		double[] means = (double[]) get(replaceMissing, "m_ModesAndMeans");
+
+		// Attributes left after removing the useless ones, as indices into the original
+		Object remove = get(get(model, "m_AttFilter"), "m_removeFilter");
+		int[] kept = remove == null ? null : (int[]) get(remove, "m_SelectedAttributes");
+
+		Object filter = get(model, "m_Filter");
+		if (!(filter instanceof Normalize)) {
+			throw new IllegalArgumentException("Only normalised RBF models are supported");
+		}
+		double[] min = (double[]) get(filter, "m_MinArray");
+		double[] max = (double[]) get(filter, "m_MaxArray");
+		double scale = (Double) get(filter, "m_Scale");
+		double translation = (Double) get(filter, "m_Translation");
+
+		int numAttributes = (Integer) get(model, "m_numAttributes");
+		int classIndex = (Integer) get(model, "m_classIndex");
+		int numUnits = (Integer) get(model, "m_numUnits");
+		int scaleOption = (Integer) get(model, "m_scaleOptimizationOption");
+		boolean useAttributeWeights = (Boolean) get(model, "m_useAttributeWeights");
+		double[] parameters = (double[]) get(model, "m_RBFParameters");
+		int offsetWeights = (Integer) get(model, "OFFSET_WEIGHTS");
+		int offsetScales = (Integer) get(model, "OFFSET_SCALES");
+		int offsetCenters = (Integer) get(model, "OFFSET_CENTERS");
+		int offsetAttributeWeights = (Integer) get(model, "OFFSET_ATTRIBUTE_WEIGHTS");
+
+		int numInputs = numAttributes - 1;
+		int[] inputs = new int[numInputs];
+		double[] missingValues = new double[numInputs];
+		double[] inputMin = new double[numInputs];
+		double[] inputFactor = new double[numInputs];
+		double[] inputOffset = new double[numInputs];
+		double[] centers = new double[numUnits * numInputs];
+		double[] coefficients = new double[numUnits * numInputs];
+
+		int j = 0;
+		for (int a = 0; a < numAttributes; a++) {
+			if (a == classIndex) {
+				continue;
+			}
+			int attribute = kept == null ? a : kept[a];
+			inputs[j] = attribute;
+			missingValues[j] = means[attribute];
+			if (Double.isNaN(min[a]) || max[a] == min[a]) {
+				// Weka sets attributes without a range to 0
+				inputMin[j] = 0.0;
+				inputFactor[j] = 0.0;
+				inputOffset[j] = 0.0;
+			} else {
+				inputMin[j] = min[a];
+				inputFactor[j] = scale / (max[a] - min[a]);
+				inputOffset[j] = translation;
+			}
+
+			double attributeWeight = useAttributeWeights ? parameters[offsetAttributeWeights + a] : 1.0;
+			for (int u = 0; u < numUnits; u++) {
+				double unitScale;
+				if (scaleOption == RBFModel.USE_GLOBAL_SCALE) {
+					unitScale = parameters[offsetScales];
+				} else if (scaleOption == RBFModel.USE_SCALE_PER_UNIT_AND_ATTRIBUTE) {
+					unitScale = parameters[offsetScales + u * numAttributes + a];
+				} else {
+					unitScale = parameters[offsetScales + u];
+				}
+				centers[u * numInputs + j] = parameters[offsetCenters + u * numAttributes + a];
+				coefficients[u * numInputs + j] = attributeWeight * attributeWeight
+						/ (2.0 * unitScale * unitScale);
+			}
+			j++;
+		}
+
+		double[] weights = new double[numUnits];
+		System.arraycopy(parameters, offsetWeights, weights, 0, numUnits);
+		return new RbfPredictor(inputs, missingValues, inputMin, inputFactor, inputOffset,
+				centers, coefficients, weights, parameters[offsetWeights + numUnits],
+				(Boolean) get(model, "m_useNormalizedBasisFunctions"),
+				(Double) get(model, "m_x1"), (Double) get(model, "m_x0"));
+	}
+
+	/**
+	 * Runs the x and y RBF models as one PositionPredictor
+	 */
+	public static PositionPredictor toPositionPredictor(RBFRegressor xModel, RBFRegressor yModel) {
+		return new CoordinatePair(toRbfPredictor(xModel), toRbfPredictor(yModel));
+	}
+
+	/**
+	 * Whether the two datasets hold the same instances, ignoring the class
+	 */
+	private static boolean sameAttributeValues(Instances first, Instances second) {
+		if (first.numInstances() != second.numInstances()
+				|| first.numAttributes() != second.numAttributes()
+				|| first.classIndex() != second.classIndex()) {
+			return false;
+		}
+		for (int i = 0; i < first.numInstances(); i++) {
+			Instance a = first.instance(i);
+			Instance b = second.instance(i);
+			for (int j = 0; j < first.numAttributes(); j++) {
+				if (j == first.classIndex()) {
+					continue;
+				}
+				double x = a.value(j);
+				double y = b.value(j);
+				if (x != y && !(Double.isNaN(x) && Double.isNaN(y))) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The training set a KStar model was built with
+	 */
+	public static Instances trainingData(KStar kStar) {
+		try {
+			Field field = KStar.class.getDeclaredField("m_Train");
+			field.setAccessible(true);
+			Instances train = (Instances) field.get(kStar);
+			if (train == null) {
+				throw new IllegalArgumentException("KStar model has not been built");
+			}
+			return train;
+		} catch (NoSuchFieldException e) {
+			throw new IllegalStateException("Unsupported Weka version", e);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException("Unsupported Weka version", e);
+		}
+	}
+
+	/**
+	 * Every attribute except the class as a float column, missing values as NaN
+	 */
+	public static float[][] attributeColumns(Instances data) {
+		int classIndex = data.classIndex();
+		if (classIndex != data.numAttributes() - 1) {
+			throw new IllegalArgumentException("The class must be the last attribute");
+		}
+
+		float[][] columns = new float[classIndex][data.numInstances()];
+		for (int a = 0; a < classIndex; a++) {
+			Attribute attribute = data.attribute(a);
+			if (!attribute.isNumeric()) {
+				throw new IllegalArgumentException("Attribute " + attribute.name() +
+						" is not numeric");
+			}
+			for (int i = 0; i < data.numInstances(); i++) {
+				columns[a][i] = (float) data.instance(i).value(a);
+			}
+		}
+		return columns;
+	}
+
+	/**
+	 * The class value of every instance
+	 */
+	public static float[] classColumn(Instances data) {
+		if (!data.classAttribute().isNumeric()) {
+			throw new IllegalArgumentException("The class attribute is not numeric");
+		}
+		float[] values = new float[data.numInstances()];
+		for (int i = 0; i < data.numInstances(); i++) {
+			Instance instance = data.instance(i);
+			values[i] = (float) instance.classValue();
+		}
+		return values;
+	}
+
+	private static boolean hasField(Object object, String name) {
+		return findField(object.getClass(), name) != null;
+	}
+
+	/**
+	 * Reads a field of any visibility declared by the object's class or one of
+	 * its superclasses
+	 */
+	private static Object get(Object object, String name) {
+		Field field = findField(object.getClass(), name);
+		if (field == null) {
+			throw new IllegalStateException("Unsupported Weka version, no field " + name +
+					" in " + object.getClass().getName());
+		}
+		try {
+			field.setAccessible(true);
+			return field.get(object);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException("Unsupported Weka version", e);
+		}
+	}
+
+	private static Field findField(Class<?> type, String name) {
+		for (; type != null; type = type.getSuperclass()) {
+			try {
+				return type.getDeclaredField(name);
+			} catch (NoSuchFieldException e) {
+				// keep looking in the superclass
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,67 @@
+package com.davidmascharka.lips;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AccessPointRegistryTest {
+
+    private static AccessPointRegistry read(String text) throws IOException {
+        return AccessPointRegistry.read(new ByteArrayInputStream(text.getBytes("UTF-8")));
+    }
+
+    @Test
+    public void read_givesSlotsInListedOrder() throws Exception {
+        AccessPointRegistry registry = read("# lab\n"
+                + "00:1E:58:27:0B:8D\n"
+                + "\n"
+                + "d8:c7:c8:0c:d2:80  # lower case\n"
+                + "00:00:00:00:00:00\n");
+        assertEquals(3, registry.size());
+        assertEquals(0, registry.slotOf("00:1e:58:27:0b:8d"));
+        assertEquals(1, registry.slotOf("D8:C7:C8:0C:D2:80"));
+        assertEquals(2, registry.slotOf("00:00:00:00:00:00"));
+        assertEquals("d8:c7:c8:0c:d2:80", registry.getBssid(1));
+
+        assertEquals(AccessPointRegistry.NOT_REGISTERED, registry.slotOf("00:1E:58:27:0B:8E"));
+        assertEquals(AccessPointRegistry.NOT_REGISTERED, registry.slotOf("not a bssid"));
+        assertEquals(AccessPointRegistry.NOT_REGISTERED, registry.slotOf(null));
+    }
+
+    @Test
+    public void read_rejectsBadAndRepeatedBssids() {
+        try {
+            read("00:1E:58:27:0B:8D\n00:1E:58:27:0B\n");
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("line 2"));
+        }
+        try {
+            read("00:1E:58:27:0B:8D\n00:1e:58:27:0b:8d\n");
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("twice"));
+        }
+    }
+
+    @Test
+    public void slotOf_findsEveryAccessPointOfALargeSite() {
+        // Access points on one site often share all but the last bytes
+        Random random = new Random(5);
+        String[] bssids = new String[700];
+        for (int i = 0; i < bssids.length; i++) {
+            long mac = 0x00187488d400L + i * 16 + random.nextInt(4);
+            bssids[i] = String.format("%02x:%02x:%02x:%02x:%02x:%02x",
+                    (mac >> 40) & 0xff, (mac >> 32) & 0xff, (mac >> 24) & 0xff,
+                    (mac >> 16) & 0xff, (mac >> 8) & 0xff, mac & 0xff);
+        }
+        AccessPointRegistry registry = new AccessPointRegistry(bssids);
+        for (int i = 0; i < bssids.length; i++) {
+            assertEquals(i, registry.slotOf(bssids[i].replace(':', '-').toUpperCase()));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.davidmascharka.lips;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import weka.classifiers.trees.RandomForest;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import static org.junit.Assert.*;
+
+public class CompiledForestTest {
+
+    private static final String[] PARTITIONS = {"left", "middle", "right"};
+
+    private static Instances fingerprints(Random random, int numInstances) {
+        ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+        for (int a = 0; a < 6; a++) {
+            attributes.add(new Attribute("a" + a));
+        }
+        attributes.add(new Attribute("partition", Arrays.asList(PARTITIONS)));
+        Instances data = new Instances("fingerprints", attributes, numInstances);
+        data.setClassIndex(6);
+
+        for (int i = 0; i < numInstances; i++) {
+            int partition = random.nextInt(PARTITIONS.length);
+            double[] values = new double[7];
+            for (int a = 0; a < 6; a++) {
+                double distance = Math.abs(partition - a / 2.5);
+                values[a] = Math.round(-40 - 15 * distance + random.nextGaussian() * 6);
+            }
+            values[6] = partition;
+            data.add(new DenseInstance(1.0, values));
+        }
+        return data;
+    }
+
+    @Test
+    public void distribution_matchesWekaRandomForest() throws Exception {
+        Random random = new Random(21);
+        Instances train = fingerprints(random, 200);
+        for (int i = 0; i < train.numInstances(); i += 5) {
+            train.instance(i).setMissing(i % 6);
+        }
+        RandomForest weka = new RandomForest();
+        weka.setNumIterations(15);
+        weka.setSeed(3);
+        weka.buildClassifier(train);
+        CompiledForest forest = WekaModels.toCompiledForest(weka);
+
+        assertEquals(15, forest.getNumTrees());
+        assertEquals(3, forest.getNumClasses());
+        assertEquals("middle", forest.getClassName(1));
+
+        Instances test = fingerprints(random, 60);
+        for (int i = 0; i < test.numInstances(); i += 3) {
+            test.instance(i).setMissing(i % 6);
+            test.instance(i).setMissing((i + 1) % 6);
+        }
+        double[] distribution = new double[3];
+        for (int i = 0; i < test.numInstances(); i++) {
+            Instance instance = test.instance(i);
+            double[] expected = weka.distributionForInstance(instance);
+            double[] values = instance.toDoubleArray();
+            forest.distribution(values, distribution);
+            assertArrayEquals(expected, distribution, 1e-12);
+            assertEquals((int) weka.classifyInstance(instance), forest.classify(values));
+        }
+    }
+
+    @Test
+    public void distribution_fallsBackToParentAndSkipsMissingBranches() {
+        // root splits a0 at 5: left is a leaf without a distribution, right splits
+        // a1 at 0 into two leaves
+        CompiledForest forest = new CompiledForest(new String[] {"a", "b"},
+                new int[] {0},
+                new int[] {0, CompiledForest.LEAF, 1, CompiledForest.LEAF, CompiledForest.LEAF},
+                new double[] {5, 0, 0, 0, 0},
+                new int[] {1, 0, 3, 0, 0},
+                new int[] {2, 0, 4, 0, 0},
+                new double[] {0.25, 0, 0.5, 0, 0},
+                new double[] {0.75, 0, 0.5, 0, 0},
+                new double[] {0.5, 0.5, Double.NaN, 0, 0.2, 0.8, 1, 0, 0, 1});
+        double[] distribution = new double[2];
+
+        forest.distribution(new double[] {1, 0}, distribution);
+        assertArrayEquals(new double[] {0.5, 0.5}, distribution, 1e-12);
+
+        // missing at the root: only the right subtree answers
+        forest.distribution(new double[] {Double.NaN, -1}, distribution);
+        assertArrayEquals(new double[] {1, 0}, distribution, 1e-12);
+
+        forest.distribution(new double[] {7, Double.NaN}, distribution);
+        assertArrayEquals(new double[] {0.5, 0.5}, distribution, 1e-12);
+        assertEquals(0, forest.classify(new double[] {7, Double.NaN}));
+        assertEquals(1, forest.classify(new double[] {7, 3}));
+    }
+}
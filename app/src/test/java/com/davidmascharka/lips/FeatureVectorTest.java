@@ -0,0 +1,120 @@
+package com.davidmascharka.lips;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import weka.classifiers.lazy.KStar;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+import static org.junit.Assert.*;
+
+public class FeatureVectorTest {
+    @Test
+    public void layout_matchesDatasetColumns() throws Exception {
+        FeatureVector vector = new FeatureVector(10);
+
+        assertEquals(27, vector.numAttributes());
+        assertEquals(13, vector.rssiIndex(0));
+        assertEquals(23, vector.latitudeIndex());
+        assertEquals(26, vector.classIndex());
+        assertEquals("orientationZ", vector.attributeName(FeatureVector.ORIENTATION_Z));
+        assertEquals("BSSID10", vector.attributeName(vector.rssiIndex(9)));
+        assertEquals("locationAccuracy", vector.attributeName(vector.locationAccuracyIndex()));
+    }
+
+    @Test
+    public void setters_writeThroughToBackingArray() throws Exception {
+        FeatureVector vector = new FeatureVector(3);
+        double[] values = vector.getValues();
+
+        vector.setAccelerometer(1, 2, 3);
+        vector.setRssi(1, -60);
+        vector.setLocation(41.6, -93.6, 12);
+
+        assertSame(values, vector.getValues());
+        assertEquals(2, values[FeatureVector.ACCELEROMETER_Y], 0);
+        assertEquals(-60, values[vector.rssiIndex(1)], 0);
+        assertFalse(vector.isLocationMissing());
+
+        vector.clearRssi();
+        vector.setLocationMissing();
+
+        assertEquals(FeatureVector.RSSI_NOT_SEEN, vector.getRssi(1));
+        assertTrue(Double.isNaN(values[vector.longitudeIndex()]));
+        assertTrue(Double.isNaN(values[vector.classIndex()]));
+    }
+
+    @Test
+    public void clearRssi_marksUnlistedAccessPointsMissing() throws Exception {
+        FeatureVector vector = new FeatureVector(4);
+        vector.setRssi(3, -60);
+
+        vector.clearRssi(2);
+
+        assertEquals(FeatureVector.RSSI_NOT_SEEN, vector.getValues()[vector.rssiIndex(1)], 0);
+        assertTrue(Double.isNaN(vector.getValues()[vector.rssiIndex(2)]));
+        assertTrue(Double.isNaN(vector.getValues()[vector.rssiIndex(3)]));
+    }
+
+    @Test
+    public void clearRssi_predictsLikeTheBaselineInstance() throws Exception {
+        // The building models have 10 BSSID attributes, of which the tracker
+        // listens for the first 5
+        int listed = 5;
+        FeatureVector vector = new FeatureVector(10);
+        ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+        for (int a = 0; a < vector.classIndex(); a++) {
+            attributes.add(new Attribute(vector.attributeName(a)));
+        }
+        attributes.add(new Attribute("position"));
+        Instances train = new Instances("fingerprints", attributes, 100);
+        train.setClassIndex(vector.classIndex());
+        Random random = new Random(11);
+        for (int i = 0; i < 100; i++) {
+            double position = random.nextInt(20);
+            double[] values = new double[vector.numAttributes()];
+            for (int a = 0; a < vector.getNumAccessPoints(); a++) {
+                // As the datasets record them: 0 where the access point wasn't seen
+                values[vector.rssiIndex(a)] = random.nextInt(4) == 0 ? 0
+                        : Math.round(-40 - position * (a + 1) + random.nextGaussian() * 3);
+            }
+            values[vector.latitudeIndex()] = Double.NaN;
+            values[vector.longitudeIndex()] = Double.NaN;
+            values[vector.locationAccuracyIndex()] = Double.NaN;
+            values[vector.classIndex()] = position;
+            train.add(new DenseInstance(1.0, values));
+        }
+        KStar kStar = new KStar();
+        kStar.buildClassifier(train);
+
+        // The instance the tracker used to build: every attribute missing, the
+        // sensors and the listed access points set to 0, then the ones in the
+        // scan set to their level
+        DenseInstance baseline = new DenseInstance(vector.numAttributes());
+        baseline.setDataset(train);
+        for (int a = 0; a < FeatureVector.NUM_SENSOR_ATTRIBUTES; a++) {
+            baseline.setValue(a, 0);
+        }
+        for (int a = 0; a < listed; a++) {
+            baseline.setValue(vector.rssiIndex(a), 0);
+        }
+        baseline.setValue(vector.rssiIndex(1), -52);
+        baseline.setValue(vector.rssiIndex(3), -71);
+
+        vector.setAccelerometer(0, 0, 0);
+        vector.setRssi(0, -60);
+        vector.setRssi(7, -60);
+        vector.clearRssi(listed);
+        vector.setRssi(1, -52);
+        vector.setRssi(3, -71);
+        DenseInstance instance = new DenseInstance(1.0, vector.getValues());
+        instance.setDataset(train);
+
+        assertArrayEquals(baseline.toDoubleArray(), vector.getValues(), 0);
+        assertEquals(kStar.classifyInstance(baseline), kStar.classifyInstance(instance), 0);
+    }
+}
@@ -0,0 +1,114 @@
+package com.davidmascharka.lips;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+public class FingerprintLogTest {
+
+    private static final String[] BSSIDS = {"00:1E:58:27:0B:8D", "D8:C7:C8:0C:D2:80", "E8:DE:27:EF:0E:FE"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static FeatureVector fingerprint(int i) {
+        FeatureVector features = new FeatureVector(BSSIDS.length);
+        features.setAccelerometer(0.5f * i, 9.8f, -0.25f);
+        features.setLight(100 + i);
+        features.setRssi(1, -40 - i);
+        if (i % 2 == 0) {
+            features.setLocation(41.6005 + i * 1e-7, -93.6529, 12.5f);
+        }
+        return features;
+    }
+
+    private static int readAll(File file) throws IOException {
+        FingerprintLog.Reader reader = new FingerprintLog.Reader(new FileInputStream(file));
+        try {
+            assertArrayEquals(BSSIDS, reader.getBssids());
+            FeatureVector features = new FeatureVector(BSSIDS.length);
+            int records = 0;
+            while (reader.next(features)) {
+                FeatureVector expected = fingerprint(records);
+                for (int a = 0; a < features.classIndex(); a++) {
+                    assertEquals(expected.getValues()[a], features.getValues()[a], 0);
+                }
+                assertEquals(1000L + records, reader.getTime());
+                assertEquals(records, reader.getX(), 0);
+                assertEquals(2.5f, reader.getY(), 0);
+                records++;
+            }
+            return records;
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void append_roundTripsAcrossSessionsAndBatches() throws Exception {
+        File file = new File(folder.getRoot(), "dataset.fpl");
+        FingerprintLog log = FingerprintLog.open(file, BSSIDS, 2);
+        for (int i = 0; i < 3; i++) {
+            log.append(fingerprint(i), i, 2.5f, 1000L + i);
+        }
+        // the third record is still buffered
+        assertEquals(2, readAll(file));
+        log.close();
+        assertEquals(3, readAll(file));
+
+        log = FingerprintLog.open(file, BSSIDS, 8);
+        log.append(fingerprint(3), 3, 2.5f, 1003L);
+        log.close();
+        assertEquals(4, readAll(file));
+    }
+
+    @Test
+    public void open_dropsARecordCutShort() throws Exception {
+        File file = new File(folder.getRoot(), "dataset.fpl");
+        FingerprintLog log = FingerprintLog.open(file, BSSIDS, 1);
+        log.append(fingerprint(0), 0, 2.5f, 1000L);
+        log.append(fingerprint(1), 1, 2.5f, 1001L);
+        log.close();
+
+        RandomAccessFile raw = new RandomAccessFile(file, "rw");
+        raw.setLength(raw.length() - 5);
+        raw.close();
+        assertEquals(1, readAll(file));
+
+        log = FingerprintLog.open(file, BSSIDS, 1);
+        log.append(fingerprint(1), 1, 2.5f, 1001L);
+        log.close();
+        assertEquals(2, readAll(file));
+    }
+
+    @Test
+    public void open_rejectsOtherAccessPointsAndOtherFiles() throws Exception {
+        File file = new File(folder.getRoot(), "dataset.fpl");
+        FingerprintLog.open(file, BSSIDS, 1).close();
+        try {
+            FingerprintLog.open(file, new String[] {"00:1E:58:27:0B:8D"}, 1);
+            fail();
+        } catch (IOException expected) {
+        }
+        // case doesn't matter
+        FingerprintLog.open(file, new String[] {"00:1e:58:27:0b:8d", "d8:c7:c8:0c:d2:80",
+                "e8:de:27:ef:0e:fe"}, 1).close();
+
+        File text = folder.newFile("dataset.txt");
+        RandomAccessFile raw = new RandomAccessFile(text, "rw");
+        raw.writeBytes("%Data collected by Nexus 5\n");
+        raw.close();
+        try {
+            FingerprintLog.open(text, BSSIDS, 1);
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+}
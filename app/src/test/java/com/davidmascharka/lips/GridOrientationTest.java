@@ -0,0 +1,52 @@
+package com.davidmascharka.lips;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class GridOrientationTest {
+
+    private static GridOrientation read(String text) throws IOException {
+        return GridOrientation.read(new ByteArrayInputStream(text.getBytes("UTF-8")));
+    }
+
+    @Test
+    public void read_turnsStepsOntoTheGrid() throws Exception {
+        GridOrientation grid = read("# lab, laid out in feet\n"
+                + "azimuth 90   # y runs east\n"
+                + "\n"
+                + "units_per_metre 3.28\n");
+        assertEquals(Math.PI / 2, grid.getAzimuth(), 1e-6);
+        assertEquals(3.28f, grid.getUnitsPerMetre(), 0);
+
+        // A step east is along y, a step north is along -x
+        float east = (float) (Math.PI / 2);
+        assertEquals(0, grid.stepX(1, east), 1e-5);
+        assertEquals(3.28f, grid.stepY(1, east), 1e-5);
+        assertEquals(-6.56f, grid.stepX(2, 0), 1e-5);
+        assertEquals(0, grid.stepY(2, 0), 1e-5);
+    }
+
+    @Test
+    public void read_rejectsIncompleteAndBadGrids() {
+        String[] bad = {
+                "azimuth 10\n",
+                "units_per_metre 3.28\n",
+                "azimuth 10\nunits_per_metre 0\n",
+                "azimuth ten\nunits_per_metre 1\n",
+                "azimuth 10\nunits_per_metre 1\nscale 2\n",
+                "azimuth 10 20\nunits_per_metre 1\n"
+        };
+        for (String text : bad) {
+            try {
+                read(text);
+                fail(text);
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+}
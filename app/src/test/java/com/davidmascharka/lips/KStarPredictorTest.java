@@ -0,0 +1,101 @@
+package com.davidmascharka.lips;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import weka.classifiers.lazy.KStar;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import static org.junit.Assert.*;
+
+public class KStarPredictorTest {
+
+    private static Instances fingerprints(Random random, int numInstances, int numAttributes) {
+        ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+        for (int a = 0; a < numAttributes; a++) {
+            attributes.add(new Attribute("a" + a));
+        }
+        attributes.add(new Attribute("position"));
+        Instances data = new Instances("fingerprints", attributes, numInstances);
+        data.setClassIndex(numAttributes);
+
+        for (int i = 0; i < numInstances; i++) {
+            double position = random.nextInt(50);
+            double[] values = new double[numAttributes + 1];
+            for (int a = 0; a < numAttributes; a++) {
+                // RSSI-like readings that depend on the position, some repeated
+                values[a] = Math.round(-40 - position * (a + 1) / 2.0 + random.nextGaussian() * 3);
+            }
+            values[numAttributes] = position;
+            data.add(new DenseInstance(1.0, values));
+        }
+        return data;
+    }
+
+    @Test
+    public void predict_matchesWekaKStar() throws Exception {
+        Random random = new Random(42);
+        Instances train = fingerprints(random, 200, 6);
+        KStar kStar = new KStar();
+        kStar.buildClassifier(train);
+
+        KStarPredictor predictor = WekaModels.toKStarPredictor(kStar);
+        Instances test = fingerprints(random, 50, 6);
+        for (int i = 0; i < test.numInstances(); i++) {
+            Instance instance = test.instance(i);
+            double expected = kStar.classifyInstance(instance);
+            assertEquals(expected, predictor.predict(instance.toDoubleArray()), 1e-3);
+        }
+    }
+
+    @Test
+    public void predict_matchesWekaKStarWithMissingValues() throws Exception {
+        Random random = new Random(7);
+        Instances train = fingerprints(random, 100, 4);
+        for (int i = 0; i < train.numInstances(); i += 5) {
+            train.instance(i).setMissing(1);
+        }
+        KStar kStar = new KStar();
+        kStar.buildClassifier(train);
+
+        KStarPredictor predictor = WekaModels.toKStarPredictor(kStar);
+        Instances test = fingerprints(random, 20, 4);
+        for (int i = 0; i < test.numInstances(); i++) {
+            Instance instance = test.instance(i);
+            instance.setMissing(3);
+            double expected = kStar.classifyInstance(instance);
+            assertEquals(expected, predictor.predict(instance.toDoubleArray()), 1e-3);
+        }
+    }
+
+    @Test
+    public void predictPosition_matchesSeparatePredictors() throws Exception {
+        Random random = new Random(3);
+        Instances train = fingerprints(random, 150, 5);
+        float[][] columns = WekaModels.attributeColumns(train);
+        float[] x = WekaModels.classColumn(train);
+        float[] y = new float[x.length];
+        for (int i = 0; i < y.length; i++) {
+            y[i] = 64 - x[i] / 2;
+        }
+
+        KStarPredictor xPredictor = new KStarPredictor(columns, x, 20, KStarPredictor.MISSING_AVERAGE);
+        KStarPredictor yPredictor = new KStarPredictor(columns, y, 20, KStarPredictor.MISSING_AVERAGE);
+        KStarPredictor joint = new KStarPredictor(columns, new float[][] {x, y}, 20,
+                KStarPredictor.MISSING_AVERAGE);
+
+        Instances test = fingerprints(random, 20, 5);
+        double[] position = new double[2];
+        for (int i = 0; i < test.numInstances(); i++) {
+            double[] values = test.instance(i).toDoubleArray();
+            joint.predict(values, position);
+            assertEquals(xPredictor.predict(values), position[0], 1e-9);
+            assertEquals(yPredictor.predict(values), position[1], 1e-9);
+        }
+    }
+}
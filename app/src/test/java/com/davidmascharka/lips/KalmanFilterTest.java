@@ -0,0 +1,59 @@
+package com.davidmascharka.lips;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class KalmanFilterTest {
+
+    private static final long SECOND = 1000000000L;
+
+    @Test
+    public void update_startsFromTheFirstFixAndSmoothsTheRest() {
+        KalmanFilter filter = new KalmanFilter(102, 64, 5, 1);
+        assertFalse(filter.isInitialized());
+        filter.step(3, 0);
+        filter.update(50, 30, 0);
+
+        assertTrue(filter.isInitialized());
+        assertEquals(50, filter.getX(), 0);
+        assertEquals(30, filter.getY(), 0);
+
+        // An equally certain fix meets the position half way
+        filter.update(54, 30, 0);
+        assertEquals(52, filter.getX(), 1e-4);
+        assertTrue(filter.getErrorX() < 5);
+    }
+
+    @Test
+    public void step_movesThePositionAndItsUncertaintyAlongTheStep() {
+        KalmanFilter filter = new KalmanFilter(102, 64, 5, 1);
+        filter.update(50, 30, 0);
+        float before = filter.getErrorY();
+        for (int i = 0; i < 10; i++) {
+            filter.step(0, 2);
+        }
+        assertEquals(50, filter.getX(), 1e-4);
+        assertEquals(50, filter.getY(), 1e-4);
+        assertTrue(filter.getErrorY() > before);
+
+        // Never leaves the grid
+        filter.step(0, 100);
+        assertEquals(64, filter.getY(), 0);
+    }
+
+    @Test
+    public void update_rejectsOutliersUntilTheyPersist() {
+        KalmanFilter filter = new KalmanFilter(102, 64, 2, 0);
+        filter.update(10, 10, 0);
+        filter.update(10, 10, SECOND);
+
+        for (int i = 0; i < KalmanFilter.MAX_REJECTED_FIXES; i++) {
+            filter.update(90, 60, (i + 2) * SECOND);
+            assertEquals(10, filter.getX(), 1e-4);
+        }
+        filter.update(90, 60, 10 * SECOND);
+        assertEquals(90, filter.getX(), 0);
+        assertEquals(60, filter.getY(), 0);
+    }
+}
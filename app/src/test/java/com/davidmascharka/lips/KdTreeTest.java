@@ -0,0 +1,113 @@
+package com.davidmascharka.lips;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class KdTreeTest {
+
+    private static float[][] randomColumns(Random random, int numAttributes, int numInstances) {
+        float[][] columns = new float[numAttributes][numInstances];
+        for (int a = 0; a < numAttributes; a++) {
+            for (int i = 0; i < numInstances; i++) {
+                // Integer RSSI values so there are plenty of ties
+                columns[a][i] = -30 - random.nextInt(60);
+            }
+        }
+        return columns;
+    }
+
+    private static double[] bruteForceDistances(float[][] columns, int[] dimensions, double[] query) {
+        int numInstances = columns[0].length;
+        double[] distances = new double[numInstances];
+        for (int i = 0; i < numInstances; i++) {
+            for (int dimension : dimensions) {
+                double diff = query[dimension] - columns[dimension][i];
+                distances[i] += diff * diff;
+            }
+        }
+        return distances;
+    }
+
+    @Test
+    public void nearest_exactMatchesBruteForce() throws Exception {
+        Random random = new Random(1);
+        float[][] columns = randomColumns(random, 8, 3000);
+        int[] dimensions = {1, 2, 3, 4, 5, 6};
+        KdTree tree = new KdTree(columns, dimensions);
+
+        int k = 25;
+        int[] found = new int[k];
+        for (int q = 0; q < 50; q++) {
+            double[] query = new double[8];
+            for (int a = 0; a < 8; a++) {
+                query[a] = -30 - random.nextInt(60);
+            }
+            assertEquals(k, tree.nearest(query, k, found));
+
+            double[] distances = bruteForceDistances(columns, dimensions, query);
+            double[] sorted = distances.clone();
+            Arrays.sort(sorted);
+            for (int i = 0; i < k; i++) {
+                // ties make the indices ambiguous but never the distances
+                assertEquals(sorted[i], distances[found[i]], 0);
+            }
+        }
+    }
+
+    @Test
+    public void nearest_approximateReturnsKCandidates() throws Exception {
+        Random random = new Random(2);
+        float[][] columns = randomColumns(random, 5, 2000);
+        KdTree tree = new KdTree(columns, new int[] {0, 1, 2, 3, 4});
+        tree.setApproximation(4, 0.5);
+        assertFalse(tree.isExact());
+
+        int[] found = new int[40];
+        assertEquals(40, tree.nearest(new double[] {-50, -50, -50, -50, -50}, 40, found));
+        assertEquals(40, new HashSet<Integer>(
+                Arrays.asList(box(found))).size());
+    }
+
+    @Test
+    public void nearest_smallTreeReturnsEveryPoint() throws Exception {
+        float[][] columns = {{1, 2, 3}};
+        KdTree tree = new KdTree(columns, new int[] {0});
+
+        int[] found = new int[10];
+        assertEquals(3, tree.nearest(new double[] {2.9}, 10, found));
+        assertEquals(2, found[0]);
+        assertEquals(1, found[1]);
+        assertEquals(0, found[2]);
+    }
+
+    @Test
+    public void kStar_withIndexOverEveryFingerprintMatchesFullScan() throws Exception {
+        Random random = new Random(5);
+        float[][] columns = randomColumns(random, 4, 300);
+        float[] classValues = new float[300];
+        for (int i = 0; i < classValues.length; i++) {
+            classValues[i] = random.nextInt(100);
+        }
+        KStarPredictor full = new KStarPredictor(columns, classValues, 20,
+                KStarPredictor.MISSING_AVERAGE);
+        KStarPredictor indexed = new KStarPredictor(columns, classValues, 20,
+                KStarPredictor.MISSING_AVERAGE);
+        indexed.useIndex(new KdTree(columns, new int[] {0, 1, 2, 3}), 300);
+
+        double[] query = {-40, -55, -70, -35};
+        assertEquals(full.predict(query), indexed.predict(query), 1e-9);
+    }
+
+    private static Integer[] box(int[] values) {
+        Integer[] boxed = new Integer[values.length];
+        for (int i = 0; i < values.length; i++) {
+            boxed[i] = values[i];
+        }
+        return boxed;
+    }
+}
@@ -0,0 +1,90 @@
+package com.davidmascharka.lips;
+
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketOf_staysWithinPrecision() {
+        int last = -1;
+        for (long value = 0; value < 1L << 42; value = value * 5 / 4 + 1) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(bucket >= last);
+            last = bucket;
+            long highest = LatencyHistogram.highestValueIn(bucket);
+            if (value < 1L << 40) {
+                assertTrue(value + " in " + highest, highest >= value);
+                assertTrue(value + " in " + highest,
+                        highest - value <= value / LatencyHistogram.SUB_BUCKETS);
+                assertEquals(bucket, LatencyHistogram.bucketOf(highest));
+            } else {
+                assertEquals(LatencyHistogram.NUM_BUCKETS - 1, bucket);
+            }
+        }
+    }
+
+    @Test
+    public void getValueAtPercentile_roundsUpWithinABucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000000L);
+        }
+        histogram.record(-5);
+
+        assertEquals(101, histogram.getCount());
+        assertEquals(100000000L, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(0.5));
+        long median = histogram.getValueAtPercentile(50);
+        assertTrue(median >= 50000000L && median <= 50000000L * 33 / 32);
+        assertEquals(100000000L, histogram.getValueAtPercentile(100));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void record_keepsEveryValueFromManyThreads() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final long value = (t + 1) * 1000L;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        histogram.record(value);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(40000, histogram.getCount());
+        assertEquals(4000, histogram.getMax());
+        assertEquals(2500.0, histogram.getMean(), 0);
+        assertEquals(10000, histogram.getCount(LatencyHistogram.bucketOf(3000)));
+    }
+
+    @Test
+    public void print_listsRecordedStagesAndBuckets() {
+        LatencyStats stats = new LatencyStats();
+        stats.record(LatencyStats.ROUTING, 2000000L);
+        StringWriter text = new StringWriter();
+        stats.print(new PrintWriter(text));
+
+        String dump = text.toString();
+        assertTrue(dump.contains("Partition routing"));
+        assertFalse(dump.contains("Grid redraw"));
+        assertTrue(dump.contains(LatencyStats.ROUTING + ","
+                + LatencyHistogram.highestValueIn(LatencyHistogram.bucketOf(2000000L)) + ",1"));
+    }
+}
@@ -0,0 +1,88 @@
+package com.davidmascharka.lips;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.sql.Timestamp;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class LiveTestLogTest {
+
+    private static int count(String text, String line) {
+        int count = 0;
+        for (int i = text.indexOf(line); i >= 0; i = text.indexOf(line, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void close_writesLinesInTheTrackerFormat() throws Exception {
+        StringWriter fixes = new StringWriter();
+        StringWriter values = new StringWriter();
+        LiveTestLog log = new LiveTestLog(fixes, values, 2, 8);
+
+        log.logFix(1.5f, 2.0f, 1000L, 2000L, 3000L);
+        log.logPointDone(4.5f, 1.5f, 4000L);
+        FeatureVector features = new FeatureVector(2);
+        features.setRssi(1, -60);
+        float[] sensors = new float[FeatureVector.NUM_SENSOR_ATTRIBUTES];
+        sensors[0] = 9.5f;
+        log.logValues(sensors, features, true, 41.5, -93.6, 12.0f, 5000L);
+        log.logValues(sensors, features, false, 0, 0, 0, 6000L);
+        log.close();
+
+        assertEquals("(1.5,2.0) %" + new Timestamp(1000L) + "\t " + new Timestamp(2000L) + "\t"
+                + new Timestamp(3000L) + "\n"
+                + "DONE: (4.5,1.5) %" + new Timestamp(4000L) + "\n\n", fixes.toString());
+        String sensorColumns = "9.5,0.0,0.0,0.0,0.0,0.0,0.0,0.0,0.0,0.0,0.0,0.0,0.0";
+        int missing = features.getRssi(0);
+        assertEquals(sensorColumns + "," + missing + ",-60,41.5,-93.6,12.0 %" + new Timestamp(5000L)
+                + "\n\n" + sensorColumns + "," + missing + ",-60,?,?,? %" + new Timestamp(6000L)
+                + "\n\n", values.toString());
+        assertEquals(0, log.getDropped());
+    }
+
+    @Test
+    public void logFix_neitherLosesNorBlocksWhenFull() throws Exception {
+        final int threads = 4;
+        final int perThread = 20000;
+        StringWriter fixes = new StringWriter();
+        final LiveTestLog log = new LiveTestLog(fixes, new StringWriter(), 0, 64);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perThread; i++) {
+                        log.logFix(thread, i, 0, 0, 0);
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+        log.close();
+
+        // Every line is either written whole or counted as dropped
+        int written = count(fixes.toString(), "\n");
+        assertEquals(written, count(fixes.toString(), "("));
+        assertEquals(threads * perThread, written + log.getDropped());
+        assertTrue(written > 0);
+    }
+
+    @Test
+    public void close_dropsLinesLoggedAfterwards() throws Exception {
+        StringWriter fixes = new StringWriter();
+        LiveTestLog log = new LiveTestLog(fixes, new StringWriter(), 0, 8);
+        log.logFix(1, 1, 0, 0, 0);
+        log.close();
+        log.logFix(2, 2, 0, 0, 0);
+
+        assertEquals(1, count(fixes.toString(), "\n"));
+        assertEquals(1, log.getDropped());
+    }
+}
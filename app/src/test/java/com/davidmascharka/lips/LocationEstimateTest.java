@@ -0,0 +1,53 @@
+package com.davidmascharka.lips;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LocationEstimateTest {
+
+    @Test
+    public void offer_keepsTheBetterFix() {
+        LocationEstimate estimate = new LocationEstimate();
+        assertTrue(estimate.offer(42.0, -93.0, 20, 1000));
+
+        // Newer and a little less accurate
+        assertTrue(estimate.offer(42.1, -93.1, 40, 2000));
+        // Newer but much less accurate, like a network fix after a GPS one
+        assertFalse(estimate.offer(42.2, -93.2, 500, 3000));
+        // Older but more accurate
+        assertTrue(estimate.offer(42.3, -93.3, 10, 1500));
+        // Unknown accuracy counts as the worst
+        assertFalse(estimate.offer(42.4, -93.4, 0, 4000));
+        assertEquals(42.3, estimate.getLatitude(), 0);
+
+        // Anything replaces a stale fix
+        assertTrue(estimate.offer(42.5, -93.5, 500,
+                1500 + LocationEstimate.STALE_MILLIS + 1));
+        assertEquals(42.5, estimate.getLatitude(), 0);
+        // and a stale fix replaces nothing
+        assertFalse(estimate.offer(42.6, -93.6, 5, 1500));
+    }
+
+    @Test
+    public void writeTo_marksOldFixesMissing() {
+        LocationEstimate estimate = new LocationEstimate();
+        FeatureVector features = new FeatureVector(1);
+        assertFalse(estimate.writeTo(features, 0));
+        assertTrue(features.isLocationMissing());
+        assertEquals(-1, estimate.getAge(0));
+
+        estimate.offer(42.0, -93.0, 20, 1000);
+        assertTrue(estimate.writeTo(features, 1000 + LocationEstimate.MAX_AGE_MILLIS));
+        assertEquals(42.0, features.getValues()[features.latitudeIndex()], 0);
+        assertEquals(-93.0, features.getValues()[features.longitudeIndex()], 0);
+        assertEquals(20, features.getValues()[features.locationAccuracyIndex()], 0);
+
+        assertFalse(estimate.writeTo(features, 1001 + LocationEstimate.MAX_AGE_MILLIS));
+        assertTrue(features.isLocationMissing());
+
+        estimate.offer(42.0, -93.0, 20, 1000);
+        estimate.clear();
+        assertFalse(estimate.hasFix(1000));
+    }
+}
@@ -0,0 +1,134 @@
+package com.davidmascharka.lips;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ModelFormatTest {
+
+    private static ByteBuffer bytes(ByteArrayOutputStream out) {
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    @Test
+    public void kStar_roundTrips() throws Exception {
+        Random random = new Random(5);
+        float[][] columns = new float[4][60];
+        float[][] targets = new float[2][60];
+        for (int i = 0; i < 60; i++) {
+            for (int a = 0; a < 4; a++) {
+                columns[a][i] = i % 9 == a ? Float.NaN : -30 - random.nextInt(60);
+            }
+            targets[0][i] = random.nextInt(100);
+            targets[1][i] = random.nextInt(60);
+        }
+        KStarPredictor model = new KStarPredictor(columns, targets, 30,
+                KStarPredictor.MISSING_MAXDIFF);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ModelFormat.write(model, out);
+        ByteBuffer buffer = bytes(out);
+        assertEquals(ModelFormat.TYPE_KSTAR, ModelFormat.readType(buffer));
+        KStarPredictor read = (KStarPredictor) ModelFormat.read(buffer);
+
+        assertEquals(30, read.getGlobalBlend());
+        assertEquals(KStarPredictor.MISSING_MAXDIFF, read.getMissingMode());
+        for (int a = 0; a < 4; a++) {
+            assertArrayEquals(columns[a], read.getColumns()[a], 0);
+        }
+        double[] expected = new double[2];
+        double[] actual = new double[2];
+        double[] instance = {-50, Double.NaN, -70, -40};
+        model.predict(instance, expected);
+        read.predict(instance, actual);
+        assertArrayEquals(expected, actual, 0);
+    }
+
+    @Test
+    public void forest_roundTrips() throws Exception {
+        // x0 < 5 ? (x1 < 2 ? a : b) : a, as two copies of the same tree
+        int[] attribute = {0, 1, -1, -1, -1, 0, 1, -1, -1, -1};
+        double[] split = {5, 2, 0, 0, 0, 5, 2, 0, 0, 0};
+        int[] left = {1, 2, 0, 0, 0, 6, 7, 0, 0, 0};
+        int[] right = {4, 3, 0, 0, 0, 9, 8, 0, 0, 0};
+        double[] missingLeft = new double[10];
+        double[] missingRight = new double[10];
+        Arrays.fill(missingLeft, 0.25);
+        Arrays.fill(missingRight, 0.75);
+        double[] distribution = new double[20];
+        distribution[0] = Double.NaN;
+        distribution[2] = Double.NaN;
+        distribution[4] = 1;
+        distribution[7] = 1;
+        distribution[8] = 1;
+        for (int i = 10; i < 20; i++) {
+            distribution[i] = distribution[i - 10];
+        }
+        CompiledForest forest = new CompiledForest(new String[] {"upperleft", "middle"},
+                new int[] {0, 5}, attribute, split, left, right, missingLeft, missingRight,
+                distribution);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ModelFormat.write(forest, out);
+        CompiledForest read = ModelFormat.readForest(bytes(out));
+
+        assertEquals(2, read.getNumTrees());
+        assertEquals(10, read.getNumNodes());
+        assertEquals("upperleft", read.getClassName(0));
+        assertEquals("middle", read.getClassName(1));
+        assertArrayEquals(attribute, read.getAttributes());
+        assertArrayEquals(split, read.getSplitPoints(), 0);
+        assertArrayEquals(left, read.getLeftChildren());
+        assertArrayEquals(right, read.getRightChildren());
+        assertArrayEquals(missingRight, read.getMissingRight(), 0);
+        assertArrayEquals(distribution, read.getDistributions(), 0);
+    }
+
+    @Test
+    public void rbf_roundTrips() throws Exception {
+        RbfPredictor model = new RbfPredictor(new int[] {0, 2}, new double[] {-60, -70},
+                new double[] {-90, -90}, new double[] {1 / 60.0, 1 / 50.0}, new double[] {0, 0},
+                new double[] {0.2, 0.5, 0.8, 0.1, 0.5, 0.5}, new double[] {3, 2, 1, 4, 2, 2},
+                new double[] {0.5, -0.25, 1}, 0.1, false, 101, 0.5);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ModelFormat.write(model, out);
+        RbfPredictor read = ModelFormat.readRbf(bytes(out));
+
+        double[] instance = {-55, 3, Double.NaN};
+        assertEquals(model.predict(instance), read.predict(instance), 0);
+    }
+
+    @Test
+    public void read_rejectsOtherFiles() throws Exception {
+        try {
+            ModelFormat.read(ByteBuffer.wrap(new byte[] {(byte) 0xac, (byte) 0xed, 0, 5, 0, 0, 0,
+                    0, 0, 0, 0, 0}));
+            fail();
+        } catch (IOException expected) {
+        }
+
+        RbfPredictor model = new RbfPredictor(new int[] {0}, new double[1], new double[1],
+                new double[] {1}, new double[1], new double[1], new double[1], new double[1],
+                0, false, 1, 0);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ModelFormat.write(model, out);
+        try {
+            ModelFormat.readKStar(bytes(out));
+            fail();
+        } catch (IOException expected) {
+        }
+        byte[] truncated = Arrays.copyOf(out.toByteArray(), out.size() - 4);
+        try {
+            ModelFormat.readRbf(ByteBuffer.wrap(truncated));
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.davidmascharka.lips;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ModelRegistryTest {
+
+    private ExecutorService executor;
+    private final List<String> loads = new ArrayList<String>();
+
+    private final ModelRegistry.Loader<String> loader = new ModelRegistry.Loader<String>() {
+        @Override
+        public String load(String name) throws Exception {
+            synchronized (loads) {
+                loads.add(name);
+            }
+            if (name.equals("broken")) {
+                throw new IllegalStateException("no such model");
+            }
+            return "model " + name;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        executor = ModelRegistry.newLoaderExecutor();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void get_loadsOnceInRequestOrder() throws Exception {
+        ModelRegistry<String> registry = new ModelRegistry<String>(executor, loader, 0);
+        registry.request("first");
+        registry.request("second");
+        assertEquals("model second", registry.get("second"));
+        assertEquals("model first", registry.get("first"));
+        assertEquals("model first", registry.getIfLoaded("first"));
+        assertTrue(registry.isLoaded("first"));
+        assertEquals(2, loads.size());
+        assertEquals("first", loads.get(0));
+        assertEquals("second", loads.get(1));
+    }
+
+    @Test
+    public void request_evictsLeastRecentlyUsed() throws Exception {
+        ModelRegistry<String> registry = new ModelRegistry<String>(executor, loader, 2);
+        registry.get("a");
+        registry.get("b");
+        registry.get("a");
+        registry.get("c");
+        assertEquals(2, registry.size());
+        assertTrue(registry.isLoaded("a"));
+        assertFalse(registry.isLoaded("b"));
+
+        // Loaded again after being dropped
+        assertEquals("model b", registry.get("b"));
+        assertEquals(4, loads.size());
+    }
+
+    @Test
+    public void getIfLoaded_failedLoadReturnsNull() throws Exception {
+        ModelRegistry<String> registry = new ModelRegistry<String>(executor, loader, 0);
+        try {
+            registry.get("broken");
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertNull(registry.getIfLoaded("broken"));
+        assertFalse(registry.isLoaded("broken"));
+    }
+}
@@ -0,0 +1,68 @@
+package com.davidmascharka.lips;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import weka.classifiers.lazy.KStar;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.core.SerializationHelper;
+
+import static org.junit.Assert.*;
+
+public class ModelStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static KStar kStar(String coordinate) throws Exception {
+        ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+        attributes.add(new Attribute("BSSID1"));
+        attributes.add(new Attribute(coordinate));
+        Instances train = new Instances("fingerprints", attributes, 4);
+        train.setClassIndex(1);
+        for (int i = 0; i < 4; i++) {
+            train.add(new DenseInstance(1.0, new double[] {-40 - i * 10, i}));
+        }
+        KStar kStar = new KStar();
+        kStar.buildClassifier(train);
+        return kStar;
+    }
+
+    @Test
+    public void loadPartitionPredictor_fallsBackOnAnUnreadableConvertedModel() throws Exception {
+        File scheme = folder.newFolder("5partition");
+        SerializationHelper.write(new File(scheme, "model_x_A.model").getPath(), kStar("xPos"));
+        SerializationHelper.write(new File(scheme, "model_y_A.model").getPath(), kStar("yPos"));
+        // Cut short, as a failed conversion used to leave it
+        new FileWriter(new File(scheme, "model_A.lips")).close();
+
+        final List<String> unreadable = new ArrayList<String>();
+        ModelStore models = new ModelStore.Directory(folder.getRoot()) {
+            @Override
+            protected void onUnreadable(String name, IOException e) {
+                unreadable.add(name);
+            }
+        };
+
+        assertNotNull(models.loadPartitionPredictor("5partition", "A"));
+        assertEquals(1, unreadable.size());
+        assertEquals("5partition/model_A.lips", unreadable.get(0));
+
+        try {
+            models.loadBuildingPredictor();
+            fail("Loaded building models that aren't there");
+        } catch (FileNotFoundException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.davidmascharka.lips;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ParticleFilterTest {
+
+    private static final long SECOND = 1000000000L;
+
+    @Test
+    public void update_followsAWalkAlongTheSteps() {
+        ParticleFilter filter = new ParticleFilter(2000, 102, 64, 4, 1, 7);
+        filter.update(10, 32, 0);
+        assertTrue(filter.isInitialized());
+        assertEquals(10, filter.getX(), 1);
+        assertEquals(32, filter.getY(), 1);
+
+        // Walk 2 units a step along x, with a fix every 5 steps
+        float trueX = 10;
+        for (int scan = 1; scan <= 8; scan++) {
+            for (int i = 0; i < 5; i++) {
+                filter.step(2, 0);
+                trueX += 2;
+            }
+            filter.update(trueX, 32, scan * SECOND);
+        }
+        assertEquals(trueX, filter.getX(), 2);
+        assertEquals(32, filter.getY(), 2);
+    }
+
+    @Test
+    public void update_resamplesToEqualWeightsWithoutNewArrays() {
+        ParticleFilter filter = new ParticleFilter(1000, 102, 64, 2, 0, 3);
+        filter.update(50, 30, 0);
+        float[] weights = filter.getWeights();
+        float[] before = filter.getParticleX();
+
+        // A fix off to the side leaves the weight on a few particles
+        filter.update(56, 30, 0);
+        float[] after = filter.getParticleX();
+        assertNotSame(before, after);
+        assertSame(weights, filter.getWeights());
+        for (float weight : weights) {
+            assertEquals(1.0f / 1000, weight, 0);
+        }
+        assertTrue(filter.getX() > 52);
+
+        // The next resampling writes back into the first arrays
+        filter.update(60, 30, 0);
+        assertSame(before, filter.getParticleX());
+    }
+
+    @Test
+    public void update_rejectsOutliersUntilTheyPersist() {
+        ParticleFilter filter = new ParticleFilter(500, 102, 64, 2, 0, 5);
+        filter.update(10, 10, 0);
+
+        for (int i = 0; i < ParticleFilter.MAX_REJECTED_FIXES; i++) {
+            filter.update(90, 60, (i + 1) * SECOND);
+            assertEquals(10, filter.getX(), 1);
+        }
+        filter.update(90, 60, 10 * SECOND);
+        assertEquals(90, filter.getX(), 1);
+        assertEquals(60, filter.getY(), 1);
+    }
+
+    @Test
+    public void step_keepsParticlesOnTheGrid() {
+        ParticleFilter filter = new ParticleFilter(100, 102, 64, 2, 0, 9);
+        filter.update(100, 60, 0);
+        filter.step(50, 50);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(filter.getParticleX()[i] >= 0 && filter.getParticleX()[i] <= 102);
+            assertTrue(filter.getParticleY()[i] >= 0 && filter.getParticleY()[i] <= 64);
+        }
+        assertFalse(new ParticleFilter(10, 102, 64, 2, 0, 0).isInitialized());
+    }
+}
@@ -0,0 +1,139 @@
+package com.davidmascharka.lips;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PartitionedPositionPredictorTest {
+
+    private static final String[] PARTITIONS = {"left", "middle", "right"};
+
+    private ExecutorService executor;
+    private ModelRegistry<PositionPredictor> predictors;
+    private final double[] routing = new double[3];
+
+    // Every partition predicts a fixed position: x is 10 times the partition
+    private final ModelRegistry.Loader<PositionPredictor> loader =
+            new ModelRegistry.Loader<PositionPredictor>() {
+                @Override
+                public PositionPredictor load(String name) throws Exception {
+                    final int partition = Arrays.asList(PARTITIONS).indexOf(name);
+                    return new PositionPredictor() {
+                        @Override
+                        public void predict(double[] features, double[] position) {
+                            position[0] = 10 * partition;
+                            position[1] = features[0];
+                        }
+                    };
+                }
+            };
+
+    private final PartitionedPositionPredictor.Router router = new PartitionedPositionPredictor.Router() {
+        @Override
+        public int getNumPartitions() {
+            return PARTITIONS.length;
+        }
+
+        @Override
+        public String getPartitionName(int partition) {
+            return PARTITIONS[partition];
+        }
+
+        @Override
+        public void distribution(double[] features, double[] probabilities) {
+            System.arraycopy(routing, 0, probabilities, 0, routing.length);
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        executor = ModelRegistry.newLoaderExecutor();
+        predictors = new ModelRegistry<PositionPredictor>(executor, loader, 0);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+    }
+
+    private void route(double left, double middle, double right) {
+        routing[0] = left;
+        routing[1] = middle;
+        routing[2] = right;
+    }
+
+    @Test
+    public void predict_hardRoutingUsesMostProbablePartition() throws Exception {
+        for (String partition : PARTITIONS) {
+            predictors.get(partition);
+        }
+        PartitionedPositionPredictor predictor = new PartitionedPositionPredictor(router, predictors, 1);
+        double[] position = new double[2];
+
+        route(0.2, 0.5, 0.3);
+        assertTrue(predictor.predict(new double[] {7}, position));
+        assertEquals(10, position[0], 1e-12);
+        assertEquals(7, position[1], 1e-12);
+        assertEquals(1, predictor.getLastPartition());
+
+        // ties go to the first partition
+        route(0.4, 0.2, 0.4);
+        assertTrue(predictor.predict(new double[] {7}, position));
+        assertEquals(0, position[0], 1e-12);
+    }
+
+    @Test
+    public void predict_blendsTopPartitionsByProbability() throws Exception {
+        for (String partition : PARTITIONS) {
+            predictors.get(partition);
+        }
+        PartitionedPositionPredictor predictor = new PartitionedPositionPredictor(router, predictors, 2);
+        double[] position = new double[2];
+
+        route(0.1, 0.3, 0.6);
+        assertTrue(predictor.predict(new double[] {7}, position));
+        assertEquals((0.3 * 10 + 0.6 * 20) / 0.9, position[0], 1e-12);
+        assertEquals(7, position[1], 1e-12);
+        assertEquals(2, predictor.getLastPartition());
+
+        predictor.setMaxPartitions(3);
+        assertTrue(predictor.predict(new double[] {7}, position));
+        assertEquals(0.3 * 10 + 0.6 * 20, position[0], 1e-12);
+    }
+
+    @Test
+    public void predict_leavesPositionAloneUntilAPredictorIsLoaded() throws Exception {
+        PartitionedPositionPredictor predictor = new PartitionedPositionPredictor(router, predictors, 2);
+        double[] position = {-1, -1};
+
+        route(0, 0.25, 0.75);
+        // the first prediction only starts the loads
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertFalse(predictor.predict(new double[] {7}, position));
+        assertEquals(-1, position[0], 0);
+        assertFalse(predictors.isLoaded("left"));
+
+        predictors.get("right");
+        predictors.get("middle");
+        assertTrue(predictor.predict(new double[] {7}, position));
+        assertEquals(17.5, position[0], 1e-12);
+        assertFalse(predictors.isLoaded("left"));
+        assertEquals(2, predictors.size());
+    }
+}
@@ -0,0 +1,165 @@
+package com.davidmascharka.lips;
+
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+
+import static org.junit.Assert.*;
+
+public class PositionPipelineTest {
+
+    private static final String[] BSSIDS = {"00:1E:58:27:0B:8D", "D8:C7:C8:0C:D2:80"};
+
+    // Predicts the first RSSI as x and the light reading as y
+    private static final PositionPredictor ECHO = new PositionPredictor() {
+        @Override
+        public void predict(double[] features, double[] position) {
+            position[0] = features[FeatureVector.NUM_SENSOR_ATTRIBUTES];
+            position[1] = features[FeatureVector.LIGHT];
+        }
+    };
+
+    @Test
+    public void takeScan_snapshotsBothLayouts() throws Exception {
+        PositionPipeline pipeline = new PositionPipeline(new AccessPointRegistry(BSSIDS), 2, 5);
+        pipeline.clearRssi();
+        assertTrue(pipeline.setRssi("d8:c7:c8:0c:d2:80", -60));
+        assertFalse(pipeline.setRssi("11:22:33:44:55:66", -30));
+        pipeline.getFeatures().setLight(250);
+        pipeline.getFeatures().setLocation(41.6, -93.6, 12.5f);
+        PositionPipeline.Scan scan = pipeline.takeScan(1000L);
+
+        // The next scan doesn't change the one being predicted
+        pipeline.clearRssi();
+        pipeline.getFeatures().setLight(0);
+
+        FeatureVector partition = new FeatureVector(5);
+        assertEquals(-60, scan.partitionFeatures[partition.rssiIndex(1)], 0);
+        assertEquals(FeatureVector.RSSI_NOT_SEEN, scan.partitionFeatures[partition.rssiIndex(0)], 0);
+        // Slots past the registered access points are missing
+        assertTrue(Double.isNaN(scan.partitionFeatures[partition.rssiIndex(2)]));
+        assertEquals(250, scan.partitionFeatures[FeatureVector.LIGHT], 0);
+        assertEquals(12.5, scan.partitionFeatures[partition.locationAccuracyIndex()], 0);
+        assertEquals(-60, scan.features[FeatureVector.NUM_SENSOR_ATTRIBUTES + 1], 0);
+        assertEquals(1000L, scan.getTime());
+    }
+
+    @Test
+    public void predict_usesTheBuildingModels() throws Exception {
+        PositionPipeline pipeline = new PositionPipeline(new AccessPointRegistry(BSSIDS), 2, 2);
+        pipeline.setBuildingPredictor(ECHO);
+        pipeline.setRssi(0, -45);
+        pipeline.getFeatures().setLight(80);
+        PositionFix fix = pipeline.predict(pipeline.takeScan(5L));
+        assertEquals(-45, fix.getX(), 0);
+        assertEquals(80, fix.getY(), 0);
+        assertEquals(5L, fix.getScanTime());
+    }
+
+    @Test
+    public void predict_recordsLatency() throws Exception {
+        PositionPipeline pipeline = new PositionPipeline(new AccessPointRegistry(BSSIDS), 2, 2);
+        LatencyStats stats = new LatencyStats();
+        pipeline.setLatencyStats(stats);
+        pipeline.setBuildingPredictor(ECHO);
+        long arrival = System.nanoTime();
+        PositionFix fix = pipeline.predict(pipeline.takeScan(5L, arrival));
+
+        assertEquals(arrival, fix.getScanNanos());
+        assertEquals(1, stats.getHistogram(LatencyStats.PREDICTION_WAIT).getCount());
+        assertEquals(1, stats.getHistogram(LatencyStats.REGRESSION).getCount());
+        // No partition models, so nothing was routed
+        assertEquals(0, stats.getHistogram(LatencyStats.ROUTING).getCount());
+    }
+
+    // A loaded partitioned predictor over a single partition named "only"
+    private static FutureTask<PartitionedPositionPredictor> onePartition(
+            ModelRegistry<PositionPredictor> predictors) {
+        final PartitionedPositionPredictor partitioned = new PartitionedPositionPredictor(
+                new PartitionedPositionPredictor.Router() {
+                    @Override
+                    public int getNumPartitions() {
+                        return 1;
+                    }
+
+                    @Override
+                    public String getPartitionName(int partition) {
+                        return "only";
+                    }
+
+                    @Override
+                    public void distribution(double[] features, double[] probabilities) {
+                        probabilities[0] = 1;
+                    }
+                }, predictors, 1);
+        FutureTask<PartitionedPositionPredictor> ready = new FutureTask<PartitionedPositionPredictor>(
+                new Callable<PartitionedPositionPredictor>() {
+                    @Override
+                    public PartitionedPositionPredictor call() {
+                        return partitioned;
+                    }
+                });
+        ready.run();
+        return ready;
+    }
+
+    @Test
+    public void predict_skipsTheBuildingModelsWhenAPartitionPredicts() throws Exception {
+        PositionPipeline pipeline = new PositionPipeline(new AccessPointRegistry(BSSIDS), 2, 2);
+        final int[] buildingCalls = new int[1];
+        pipeline.setBuildingPredictor(new PositionPredictor() {
+            @Override
+            public void predict(double[] features, double[] position) {
+                buildingCalls[0]++;
+            }
+        });
+        ExecutorService executor = ModelRegistry.newLoaderExecutor();
+        try {
+            ModelRegistry<PositionPredictor> predictors = new ModelRegistry<PositionPredictor>(
+                    executor, new ModelRegistry.Loader<PositionPredictor>() {
+                        @Override
+                        public PositionPredictor load(String name) {
+                            return ECHO;
+                        }
+                    }, 0);
+            predictors.get("only");
+            pipeline.setPartitionPredictor(onePartition(predictors));
+
+            pipeline.setRssi(0, -45);
+            PositionFix fix = pipeline.predict(pipeline.takeScan(6L));
+            assertEquals(-45, fix.getX(), 0);
+            assertEquals(0, buildingCalls[0]);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void predict_returnsNullWhenNoModelPredicts() throws Exception {
+        PositionPipeline pipeline = new PositionPipeline(new AccessPointRegistry(BSSIDS), 2, 2);
+        assertNull(pipeline.predict(pipeline.takeScan(5L)));
+
+        // The scan's only partition has no model
+        ExecutorService executor = ModelRegistry.newLoaderExecutor();
+        try {
+            ModelRegistry<PositionPredictor> predictors = new ModelRegistry<PositionPredictor>(
+                    executor, new ModelRegistry.Loader<PositionPredictor>() {
+                        @Override
+                        public PositionPredictor load(String name) throws Exception {
+                            throw new Exception("no model for " + name);
+                        }
+                    }, 0);
+            pipeline.setPartitionPredictor(onePartition(predictors));
+            assertNull(pipeline.predict(pipeline.takeScan(6L)));
+
+            // The building models still predict when the partition can't
+            pipeline.setBuildingPredictor(ECHO);
+            pipeline.setRssi(0, -45);
+            assertEquals(-45, pipeline.predict(pipeline.takeScan(7L)).getX(), 0);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.davidmascharka.lips;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PredictionExecutorTest {
+
+    private final List<PositionFix> fixes = new ArrayList<PositionFix>();
+    private final List<Exception> failures = new ArrayList<Exception>();
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private CountDownLatch finished;
+    private PredictionExecutor<Integer> executor;
+
+    private final PredictionExecutor.Predictor<Integer> predictor = new PredictionExecutor.Predictor<Integer>() {
+        @Override
+        public PositionFix predict(Integer scan) throws Exception {
+            started.countDown();
+            release.await();
+            if (scan < 0) {
+                throw new IllegalArgumentException("bad scan");
+            }
+            return new PositionFix(scan, 0, scan, 0);
+        }
+    };
+
+    private final PredictionExecutor.Listener listener = new PredictionExecutor.Listener() {
+        @Override
+        public void onPositionFix(PositionFix fix) {
+            synchronized (fixes) {
+                fixes.add(fix);
+            }
+            finished.countDown();
+        }
+
+        @Override
+        public void onPredictionFailed(Exception e) {
+            synchronized (fixes) {
+                failures.add(e);
+            }
+            finished.countDown();
+        }
+    };
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void submit_newestWaitingScanReplacesOlderOnes() throws Exception {
+        finished = new CountDownLatch(2);
+        executor = new PredictionExecutor<Integer>(predictor, listener);
+        executor.submit(1);
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+
+        // 1 is being predicted, so 2 and 3 wait and only 3 is kept
+        executor.submit(2);
+        executor.submit(3);
+        release.countDown();
+        assertTrue(finished.await(1, TimeUnit.SECONDS));
+
+        synchronized (fixes) {
+            assertEquals(2, fixes.size());
+            assertEquals(1, fixes.get(0).getX(), 0);
+            assertEquals(3, fixes.get(1).getX(), 0);
+        }
+        assertEquals(1, executor.getReplacedScans());
+    }
+
+    @Test
+    public void submit_alwaysPredictsTheLastScanSubmitted() throws Exception {
+        finished = new CountDownLatch(2);
+        executor = new PredictionExecutor<Integer>(predictor, listener);
+        executor.submit(0);
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+
+        // Far more scans arrive than could ever wait while 0 is predicted
+        for (int scan = 1; scan <= 100; scan++) {
+            executor.submit(scan);
+        }
+        release.countDown();
+        assertTrue(finished.await(1, TimeUnit.SECONDS));
+
+        synchronized (fixes) {
+            assertEquals(2, fixes.size());
+            assertEquals(100, fixes.get(1).getX(), 0);
+        }
+        assertEquals(99, executor.getReplacedScans());
+    }
+
+    @Test
+    public void submit_keepsPredictingAfterAFailure() throws Exception {
+        finished = new CountDownLatch(2);
+        executor = new PredictionExecutor<Integer>(predictor, listener);
+        executor.submit(-1);
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        executor.submit(5);
+        release.countDown();
+        assertTrue(finished.await(1, TimeUnit.SECONDS));
+
+        synchronized (fixes) {
+            assertEquals(1, failures.size());
+            assertEquals(1, fixes.size());
+            assertEquals(5, fixes.get(0).getX(), 0);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.davidmascharka.lips;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import weka.classifiers.functions.RBFModel;
+import weka.classifiers.functions.RBFRegressor;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SelectedTag;
+
+import static org.junit.Assert.*;
+
+public class RbfPredictorTest {
+
+    private static Instances fingerprints(Random random, int numInstances) {
+        ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+        for (int a = 0; a < 5; a++) {
+            attributes.add(new Attribute("a" + a));
+        }
+        attributes.add(new Attribute("position"));
+        Instances data = new Instances("fingerprints", attributes, numInstances);
+        data.setClassIndex(5);
+
+        for (int i = 0; i < numInstances; i++) {
+            double position = random.nextInt(50);
+            double[] values = new double[6];
+            for (int a = 0; a < 4; a++) {
+                values[a] = Math.round(-40 - position * (a + 1) / 2.0 + random.nextGaussian() * 3);
+            }
+            // never seen, so Weka drops it as useless
+            values[4] = 0;
+            values[5] = position;
+            data.add(new DenseInstance(1.0, values));
+        }
+        return data;
+    }
+
+    private static void assertMatchesWeka(RBFRegressor rbf, Instances test) throws Exception {
+        RbfPredictor predictor = WekaModels.toRbfPredictor(rbf);
+        for (int i = 0; i < test.numInstances(); i++) {
+            Instance instance = test.instance(i);
+            double expected = rbf.classifyInstance(instance);
+            assertEquals(expected, predictor.predict(instance.toDoubleArray()), 1e-9);
+        }
+    }
+
+    @Test
+    public void predict_matchesWekaRBFRegressor() throws Exception {
+        Random random = new Random(11);
+        Instances train = fingerprints(random, 150);
+        for (int i = 0; i < train.numInstances(); i += 7) {
+            train.instance(i).setMissing(2);
+        }
+        RBFRegressor rbf = new RBFRegressor();
+        rbf.setNumFunctions(4);
+        rbf.buildClassifier(train);
+
+        Instances test = fingerprints(random, 30);
+        for (int i = 0; i < test.numInstances(); i += 3) {
+            test.instance(i).setMissing(1);
+        }
+        assertMatchesWeka(rbf, test);
+    }
+
+    @Test
+    public void predict_matchesWekaWithOtherScaleOptions() throws Exception {
+        Random random = new Random(12);
+        Instances train = fingerprints(random, 100);
+        Instances test = fingerprints(random, 20);
+
+        RBFRegressor global = new RBFRegressor();
+        global.setNumFunctions(3);
+        global.setScaleOptimizationOption(
+                new SelectedTag(RBFModel.USE_GLOBAL_SCALE, RBFModel.TAGS_SCALE));
+        global.buildClassifier(train);
+        assertMatchesWeka(global, test);
+
+        RBFRegressor perUnit = new RBFRegressor();
+        perUnit.setNumFunctions(3);
+        perUnit.setScaleOptimizationOption(
+                new SelectedTag(RBFModel.USE_SCALE_PER_UNIT, RBFModel.TAGS_SCALE));
+        perUnit.setUseNormalizedBasisFunctions(true);
+        perUnit.setUseAttributeWeights(false);
+        perUnit.buildClassifier(train);
+        assertMatchesWeka(perUnit, test);
+    }
+}
@@ -0,0 +1,98 @@
+package com.davidmascharka.lips;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ScanSchedulerTest {
+
+    private static final long SECOND = 1000000000L;
+    // 100 readings a second
+    private static final long INTERVAL = 10000000L;
+
+    /**
+     * Holds the phone still from start for the given time
+     *
+     * @return when the readings ended
+     */
+    private static long holdStill(ScanScheduler scheduler, long start, long duration) {
+        long time = start;
+        for (; time < start + duration; time += INTERVAL) {
+            assertFalse(scheduler.onAcceleration(time, 0.1f, 9.81f, 0.2f));
+        }
+        return time;
+    }
+
+    @Test
+    public void getDelayMillis_scansEagerlyWhileMoving() {
+        ScanScheduler scheduler = new ScanScheduler(ScanScheduler.DEFAULT_POLICY);
+        assertTrue(scheduler.isMoving());
+        assertEquals(0, scheduler.getDelayMillis(SECOND));
+
+        scheduler.onScanStarted(SECOND, true);
+        // Waits for the results, up to the timeout
+        assertEquals(15000, scheduler.getDelayMillis(SECOND));
+        scheduler.onScanResults(SECOND + SECOND / 2);
+        assertEquals(500, scheduler.getDelayMillis(SECOND + SECOND / 2));
+        assertEquals(0, scheduler.getDelayMillis(3 * SECOND));
+    }
+
+    @Test
+    public void getDelayMillis_backsOffWhenStill() {
+        ScanScheduler scheduler = new ScanScheduler(ScanScheduler.DEFAULT_POLICY);
+        long time = holdStill(scheduler, INTERVAL, 6 * SECOND);
+        assertFalse(scheduler.isMoving());
+
+        long[] expected = {10000, 20000, 40000, 80000, 120000, 120000};
+        for (long interval : expected) {
+            scheduler.onScanStarted(time, true);
+            scheduler.onScanResults(time + SECOND);
+            long delay = scheduler.getDelayMillis(time + SECOND);
+            assertEquals(interval - 1000, delay);
+            time += SECOND + delay * 1000000L;
+        }
+        assertEquals(6, scheduler.getScansStarted());
+    }
+
+    @Test
+    public void onAcceleration_movementEndsBackOff() {
+        ScanScheduler scheduler = new ScanScheduler(ScanScheduler.DEFAULT_POLICY);
+        long time = holdStill(scheduler, INTERVAL, 6 * SECOND);
+        for (int i = 0; i < 3; i++) {
+            scheduler.onScanStarted(time, true);
+            scheduler.onScanResults(time + SECOND);
+            time += 5 * SECOND;
+        }
+        assertTrue(scheduler.getDelayMillis(time) > 0);
+
+        // Walking swings the acceleration a few m/s^2 twice a second
+        boolean started = false;
+        for (int i = 0; i < 100 && !started; i++) {
+            time += INTERVAL;
+            float vertical = 9.81f + 3f * (float) Math.sin(2 * Math.PI * 2 * i * INTERVAL / 1e9);
+            started = scheduler.onAcceleration(time, 0.2f, vertical, 0.1f);
+        }
+        assertTrue(started);
+        assertTrue(scheduler.isMoving());
+        assertEquals(0, scheduler.getDelayMillis(time));
+    }
+
+    @Test
+    public void onStep_countsAsMovement() {
+        ScanScheduler scheduler = new ScanScheduler(ScanScheduler.DEFAULT_POLICY);
+        long time = holdStill(scheduler, INTERVAL, 6 * SECOND);
+        assertTrue(scheduler.onStep(time));
+        assertFalse(scheduler.onStep(time + SECOND));
+        assertTrue(scheduler.isMoving());
+    }
+
+    @Test
+    public void onScanStarted_retriesRefusedScans() {
+        ScanScheduler scheduler = new ScanScheduler(ScanScheduler.DEFAULT_POLICY);
+        scheduler.onScanStarted(SECOND, false);
+        assertFalse(scheduler.isScanning());
+        assertEquals(1000, scheduler.getDelayMillis(SECOND));
+        assertEquals(1, scheduler.getScansRefused());
+        assertEquals(0, scheduler.getScansStarted());
+    }
+}
@@ -0,0 +1,39 @@
+package com.davidmascharka.lips;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StepDetectorTest {
+
+    // 100 readings a second
+    private static final long INTERVAL = 10000000L;
+
+    @Test
+    public void onAcceleration_countsWalkingSteps() {
+        StepDetector detector = new StepDetector();
+        int found = 0;
+        // Two steps a second for ten seconds, swinging 3 m/s^2 around gravity
+        for (int i = 1; i <= 1000; i++) {
+            double t = i * INTERVAL / 1e9;
+            float vertical = 9.81f + 3f * (float) Math.sin(2 * Math.PI * 2 * t);
+            if (detector.onAcceleration(i * INTERVAL, 0.2f, vertical, 0.1f)) {
+                found++;
+            }
+        }
+        assertEquals(found, detector.getSteps());
+        assertTrue("found " + found, found >= 19 && found <= 20);
+        assertTrue(detector.getStepLength() > 0.5f && detector.getStepLength() < 1.0f);
+    }
+
+    @Test
+    public void onAcceleration_ignoresStandingStillAndJitter() {
+        StepDetector detector = new StepDetector();
+        for (int i = 1; i <= 1000; i++) {
+            // Small shakes much faster than walking
+            float vertical = 9.81f + ((i % 4 < 2) ? 0.8f : -0.8f);
+            assertFalse(detector.onAcceleration(i * INTERVAL, 0, vertical, 0));
+        }
+        assertEquals(0, detector.getSteps());
+    }
+}
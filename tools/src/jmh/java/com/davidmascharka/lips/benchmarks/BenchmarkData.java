@@ -0,0 +1,146 @@
+package com.davidmascharka.lips.benchmarks;
+
+import com.davidmascharka.lips.FeatureVector;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Random;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SerializationHelper;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Models and scans for the benchmarks: the app's own assets, and synthetic
+ * fingerprints where a benchmark needs sizes the assets don't have.
+ *
+ * The assets are found through the lips.assets system property, which the jmh
+ * task sets, or relative to the tools directory.
+ */
+final class BenchmarkData {
+
+	private BenchmarkData() {
+	}
+
+	static File asset(String name) throws FileNotFoundException {
+		File file = new File(System.getProperty("lips.assets", "../app/src/main/assets"), name);
+		if (!file.exists()) {
+			throw new FileNotFoundException(file + " (set lips.assets to the app assets)");
+		}
+		return file;
+	}
+
+	static Object readAsset(String name) throws Exception {
+		return SerializationHelper.read(asset(name).getPath());
+	}
+
+	/**
+	 * Attribute values of scans close to the training data, with the class missing,
+	 * so predictions follow the same paths as they do for real scans
+	 */
+	static double[][] scansLike(Instances train, int count, long seed) {
+		Random random = new Random(seed);
+		double[][] scans = new double[count][];
+		for (int i = 0; i < count; i++) {
+			Instance instance = train.instance(random.nextInt(train.numInstances()));
+			double[] values = instance.toDoubleArray();
+			for (int a = 0; a < values.length; a++) {
+				if (a != train.classIndex() && train.attribute(a).isNumeric()
+						&& !Double.isNaN(values[a]) && values[a] != 0) {
+					values[a] += random.nextGaussian() * 2;
+				}
+			}
+			values[train.classIndex()] = Double.NaN;
+			scans[i] = values;
+		}
+		return scans;
+	}
+
+	/**
+	 * Weka instances over the scans' values, for classifyInstance
+	 */
+	static DenseInstance[] instances(double[][] scans, Instances header) {
+		DenseInstance[] instances = new DenseInstance[scans.length];
+		for (int i = 0; i < scans.length; i++) {
+			instances[i] = new DenseInstance(1.0, scans[i]);
+			instances[i].setDataset(header);
+		}
+		return instances;
+	}
+
+	/**
+	 * Fingerprints laid out like FeatureVector, with access points whose signal
+	 * falls off with distance in a 100 by 60 building
+	 *
+	 * @param classNames null for an x position class, otherwise a nominal class
+	 * of that many partitions across the building
+	 */
+	static Instances fingerprints(int count, int numAccessPoints, String[] classNames, long seed) {
+		FeatureVector layout = new FeatureVector(numAccessPoints);
+		ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+		for (int a = 0; a < layout.classIndex(); a++) {
+			attributes.add(new Attribute(layout.attributeName(a)));
+		}
+		if (classNames == null) {
+			attributes.add(new Attribute("xPosition"));
+		} else {
+			ArrayList<String> values = new ArrayList<String>();
+			for (String name : classNames) {
+				values.add(name);
+			}
+			attributes.add(new Attribute("partition", values));
+		}
+		Instances instances = new Instances("fingerprints", attributes, count);
+		instances.setClassIndex(layout.classIndex());
+
+		Random random = new Random(seed);
+		float[] apX = new float[numAccessPoints];
+		float[] apY = new float[numAccessPoints];
+		for (int i = 0; i < numAccessPoints; i++) {
+			apX[i] = random.nextFloat() * 100;
+			apY[i] = random.nextFloat() * 60;
+		}
+		for (int n = 0; n < count; n++) {
+			double x = random.nextDouble() * 100;
+			double y = random.nextDouble() * 60;
+			double[] values = new double[layout.numAttributes()];
+			for (int a = 0; a < FeatureVector.NUM_SENSOR_ATTRIBUTES; a++) {
+				values[a] = random.nextGaussian();
+			}
+			for (int i = 0; i < numAccessPoints; i++) {
+				double distance = Math.hypot(x - apX[i], y - apY[i]);
+				double rssi = -30 - 20 * Math.log10(1 + distance) + random.nextGaussian() * 3;
+				values[layout.rssiIndex(i)] = rssi < -95 ? FeatureVector.RSSI_NOT_SEEN : Math.round(rssi);
+			}
+			values[layout.latitudeIndex()] = Double.NaN;
+			values[layout.longitudeIndex()] = Double.NaN;
+			values[layout.locationAccuracyIndex()] = Double.NaN;
+			values[layout.classIndex()] = classNames == null ? x
+					: Math.min((int) (x / 100 * classNames.length), classNames.length - 1);
+			instances.add(new DenseInstance(1.0, values));
+		}
+		return instances;
+	}
+}
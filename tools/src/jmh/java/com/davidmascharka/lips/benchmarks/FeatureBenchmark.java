@@ -0,0 +1,109 @@
+package com.davidmascharka.lips.benchmarks;
+
+import com.davidmascharka.lips.AccessPointRegistry;
+import com.davidmascharka.lips.FeatureVector;
+import com.davidmascharka.lips.PositionPipeline;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Building the features of a scan as TrackerActivity.updateScanResults does:
+ * looking up every scan result among the access points of interest, writing the
+ * sensor values and location, and taking the snapshot that is predicted from.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FeatureBenchmark {
+
+	/**
+	 * Access points in each scan, only some of which the models use
+	 */
+	@Param({"10", "40", "120"})
+	int scanResults;
+
+	private PositionPipeline pipeline;
+	private String[] bssids;
+	private int[] levels;
+	private final float[] orientation = new float[3];
+	private long time;
+
+	@Setup
+	public void setUp() throws Exception {
+		InputStream in = new FileInputStream(BenchmarkData.asset("access_points/lab.txt"));
+		AccessPointRegistry accessPoints;
+		try {
+			accessPoints = AccessPointRegistry.read(in);
+		} finally {
+			in.close();
+		}
+		pipeline = new PositionPipeline(accessPoints, 10, 156);
+
+		// Results come back from WifiManager in lower case
+		Random random = new Random(1);
+		bssids = new String[scanResults];
+		levels = new int[scanResults];
+		for (int i = 0; i < scanResults; i++) {
+			bssids[i] = i < accessPoints.size() && i % 2 == 0
+					? accessPoints.getBssid(i).toLowerCase(Locale.US)
+					: String.format(Locale.US, "%02x:%02x:%02x:%02x:%02x:%02x", random.nextInt(256),
+					random.nextInt(256), random.nextInt(256), random.nextInt(256),
+					random.nextInt(256), random.nextInt(256));
+			levels[i] = -40 - random.nextInt(50);
+		}
+	}
+
+	@Benchmark
+	public PositionPipeline.Scan buildScan() {
+		pipeline.clearRssi();
+		for (int i = 0; i < bssids.length; i++) {
+			pipeline.setRssi(bssids[i], levels[i]);
+		}
+		FeatureVector features = pipeline.getFeatures();
+		features.setAccelerometer(0.1f, 9.8f, 0.2f);
+		features.setMagnetic(12.5f, -30.0f, 40.25f);
+		features.setLight(120.0f);
+		features.setRotation(0.01f, 0.02f, 0.7f);
+		features.setOrientation(orientation);
+		features.setLocationMissing();
+		return pipeline.takeScan(time++);
+	}
+}
@@ -0,0 +1,114 @@
+package com.davidmascharka.lips.benchmarks;
+
+import com.davidmascharka.lips.FeatureVector;
+import com.davidmascharka.lips.KStarPredictor;
+import com.davidmascharka.lips.KdTree;
+import com.davidmascharka.lips.PositionPipeline;
+import com.davidmascharka.lips.WekaModels;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import weka.classifiers.lazy.KStar;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * How K* prediction scales with the number of fingerprints, on synthetic
+ * fingerprints laid out like the tracker's building models: Weka's KStar, the
+ * app's predictor looking at every fingerprint, and the app's predictor
+ * looking only at the nearest ones through its index.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FingerprintSetBenchmark {
+
+	private static final int SCANS = 64;
+
+	@Param({"500", "2000", "8000", "32000"})
+	int fingerprints;
+
+	@Param({"10", "156"})
+	int accessPoints;
+
+	private KStar wekaKStar;
+	private KStarPredictor kStar;
+	private KStarPredictor indexedKStar;
+	private DenseInstance[] instances;
+	private double[][] scans;
+	private int next;
+
+	@Setup
+	public void setUp() throws Exception {
+		Instances data = BenchmarkData.fingerprints(fingerprints, accessPoints, null, 1);
+		wekaKStar = new KStar();
+		wekaKStar.buildClassifier(data);
+		kStar = WekaModels.toKStarPredictor(wekaKStar);
+
+		indexedKStar = WekaModels.toKStarPredictor(wekaKStar);
+		FeatureVector layout = new FeatureVector(accessPoints);
+		int[] rssiAttributes = new int[accessPoints];
+		for (int i = 0; i < accessPoints; i++) {
+			rssiAttributes[i] = layout.rssiIndex(i);
+		}
+		indexedKStar.useIndex(new KdTree(indexedKStar.getColumns(), rssiAttributes),
+				PositionPipeline.INDEX_CANDIDATES);
+
+		scans = BenchmarkData.scansLike(data, SCANS, 2);
+		instances = BenchmarkData.instances(scans, data);
+	}
+
+	private int nextScan() {
+		next = (next + 1) % SCANS;
+		return next;
+	}
+
+	@Benchmark
+	public double wekaKStar() throws Exception {
+		return wekaKStar.classifyInstance(instances[nextScan()]);
+	}
+
+	@Benchmark
+	public double kStarPredictor() {
+		return kStar.predict(scans[nextScan()]);
+	}
+
+	@Benchmark
+	public double indexedKStarPredictor() {
+		return indexedKStar.predict(scans[nextScan()]);
+	}
+}
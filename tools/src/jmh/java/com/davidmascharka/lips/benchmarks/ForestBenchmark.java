@@ -0,0 +1,97 @@
+package com.davidmascharka.lips.benchmarks;
+
+import com.davidmascharka.lips.CompiledForest;
+import com.davidmascharka.lips.WekaModels;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import weka.classifiers.trees.RandomForest;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Routing a scan to its partition with the random forest: Weka against the
+ * compiled forest the app runs.
+ *
+ * The shipped 5 partition forest was saved by an older Weka whose trees this
+ * Weka doesn't read back, so both run a forest built here
+ * from synthetic fingerprints laid out like the partition models.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ForestBenchmark {
+
+	private static final int SCANS = 64;
+	// Weka's default
+	private static final int TREES = 100;
+	private static final String[] PARTITIONS =
+			{"lowerleft", "lowerright", "middle", "upperleft", "upperright"};
+
+	private RandomForest wekaForest;
+	private CompiledForest compiledForest;
+	private DenseInstance[] instances;
+	private double[][] scans;
+	private final double[] distribution = new double[PARTITIONS.length];
+	private int next;
+
+	@Setup
+	public void setUp() throws Exception {
+		Instances data = BenchmarkData.fingerprints(2000, 156, PARTITIONS, 1);
+		wekaForest = new RandomForest();
+		wekaForest.setNumIterations(TREES);
+		wekaForest.buildClassifier(data);
+		compiledForest = WekaModels.toCompiledForest(wekaForest);
+		scans = BenchmarkData.scansLike(data, SCANS, 2);
+		instances = BenchmarkData.instances(scans, data);
+	}
+
+	private int nextScan() {
+		next = (next + 1) % SCANS;
+		return next;
+	}
+
+	@Benchmark
+	public double[] wekaForest() throws Exception {
+		return wekaForest.distributionForInstance(instances[nextScan()]);
+	}
+
+	@Benchmark
+	public double[] compiledForest() {
+		compiledForest.distribution(scans[nextScan()], distribution);
+		return distribution;
+	}
+}
@@ -0,0 +1,111 @@
+package com.davidmascharka.lips.benchmarks;
+
+import com.davidmascharka.lips.ModelFormat;
+import com.davidmascharka.lips.WekaModels;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import weka.classifiers.functions.RBFRegressor;
+import weka.classifiers.lazy.KStar;
+import weka.core.SerializationHelper;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Loading a shipped model: deserializing the Weka model against reading the
+ * same model converted to a LIPS model file. Both read from memory, so only
+ * the decoding is timed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoadBenchmark {
+
+	@Param({"5partition/model_x_middle.model", "classifier_x_rbfreg.model"})
+	String model;
+
+	private byte[] wekaModel;
+	private ByteBuffer lipsModel;
+
+	@Setup
+	public void setUp() throws Exception {
+		File file = BenchmarkData.asset(model);
+		wekaModel = readFully(file);
+
+		Object weka = SerializationHelper.read(file.getPath());
+		ByteArrayOutputStream converted = new ByteArrayOutputStream();
+		if (weka instanceof KStar) {
+			ModelFormat.write(WekaModels.toKStarPredictor((KStar) weka), converted);
+		} else {
+			ModelFormat.write(WekaModels.toRbfPredictor((RBFRegressor) weka), converted);
+		}
+		// Direct like a mapped asset
+		byte[] bytes = converted.toByteArray();
+		lipsModel = ByteBuffer.allocateDirect(bytes.length);
+		lipsModel.put(bytes);
+		lipsModel.flip();
+	}
+
+	private static byte[] readFully(File file) throws Exception {
+		InputStream in = new FileInputStream(file);
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	@Benchmark
+	public Object wekaDeserialize() throws Exception {
+		return SerializationHelper.read(new ByteArrayInputStream(wekaModel));
+	}
+
+	@Benchmark
+	public Object lipsRead() throws Exception {
+		return ModelFormat.read(lipsModel);
+	}
+}
@@ -0,0 +1,239 @@
+package com.davidmascharka.lips.benchmarks;
+
+import com.davidmascharka.lips.ParticleFilter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * A step and a fix of the particle filter on the tracker's 102x64 grid: the
+ * app's ParticleFilter, with its particles in parallel arrays, against the same
+ * filter written with an object per particle.
+ *
+ * A step has to fit between two sensor events to keep up with the user, so at
+ * SENSOR_DELAY_GAME (50 Hz) within about 20 ms less whatever else the main
+ * thread is doing. A fix only comes once per scan.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParticleFilterBenchmark {
+
+	private static final float WIDTH = 102;
+	private static final float HEIGHT = 64;
+	private static final float FIX_ERROR = 10;
+	private static final float DRIFT = 2;
+	private static final long SECOND = 1000000000L;
+
+	@Param({"1000", "10000", "100000"})
+	public int particles;
+
+	private ParticleFilter arrays;
+	private ObjectParticleFilter objects;
+	private Random fixes;
+	private long time;
+	private float direction = 1;
+
+	@Setup
+	public void setUp() {
+		arrays = new ParticleFilter(particles, WIDTH, HEIGHT, FIX_ERROR, DRIFT, 1);
+		arrays.update(WIDTH / 2, HEIGHT / 2, 0);
+		objects = new ObjectParticleFilter(particles, 1);
+		objects.update(WIDTH / 2, HEIGHT / 2, 0);
+		fixes = new Random(2);
+	}
+
+	/**
+	 * Walks back and forth across the middle of the grid so the particles
+	 * don't pile up against a wall
+	 */
+	private float nextStep(float x) {
+		if (x > WIDTH * 0.75f) {
+			direction = -1;
+		} else if (x < WIDTH * 0.25f) {
+			direction = 1;
+		}
+		return direction * 2.3f;
+	}
+
+	private float nearby(float coordinate) {
+		return coordinate + (float) fixes.nextGaussian() * FIX_ERROR / 2;
+	}
+
+	@Benchmark
+	public float arrayStep() {
+		arrays.step(nextStep(arrays.getX()), 0.2f);
+		return arrays.getX();
+	}
+
+	@Benchmark
+	public float arrayFix() {
+		time += SECOND;
+		arrays.update(nearby(arrays.getX()), nearby(arrays.getY()), time);
+		return arrays.getX();
+	}
+
+	@Benchmark
+	public float objectStep() {
+		objects.step(nextStep(objects.getX()), 0.2f);
+		return objects.getX();
+	}
+
+	@Benchmark
+	public float objectFix() {
+		time += SECOND;
+		objects.update(nearby(objects.getX()), nearby(objects.getY()), time);
+		return objects.getX();
+	}
+
+	/**
+	 * The straightforward design: a list of particle objects, java.util.Random
+	 * and a new list from each resampling. Same model as ParticleFilter, without
+	 * the rejection of outlying fixes
+	 */
+	private static final class ObjectParticleFilter {
+
+		private static final class Particle {
+			float x;
+			float y;
+			float weight;
+
+			Particle(float x, float y, float weight) {
+				this.x = x;
+				this.y = y;
+				this.weight = weight;
+			}
+		}
+
+		private final int numParticles;
+		private final Random random;
+		private List<Particle> particles;
+		private float meanX;
+		private float meanY;
+		private long lastFixTime;
+
+		ObjectParticleFilter(int numParticles, long seed) {
+			this.numParticles = numParticles;
+			random = new Random(seed);
+		}
+
+		void step(float dx, float dy) {
+			for (Particle particle : particles) {
+				float along = 1 + 0.15f * (float) random.nextGaussian();
+				float across = 0.3f * (float) random.nextGaussian();
+				particle.x = clamp(particle.x + along * dx - across * dy, WIDTH);
+				particle.y = clamp(particle.y + along * dy + across * dx, HEIGHT);
+			}
+			updateMean();
+		}
+
+		void update(float fixX, float fixY, long time) {
+			if (particles == null) {
+				particles = new ArrayList<Particle>(numParticles);
+				for (int i = 0; i < numParticles; i++) {
+					particles.add(new Particle(
+							clamp(fixX + FIX_ERROR * (float) random.nextGaussian(), WIDTH),
+							clamp(fixY + FIX_ERROR * (float) random.nextGaussian(), HEIGHT),
+							1.0f / numParticles));
+				}
+				lastFixTime = time;
+				updateMean();
+				return;
+			}
+			float spread = (float) Math.sqrt(DRIFT * DRIFT * (time - lastFixTime) / 1e9);
+			lastFixTime = time;
+			double total = 0.0;
+			for (Particle particle : particles) {
+				particle.x = clamp(particle.x + spread * (float) random.nextGaussian(), WIDTH);
+				particle.y = clamp(particle.y + spread * (float) random.nextGaussian(), HEIGHT);
+				float ex = particle.x - fixX;
+				float ey = particle.y - fixY;
+				particle.weight *= (float) Math.exp(-0.5f * (ex * ex + ey * ey) / (FIX_ERROR * FIX_ERROR));
+				total += particle.weight;
+			}
+			double sumOfSquares = 0.0;
+			for (Particle particle : particles) {
+				particle.weight /= total;
+				sumOfSquares += particle.weight * particle.weight;
+			}
+			if (1.0 / sumOfSquares < numParticles / 2.0) {
+				List<Particle> resampled = new ArrayList<Particle>(numParticles);
+				double offset = random.nextDouble();
+				double cumulative = particles.get(0).weight;
+				int from = 0;
+				for (int i = 0; i < numParticles; i++) {
+					double pick = (i + offset) / numParticles;
+					while (pick > cumulative && from < numParticles - 1) {
+						from++;
+						cumulative += particles.get(from).weight;
+					}
+					Particle source = particles.get(from);
+					resampled.add(new Particle(source.x, source.y, 1.0f / numParticles));
+				}
+				particles = resampled;
+			}
+			updateMean();
+		}
+
+		private void updateMean() {
+			double sumX = 0.0;
+			double sumY = 0.0;
+			double total = 0.0;
+			for (Particle particle : particles) {
+				sumX += particle.weight * particle.x;
+				sumY += particle.weight * particle.y;
+				total += particle.weight;
+			}
+			meanX = (float) (sumX / total);
+			meanY = (float) (sumY / total);
+		}
+
+		float getX() {
+			return meanX;
+		}
+
+		float getY() {
+			return meanY;
+		}
+
+		private static float clamp(float value, float max) {
+			return Math.max(0, Math.min(value, max));
+		}
+	}
+}
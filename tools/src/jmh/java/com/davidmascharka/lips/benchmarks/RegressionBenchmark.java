@@ -0,0 +1,108 @@
+package com.davidmascharka.lips.benchmarks;
+
+import com.davidmascharka.lips.KStarPredictor;
+import com.davidmascharka.lips.RbfPredictor;
+import com.davidmascharka.lips.WekaModels;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import weka.classifiers.functions.RBFRegressor;
+import weka.classifiers.lazy.KStar;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Predicting one coordinate with the models shipped in the assets: Weka's
+ * classifyInstance against the primitive-array predictors the app runs.
+ *
+ * The K* model is the x model of the middle partition; the RBF model is the
+ * building x model. Both were built on the 156 access point layout, so the
+ * same scans serve both.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegressionBenchmark {
+
+	private static final int SCANS = 64;
+
+	private KStar wekaKStar;
+	private KStarPredictor kStar;
+	private DenseInstance[] instances;
+	private double[][] scans;
+
+	private RBFRegressor wekaRbf;
+	private RbfPredictor rbf;
+
+	private int next;
+
+	@Setup
+	public void setUp() throws Exception {
+		wekaKStar = (KStar) BenchmarkData.readAsset("5partition/model_x_middle.model");
+		kStar = WekaModels.toKStarPredictor(wekaKStar);
+		Instances data = WekaModels.trainingData(wekaKStar);
+		scans = BenchmarkData.scansLike(data, SCANS, 1);
+		instances = BenchmarkData.instances(scans, data);
+
+		wekaRbf = (RBFRegressor) BenchmarkData.readAsset("classifier_x_rbfreg.model");
+		rbf = WekaModels.toRbfPredictor(wekaRbf);
+	}
+
+	private int nextScan() {
+		next = (next + 1) % SCANS;
+		return next;
+	}
+
+	@Benchmark
+	public double wekaKStar() throws Exception {
+		return wekaKStar.classifyInstance(instances[nextScan()]);
+	}
+
+	@Benchmark
+	public double kStarPredictor() {
+		return kStar.predict(scans[nextScan()]);
+	}
+
+	@Benchmark
+	public double wekaRbfRegressor() throws Exception {
+		return wekaRbf.classifyInstance(instances[nextScan()]);
+	}
+
+	@Benchmark
+	public double rbfPredictor() {
+		return rbf.predict(scans[nextScan()]);
+	}
+}
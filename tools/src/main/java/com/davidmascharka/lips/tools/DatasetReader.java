@@ -0,0 +1,369 @@
+package com.davidmascharka.lips.tools;
+
+import com.davidmascharka.lips.FeatureVector;
+import com.davidmascharka.lips.FingerprintLog;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.sql.Timestamp;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Reads the data points of a LIPS dataset one at a time, so a survey of any
+ * size can be processed without holding the file in memory.
+ *
+ * Reads both formats MainActivity has recorded: the binary fingerprint logs
+ * (.fpl, see FingerprintLog) and the older dataset_BUILDING.txt text files.
+ * A text file has comment lines starting with %, then one line per data point:
+ *
+ *   13 sensor values, one RSSI per access point, latitude, longitude and
+ *   location accuracy (? when there was no location), x, y %timestamp
+ *
+ * Also reads the livetest_BUILDING_values.txt files TrackerActivity writes,
+ * which have the same lines without x and y.
+ *
+ * The number of access points of a text file follows from its first data point.
+ */
+public abstract class DatasetReader implements Closeable {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * Opens a fingerprint log, tracker values file or text dataset, by its name
+	 */
+	public static DatasetReader open(File file) throws IOException {
+		String name = file.getName();
+		if (name.endsWith(".fpl")) {
+			return new LogReader(new FingerprintLog.Reader(new FileInputStream(file)));
+		}
+		return new TextReader(new InputStreamReader(new FileInputStream(file), UTF_8), name,
+				!name.endsWith("_values.txt"));
+	}
+
+	/**
+	 * Reads text data from the reader, closing it with this one
+	 *
+	 * @param name the file name, for error messages
+	 */
+	public static DatasetReader text(Reader reader, String name) {
+		return new TextReader(reader, name, true);
+	}
+
+	/**
+	 * Reads the values a tracker wrote for each scan, which have no position
+	 *
+	 * @param name the file name, for error messages
+	 */
+	public static DatasetReader trackerValues(Reader reader, String name) {
+		return new TextReader(reader, name, false);
+	}
+
+	/**
+	 * The access points in the order of their RSSI values
+	 *
+	 * @return null if the dataset doesn't name them, as text files don't
+	 */
+	public abstract String[] getBssids();
+
+	/**
+	 * Number of access points, or -1 for a text file before its first data point
+	 */
+	public abstract int getNumAccessPoints();
+
+	/**
+	 * Reads the next data point. features must have getNumAccessPoints() access
+	 * points; before the first text data point use peekNumAccessPoints
+	 *
+	 * @return false at the end of the dataset
+	 */
+	public abstract boolean next(FeatureVector features) throws IOException;
+
+	/**
+	 * Number of access points, reading ahead to the first data point if needed
+	 *
+	 * @return 0 for a text file without data points
+	 */
+	public abstract int peekNumAccessPoints() throws IOException;
+
+	/**
+	 * When the last data point was taken, in milliseconds since the epoch, or -1
+	 * if the dataset didn't record it
+	 */
+	public abstract long getTime();
+
+	/**
+	 * Whether the data points have the position they were taken at
+	 */
+	public abstract boolean hasPositions();
+
+	/**
+	 * @return NaN if the dataset has no positions
+	 */
+	public abstract float getX();
+
+	/**
+	 * @return NaN if the dataset has no positions
+	 */
+	public abstract float getY();
+
+	private static class LogReader extends DatasetReader {
+
+		private final FingerprintLog.Reader log;
+
+		LogReader(FingerprintLog.Reader log) {
+			this.log = log;
+		}
+
+		@Override
+		public String[] getBssids() {
+			return log.getBssids();
+		}
+
+		@Override
+		public int getNumAccessPoints() {
+			return log.getNumAccessPoints();
+		}
+
+		@Override
+		public int peekNumAccessPoints() {
+			return log.getNumAccessPoints();
+		}
+
+		@Override
+		public boolean next(FeatureVector features) throws IOException {
+			return log.next(features);
+		}
+
+		@Override
+		public long getTime() {
+			return log.getTime();
+		}
+
+		@Override
+		public boolean hasPositions() {
+			return true;
+		}
+
+		@Override
+		public float getX() {
+			return log.getX();
+		}
+
+		@Override
+		public float getY() {
+			return log.getY();
+		}
+
+		@Override
+		public void close() throws IOException {
+			log.close();
+		}
+	}
+
+	private static class TextReader extends DatasetReader {
+
+		private final BufferedReader reader;
+		private final String name;
+		private final boolean hasPositions;
+		// Sensors, then latitude, longitude, accuracy and any x and y
+		private final int fixedColumns;
+		private int lineNumber;
+		private int numAccessPoints = -1;
+		// A data line read ahead by peekNumAccessPoints
+		private String pending;
+
+		private long time;
+		private float x = Float.NaN;
+		private float y = Float.NaN;
+
+		TextReader(Reader reader, String name, boolean hasPositions) {
+			this.reader = new BufferedReader(reader);
+			this.name = name;
+			this.hasPositions = hasPositions;
+			fixedColumns = FeatureVector.NUM_SENSOR_ATTRIBUTES + (hasPositions ? 5 : 3);
+		}
+
+		@Override
+		public String[] getBssids() {
+			return null;
+		}
+
+		@Override
+		public int getNumAccessPoints() {
+			return numAccessPoints;
+		}
+
+		@Override
+		public int peekNumAccessPoints() throws IOException {
+			if (numAccessPoints < 0) {
+				pending = nextDataLine();
+				numAccessPoints = pending == null ? 0 : countColumns(pending) - fixedColumns;
+				if (numAccessPoints < 0) {
+					throw error("expected at least " + fixedColumns + " values");
+				}
+			}
+			return numAccessPoints;
+		}
+
+		@Override
+		public boolean next(FeatureVector features) throws IOException {
+			String line = pending != null ? pending : nextDataLine();
+			pending = null;
+			if (line == null) {
+				return false;
+			}
+			if (numAccessPoints < 0) {
+				numAccessPoints = countColumns(line) - fixedColumns;
+			}
+			if (features.getNumAccessPoints() != numAccessPoints) {
+				throw new IllegalArgumentException("Expected " + numAccessPoints + " access points");
+			}
+
+			int comment = line.indexOf('%');
+			String data = comment >= 0 ? line.substring(0, comment) : line;
+			time = comment >= 0 ? parseTime(line.substring(comment + 1).trim()) : -1;
+
+			double[] values = features.getValues();
+			int columns = 0;
+			int start = 0;
+			while (start <= data.length()) {
+				int end = data.indexOf(',', start);
+				if (end < 0) {
+					end = data.length();
+				}
+				if (columns == numAccessPoints + fixedColumns) {
+					throw error("expected " + (numAccessPoints + fixedColumns) + " values");
+				}
+				store(columns, data.substring(start, end).trim(), features, values);
+				columns++;
+				start = end + 1;
+			}
+			if (columns != numAccessPoints + fixedColumns) {
+				throw error("expected " + (numAccessPoints + fixedColumns) + " values");
+			}
+			return true;
+		}
+
+		private void store(int column, String value, FeatureVector features, double[] values)
+				throws IOException {
+			double number;
+			if (value.equals("?")) {
+				number = Double.NaN;
+			} else {
+				try {
+					number = Double.parseDouble(value);
+				} catch (NumberFormatException e) {
+					throw error("bad value " + value);
+				}
+			}
+
+			int locationStart = FeatureVector.NUM_SENSOR_ATTRIBUTES + numAccessPoints;
+			if (column < FeatureVector.NUM_SENSOR_ATTRIBUTES) {
+				values[column] = number;
+			} else if (column < locationStart) {
+				if (number != number) {
+					throw error("missing RSSI");
+				}
+				features.setRssi(column - FeatureVector.NUM_SENSOR_ATTRIBUTES, (int) number);
+			} else if (column == locationStart) {
+				values[features.latitudeIndex()] = number;
+			} else if (column == locationStart + 1) {
+				values[features.longitudeIndex()] = number;
+			} else if (column == locationStart + 2) {
+				values[features.locationAccuracyIndex()] = number;
+			} else if (column == locationStart + 3) {
+				x = (float) number;
+			} else {
+				y = (float) number;
+			}
+		}
+
+		private long parseTime(String timestamp) {
+			try {
+				return Timestamp.valueOf(timestamp).getTime();
+			} catch (IllegalArgumentException e) {
+				return -1;
+			}
+		}
+
+		/**
+		 * @return the next line that isn't blank or a comment, or null at the end
+		 */
+		private String nextDataLine() throws IOException {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				String trimmed = line.trim();
+				if (!trimmed.isEmpty() && trimmed.charAt(0) != '%') {
+					return trimmed;
+				}
+			}
+			return null;
+		}
+
+		private static int countColumns(String line) {
+			int comment = line.indexOf('%');
+			int end = comment >= 0 ? comment : line.length();
+			int columns = 1;
+			for (int i = 0; i < end; i++) {
+				if (line.charAt(i) == ',') {
+					columns++;
+				}
+			}
+			return columns;
+		}
+
+		private IOException error(String message) {
+			return new IOException(name + " line " + lineNumber + ": " + message);
+		}
+
+		@Override
+		public long getTime() {
+			return time;
+		}
+
+		@Override
+		public boolean hasPositions() {
+			return hasPositions;
+		}
+
+		@Override
+		public float getX() {
+			return x;
+		}
+
+		@Override
+		public float getY() {
+			return y;
+		}
+
+		@Override
+		public void close() throws IOException {
+			reader.close();
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package com.davidmascharka.lips.tools;
+
+import com.davidmascharka.lips.FeatureVector;
+import com.davidmascharka.lips.FingerprintLog;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.sql.Timestamp;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+/**
+ * Exports a fingerprint log recorded by the app (see FingerprintLog) for Weka.
+ *
+ *   FingerprintExporter dataset_lab.fpl dataset_lab.arff
+ *   FingerprintExporter dataset_lab.fpl dataset_lab.csv
+ *
+ * The format follows the extension of the output file. Columns are the
+ * attributes of FeatureVector followed by xPosition and yPosition, and a
+ * missing location is written as ?. ARFF rows end with the time of the scan as
+ * a comment; CSV files have it as their first column.
+ */
+public class FingerprintExporter {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	public static void main(String[] args) throws Exception {
+		if (args.length != 2 || !(args[1].endsWith(".arff") || args[1].endsWith(".csv"))) {
+			System.err.println("Usage: FingerprintExporter in.fpl out.arff");
+			System.err.println("       FingerprintExporter in.fpl out.csv");
+			System.exit(1);
+		}
+		File in = new File(args[0]);
+		File out = new File(args[1]);
+		int records = export(in, out, args[1].endsWith(".arff"));
+		System.out.println("Exported " + records + " fingerprints to " + out);
+	}
+
+	/**
+	 * @return the number of fingerprints exported
+	 */
+	public static int export(File in, File out, boolean arff) throws IOException {
+		FingerprintLog.Reader reader = new FingerprintLog.Reader(new FileInputStream(in));
+		try {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(out), UTF_8));
+			try {
+				return export(reader, name(in), writer, arff);
+			} finally {
+				writer.close();
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Writes every record left in the reader
+	 *
+	 * @param relation name of the ARFF relation
+	 * @return the number of fingerprints exported
+	 */
+	public static int export(FingerprintLog.Reader reader, String relation, Writer writer,
+							 boolean arff) throws IOException {
+		FeatureVector features = new FeatureVector(reader.getNumAccessPoints());
+		if (arff) {
+			writeArffHeader(reader, relation, features, writer);
+		} else {
+			writeCsvHeader(features, writer);
+		}
+
+		int records = 0;
+		StringBuilder row = new StringBuilder();
+		while (reader.next(features)) {
+			row.setLength(0);
+			if (!arff) {
+				row.append(reader.getTime()).append(',');
+			}
+			appendValues(features, reader, row);
+			if (arff) {
+				row.append(" %").append(new Timestamp(reader.getTime()));
+			}
+			row.append('\n');
+			writer.write(row.toString());
+			records++;
+		}
+		return records;
+	}
+
+	private static void writeArffHeader(FingerprintLog.Reader reader, String relation,
+										FeatureVector features, Writer writer) throws IOException {
+		String[] bssids = reader.getBssids();
+		for (int i = 0; i < bssids.length; i++) {
+			writer.write("% " + features.attributeName(features.rssiIndex(i)) + " = " + bssids[i] + "\n");
+		}
+		writer.write("@relation " + relation + "\n\n");
+		for (int i = 0; i < features.classIndex(); i++) {
+			writer.write("@attribute " + features.attributeName(i) + " numeric\n");
+		}
+		writer.write("@attribute xPosition numeric\n");
+		writer.write("@attribute yPosition numeric\n\n");
+		writer.write("@data\n");
+	}
+
+	private static void writeCsvHeader(FeatureVector features, Writer writer) throws IOException {
+		StringBuilder header = new StringBuilder("time");
+		for (int i = 0; i < features.classIndex(); i++) {
+			header.append(',').append(features.attributeName(i));
+		}
+		header.append(",xPosition,yPosition\n");
+		writer.write(header.toString());
+	}
+
+	private static void appendValues(FeatureVector features, FingerprintLog.Reader reader,
+									 StringBuilder row) {
+		double[] values = features.getValues();
+		for (int i = 0; i < FeatureVector.NUM_SENSOR_ATTRIBUTES; i++) {
+			row.append((float) values[i]).append(',');
+		}
+		for (int i = 0; i < features.getNumAccessPoints(); i++) {
+			row.append(features.getRssi(i)).append(',');
+		}
+		if (features.isLocationMissing()) {
+			row.append("?,?,?,");
+		} else {
+			row.append(values[features.latitudeIndex()]).append(',')
+					.append(values[features.longitudeIndex()]).append(',')
+					.append((float) values[features.locationAccuracyIndex()]).append(',');
+		}
+		row.append(reader.getX()).append(',').append(reader.getY());
+	}
+
+	private static String name(File file) {
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		return dot > 0 ? name.substring(0, dot) : name;
+	}
+}
@@ -0,0 +1,203 @@
+package com.davidmascharka.lips.tools;
+
+import com.davidmascharka.lips.CompiledForest;
+import com.davidmascharka.lips.KStarPredictor;
+import com.davidmascharka.lips.ModelFormat;
+import com.davidmascharka.lips.PositionPredictor;
+import com.davidmascharka.lips.RbfPredictor;
+import com.davidmascharka.lips.WekaModels;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import weka.classifiers.functions.RBFRegressor;
+import weka.classifiers.lazy.KStar;
+import weka.classifiers.trees.RandomForest;
+import weka.core.SerializationHelper;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Converts Weka .model files into LIPS model files (see ModelFormat).
+ *
+ *   ModelConverter in.model out.lips
+ *       converts a KStar, RBFRegressor or RandomForest model
+ *   ModelConverter x.model y.model out.lips
+ *       combines the x and y KStar models of the same fingerprints into one file
+ *   ModelConverter --dir assets
+ *       converts every .model file under the directory next to the original,
+ *       combining pairs named *_x_NAME.model and *_y_NAME.model into *_NAME.lips
+ *       when they are KStar models of the same fingerprints
+ *
+ * Has to run with the Weka version the models were saved with.
+ */
+public class ModelConverter {
+
+	private static final String EXTENSION = ".lips";
+
+	public static void main(String[] args) throws Exception {
+		if (args.length == 2 && args[0].equals("--dir")) {
+			convertDirectory(new File(args[1]));
+		} else if (args.length == 2) {
+			convert(new File(args[0]), new File(args[1]));
+		} else if (args.length == 3) {
+			convertPair(new File(args[0]), new File(args[1]), new File(args[2]));
+		} else {
+			System.err.println("Usage: ModelConverter in.model out.lips");
+			System.err.println("       ModelConverter x.model y.model out.lips");
+			System.err.println("       ModelConverter --dir directory");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Converts a single model
+	 */
+	public static void convert(File in, File out) throws Exception {
+		Object model = SerializationHelper.read(in.getPath());
+		Object predictor;
+		if (model instanceof KStar) {
+			predictor = WekaModels.toKStarPredictor((KStar) model);
+		} else if (model instanceof RBFRegressor) {
+			predictor = WekaModels.toRbfPredictor((RBFRegressor) model);
+		} else if (model instanceof RandomForest) {
+			predictor = WekaModels.toCompiledForest((RandomForest) model);
+		} else {
+			throw new IllegalArgumentException(in + ": can't convert " +
+					model.getClass().getName());
+		}
+		write(predictor, out);
+		report(out, in);
+	}
+
+	/**
+	 * Combines x and y KStar models into one file
+	 *
+	 * @throws IllegalArgumentException if they weren't built on the same fingerprints
+	 */
+	public static void convertPair(File xIn, File yIn, File out) throws Exception {
+		Object x = SerializationHelper.read(xIn.getPath());
+		Object y = SerializationHelper.read(yIn.getPath());
+		if (!(x instanceof KStar) || !(y instanceof KStar)) {
+			throw new IllegalArgumentException("Only KStar models can be combined");
+		}
+		PositionPredictor predictor = WekaModels.toPositionPredictor((KStar) x, (KStar) y);
+		if (!(predictor instanceof KStarPredictor)) {
+			throw new IllegalArgumentException(xIn + " and " + yIn +
+					" were not built on the same fingerprints with the same options");
+		}
+		write(predictor, out);
+		report(out, xIn, yIn);
+	}
+
+	/**
+	 * Writes a converted model next to out and only then moves it into place,
+	 * so a failed conversion never leaves a partial file the app would try to
+	 * read instead of the Weka model
+	 */
+	private static void write(Object predictor, File out) throws IOException {
+		File temp = new File(out.getPath() + ".tmp");
+		boolean written = false;
+		try {
+			OutputStream stream = new BufferedOutputStream(new FileOutputStream(temp));
+			try {
+				if (predictor instanceof KStarPredictor) {
+					ModelFormat.write((KStarPredictor) predictor, stream);
+				} else if (predictor instanceof RbfPredictor) {
+					ModelFormat.write((RbfPredictor) predictor, stream);
+				} else {
+					ModelFormat.write((CompiledForest) predictor, stream);
+				}
+			} finally {
+				stream.close();
+			}
+			Files.move(temp.toPath(), out.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			written = true;
+		} finally {
+			if (!written) {
+				temp.delete();
+			}
+		}
+	}
+
+	/**
+	 * Converts every model under the directory, combining x and y pairs
+	 */
+	public static void convertDirectory(File directory) throws Exception {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			throw new IOException("Can't list " + directory);
+		}
+		Arrays.sort(files);
+		for (File file : files) {
+			if (file.isDirectory()) {
+				convertDirectory(file);
+				continue;
+			}
+			String name = file.getName();
+			if (!name.endsWith(".model")) {
+				continue;
+			}
+			String base = name.substring(0, name.length() - ".model".length());
+
+			int xIndex = base.indexOf("_x_");
+			if (xIndex >= 0) {
+				File yFile = new File(directory, base.substring(0, xIndex) + "_y_" +
+						base.substring(xIndex + 3) + ".model");
+				File combined = new File(directory, base.substring(0, xIndex) + "_" +
+						base.substring(xIndex + 3) + EXTENSION);
+				if (yFile.exists()) {
+					try {
+						convertPair(file, yFile, combined);
+						continue;
+					} catch (IllegalArgumentException e) {
+						// Not a combinable pair, convert them one at a time
+						System.err.println(e.getMessage());
+					}
+				}
+			} else if (base.contains("_y_") && new File(directory, base.replace("_y_", "_x_") +
+					".model").exists() && new File(directory, base.replace("_y_", "_") +
+					EXTENSION).exists()) {
+				// Already combined with its x model
+				continue;
+			}
+
+			try {
+				convert(file, new File(directory, base + EXTENSION));
+			} catch (IllegalArgumentException e) {
+				System.err.println("Skipping " + file + ": " + e.getMessage());
+			}
+		}
+	}
+
+	private static void report(File out, File... in) {
+		long before = 0;
+		for (File file : in) {
+			before += file.length();
+		}
+		System.out.println(out + ": " + before + " -> " + out.length() + " bytes");
+	}
+}
@@ -0,0 +1,543 @@
+package com.davidmascharka.lips.tools;
+
+import com.davidmascharka.lips.CoordinatePredictor;
+import com.davidmascharka.lips.KStarPredictor;
+import com.davidmascharka.lips.WekaModels;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import weka.classifiers.functions.RBFRegressor;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Cross-validates the regressors the app can run over a range of parameters and
+ * prints a leaderboard of accuracy against prediction time.
+ *
+ *   ModelSweep [options] dataset...
+ *
+ *   --partitions scheme.txt  also evaluate each partition of the scheme, may be
+ *                            given once for each scheme
+ *   --blends N,N,...         K* global blends to try, 5,10,20,40,80 by default
+ *   --rbf-units N,N,...      RBFRegressor basis functions to try, 2,4,8 by default,
+ *                            none to skip RBFRegressor
+ *   --folds N                cross-validation folds, 10 by default
+ *   --seed N                 shuffles the data points before they are split into folds
+ *   --threads N              folds evaluated at once, one per core by default
+ *   --csv leaderboard.csv    also write the leaderboard as CSV
+ *
+ * The building and each partition are swept in turn, x then y: their data
+ * points are read, every candidate and fold is evaluated in parallel on a
+ * fork-join pool, and then prediction time is measured one candidate at a time
+ * on its last fold, so candidates don't compete for cores while they are
+ * timed. Only the data points and last-fold models of the coordinate being
+ * swept are held at once. The models are converted to the predictors the app
+ * runs, so the errors are those the app would see.
+ *
+ * In the leaderboard * marks the candidates no other candidate for the same
+ * coordinate and partition beats on both error and time.
+ */
+public class ModelSweep {
+
+	private static final int[] DEFAULT_BLENDS = {5, 10, 20, 40, 80};
+	private static final int[] DEFAULT_RBF_UNITS = {2, 4, 8};
+
+	// Least predictions to time per candidate, repeating the test fold if needed
+	private static final int TIMED_PREDICTIONS = 2000;
+
+	// Where the timed predictions go, so the JIT can't drop them
+	private static volatile double timedSum;
+
+	/**
+	 * Cross-validation result of one candidate
+	 */
+	public static class Result {
+
+		final String scope;
+		final String coordinate;
+		final String algorithm;
+		final String parameter;
+		final int numInstances;
+		double meanError;
+		double rootMeanSquaredError;
+		double microsPerPrediction = Double.NaN;
+		String failure;
+
+		Result(String scope, String coordinate, String algorithm, String parameter,
+			   int numInstances) {
+			this.scope = scope;
+			this.coordinate = coordinate;
+			this.algorithm = algorithm;
+			this.parameter = parameter;
+			this.numInstances = numInstances;
+		}
+
+		public String getScope() {
+			return scope;
+		}
+
+		public String getCoordinate() {
+			return coordinate;
+		}
+
+		public String getAlgorithm() {
+			return algorithm;
+		}
+
+		public String getParameter() {
+			return parameter;
+		}
+
+		public double getMeanError() {
+			return meanError;
+		}
+
+		public double getRootMeanSquaredError() {
+			return rootMeanSquaredError;
+		}
+
+		public double getMicrosPerPrediction() {
+			return microsPerPrediction;
+		}
+
+		/**
+		 * @return why the candidate could not be evaluated, null if it was
+		 */
+		public String getFailure() {
+			return failure;
+		}
+	}
+
+	private final ModelTrainer data;
+	private final int[] blends;
+	private final int[] rbfUnits;
+	private final int numFolds;
+	private final long seed;
+
+	public static void main(String[] args) throws Exception {
+		List<PartitionScheme> schemes = new ArrayList<PartitionScheme>();
+		int[] blends = DEFAULT_BLENDS;
+		int[] rbfUnits = DEFAULT_RBF_UNITS;
+		int numFolds = 10;
+		long seed = 1;
+		int threads = Runtime.getRuntime().availableProcessors();
+		File csv = null;
+
+		int arg = 0;
+		try {
+			for (; arg < args.length && args[arg].startsWith("--"); arg++) {
+				if (args[arg].equals("--partitions")) {
+					schemes.add(PartitionScheme.read(new File(args[++arg])));
+				} else if (args[arg].equals("--blends")) {
+					blends = parseList(args[++arg]);
+				} else if (args[arg].equals("--rbf-units")) {
+					rbfUnits = parseList(args[++arg]);
+				} else if (args[arg].equals("--folds")) {
+					numFolds = Integer.parseInt(args[++arg]);
+				} else if (args[arg].equals("--seed")) {
+					seed = Long.parseLong(args[++arg]);
+				} else if (args[arg].equals("--threads")) {
+					threads = Integer.parseInt(args[++arg]);
+				} else if (args[arg].equals("--csv")) {
+					csv = new File(args[++arg]);
+				} else {
+					usage();
+				}
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			usage();
+		}
+		if (arg == args.length) {
+			usage();
+		}
+
+		List<File> datasets = new ArrayList<File>();
+		for (int i = arg; i < args.length; i++) {
+			datasets.add(new File(args[i]));
+		}
+
+		ModelSweep sweep = new ModelSweep(new ModelTrainer(datasets, schemes), blends, rbfUnits,
+				numFolds, seed);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		List<Result> results;
+		try {
+			results = sweep.run(pool);
+		} finally {
+			pool.shutdown();
+		}
+
+		PrintWriter out = new PrintWriter(System.out);
+		printLeaderboard(results, out);
+		out.flush();
+		if (csv != null) {
+			PrintWriter writer = new PrintWriter(new FileWriter(csv));
+			try {
+				writeCsv(results, writer);
+			} finally {
+				writer.close();
+			}
+		}
+	}
+
+	private static void usage() {
+		System.err.println("Usage: ModelSweep [--partitions scheme.txt]... [--blends N,N,...] " +
+				"[--rbf-units N,N,...|none] [--folds N] [--seed N] [--threads N] " +
+				"[--csv leaderboard.csv] dataset...");
+		System.exit(1);
+	}
+
+	private static int[] parseList(String list) {
+		if (list.equals("none")) {
+			return new int[0];
+		}
+		String[] values = list.split(",");
+		int[] parsed = new int[values.length];
+		for (int i = 0; i < values.length; i++) {
+			parsed[i] = Integer.parseInt(values[i].trim());
+		}
+		return parsed;
+	}
+
+	/**
+	 * @param data reads the datasets and knows the partition schemes
+	 */
+	public ModelSweep(ModelTrainer data, int[] blends, int[] rbfUnits, int numFolds, long seed) {
+		if (numFolds < 2) {
+			throw new IllegalArgumentException("Cross-validation needs at least 2 folds");
+		}
+		this.data = data;
+		this.blends = blends;
+		this.rbfUnits = rbfUnits;
+		this.numFolds = numFolds;
+		this.seed = seed;
+	}
+
+	/**
+	 * Evaluates every candidate for the whole building and each partition
+	 *
+	 * @return a result per candidate, coordinate and partition
+	 */
+	public List<Result> run(ForkJoinPool pool) throws IOException {
+		List<Result> results = new ArrayList<Result>();
+		sweep("building", null, PartitionScheme.NO_PARTITION, pool, results);
+		for (PartitionScheme scheme : data.getSchemes()) {
+			for (int partition = 0; partition < scheme.getNumPartitions(); partition++) {
+				sweep(scheme.getName() + "/" + scheme.getPartitionName(partition),
+						scheme, partition, pool, results);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Evaluates and times every candidate for x and then y of the scope, reading
+	 * the data points of each coordinate only when it is its turn
+	 */
+	private void sweep(String scope, PartitionScheme scheme, int partition, ForkJoinPool pool,
+					   List<Result> results) throws IOException {
+		for (int target : new int[] {ModelTrainer.X, ModelTrainer.Y}) {
+			Instances instances = data.read(scope, target, scheme, partition);
+			if (instances.numInstances() < numFolds) {
+				System.err.println("Skipping " + scope + ": " + instances.numInstances() +
+						" data points for " + numFolds + " folds");
+				return;
+			}
+			// Shuffled once, so every candidate sees the same folds
+			instances.randomize(new Random(seed));
+			String coordinate = target == ModelTrainer.X ? "x" : "y";
+
+			List<Evaluation> evaluations = new ArrayList<Evaluation>();
+			for (int blend : blends) {
+				evaluations.add(new Evaluation(new Result(scope, coordinate, "KStar",
+						"blend=" + blend, instances.numInstances()), instances, blend));
+			}
+			for (int units : rbfUnits) {
+				evaluations.add(new Evaluation(new Result(scope, coordinate, "RBFRegressor",
+						"units=" + units, instances.numInstances()), instances, -units));
+			}
+
+			for (Evaluation evaluation : evaluations) {
+				pool.execute(evaluation);
+			}
+			for (Evaluation evaluation : evaluations) {
+				evaluation.join();
+			}
+			for (Evaluation evaluation : evaluations) {
+				Result result = evaluation.result;
+				if (result.failure == null) {
+					result.microsPerPrediction = time(evaluation.predictor, evaluation.test);
+				}
+				// Done with the model, let it go before the next one is timed
+				evaluation.predictor = null;
+				evaluation.test = null;
+				results.add(result);
+			}
+		}
+	}
+
+	/**
+	 * Cross-validates one candidate, a fold per subtask
+	 */
+	private class Evaluation extends RecursiveTask<Result> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Result result;
+		private final Instances instances;
+		// K* blend if positive, otherwise minus the RBF units
+		private final int parameter;
+
+		// Kept from the last fold for timing
+		CoordinatePredictor predictor;
+		Instances test;
+
+		Evaluation(Result result, Instances instances, int parameter) {
+			this.result = result;
+			this.instances = instances;
+			this.parameter = parameter;
+		}
+
+		@Override
+		protected Result compute() {
+			List<Fold> folds = new ArrayList<Fold>(numFolds);
+			for (int fold = 0; fold < numFolds; fold++) {
+				folds.add(new Fold(instances, fold, parameter, fold == numFolds - 1));
+			}
+			try {
+				ForkJoinTask.invokeAll(folds);
+			} catch (RuntimeException e) {
+				Throwable cause = e.getCause() != null ? e.getCause() : e;
+				result.failure = cause.toString();
+				return result;
+			}
+
+			double absoluteSum = 0.0;
+			double squaredSum = 0.0;
+			for (Fold fold : folds) {
+				absoluteSum += fold.absoluteSum;
+				squaredSum += fold.squaredSum;
+			}
+			result.meanError = absoluteSum / instances.numInstances();
+			result.rootMeanSquaredError = Math.sqrt(squaredSum / instances.numInstances());
+			Fold last = folds.get(numFolds - 1);
+			predictor = last.predictor;
+			test = last.test;
+			return result;
+		}
+	}
+
+	/**
+	 * Trains on all but one fold and sums the errors on that fold
+	 */
+	private class Fold extends RecursiveTask<Void> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Instances instances;
+		private final int fold;
+		private final int parameter;
+		private final boolean keep;
+
+		double absoluteSum;
+		double squaredSum;
+		// Only set if the fold is kept for timing
+		CoordinatePredictor predictor;
+		Instances test;
+
+		/**
+		 * @param keep whether to keep the model and test fold once the errors
+		 *             are summed
+		 */
+		Fold(Instances instances, int fold, int parameter, boolean keep) {
+			this.instances = instances;
+			this.fold = fold;
+			this.parameter = parameter;
+			this.keep = keep;
+		}
+
+		@Override
+		protected Void compute() {
+			// trainCV and testCV copy the instances, so folds can share the data
+			Instances train = instances.trainCV(numFolds, fold);
+			Instances test = instances.testCV(numFolds, fold);
+			CoordinatePredictor predictor;
+			try {
+				predictor = build(train, parameter);
+			} catch (Exception e) {
+				throw new IllegalStateException(e.getMessage(), e);
+			}
+
+			double[] values = new double[test.numAttributes()];
+			for (int i = 0; i < test.numInstances(); i++) {
+				double error = predictor.predict(features(test.instance(i), values)) -
+						test.instance(i).classValue();
+				absoluteSum += Math.abs(error);
+				squaredSum += error * error;
+			}
+			if (keep) {
+				this.predictor = predictor;
+				this.test = test;
+			}
+			return null;
+		}
+	}
+
+	private static CoordinatePredictor build(Instances train, int parameter) throws Exception {
+		if (parameter > 0) {
+			// Weka's default missing mode, as the app's models use
+			return WekaModels.toKStarPredictor(train, parameter, KStarPredictor.MISSING_AVERAGE);
+		}
+		RBFRegressor rbf = new RBFRegressor();
+		rbf.setNumFunctions(-parameter);
+		rbf.buildClassifier(train);
+		return WekaModels.toRbfPredictor(rbf);
+	}
+
+	/**
+	 * The attribute values of the instance as the app lays them out, with the
+	 * class missing
+	 */
+	private static double[] features(Instance instance, double[] values) {
+		for (int a = 0; a < values.length; a++) {
+			values[a] = instance.value(a);
+		}
+		values[instance.classIndex()] = Double.NaN;
+		return values;
+	}
+
+	/**
+	 * Mean time of a prediction in microseconds, after one untimed pass to warm up
+	 */
+	private static double time(CoordinatePredictor predictor, Instances test) {
+		double[][] features = new double[test.numInstances()][];
+		for (int i = 0; i < features.length; i++) {
+			features[i] = features(test.instance(i), new double[test.numAttributes()]);
+		}
+		double sink = 0.0;
+		for (double[] instance : features) {
+			sink += predictor.predict(instance);
+		}
+
+		int predictions = 0;
+		long start = System.nanoTime();
+		while (predictions < TIMED_PREDICTIONS) {
+			for (double[] instance : features) {
+				sink += predictor.predict(instance);
+			}
+			predictions += features.length;
+		}
+		long elapsed = System.nanoTime() - start;
+		timedSum = sink;
+		return elapsed / 1000.0 / predictions;
+	}
+
+	/**
+	 * Prints the results grouped by partition and coordinate, most accurate first
+	 */
+	public static void printLeaderboard(List<Result> results, PrintWriter out) {
+		List<Result> sorted = sort(results);
+		String group = null;
+		for (Result result : sorted) {
+			String resultGroup = result.scope + " " + result.coordinate;
+			if (!resultGroup.equals(group)) {
+				group = resultGroup;
+				out.println();
+				out.println(result.scope + ", " + result.coordinate + ", " + result.numInstances +
+						" data points");
+				out.println(String.format(Locale.US, "  %-14s %-10s %10s %10s %12s",
+						"algorithm", "parameter", "mean error", "rmse", "us/predict"));
+			}
+			if (result.failure != null) {
+				out.println(String.format(Locale.US, "  %-14s %-10s failed: %s",
+						result.algorithm, result.parameter, result.failure));
+			} else {
+				out.println(String.format(Locale.US, "%s %-14s %-10s %10.3f %10.3f %12.2f",
+						isParetoOptimal(result, results) ? "*" : " ", result.algorithm,
+						result.parameter, result.meanError, result.rootMeanSquaredError,
+						result.microsPerPrediction));
+			}
+		}
+	}
+
+	public static void writeCsv(List<Result> results, PrintWriter out) {
+		out.println("scope,coordinate,algorithm,parameter,dataPoints,meanError," +
+				"rootMeanSquaredError,microsPerPrediction,paretoOptimal,failure");
+		for (Result result : sort(results)) {
+			boolean failed = result.failure != null;
+			out.println(result.scope + "," + result.coordinate + "," + result.algorithm + "," +
+					result.parameter + "," + result.numInstances + "," +
+					(failed ? "" : result.meanError) + "," +
+					(failed ? "" : result.rootMeanSquaredError) + "," +
+					(failed ? "" : result.microsPerPrediction) + "," +
+					(!failed && isParetoOptimal(result, results)) + "," +
+					(failed ? "\"" + result.failure.replace("\"", "\"\"") + "\"" : ""));
+		}
+	}
+
+	private static List<Result> sort(List<Result> results) {
+		List<Result> sorted = new ArrayList<Result>(results);
+		Collections.sort(sorted, new Comparator<Result>() {
+			@Override
+			public int compare(Result a, Result b) {
+				int order = a.scope.compareTo(b.scope);
+				if (order == 0) {
+					order = a.coordinate.compareTo(b.coordinate);
+				}
+				if (order == 0) {
+					// Failures last
+					order = Boolean.compare(a.failure != null, b.failure != null);
+				}
+				if (order == 0 && a.failure == null) {
+					order = Double.compare(a.meanError, b.meanError);
+				}
+				return order;
+			}
+		});
+		return sorted;
+	}
+
+	private static boolean isParetoOptimal(Result result, List<Result> results) {
+		for (Result other : results) {
+			if (other != result && other.failure == null && other.scope.equals(result.scope)
+					&& other.coordinate.equals(result.coordinate)
+					&& other.meanError <= result.meanError
+					&& other.microsPerPrediction <= result.microsPerPrediction
+					&& (other.meanError < result.meanError
+					|| other.microsPerPrediction < result.microsPerPrediction)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
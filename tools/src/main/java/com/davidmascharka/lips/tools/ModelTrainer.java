@@ -0,0 +1,352 @@
+package com.davidmascharka.lips.tools;
+
+import com.davidmascharka.lips.FeatureVector;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.lazy.KStar;
+import weka.classifiers.trees.RandomForest;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.core.SerializationHelper;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Builds the models the app loads from recorded datasets (see DatasetReader).
+ *
+ *   ModelTrainer [options] outDir dataset...
+ *
+ *   --partitions scheme.txt  also build the partition models (see PartitionScheme),
+ *                            may be given once for each scheme
+ *   --blend-x N              K* global blend of the x models, 20 by default
+ *   --blend-y N              K* global blend of the y models, 20 by default
+ *   --trees N                trees in the partition forest, 100 by default
+ *   --threads N              models built at once, one per core by default
+ *   --lips                   convert the models to LIPS model files afterwards
+ *
+ * Writes classifier_x_kstar.model and classifier_y_kstar.model to outDir and,
+ * for each partition scheme, model_randomforest.model and model_x_NAME.model and
+ * model_y_NAME.model for each partition to outDir/SCHEME, the layout of the app
+ * assets.
+ *
+ * The models don't depend on each other, so they are built in parallel on a
+ * fork-join pool, the forests first since they take longest. Each model reads
+ * the datasets itself and holds only its own data points in memory. Every
+ * dataset must have the same access points in the same order.
+ */
+public class ModelTrainer {
+
+	// Class of the data read for a model
+	static final int X = 0;
+	static final int Y = 1;
+	static final int PARTITION = 2;
+
+	private final List<File> datasets;
+	private final List<PartitionScheme> schemes;
+	private final int numAccessPoints;
+
+	private int blendX = 20;
+	private int blendY = 20;
+	private int numTrees = 100;
+
+	public static void main(String[] args) throws Exception {
+		List<PartitionScheme> schemes = new ArrayList<PartitionScheme>();
+		int blendX = 20;
+		int blendY = 20;
+		int numTrees = 100;
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean lips = false;
+
+		int arg = 0;
+		try {
+			for (; arg < args.length && args[arg].startsWith("--"); arg++) {
+				if (args[arg].equals("--partitions")) {
+					schemes.add(PartitionScheme.read(new File(args[++arg])));
+				} else if (args[arg].equals("--blend-x")) {
+					blendX = Integer.parseInt(args[++arg]);
+				} else if (args[arg].equals("--blend-y")) {
+					blendY = Integer.parseInt(args[++arg]);
+				} else if (args[arg].equals("--trees")) {
+					numTrees = Integer.parseInt(args[++arg]);
+				} else if (args[arg].equals("--threads")) {
+					threads = Integer.parseInt(args[++arg]);
+				} else if (args[arg].equals("--lips")) {
+					lips = true;
+				} else {
+					usage();
+				}
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			usage();
+		}
+		if (args.length - arg < 2) {
+			usage();
+		}
+
+		File outDir = new File(args[arg]);
+		List<File> datasets = new ArrayList<File>();
+		for (int i = arg + 1; i < args.length; i++) {
+			datasets.add(new File(args[i]));
+		}
+
+		ModelTrainer trainer = new ModelTrainer(datasets, schemes);
+		trainer.setBlend(blendX, blendY);
+		trainer.setNumTrees(numTrees);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			trainer.train(outDir, pool);
+		} finally {
+			pool.shutdown();
+		}
+		if (lips) {
+			ModelConverter.convertDirectory(outDir);
+		}
+	}
+
+	private static void usage() {
+		System.err.println("Usage: ModelTrainer [--partitions scheme.txt]... [--blend-x N] " +
+				"[--blend-y N] [--trees N] [--threads N] [--lips] outDir dataset...");
+		System.exit(1);
+	}
+
+	/**
+	 * @param schemes partitions to build models for, empty for just the building models
+	 * @throws IOException if the datasets don't all have the same number of access points
+	 */
+	public ModelTrainer(List<File> datasets, List<PartitionScheme> schemes) throws IOException {
+		if (datasets.isEmpty()) {
+			throw new IllegalArgumentException("No datasets");
+		}
+		int numAccessPoints = -1;
+		for (File dataset : datasets) {
+			DatasetReader reader = DatasetReader.open(dataset);
+			try {
+				int count = reader.peekNumAccessPoints();
+				if (numAccessPoints >= 0 && count != numAccessPoints) {
+					throw new IOException(dataset + " has " + count + " access points, expected " +
+							numAccessPoints);
+				}
+				numAccessPoints = count;
+			} finally {
+				reader.close();
+			}
+		}
+		this.datasets = datasets;
+		this.schemes = schemes;
+		this.numAccessPoints = numAccessPoints;
+	}
+
+	public void setBlend(int blendX, int blendY) {
+		this.blendX = blendX;
+		this.blendY = blendY;
+	}
+
+	public void setNumTrees(int numTrees) {
+		this.numTrees = numTrees;
+	}
+
+	public List<PartitionScheme> getSchemes() {
+		return schemes;
+	}
+
+	/**
+	 * Builds every model and writes it under outDir
+	 *
+	 * @param pool builds the models
+	 * @throws ExecutionException if a model could not be built, once every other
+	 * model has been
+	 */
+	public void train(File outDir, ForkJoinPool pool) throws Exception {
+		List<ForkJoinTask<?>> builds = new ArrayList<ForkJoinTask<?>>();
+		for (PartitionScheme scheme : schemes) {
+			builds.add(new Build(scheme.getName(), PARTITION, scheme, PartitionScheme.NO_PARTITION,
+					new File(new File(outDir, scheme.getName()), "model_randomforest.model")));
+		}
+		builds.add(new Build("xPos", X, null, PartitionScheme.NO_PARTITION,
+				new File(outDir, "classifier_x_kstar.model")));
+		builds.add(new Build("yPos", Y, null, PartitionScheme.NO_PARTITION,
+				new File(outDir, "classifier_y_kstar.model")));
+		for (PartitionScheme scheme : schemes) {
+			File schemeDir = new File(outDir, scheme.getName());
+			for (int partition = 0; partition < scheme.getNumPartitions(); partition++) {
+				String name = scheme.getPartitionName(partition);
+				builds.add(new Build("xPos", X, scheme, partition,
+						new File(schemeDir, "model_x_" + name + ".model")));
+				builds.add(new Build("yPos", Y, scheme, partition,
+						new File(schemeDir, "model_y_" + name + ".model")));
+			}
+		}
+
+		for (ForkJoinTask<?> build : builds) {
+			pool.execute(build);
+		}
+		ExecutionException failure = null;
+		for (ForkJoinTask<?> build : builds) {
+			try {
+				build.get();
+			} catch (ExecutionException e) {
+				System.err.println(e.getCause());
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Builds one model and writes it out
+	 */
+	private class Build extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String relation;
+		private final int target;
+		private final PartitionScheme scheme;
+		private final int partition;
+		private final File out;
+
+		Build(String relation, int target, PartitionScheme scheme, int partition, File out) {
+			this.relation = relation;
+			this.target = target;
+			this.scheme = scheme;
+			this.partition = partition;
+			this.out = out;
+		}
+
+		@Override
+		protected void compute() {
+			try {
+				Instances data = read(relation, target, scheme, partition);
+				if (data.numInstances() == 0) {
+					System.err.println("No data points for " + out);
+					return;
+				}
+				Classifier classifier;
+				if (target == PARTITION) {
+					RandomForest forest = new RandomForest();
+					forest.setNumIterations(numTrees);
+					forest.buildClassifier(data);
+					classifier = forest;
+				} else {
+					classifier = kStar(data, target == X ? blendX : blendY);
+				}
+				write(classifier, out);
+			} catch (Exception e) {
+				completeExceptionally(new IOException("Building " + out + " failed", e));
+			}
+		}
+	}
+
+	/**
+	 * Reads the data points for one model. May be called from several threads
+	 *
+	 * @param target the class, X, Y or PARTITION
+	 * @param scheme the partitions, needed for PARTITION or a partition
+	 * @param partition only read the points in this partition, unless NO_PARTITION
+	 */
+	Instances read(String relation, int target, PartitionScheme scheme, int partition)
+			throws IOException {
+		FeatureVector features = new FeatureVector(numAccessPoints);
+		ArrayList<Attribute> attributes = new ArrayList<Attribute>(features.numAttributes());
+		for (int i = 0; i < features.classIndex(); i++) {
+			attributes.add(new Attribute(features.attributeName(i)));
+		}
+		if (target == PARTITION) {
+			List<String> names = new ArrayList<String>();
+			for (int i = 0; i < scheme.getNumPartitions(); i++) {
+				names.add(scheme.getPartitionName(i));
+			}
+			attributes.add(new Attribute("partition", names));
+		} else {
+			attributes.add(new Attribute(target == X ? "xPosition" : "yPosition"));
+		}
+		Instances instances = new Instances(relation, attributes, 0);
+		instances.setClassIndex(features.classIndex());
+
+		double[] values = features.getValues();
+		int skipped = 0;
+		for (File dataset : datasets) {
+			DatasetReader reader = DatasetReader.open(dataset);
+			try {
+				if (!reader.hasPositions()) {
+					throw new IOException(dataset + " has no positions to train on");
+				}
+				while (reader.next(features)) {
+					int inPartition = scheme == null ? PartitionScheme.NO_PARTITION
+							: scheme.partitionOf(reader.getX(), reader.getY());
+					if (partition != PartitionScheme.NO_PARTITION && inPartition != partition) {
+						continue;
+					}
+					if (target == PARTITION) {
+						if (inPartition == PartitionScheme.NO_PARTITION) {
+							skipped++;
+							continue;
+						}
+						values[features.classIndex()] = inPartition;
+					} else {
+						values[features.classIndex()] = target == X ? reader.getX() : reader.getY();
+					}
+					// Copies of a DenseInstance share its values, so each data point
+					// needs its own array
+					instances.add(new DenseInstance(1.0, values.clone()));
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		if (skipped > 0) {
+			System.err.println(skipped + " data points are outside every partition of " +
+					scheme.getName());
+		}
+		instances.compactify();
+		return instances;
+	}
+
+	private static KStar kStar(Instances instances, int blend) throws Exception {
+		KStar kStar = new KStar();
+		kStar.setGlobalBlend(blend);
+		kStar.buildClassifier(instances);
+		return kStar;
+	}
+
+	private static void write(Classifier classifier, File out) throws Exception {
+		File parent = out.getParentFile();
+		// Another build may create it at the same time
+		if (parent != null && !parent.mkdirs() && !parent.isDirectory()) {
+			throw new IOException("Can't create " + parent);
+		}
+		SerializationHelper.write(out.getPath(), classifier);
+		System.out.println(out + ": " + out.length() + " bytes");
+	}
+}
@@ -0,0 +1,160 @@
+package com.davidmascharka.lips.tools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Splits a building into named rectangles for the partition models, read from
+ * a text file with one partition per line:
+ *
+ *   name minX minY maxX maxY
+ *
+ * Lines starting with # are comments. A partition holds the points with
+ * minX <= x < maxX and minY <= y < maxY. Where partitions overlap a point
+ * belongs to the first one listed.
+ *
+ * The name of the file without its extension names the scheme, which is the
+ * asset directory the app loads the partition models from (5partition).
+ */
+public class PartitionScheme {
+
+	/**
+	 * Partition of a point no rectangle contains
+	 */
+	public static final int NO_PARTITION = -1;
+
+	private final String name;
+	private final String[] names;
+	private final float[] bounds;
+
+	/**
+	 * @param bounds minX, minY, maxX and maxY of each partition in turn
+	 */
+	public PartitionScheme(String name, String[] names, float[] bounds) {
+		if (names.length == 0) {
+			throw new IllegalArgumentException("A scheme needs at least one partition");
+		}
+		if (bounds.length != names.length * 4) {
+			throw new IllegalArgumentException("Every partition needs four bounds");
+		}
+		for (int i = 0; i < names.length; i++) {
+			if (!names[i].matches("[A-Za-z0-9]+")) {
+				// Partition names end up in model file names
+				throw new IllegalArgumentException("Bad partition name " + names[i]);
+			}
+			for (int j = 0; j < i; j++) {
+				if (names[j].equals(names[i])) {
+					throw new IllegalArgumentException("Duplicate partition " + names[i]);
+				}
+			}
+		}
+		this.name = name;
+		this.names = names;
+		this.bounds = bounds;
+	}
+
+	public static PartitionScheme read(File file) throws IOException {
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		if (dot > 0) {
+			name = name.substring(0, dot);
+		}
+		Reader reader = new InputStreamReader(new FileInputStream(file), Charset.forName("UTF-8"));
+		try {
+			return read(name, reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	public static PartitionScheme read(String name, Reader in) throws IOException {
+		BufferedReader reader = new BufferedReader(in);
+		List<String> names = new ArrayList<String>();
+		List<Float> bounds = new ArrayList<Float>();
+		String line;
+		int lineNumber = 0;
+		while ((line = reader.readLine()) != null) {
+			lineNumber++;
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			String[] fields = line.split("\\s+");
+			if (fields.length != 5) {
+				throw new IOException(name + " line " + lineNumber + ": expected name minX minY maxX maxY");
+			}
+			names.add(fields[0]);
+			try {
+				for (int i = 1; i < 5; i++) {
+					bounds.add(Float.parseFloat(fields[i]));
+				}
+			} catch (NumberFormatException e) {
+				throw new IOException(name + " line " + lineNumber + ": " + e.getMessage());
+			}
+		}
+
+		float[] boundArray = new float[bounds.size()];
+		for (int i = 0; i < boundArray.length; i++) {
+			boundArray[i] = bounds.get(i);
+		}
+		try {
+			return new PartitionScheme(name, names.toArray(new String[names.size()]), boundArray);
+		} catch (IllegalArgumentException e) {
+			throw new IOException(name + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Index of the first partition containing the point
+	 *
+	 * @return NO_PARTITION if none does
+	 */
+	public int partitionOf(float x, float y) {
+		for (int i = 0; i < names.length; i++) {
+			int offset = i * 4;
+			if (x >= bounds[offset] && y >= bounds[offset + 1]
+					&& x < bounds[offset + 2] && y < bounds[offset + 3]) {
+				return i;
+			}
+		}
+		return NO_PARTITION;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getNumPartitions() {
+		return names.length;
+	}
+
+	public String getPartitionName(int partition) {
+		return names[partition];
+	}
+}
@@ -0,0 +1,398 @@
+package com.davidmascharka.lips.tools;
+
+import com.davidmascharka.lips.AccessPointRegistry;
+import com.davidmascharka.lips.FeatureVector;
+import com.davidmascharka.lips.LatencyStats;
+import com.davidmascharka.lips.ModelRegistry;
+import com.davidmascharka.lips.ModelStore;
+import com.davidmascharka.lips.PartitionedPositionPredictor;
+import com.davidmascharka.lips.PositionFix;
+import com.davidmascharka.lips.PositionPipeline;
+import com.davidmascharka.lips.PositionPredictor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ *  Copyright 2015 David Mascharka
+ *
+ * This file is part of LIPS (Learning-based Indoor Positioning System).
+ *
+ *  LIPS is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  LIPS is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with LIPS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Replays recorded scans through the tracker's feature building and prediction
+ * (see PositionPipeline) as fast as they will go, and reports the throughput,
+ * the time each scan took and, when the recordings have positions, the error.
+ *
+ *   ScanReplay [options] modelDir accessPoints.txt recording...
+ *
+ *   --partitions SCHEME   also predict with the partition models in modelDir/SCHEME
+ *   --blend N             partitions blended into each position, 1 by default
+ *   --access-points N     access point attributes of the building models, 10 by default
+ *   --partition-access-points N
+ *                         access point attributes of the partition models, 156 by default
+ *   --warmup N            untimed passes over the recordings first, 1 by default
+ *   --index N             make the K* models look at only the N fingerprints
+ *                         nearest to each scan (see PositionPipeline.useIndex)
+ *   --csv fixes.csv       write every position predicted in the timed pass
+ *
+ * modelDir is laid out like the app assets and the models are loaded by the
+ * tracker's own ModelStore. accessPoints.txt lists the BSSIDs of interest in the
+ * format of assets/access_points. Recordings are datasets MainActivity wrote
+ * (.fpl or dataset_BUILDING.txt) or the livetest_BUILDING_values.txt files
+ * TrackerActivity writes. Access points of fingerprint logs are matched by
+ * BSSID, those of text files by their column.
+ *
+ * The time each scan took is also broken down into the stages of LatencyStats
+ * the pipeline covers, as the tracker's latency stats screen shows them.
+ *
+ * Every partition model is loaded before the replay, so unlike on the phone no
+ * scan is predicted while a model is still loading and replays are repeatable.
+ */
+public class ScanReplay {
+
+	private final PositionPipeline pipeline;
+	private final List<File> recordings;
+	private final LatencyStats stages = new LatencyStats();
+
+	// Per scan of the timed pass
+	private long[] latencies = new long[1024];
+	private int numScans;
+	private double errorSum;
+	private int numErrors;
+	// Scans no model could predict, as before the partition models load
+	private int numUnpredicted;
+
+	public static void main(String[] args) throws Exception {
+		String scheme = null;
+		int blend = 1;
+		int numAccessPoints = 10;
+		int numPartitionAccessPoints = 156;
+		int warmup = 1;
+		int numCandidates = 0;
+		File csv = null;
+
+		int arg = 0;
+		try {
+			for (; arg < args.length && args[arg].startsWith("--"); arg++) {
+				if (args[arg].equals("--partitions")) {
+					scheme = args[++arg];
+				} else if (args[arg].equals("--blend")) {
+					blend = Integer.parseInt(args[++arg]);
+				} else if (args[arg].equals("--access-points")) {
+					numAccessPoints = Integer.parseInt(args[++arg]);
+				} else if (args[arg].equals("--partition-access-points")) {
+					numPartitionAccessPoints = Integer.parseInt(args[++arg]);
+				} else if (args[arg].equals("--warmup")) {
+					warmup = Integer.parseInt(args[++arg]);
+				} else if (args[arg].equals("--index")) {
+					numCandidates = Integer.parseInt(args[++arg]);
+				} else if (args[arg].equals("--csv")) {
+					csv = new File(args[++arg]);
+				} else {
+					usage();
+				}
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			usage();
+		}
+		if (args.length - arg < 3) {
+			usage();
+		}
+
+		File modelDir = new File(args[arg]);
+		AccessPointRegistry accessPoints = readAccessPoints(new File(args[arg + 1]),
+				Math.min(numAccessPoints, numPartitionAccessPoints));
+		List<File> recordings = new ArrayList<File>();
+		for (int i = arg + 2; i < args.length; i++) {
+			recordings.add(new File(args[i]));
+		}
+
+		long loadStart = System.nanoTime();
+		ModelStore models = new ModelStore.Directory(modelDir) {
+			@Override
+			protected void onUnreadable(String name, IOException e) {
+				System.err.println(name + " unreadable, using the Weka model: " + e);
+			}
+		};
+		PositionPipeline pipeline = new PositionPipeline(accessPoints, numAccessPoints,
+				numPartitionAccessPoints);
+		ExecutorService loader = ModelRegistry.newLoaderExecutor();
+		try {
+			load(pipeline, models, scheme, numPartitionAccessPoints, numCandidates, loader);
+			pipeline.setMaxPartitions(blend);
+			if (pipeline.getBuildingPredictor() == null && scheme == null) {
+				System.err.println("No models to predict with in " + modelDir);
+				System.exit(1);
+			}
+			System.out.println(String.format(Locale.US, "models loaded in %.1f ms",
+					(System.nanoTime() - loadStart) / 1e6));
+
+			ScanReplay replay = new ScanReplay(pipeline, recordings);
+			for (int i = 0; i < warmup; i++) {
+				replay.replay(null);
+			}
+			PrintWriter fixes = csv == null ? null : new PrintWriter(new FileWriter(csv));
+			try {
+				if (fixes != null) {
+					fixes.println("scanTime,x,y,predictedX,predictedY,micros");
+				}
+				long start = System.nanoTime();
+				replay.replay(fixes);
+				replay.report(System.nanoTime() - start, new PrintWriter(System.out));
+			} finally {
+				if (fixes != null) {
+					fixes.close();
+				}
+			}
+		} finally {
+			loader.shutdown();
+		}
+	}
+
+	private static void usage() {
+		System.err.println("Usage: ScanReplay [--partitions SCHEME] [--blend N] " +
+				"[--access-points N] [--partition-access-points N] [--warmup N] [--index N] " +
+				"[--csv fixes.csv] modelDir accessPoints.txt recording...");
+		System.exit(1);
+	}
+
+	/**
+	 * Reads the access points, keeping as many as the models have attributes
+	 * for as the tracker does
+	 */
+	static AccessPointRegistry readAccessPoints(File file, int max) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			return AccessPointRegistry.read(in).limit(max);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Loads the models into the pipeline as the tracker does, but waits for every
+	 * partition's models
+	 *
+	 * @param scheme the partitioning scheme to load too, null for none
+	 * @param numPartitionAccessPoints access point attributes of the partition models
+	 * @param numCandidates fingerprints an indexed K* model looks at, 0 to not index
+	 */
+	static void load(PositionPipeline pipeline, final ModelStore models, final String scheme,
+					 int numPartitionAccessPoints, final int numCandidates,
+					 ExecutorService loader) throws Exception {
+		PositionPredictor building;
+		try {
+			building = models.loadBuildingPredictor();
+		} catch (FileNotFoundException e) {
+			building = null;
+		}
+		if (building != null && numCandidates > 0) {
+			PositionPipeline.useIndex(building, pipeline.getFeatures(), numCandidates);
+		}
+		pipeline.setBuildingPredictor(building);
+		if (scheme == null) {
+			return;
+		}
+
+		final FeatureVector partitionLayout = new FeatureVector(numPartitionAccessPoints);
+		final ModelRegistry<PositionPredictor> predictors = new ModelRegistry<PositionPredictor>(
+				loader, new ModelRegistry.Loader<PositionPredictor>() {
+					@Override
+					public PositionPredictor load(String partition) throws Exception {
+						PositionPredictor predictor = models.loadPartitionPredictor(scheme, partition);
+						if (numCandidates > 0) {
+							PositionPipeline.useIndex(predictor, partitionLayout, numCandidates);
+						}
+						return predictor;
+					}
+				}, 0);
+		Future<PartitionedPositionPredictor> partitioned = loader.submit(
+				new Callable<PartitionedPositionPredictor>() {
+					@Override
+					public PartitionedPositionPredictor call() throws Exception {
+						return new PartitionedPositionPredictor(PartitionedPositionPredictor
+								.forestRouter(models.loadPartitionForest(scheme)), predictors, 1);
+					}
+				});
+
+		PartitionedPositionPredictor.Router router = partitioned.get().getRouter();
+		for (int partition = 0; partition < router.getNumPartitions(); partition++) {
+			predictors.get(router.getPartitionName(partition));
+		}
+		pipeline.setPartitionPredictor(partitioned);
+	}
+
+	public ScanReplay(PositionPipeline pipeline, List<File> recordings) {
+		this.pipeline = pipeline;
+		this.recordings = recordings;
+		pipeline.setLatencyStats(stages);
+	}
+
+	/**
+	 * Runs every recorded scan through the pipeline, timing each from reading
+	 * its access points to the position. Forgets the previous pass
+	 *
+	 * @param fixes receives a line per scan, may be null
+	 */
+	public void replay(PrintWriter fixes) throws Exception {
+		numScans = 0;
+		errorSum = 0.0;
+		numErrors = 0;
+		numUnpredicted = 0;
+		stages.reset();
+		AccessPointRegistry accessPoints = pipeline.getAccessPoints();
+
+		for (File recording : recordings) {
+			DatasetReader reader = DatasetReader.open(recording);
+			try {
+				FeatureVector recorded = new FeatureVector(reader.peekNumAccessPoints());
+				double[] values = recorded.getValues();
+				String[] bssids = reader.getBssids();
+				int numRecorded = recorded.getNumAccessPoints();
+
+				while (reader.next(recorded)) {
+					long start = System.nanoTime();
+					// As LocalizationEngine.updateScanResults, each access point seen
+					// is looked up by its BSSID
+					pipeline.clearRssi();
+					for (int i = 0; i < numRecorded; i++) {
+						int level = recorded.getRssi(i);
+						if (level == FeatureVector.RSSI_NOT_SEEN) {
+							continue;
+						}
+						if (bssids != null) {
+							pipeline.setRssi(bssids[i], level);
+						} else if (i < accessPoints.size()) {
+							// Text files don't name their access points
+							pipeline.setRssi(i, level);
+						}
+					}
+					FeatureVector features = pipeline.getFeatures();
+					System.arraycopy(values, 0, features.getValues(), 0,
+							FeatureVector.NUM_SENSOR_ATTRIBUTES);
+					if (recorded.isLocationMissing()) {
+						features.setLocationMissing();
+					} else {
+						features.setLocation(values[recorded.latitudeIndex()],
+								values[recorded.longitudeIndex()],
+								(float) values[recorded.locationAccuracyIndex()]);
+					}
+					PositionPipeline.Scan scan = pipeline.takeScan(reader.getTime(), start);
+					stages.record(LatencyStats.FEATURES, System.nanoTime() - start);
+					PositionFix fix = pipeline.predict(scan);
+					long elapsed = System.nanoTime() - start;
+
+					record(elapsed);
+					float x = reader.getX();
+					float y = reader.getY();
+					if (fix == null) {
+						numUnpredicted++;
+						if (fixes != null) {
+							fixes.println(reader.getTime() + "," + (reader.hasPositions() ? x : "") +
+									"," + (reader.hasPositions() ? y : "") + ",,," + elapsed / 1000.0);
+						}
+						continue;
+					}
+					if (reader.hasPositions()) {
+						double dx = fix.getX() - x;
+						double dy = fix.getY() - y;
+						errorSum += Math.sqrt(dx * dx + dy * dy);
+						numErrors++;
+					}
+					if (fixes != null) {
+						fixes.println(reader.getTime() + "," + (reader.hasPositions() ? x : "") +
+								"," + (reader.hasPositions() ? y : "") + "," + fix.getX() + "," +
+								fix.getY() + "," + elapsed / 1000.0);
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		}
+	}
+
+	private void record(long nanos) {
+		if (numScans == latencies.length) {
+			latencies = Arrays.copyOf(latencies, numScans * 2);
+		}
+		latencies[numScans++] = nanos;
+	}
+
+	/**
+	 * Prints the throughput, the latency percentiles and the mean error of the
+	 * last pass
+	 *
+	 * @param elapsed how long the pass took in nanoseconds
+	 */
+	public void report(long elapsed, PrintWriter out) {
+		out.println(String.format(Locale.US, "%d scans in %.1f ms, %.1f scans/s", numScans,
+				elapsed / 1e6, numScans / (elapsed / 1e9)));
+		if (numScans > 0) {
+			long[] sorted = Arrays.copyOf(latencies, numScans);
+			Arrays.sort(sorted);
+			long total = 0;
+			for (long latency : sorted) {
+				total += latency;
+			}
+			out.println(String.format(Locale.US,
+					"latency us: mean %.1f, p50 %.1f, p90 %.1f, p99 %.1f, max %.1f",
+					total / 1000.0 / numScans, percentile(sorted, 0.5), percentile(sorted, 0.9),
+					percentile(sorted, 0.99), sorted[numScans - 1] / 1000.0));
+			stages.printSummary(out);
+		}
+		if (numErrors > 0) {
+			out.println(String.format(Locale.US, "mean error %.3f over %d scans with positions",
+					errorSum / numErrors, numErrors));
+		}
+		if (numUnpredicted > 0) {
+			out.println(numUnpredicted + " scans had no model to predict them");
+		}
+		out.flush();
+	}
+
+	/**
+	 * In microseconds, the nearest-rank percentile
+	 */
+	private static double percentile(long[] sorted, double fraction) {
+		int rank = (int) Math.ceil(fraction * sorted.length);
+		return sorted[Math.max(rank - 1, 0)] / 1000.0;
+	}
+
+	public int getNumScans() {
+		return numScans;
+	}
+
+	/**
+	 * Mean distance between the predicted and recorded positions of the last pass
+	 *
+	 * @return NaN if the recordings have no positions
+	 */
+	public double getMeanError() {
+		return numErrors == 0 ? Double.NaN : errorSum / numErrors;
+	}
+}
@@ -0,0 +1,67 @@
+package com.davidmascharka.lips.tools;
+
+import com.davidmascharka.lips.FeatureVector;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Timestamp;
+
+import static org.junit.Assert.*;
+
+public class DatasetReaderTest {
+
+    private static final String HEADER = "%Data collected by Nexus 5\n" +
+            "%Format of data: Accelerometer X, Accelerometer Y, Accelerometer Z, ...\n";
+
+    private static String row(int rssi, String location, String position, String time) {
+        return "0.5,9.8,-0.25,1,2,3,100,0.1,0.2,0.3,1.5,0.5,-0.5," + rssi + ",0," +
+                location + "," + position + (time == null ? "" : " %" + time) + "\n\n";
+    }
+
+    @Test
+    public void next_readsLocationsTimestampsAndMissingValues() throws Exception {
+        DatasetReader reader = DatasetReader.text(new StringReader(HEADER +
+                row(-40, "41.6005,-93.6529,12.5", "3.5,7", "2015-03-04 10:11:12.5") +
+                row(-55, "?,?,?", "4,8.25", null)), "dataset_lab.txt");
+        assertEquals(-1, reader.getNumAccessPoints());
+        assertEquals(2, reader.peekNumAccessPoints());
+
+        FeatureVector features = new FeatureVector(2);
+        assertTrue(reader.next(features));
+        assertEquals(9.8, features.getValues()[FeatureVector.ACCELEROMETER_Y], 1e-12);
+        assertEquals(-0.5, features.getValues()[FeatureVector.ORIENTATION_Z], 1e-12);
+        assertEquals(-40, features.getRssi(0));
+        assertEquals(0, features.getRssi(1));
+        assertEquals(-93.6529, features.getValues()[features.longitudeIndex()], 1e-12);
+        assertEquals(3.5f, reader.getX(), 0);
+        assertEquals(7f, reader.getY(), 0);
+        assertEquals(Timestamp.valueOf("2015-03-04 10:11:12.5").getTime(), reader.getTime());
+
+        assertTrue(reader.next(features));
+        assertEquals(-55, features.getRssi(0));
+        assertTrue(features.isLocationMissing());
+        assertEquals(8.25f, reader.getY(), 0);
+        assertEquals(-1, reader.getTime());
+
+        assertFalse(reader.next(features));
+        reader.close();
+    }
+
+    @Test
+    public void next_rejectsARowWithOtherAccessPoints() throws Exception {
+        DatasetReader reader = DatasetReader.text(new StringReader(HEADER +
+                row(-40, "?,?,?", "1,1", null) +
+                "0.5,9.8,-0.25,1,2,3,100,0.1,0.2,0.3,1.5,0.5,-0.5,-40,?,?,?,1,1\n"), "dataset_lab.txt");
+        FeatureVector features = new FeatureVector(reader.peekNumAccessPoints());
+        assertTrue(reader.next(features));
+        try {
+            reader.next(features);
+            fail();
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("line 5"));
+        }
+        reader.close();
+    }
+}
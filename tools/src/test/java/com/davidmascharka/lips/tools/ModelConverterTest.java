@@ -0,0 +1,75 @@
+package com.davidmascharka.lips.tools;
+
+import com.davidmascharka.lips.ModelFormat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import weka.classifiers.lazy.KStar;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.core.SerializationHelper;
+
+import static org.junit.Assert.*;
+
+public class ModelConverterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void convert_replacesTheOutputOnlyOnceConverted() throws Exception {
+        File out = folder.newFile("model_x.lips");
+        FileWriter writer = new FileWriter(out);
+        writer.write("old");
+        writer.close();
+
+        File unsupported = new File(folder.getRoot(), "list.model");
+        SerializationHelper.write(unsupported.getPath(), new ArrayList<String>());
+        try {
+            ModelConverter.convert(unsupported, out);
+            fail("Converted a list");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(3, out.length());
+
+        ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+        attributes.add(new Attribute("BSSID1"));
+        attributes.add(new Attribute("xPos"));
+        Instances train = new Instances("fingerprints", attributes, 4);
+        train.setClassIndex(1);
+        for (int i = 0; i < 4; i++) {
+            train.add(new DenseInstance(1.0, new double[] {-40 - i * 10, i}));
+        }
+        KStar kStar = new KStar();
+        kStar.buildClassifier(train);
+        File model = new File(folder.getRoot(), "model_x.model");
+        SerializationHelper.write(model.getPath(), kStar);
+
+        ModelConverter.convert(model, out);
+
+        FileInputStream in = new FileInputStream(out);
+        try {
+            assertEquals(4, ModelFormat.readKStar(ModelFormat.readFully(in)).getNumInstances());
+        } finally {
+            in.close();
+        }
+        assertArrayEquals(new String[] {"list.model", "model_x.lips", "model_x.model"},
+                sortedNames(folder.getRoot()));
+    }
+
+    private static String[] sortedNames(File directory) {
+        String[] names = directory.list();
+        Arrays.sort(names);
+        return names;
+    }
+}
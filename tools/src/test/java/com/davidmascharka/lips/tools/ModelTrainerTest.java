@@ -0,0 +1,84 @@
+package com.davidmascharka.lips.tools;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import weka.core.Instances;
+
+import static org.junit.Assert.*;
+
+public class ModelTrainerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void read_keepsEachDataPointAndItsPartition() throws Exception {
+        File dataset = folder.newFile("dataset_lab.txt");
+        FileWriter writer = new FileWriter(dataset);
+        writer.write("%Data collected by Nexus 5\n");
+        for (int i = 0; i < 6; i++) {
+            writer.write("0,0,0,0,0,0,0,0,0,0,0,0,0," + (-40 - i) + ",?,?,?," + (i * 2) + ",1 %" +
+                    "2015-03-04 10:11:12.5\n\n");
+        }
+        writer.close();
+        PartitionScheme scheme = PartitionScheme.read("2partition",
+                new StringReader("# halves\nleft 0 0 5 5\nright 5 0 10 5\n"));
+
+        ModelTrainer trainer = new ModelTrainer(Collections.singletonList(dataset),
+                Collections.singletonList(scheme));
+        Instances x = trainer.read("xPos", ModelTrainer.X, null, PartitionScheme.NO_PARTITION);
+        assertEquals(6, x.numInstances());
+        for (int i = 0; i < 6; i++) {
+            assertEquals(i * 2, x.instance(i).classValue(), 0);
+            assertEquals(-40 - i, x.instance(i).value(13), 0);
+        }
+
+        Instances right = trainer.read("yPos", ModelTrainer.Y, scheme, 1);
+        assertEquals(2, right.numInstances());
+        assertEquals(-43, right.instance(0).value(13), 0);
+
+        // x = 10 is outside both halves
+        Instances partitions = trainer.read("2partition", ModelTrainer.PARTITION, scheme,
+                PartitionScheme.NO_PARTITION);
+        assertEquals(5, partitions.numInstances());
+        assertEquals("right", partitions.instance(4).stringValue(partitions.classIndex()));
+    }
+
+    @Test
+    public void read_givesEachDataPointItsOwnValues() throws Exception {
+        List<File> datasets = new ArrayList<File>();
+        for (int d = 0; d < 2; d++) {
+            File dataset = folder.newFile("dataset_" + d + ".txt");
+            FileWriter writer = new FileWriter(dataset);
+            for (int i = 0; i < 3; i++) {
+                writer.write("0,0,0,0,0,0,0,0,0,0,0,0,0," + (-40 - d * 10 - i) + ",?,?,?," +
+                        (d * 10 + i) + "," + i + " %2015-03-04 10:11:12.5\n\n");
+            }
+            writer.close();
+            datasets.add(dataset);
+        }
+
+        ModelTrainer trainer = new ModelTrainer(datasets, Collections.<PartitionScheme>emptyList());
+        Instances y = trainer.read("yPos", ModelTrainer.Y, null, PartitionScheme.NO_PARTITION);
+
+        // Every row is its own data point, not the last one read
+        assertEquals(6, y.numInstances());
+        for (int d = 0; d < 2; d++) {
+            for (int i = 0; i < 3; i++) {
+                assertEquals(-40 - d * 10 - i, y.instance(d * 3 + i).value(13), 0);
+                assertEquals(i, y.instance(d * 3 + i).classValue(), 0);
+            }
+        }
+        y.instance(0).setValue(13, 0);
+        assertEquals(-41, y.instance(1).value(13), 0);
+    }
+}
@@ -0,0 +1,102 @@
+package com.davidmascharka.lips.tools;
+
+import com.davidmascharka.lips.AccessPointRegistry;
+import com.davidmascharka.lips.FeatureVector;
+import com.davidmascharka.lips.FingerprintLog;
+import com.davidmascharka.lips.ModelRegistry;
+import com.davidmascharka.lips.ModelStore;
+import com.davidmascharka.lips.PositionPipeline;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class ScanReplayTest {
+
+    private static final String[] BSSIDS = {"00:1E:58:27:0B:8D", "D8:C7:C8:0C:D2:80", "E8:DE:27:EF:0E:FE"};
+    private static final int NUM_POINTS = 40;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // A grid of data points, each access point fading along one direction
+    private File writeRecording() throws Exception {
+        File recording = new File(folder.getRoot(), "dataset_lab.fpl");
+        FingerprintLog log = FingerprintLog.open(recording, BSSIDS, FingerprintLog.DEFAULT_BATCH_SIZE);
+        try {
+            for (int i = 0; i < NUM_POINTS; i++) {
+                int x = i % 8;
+                int y = i / 8;
+                FeatureVector features = new FeatureVector(BSSIDS.length);
+                features.setRssi(0, -30 - 6 * x);
+                features.setRssi(1, -30 - 6 * y);
+                features.setRssi(2, -80 + 4 * x + 2 * y);
+                features.setLocationMissing();
+                log.append(features, x, y, 1000L + i);
+            }
+        } finally {
+            log.close();
+        }
+        return recording;
+    }
+
+    @Test
+    public void replay_predictsTheRecordedPositions() throws Exception {
+        File recording = writeRecording();
+        File modelDir = folder.newFolder("models");
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            new ModelTrainer(Collections.singletonList(recording),
+                    Collections.<PartitionScheme>emptyList()).train(modelDir, pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        PositionPipeline pipeline = new PositionPipeline(new AccessPointRegistry(BSSIDS),
+                BSSIDS.length, BSSIDS.length);
+        ExecutorService loader = ModelRegistry.newLoaderExecutor();
+        try {
+            ScanReplay.load(pipeline, new ModelStore.Directory(modelDir), null, BSSIDS.length, 0,
+                    loader);
+        } finally {
+            loader.shutdown();
+        }
+        assertNotNull(pipeline.getBuildingPredictor());
+
+        ScanReplay replay = new ScanReplay(pipeline, Collections.singletonList(recording));
+        StringWriter fixes = new StringWriter();
+        replay.replay(new PrintWriter(fixes));
+        StringWriter report = new StringWriter();
+        replay.report(1000000000L, new PrintWriter(report));
+
+        assertEquals(NUM_POINTS, replay.getNumScans());
+        // The grid is 8 by 5, so guessing its middle would be off by about 2.5
+        assertTrue("mean error " + replay.getMeanError(), replay.getMeanError() < 1.0);
+
+        String[] lines = fixes.toString().split("\n");
+        assertEquals(NUM_POINTS, lines.length);
+        for (int i = 0; i < NUM_POINTS; i++) {
+            String[] fields = lines[i].trim().split(",");
+            assertEquals(6, fields.length);
+            assertEquals(1000L + i, Long.parseLong(fields[0]));
+            assertEquals(i % 8, Float.parseFloat(fields[1]), 0);
+            assertEquals(i / 8, Float.parseFloat(fields[2]), 0);
+            assertEquals(i % 8, Float.parseFloat(fields[3]), 1.5);
+            assertEquals(i / 8, Float.parseFloat(fields[4]), 1.5);
+        }
+
+        assertTrue(report.toString(), report.toString().startsWith(
+                NUM_POINTS + " scans in 1000.0 ms, " + NUM_POINTS + ".0 scans/s"));
+        assertTrue(report.toString(), report.toString().contains(
+                "over " + NUM_POINTS + " scans with positions"));
+    }
+}